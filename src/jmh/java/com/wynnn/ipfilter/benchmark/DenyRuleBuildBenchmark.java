@@ -0,0 +1,58 @@
+package com.wynnn.ipfilter.benchmark;
+
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * setDeny + init (parse, 정렬, 병합, engine 생성) 시간.
+ * 규칙은 서로 맞닿지 않는 /32 이므로 병합되지 않고 규칙 개수만큼 대역이 만들어진다.
+ * 30M 규칙은 문자열 목록만 2GB 이상이므로 -Xmx 를 크게 지정한다.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class DenyRuleBuildBenchmark {
+
+    @Param({"100000", "1000000", "10000000", "30000000"})
+    private int numRules;
+
+    @Param({"SORTED"})
+    private IpFilterConfiguration.Engine engine;
+
+    private List<String> denyRules;
+
+    @Setup
+    public void setUp() {
+        denyRules = new ArrayList<>(numRules);
+        for (int i = 0; i < numRules; i++) {
+            denyRules.add(IpUtils.longToIp(2L * i + 1) + "/32");
+        }
+    }
+
+    @Benchmark
+    public IpFilterConfiguration setDeny() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setEngine(engine);
+        configuration.setDeny(denyRules);
+        configuration.init();
+        return configuration;
+    }
+}
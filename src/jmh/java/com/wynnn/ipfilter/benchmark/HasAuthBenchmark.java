@@ -0,0 +1,130 @@
+package com.wynnn.ipfilter.benchmark;
+
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.config.DecisionCacheConfiguration;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.index.Ipv4RangeSet;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.service.IpAuthenticationServiceImpl;
+import com.wynnn.ipfilter.utils.IpUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 차단 규칙이 적용된 상태에서 hasAuth 처리량.
+ * <ul>
+ *   <li>UNIFORM : IPv4 전체에서 무작위 IP</li>
+ *   <li>SKEWED : 요청의 90% 가 1% 의 IP 에 몰림 (일부 client 가 대부분의 요청을 보내는 경우)</li>
+ *   <li>ALL_DENY : 모든 IP 가 차단 대역에 속함</li>
+ * </ul>
+ * decisionCacheCapacity 가 0 보다 크면 decision cache (LRU) 를 사용한다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=1g"})
+@State(Scope.Benchmark)
+public class HasAuthBenchmark {
+
+    private static final int NUM_IPS = 1 << 16;
+
+    public enum Traffic {
+        UNIFORM, SKEWED, ALL_DENY
+    }
+
+    @Param({"1000000"})
+    private int numRules;
+
+    @Param({"SORTED", "BITMAP"})
+    private IpFilterConfiguration.Engine engine;
+
+    @Param({"UNIFORM", "SKEWED", "ALL_DENY"})
+    private Traffic traffic;
+
+    @Param({"0", "65536"})
+    private int decisionCacheCapacity;
+
+    private IpAuthenticationServiceImpl ipAuthService;
+    private int[] ips;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1275);
+        List<String> denyRules = new ArrayList<>(numRules);
+        for (int i = 0; i < numRules; i++) {
+            denyRules.add(IpUtils.longToIp(Integer.toUnsignedLong(random.nextInt())) + "/" + (24 + random.nextInt(9)));
+        }
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setEngine(engine);
+        configuration.setDeny(denyRules);
+        configuration.init();
+        DecisionCacheConfiguration decisionCacheConfiguration = new DecisionCacheConfiguration();
+        decisionCacheConfiguration.setEnabled(decisionCacheCapacity > 0);
+        decisionCacheConfiguration.setCapacity(decisionCacheCapacity);
+        decisionCacheConfiguration.init();
+        ipAuthService = new IpAuthenticationServiceImpl(configuration, decisionCacheConfiguration, new IpFilterMetrics(new SimpleMeterRegistry(), configuration, 64), new AutoBanConfiguration());
+        ips = createTraffic(configuration.getRanges(), random);
+    }
+
+    private int[] createTraffic(Ipv4RangeSet ranges, Random random) {
+        int[] traffic = new int[NUM_IPS];
+        int[] hotIps = new int[NUM_IPS / 100];
+        for (int i = 0; i < hotIps.length; i++) {
+            hotIps[i] = random.nextInt();
+        }
+        for (int i = 0; i < NUM_IPS; i++) {
+            switch (this.traffic) {
+                case SKEWED:
+                    traffic[i] = random.nextInt(10) < 9 ? hotIps[random.nextInt(hotIps.length)] : random.nextInt();
+                    break;
+                case ALL_DENY:
+                    int pos = random.nextInt(ranges.size());
+                    long width = ranges.getEndIpLong(pos) - ranges.getStartIpLong(pos) + 1;
+                    traffic[i] = (int) (ranges.getStartIpLong(pos) + (long) (random.nextDouble() * width));
+                    break;
+                default:
+                    traffic[i] = random.nextInt();
+            }
+        }
+        return traffic;
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (NUM_IPS - 1);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean hasAuth(Cursor cursor) {
+        return ipAuthService.hasAuth(ips[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean hasAuthMultiThread(Cursor cursor) {
+        return ipAuthService.hasAuth(ips[cursor.next()]);
+    }
+}
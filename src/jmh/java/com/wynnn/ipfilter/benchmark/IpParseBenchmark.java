@@ -0,0 +1,78 @@
+package com.wynnn.ipfilter.benchmark;
+
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IP 문자열 변환 비용. 같은 문자열이 반복되어 branch prediction 이 유리해지지 않도록 여러 IP 를 순서대로 사용한다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IpParseBenchmark {
+
+    private static final int NUM_IPS = 1 << 12;
+
+    private String[] ips;
+    private String[] subnets;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1275);
+        ips = new String[NUM_IPS];
+        subnets = new String[NUM_IPS];
+        for (int i = 0; i < NUM_IPS; i++) {
+            ips[i] = IpUtils.longToIp(Integer.toUnsignedLong(random.nextInt()));
+            subnets[i] = ips[i] + "/" + (8 + random.nextInt(25));
+        }
+    }
+
+    private int next() {
+        return cursor++ & (NUM_IPS - 1);
+    }
+
+    @Benchmark
+    public long ipToLong() {
+        return IpUtils.ipToLong(ips[next()]);
+    }
+
+    @Benchmark
+    public long parseIpv4() {
+        return IpUtils.parseIpv4(ips[next()]);
+    }
+
+    @Benchmark
+    public Ipv4Subnet newIpv4Subnet() {
+        return new Ipv4Subnet(subnets[next()]);
+    }
+
+    @Benchmark
+    public long parseCidr() {
+        String subnet = subnets[next()];
+        return IpUtils.parseCidr(subnet, 0, subnet.length());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Ipv4Subnet newIpv4SubnetMultiThread() {
+        return new Ipv4Subnet(subnets[next()]);
+    }
+}
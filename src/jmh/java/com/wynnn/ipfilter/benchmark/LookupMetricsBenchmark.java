@@ -0,0 +1,83 @@
+package com.wynnn.ipfilter.benchmark;
+
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.config.DecisionCacheConfiguration;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.service.IpAuthenticationServiceImpl;
+import com.wynnn.ipfilter.utils.IpUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 조회 시간 측정이 hasAuth 에 더하는 비용.
+ * lookupSampleRate 0 은 측정하지 않는 경우, 1 은 모든 조회를 측정하는 경우, 64 는 기본 설정
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupMetricsBenchmark {
+
+    private static final int NUM_IPS = 1 << 16;
+
+    @Param({"0", "64", "1"})
+    private int lookupSampleRate;
+
+    private IpAuthenticationServiceImpl ipAuthService;
+    private int[] ips;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1275);
+        List<String> denyRules = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            denyRules.add(IpUtils.longToIp(Integer.toUnsignedLong(random.nextInt())) + "/24");
+        }
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setEngine(IpFilterConfiguration.Engine.SORTED);
+        configuration.setDeny(denyRules);
+        configuration.init();
+        ipAuthService = new IpAuthenticationServiceImpl(configuration, new DecisionCacheConfiguration(), new IpFilterMetrics(new SimpleMeterRegistry(), configuration, lookupSampleRate), new AutoBanConfiguration());
+        ips = random.ints(NUM_IPS).toArray();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (NUM_IPS - 1);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean hasAuth(Cursor cursor) {
+        return ipAuthService.hasAuth(ips[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean hasAuthMultiThread(Cursor cursor) {
+        return ipAuthService.hasAuth(ips[cursor.next()]);
+    }
+}
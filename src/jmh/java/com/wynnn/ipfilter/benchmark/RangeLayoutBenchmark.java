@@ -0,0 +1,98 @@
+package com.wynnn.ipfilter.benchmark;
+
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.index.Ipv4TwoLevelIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 차단 대역 조회 layout 별 조회 시간. IP 는 IPv4 전체에서 무작위로 골라 매번 다른 cache line 을 읽도록 한다.
+ * <ul>
+ *   <li>treeMap : 최초 구현과 같은 TreeMap.floorEntry (시작 IP -&gt; 끝 IP)</li>
+ *   <li>sorted : 정렬된 int 배열의 binary search (Ipv4RangeIndex)</li>
+ *   <li>twoLevel : 상위 16bit bucket table + bucket 별 B-tree (Ipv4TwoLevelIndex)</li>
+ * </ul>
+ * cache miss 개수는 -prof perfnorm (Linux perf 필요) 의 L1-dcache-load-misses, LLC-load-misses 로 확인한다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class RangeLayoutBenchmark {
+
+    private static final int NUM_IPS = 1 << 16;
+
+    @Param({"1000000", "10000000"})
+    private int numRanges;
+
+    private TreeMap<Long, Long> treeMap;
+    private Ipv4RangeIndex sorted;
+    private Ipv4TwoLevelIndex twoLevel;
+    private int[] ips;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1275);
+        int[] starts = new int[numRanges];
+        int[] ends = new int[numRanges];
+        long gap = (1L << 32) / numRanges; // 대역이 주소 공간 전체에 고르게 퍼지도록 함
+        for (int i = 0; i < numRanges; i++) {
+            long start = i * gap + random.nextInt((int) (gap / 2));
+            starts[i] = (int) start;
+            ends[i] = (int) (start + random.nextInt((int) (gap / 2)));
+        }
+        sorted = Ipv4RangeIndex.of(starts, ends, numRanges);
+        twoLevel = Ipv4TwoLevelIndex.of(sorted);
+        treeMap = new TreeMap<>();
+        for (int i = 0; i < numRanges; i++) {
+            treeMap.put(sorted.getStartIpLong(i), sorted.getEndIpLong(i));
+        }
+        ips = new int[NUM_IPS];
+        for (int i = 0; i < NUM_IPS; i++) {
+            ips[i] = random.nextInt();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (NUM_IPS - 1);
+        }
+    }
+
+    @Benchmark
+    public boolean treeMap(Cursor cursor) {
+        long ip = Integer.toUnsignedLong(ips[cursor.next()]);
+        Map.Entry<Long, Long> entry = treeMap.floorEntry(ip);
+        return entry != null && ip <= entry.getValue();
+    }
+
+    @Benchmark
+    public boolean sorted(Cursor cursor) {
+        return sorted.contains(ips[cursor.next()]);
+    }
+
+    @Benchmark
+    public boolean twoLevel(Cursor cursor) {
+        return twoLevel.contains(ips[cursor.next()]);
+    }
+}
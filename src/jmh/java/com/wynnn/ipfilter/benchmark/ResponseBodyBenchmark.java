@@ -0,0 +1,62 @@
+package com.wynnn.ipfilter.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wynnn.ipfilter.model.ResponseBytes;
+import com.wynnn.ipfilter.model.ResponseData;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /ipv4 응답 body 생성 비용. 요청당 할당량은 -prof gc 로 확인한다 (gc.alloc.rate.norm).
+ * ex) ./mvnw -Plocal,benchmark test-compile exec:exec -Djmh.args="ResponseBodyBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBodyBenchmark {
+
+    private static final int NUM_IPS = 1 << 12;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String[] ips;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1275);
+        ips = new String[NUM_IPS];
+        for (int i = 0; i < NUM_IPS; i++) {
+            ips[i] = IpUtils.longToIp(Integer.toUnsignedLong(random.nextInt()));
+        }
+    }
+
+    private String next() {
+        return ips[cursor++ & (NUM_IPS - 1)];
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(ResponseData.authorized(next()));
+    }
+
+    @Benchmark
+    public byte[] responseBytes() {
+        return ResponseBytes.authorized(next());
+    }
+}
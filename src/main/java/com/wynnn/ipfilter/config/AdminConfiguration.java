@@ -0,0 +1,40 @@
+package com.wynnn.ipfilter.config;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 차단 규칙을 변경하는 관리 API (/admin/deny-rules 의 reload, 규칙 추가/삭제) 의 인증 설정.
+ * 관리 API 는 /ipv4 와 같은 port 로 제공되므로, TOKEN_HEADER 값이 token 과 같은 요청만 허용하고 token 을 설정하지 않으면 모두 거부한다.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "ip-filter.admin")
+@Setter
+@Slf4j
+public class AdminConfiguration {
+
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private String token; // 관리 API 를 호출할 때 TOKEN_HEADER 로 전달할 값. 설정하지 않으면 관리 API 로 규칙을 변경할 수 없음
+
+    @PostConstruct
+    public void init() {
+        log.info("> admin API={}", StringUtils.isNotBlank(token) ? "token required" : "disabled");
+    }
+
+    /**
+     * @param requestToken 요청의 TOKEN_HEADER 값. 없으면 null
+     * @return token 이 설정되어 있고 요청의 값과 같으면 true. 비교 시간으로 token 을 추측할 수 없도록 길이만큼 모두 비교한다
+     */
+    public boolean isAuthorized(String requestToken) {
+        return StringUtils.isNotBlank(token) && requestToken != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+}
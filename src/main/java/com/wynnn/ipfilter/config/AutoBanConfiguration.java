@@ -0,0 +1,162 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4ExpiryWheel;
+import com.wynnn.ipfilter.index.Ipv4RateCounter;
+import com.wynnn.ipfilter.index.Ipv4RuleSet;
+import com.wynnn.ipfilter.index.Ipv4SubnetBuffer;
+import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /ipv4 요청을 client IP 별로 세어, window 동안 threshold 이상 요청한 IP (또는 IP 가 속한 prefixLength 대역) 를
+ * ttl 동안 차단하는 설정. 허용된 요청만 세므로 이미 차단된 IP 의 요청은 counter 를 갱신하지 않는다.
+ * <p>
+ * 차단한 대역은 기본 차단 목록 (rule set) 과 별도로 보관하여, 차단과 만료가 rule set version 을 바꾸지 않으므로
+ * decision cache 를 비우지 않고 compaction 대상도 아니다. 조회 시 기본 차단 목록보다 먼저 확인한다.
+ * 차단은 서버마다 따로 관리하며 복제하지 않는다.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "ip-filter.auto-ban")
+@Getter
+@Setter
+@Slf4j
+public class AutoBanConfiguration {
+
+    private boolean enabled; // 기본은 사용하지 않음
+    private Duration window = Duration.ofSeconds(1); // 요청 수를 세는 window 길이
+    private int threshold = 1000; // window 동안 허용할 최대 요청 수 (최대 Ipv4RateCounter.MAX_THRESHOLD)
+    private int prefixLength = 32; // 차단할 대역. 32 이면 IP 하나, 24 이면 IP 가 속한 /24
+    private Duration ttl = Duration.ofMinutes(10); // 차단 유지 시간
+    private int capacity = 65536; // 추적할 최대 IP 개수 (항목당 8 byte)
+    private Duration expiryTick = Duration.ofSeconds(1); // 차단을 해제할 시간이 되었는지 확인하는 간격
+    @Setter(AccessLevel.NONE)
+    private Ipv4RateCounter counter = Ipv4RateCounter.DISABLED;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Ipv4RuleSet bans = new Ipv4RuleSet(); // 차단 중인 대역. 변경은 this 로 동기화하고 조회는 lock 없이
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Ipv4ExpiryWheel expiryWheel; // enabled 일 때만 생성
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ScheduledExecutorService executor;
+
+    /**
+     * @throws IllegalArgumentException prefixLength, window, threshold, ttl, expiryTick 이 범위를 벗어난 경우
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            counter = Ipv4RateCounter.DISABLED;
+            log.info("> auto ban=disabled");
+            return;
+        }
+        if (prefixLength < 8 || prefixLength > 32) {
+            throw new IllegalArgumentException("prefixLength must be between 8 and 32=" + prefixLength);
+        }
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl must be positive=" + ttl);
+        }
+        if (expiryTick == null || expiryTick.toMillis() <= 0) {
+            throw new IllegalArgumentException("expiryTick must be positive=" + expiryTick);
+        }
+        counter = Ipv4RateCounter.of(capacity, window.toMillis(), threshold);
+        synchronized (this) {
+            expiryWheel = new Ipv4ExpiryWheel(expiryTick.toMillis(), System.currentTimeMillis());
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auto-ban-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long expiryTickMillis = expiryTick.toMillis();
+        executor.scheduleWithFixedDelay(this::expireBans, expiryTickMillis, expiryTickMillis, TimeUnit.MILLISECONDS);
+        log.info("> auto ban={}, prefixLength={}, ttl={}", counter, prefixLength, ttl);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param ip unsigned 32bit IP
+     * @return ip 가 속한 prefixLength 대역의 차단 규칙 (CIDR)
+     */
+    public String toRule(int ip) {
+        long startIpLong = IpUtils.calcStartIpInSubnet(Integer.toUnsignedLong(ip), prefixLength);
+        return IpUtils.longToIp(startIpLong) + "/" + prefixLength;
+    }
+
+    /**
+     * ip 가 속한 prefixLength 대역을 ttl 동안 차단. 이미 차단 중이면 만료 시간만 늦춘다.
+     * 규칙 하나를 hash set 에 넣고 만료 시간을 등록하는 상수 시간 작업이므로 요청 thread 에서 바로 호출한다.
+     *
+     * @param ip        unsigned 32bit IP
+     * @param nowMillis 현재 시간 (epoch millis)
+     * @return 새로 차단했으면 true. 사용하지 않거나 이미 차단 중이면 false
+     */
+    public synchronized boolean ban(int ip, long nowMillis) {
+        if (expiryWheel == null) {
+            return false;
+        }
+        long rule = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(Integer.toUnsignedLong(ip), prefixLength), prefixLength);
+        expiryWheel.schedule(rule, nowMillis + ttl.toMillis());
+        return bans.add(rule);
+    }
+
+    /**
+     * @param nowMillis 현재 시간 (epoch millis)
+     * @return 만료되어 해제한 차단 개수
+     */
+    public synchronized int expireBans(long nowMillis) {
+        return expiryWheel != null ? expiryWheel.advance(nowMillis, bans::remove) : 0;
+    }
+
+    private void expireBans() {
+        try {
+            int numExpired = expireBans(System.currentTimeMillis());
+            if (numExpired > 0) {
+                log.info("> auto ban expired={}, remaining={}", numExpired, getNumBans());
+            }
+        } catch (RuntimeException e) { // 주기적으로 실행하는 작업이 중단되지 않도록 예외를 전파하지 않음
+            log.error("> failed to expire auto bans", e);
+        }
+    }
+
+    /**
+     * @param ip unsigned 32bit IP
+     * @return ip 가 차단 중인 대역에 속하면 true. lock 없이 사용된 prefix 길이마다 hash 조회 한 번이며, 차단이 없으면 바로 false
+     */
+    public boolean isBanned(int ip) {
+        return bans.containsIp(ip);
+    }
+
+    /**
+     * @param ip unsigned 32bit IP
+     * @return ip 를 차단한 대역 (CIDR). 차단되지 않았으면 empty
+     */
+    public Optional<String> findBan(int ip) {
+        long rule = bans.findRule(ip);
+        return rule == Ipv4RuleSet.NONE ? Optional.empty() : Optional.of(IpUtils.longToIp(Ipv4SubnetBuffer.startIpLongOf(rule)) + "/" + Ipv4SubnetBuffer.cidrOf(rule));
+    }
+
+    public synchronized int getNumBans() {
+        return bans.size();
+    }
+}
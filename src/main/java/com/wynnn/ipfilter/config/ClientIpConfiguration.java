@@ -0,0 +1,70 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * client IP 를 찾을 header 순서와 신뢰하는 proxy 대역 설정.
+ * 신뢰하는 proxy 대역은 차단 규칙과 같은 Ipv4RangeIndex 로 compile 하여 조회한다.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "ip-filter.client-ip")
+@Getter
+@Slf4j
+public class ClientIpConfiguration {
+
+    public static final List<String> DEFAULT_HEADERS = Collections.unmodifiableList(Arrays.asList(
+            "X-Forwarded-For",
+            "Proxy-Client-IP",    // Proxy 서버인 경우
+            "WL-Proxy-Client-IP", // Weblogic 서버인 경우
+            "HTTP_CLIENT_IP",
+            "HTTP_X_FORWARDED_FOR"));
+
+    @Setter
+    private List<String> headers = DEFAULT_HEADERS; // client IP 를 찾을 header. 앞에서부터 확인
+    private List<String> trustedProxies = Collections.emptyList(); // 신뢰하는 proxy 의 CIDR 목록. 비어있으면 header 값을 그대로 신뢰
+    private Ipv4RangeIndex trustedProxyRanges = Ipv4RangeIndex.EMPTY;
+
+    public void setTrustedProxies(List<String> trustedProxies) {
+        this.trustedProxies = Optional.ofNullable(trustedProxies).orElse(Collections.emptyList());
+    }
+
+    /**
+     * 신뢰하는 proxy 대역을 compile. 잘못된 CIDR 이 있으면 기동을 중단한다.
+     *
+     * @throws IllegalArgumentException CIDR 형식이 아닌 경우
+     */
+    @PostConstruct
+    public void init() {
+        trustedProxyRanges = compile(trustedProxies);
+        log.info("> client IP headers={}, trusted proxies={}, ranges={}", headers, trustedProxies, trustedProxyRanges.size());
+    }
+
+    private static Ipv4RangeIndex compile(List<String> cidrs) {
+        Ipv4Subnet[] subnets = cidrs.stream().map(Ipv4Subnet::new).sorted().toArray(Ipv4Subnet[]::new);
+        int[] starts = new int[subnets.length];
+        int[] ends = new int[subnets.length];
+        int size = 0;
+        for (Ipv4Subnet subnet : subnets) {
+            if (size > 0 && subnet.getStartIpLong() <= Integer.toUnsignedLong(ends[size - 1]) + 1) { // 겹치거나 맞닿은 대역은 합침
+                ends[size - 1] = (int) Math.max(Integer.toUnsignedLong(ends[size - 1]), subnet.getEndIpLong());
+                continue;
+            }
+            starts[size] = (int) subnet.getStartIpLong();
+            ends[size] = (int) subnet.getEndIpLong();
+            size++;
+        }
+        return Ipv4RangeIndex.of(starts, ends, size);
+    }
+}
@@ -0,0 +1,36 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4DecisionCache;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * hasAuth 앞에 두는 client IP 별 판단 결과 cache 설정.
+ * 일부 client 가 대부분의 요청을 보내는 경우, 같은 IP 를 차단 대역에서 다시 찾지 않도록 한다.
+ * reload 로 rule set version 이 바뀌면 이전 결과는 사용하지 않는다.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "ip-filter.decision-cache")
+@Getter
+@Setter
+@Slf4j
+public class DecisionCacheConfiguration {
+
+    private boolean enabled; // 기본은 사용하지 않음
+    private int capacity = 65536; // 저장할 최대 IP 개수 (항목당 8 byte)
+    private Ipv4DecisionCache.EvictionPolicy eviction = Ipv4DecisionCache.EvictionPolicy.LRU;
+    @Setter(AccessLevel.NONE)
+    private Ipv4DecisionCache cache = Ipv4DecisionCache.DISABLED;
+
+    @PostConstruct
+    public void init() {
+        cache = enabled ? Ipv4DecisionCache.of(capacity, eviction) : Ipv4DecisionCache.DISABLED;
+        log.info("> decision cache={}", cache.isEnabled() ? cache : "disabled");
+    }
+}
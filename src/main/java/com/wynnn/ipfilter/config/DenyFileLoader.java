@@ -0,0 +1,272 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4SubnetBuffer;
+import com.wynnn.ipfilter.index.Ipv6SubnetBuffer;
+import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 한 줄에 CIDR 하나씩 기록된 차단 목록 파일을 memory-map 으로 읽어 Ipv4SubnetBuffer 에 추가.
+ * 줄마다 String 을 만들지 않고 mapping 된 byte 를 직접 parsing 한다.
+ * 빈 줄과 '#' 이후의 주석은 무시하며, 형식이 잘못된 줄은 줄 번호와 함께 로그를 남기고 건너뛴다.
+ * 파일이 크면 여러 core 에서 나누어 parsing 한다.
+ */
+@Slf4j
+public final class DenyFileLoader {
+
+    private static final long DEFAULT_CHUNK_BYTES = 256L << 20; // 한 번에 mapping 하는 크기 (256MB)
+    private static final int MIN_SLICE_BYTES = 1 << 20; // 병렬로 parsing 하는 단위의 최소 크기 (1MB)
+
+    private DenyFileLoader() {
+    }
+
+    /**
+     * @param denyFile 차단 목록 파일
+     * @param subnets  읽은 subnet 을 추가할 buffer
+     * @return 추가된 subnet 개수
+     * @throws IOException 파일을 읽을 수 없는 경우
+     */
+    public static int load(Path denyFile, Ipv4SubnetBuffer subnets) throws IOException {
+        return load(denyFile, subnets, DEFAULT_CHUNK_BYTES, MIN_SLICE_BYTES);
+    }
+
+    static int load(Path denyFile, Ipv4SubnetBuffer subnets, long chunkBytes) throws IOException {
+        return load(denyFile, subnets, chunkBytes, MIN_SLICE_BYTES);
+    }
+
+    /**
+     * mapping 한 chunk 를 줄 단위로 다시 나누어 (slice) 병렬로 parsing 하고, 파일 순서대로 buffer 에 합친다.
+     * 잘못된 줄의 로그는 앞 slice 의 줄 수를 더한 줄 번호로 합치는 시점에 남긴다.
+     */
+    static int load(Path denyFile, Ipv4SubnetBuffer subnets, long chunkBytes, int minSliceBytes) throws IOException {
+        int numLoaded = 0;
+        long lineNumber = 0;
+        try (FileChannel channel = FileChannel.open(denyFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = skipByteOrderMark(channel);
+            while (position < fileSize) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkBytes, fileSize - position));
+                boolean lastChunk = position + chunk.limit() == fileSize;
+                int end = lastChunk ? chunk.limit() : lastLineEnd(chunk); // 마지막 chunk 가 아니면 완전한 줄까지만 처리
+                if (end == 0) {
+                    throw new IOException(String.format("Line %d of %s is longer than %d bytes", lineNumber + 1, denyFile, chunkBytes));
+                }
+                AsciiSequence text = new AsciiSequence(chunk);
+                int[] bounds = splitAtLines(chunk, end, minSliceBytes);
+                ParsedSlice[] slices = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> parseSlice(text, bounds[i], bounds[i + 1]))
+                        .toArray(ParsedSlice[]::new);
+                for (ParsedSlice slice : slices) {
+                    for (int i = 0; i < slice.invalidLines.size(); i++) {
+                        log.info("> exception when parse IP={} ({}:{})", slice.invalidLines.get(i), denyFile, lineNumber + slice.invalidLineNumbers.get(i));
+                    }
+                    lineNumber += slice.numLines;
+                    numLoaded += slice.subnets.size();
+                    subnets.addAll(slice.subnets);
+                }
+                position += end;
+            }
+        }
+        log.info("> loaded deny file={}, subnets={}, lines={}", denyFile, numLoaded, lineNumber);
+        return numLoaded;
+    }
+
+    /**
+     * 한 줄에 IPv6 CIDR 하나씩 기록된 차단 목록 파일을 읽어 Ipv6SubnetBuffer 에 추가. 빈 줄과 주석, 잘못된 줄은 IPv4 파일과 같이 처리한다.
+     *
+     * @param denyFile 차단 목록 파일
+     * @param subnets  읽은 subnet 을 추가할 buffer
+     * @return 추가된 subnet 개수
+     * @throws IOException 파일을 읽을 수 없는 경우
+     */
+    public static int loadIpv6(Path denyFile, Ipv6SubnetBuffer subnets) throws IOException {
+        int numLoaded = 0;
+        long lineNumber = 0;
+        long[] address = new long[2];
+        try (BufferedReader reader = Files.newBufferedReader(denyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                String rule = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (lineNumber == 1 && rule.startsWith("\uFEFF")) { // byte order mark
+                    rule = rule.substring(1).trim();
+                }
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                int prefixLength = IpUtils.parseIpv6Cidr(rule, 0, rule.length(), address);
+                if (prefixLength < 0) {
+                    log.info("> exception when parse IP={} ({}:{})", rule, denyFile, lineNumber);
+                    continue;
+                }
+                subnets.add(address[0], address[1], prefixLength);
+                numLoaded++;
+            }
+        }
+        log.info("> loaded IPv6 deny file={}, subnets={}, lines={}", denyFile, numLoaded, lineNumber);
+        return numLoaded;
+    }
+
+    /**
+     * chunk 의 [0, end) 를 줄 경계에서 나눈 slice 경계 목록. slice 개수는 core 수의 4배를 넘지 않고, slice 하나는 minSliceBytes 이상이 되도록 나눈다.
+     */
+    private static int[] splitAtLines(ByteBuffer chunk, int end, int minSliceBytes) {
+        int numSlices = (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, end / minSliceBytes));
+        int[] bounds = new int[numSlices + 1];
+        int numBounds = 1;
+        for (int k = 1; k < numSlices; k++) {
+            int bound = Math.max((int) ((long) end * k / numSlices), bounds[numBounds - 1]);
+            while (bound < end && chunk.get(bound) != '\n') {
+                bound++;
+            }
+            if (bound + 1 < end) {
+                bounds[numBounds++] = bound + 1; // 다음 줄의 시작
+            }
+        }
+        bounds[numBounds++] = end;
+        return Arrays.copyOf(bounds, numBounds);
+    }
+
+    private static ParsedSlice parseSlice(AsciiSequence text, int from, int end) {
+        ParsedSlice slice = new ParsedSlice(new Ipv4SubnetBuffer(Math.max(16, (end - from) / 16))); // 한 줄은 대략 16 byte
+        int lineStart = from;
+        for (int i = from; i <= end; i++) {
+            if (i < end && text.charAt(i) != '\n') {
+                continue;
+            }
+            if (i == end && lineStart == end) { // end of slice right after '\n'
+                break;
+            }
+            slice.numLines++;
+            if (!parseLine(text, lineStart, i, slice.subnets) && !isBlankLine(text, lineStart, i)) {
+                slice.invalidLines.add(text.toString(lineStart, i).trim());
+                slice.invalidLineNumbers.add(slice.numLines);
+            }
+            lineStart = i + 1;
+        }
+        return slice;
+    }
+
+    private static long skipByteOrderMark(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(3);
+        channel.read(head, 0);
+        return head.position() == 3 && head.get(0) == (byte) 0xEF && head.get(1) == (byte) 0xBB && head.get(2) == (byte) 0xBF ? 3 : 0;
+    }
+
+    private static int lastLineEnd(ByteBuffer chunk) {
+        for (int i = chunk.limit() - 1; i >= 0; i--) {
+            if (chunk.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return 올바른 CIDR 인 경우 buffer 에 추가하고 true
+     */
+    private static boolean parseLine(AsciiSequence text, int from, int to, Ipv4SubnetBuffer subnets) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '#') {
+                to = i;
+                break;
+            }
+        }
+        while (from < to && isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        long parsed = IpUtils.parseCidr(text, from, to);
+        if (parsed == IpUtils.INVALID_IP) {
+            return false;
+        }
+        int cidr = (int) (parsed & 0x3f);
+        subnets.add(IpUtils.calcStartIpInSubnet(parsed >>> 6, cidr), cidr);
+        return true;
+    }
+
+    private static boolean isBlankLine(AsciiSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '#') {
+                return true;
+            }
+            if (!isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private static final class ParsedSlice {
+        private final Ipv4SubnetBuffer subnets;
+        private final List<String> invalidLines = new ArrayList<>();
+        private final List<Integer> invalidLineNumbers = new ArrayList<>(); // slice 안에서의 줄 번호 (1부터)
+        private int numLines;
+
+        private ParsedSlice(Ipv4SubnetBuffer subnets) {
+            this.subnets = subnets;
+        }
+    }
+
+    /**
+     * mapping 된 byte 를 복사 없이 ASCII 문자열로 보여주는 CharSequence
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+
+        private AsciiSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString(start, end);
+        }
+
+        String toString(int start, int end) {
+            byte[] line = new byte[end - start];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = bytes.get(start + i);
+            }
+            return new String(line, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return toString(0, bytes.limit());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.model.DenyRuleSet;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 차단 규칙을 background thread 에서 다시 compile 하여 교체.
+ * compile 이 끝나기 전까지 조회는 기존 rule set 으로 처리되고, 실패하면 기존 rule set 이 유지된다.
+ * 실행 중 추가/삭제한 규칙의 compaction 도 같은 thread 에서 처리하므로 reload 와 동시에 실행되지 않는다.
+ * replication follower 는 기본 차단 목록을 leader 가 기록한 규칙으로만 바꾸므로 compaction 을 예약하지 않고 deny-file 은 감시하지 않는다.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DenyRuleReloader {
+
+    private static final long DEBOUNCE_MILLIS = 500; // 파일을 나누어 쓰는 동안 발생하는 event 를 한 번의 reload 로 모으는 시간
+
+    private final IpFilterConfiguration ipFilterConfiguration;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> newDaemonThread(runnable, "deny-rule-reloader"));
+    private final AtomicReference<CompletableFuture<DenyRuleSet>> pending = new AtomicReference<>(); // 요청되었지만 아직 시작하지 않은 reload
+    private final AtomicBoolean compactionQueued = new AtomicBoolean(); // 요청되었지만 아직 시작하지 않은 compaction 이 있는지 여부
+    private WatchService watchService;
+
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        long compactIntervalMillis = ipFilterConfiguration.getCompactInterval().toMillis();
+        if (compactIntervalMillis > 0 && !ipFilterConfiguration.isFollower()) {
+            executor.scheduleWithFixedDelay(this::compact, compactIntervalMillis, compactIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        long expiryTickMillis = ipFilterConfiguration.getExpiryTick().toMillis();
+        executor.scheduleWithFixedDelay(this::expireRules, expiryTickMillis, expiryTickMillis, TimeUnit.MILLISECONDS);
+        if (!ipFilterConfiguration.isWatchDenyFile()) {
+            return;
+        }
+        Set<Path> denyFiles = Stream.of(ipFilterConfiguration.isFollower() ? null : ipFilterConfiguration.getDenyFile(), ipFilterConfiguration.getDenyIpv6File())
+                .filter(StringUtils::isNotBlank)
+                .map(denyFile -> Paths.get(denyFile).toAbsolutePath())
+                .collect(Collectors.toSet());
+        if (denyFiles.isEmpty()) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        for (Path denyFile : denyFiles) {
+            if (directories.add(denyFile.getParent())) {
+                denyFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+        newDaemonThread(() -> watch(denyFiles), "deny-file-watcher").start();
+        log.info("> watching deny file={}", denyFiles);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * reload 를 요청. 이미 대기 중인 reload 가 있으면 새로 요청하지 않고 그 결과를 공유한다.
+     *
+     * @return 교체된 rule set. 실패한 경우 예외로 완료된다.
+     */
+    public CompletableFuture<DenyRuleSet> requestReload() {
+        CompletableFuture<DenyRuleSet> future = new CompletableFuture<>();
+        CompletableFuture<DenyRuleSet> queued = pending.compareAndExchange(null, future);
+        if (queued != null) {
+            return queued;
+        }
+        executor.execute(() -> {
+            pending.compareAndSet(future, null); // 이후 요청은 변경된 규칙을 반영하도록 다음 reload 로 대기
+            try {
+                future.complete(ipFilterConfiguration.reload());
+            } catch (RuntimeException e) {
+                log.error("> failed to reload deny rules, keep version={}", ipFilterConfiguration.getRuleSet().getVersion(), e);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 반영하지 않은 규칙이 compact-threshold 이상이면 compaction 을 요청. 이미 대기 중인 compaction 이 있으면 새로 요청하지 않는다.
+     */
+    public void requestCompactionIfNeeded() {
+        if (ipFilterConfiguration.isFollower() || ipFilterConfiguration.getNumPendingRules() < ipFilterConfiguration.getCompactThreshold()
+                || !compactionQueued.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            compactionQueued.set(false);
+            compact();
+        });
+    }
+
+    private void expireRules() {
+        try {
+            if (ipFilterConfiguration.expireRules(System.currentTimeMillis()) > 0) {
+                requestCompactionIfNeeded();
+            }
+        } catch (RuntimeException e) { // 주기적으로 실행하는 작업이 중단되지 않도록 예외를 전파하지 않음
+            log.error("> failed to expire deny rules, keep version={}", ipFilterConfiguration.getRuleSet().getVersion(), e);
+        }
+    }
+
+    private void compact() {
+        try {
+            ipFilterConfiguration.compact();
+        } catch (RuntimeException e) { // 주기적으로 실행하는 작업이 중단되지 않도록 예외를 전파하지 않음
+            log.error("> failed to compact deny rules, keep version={}", ipFilterConfiguration.getRuleSet().getVersion(), e);
+        }
+    }
+
+    private void watch(Set<Path> denyFiles) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = pollDenyFileEvents(key, denyFiles);
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= pollDenyFileEvents(key, denyFiles);
+                }
+                if (changed) {
+                    log.info("> deny file changed={}", denyFiles);
+                    requestReload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("> stop watching deny file={}", denyFiles);
+        }
+    }
+
+    private static boolean pollDenyFileEvents(WatchKey key, Set<Path> denyFiles) {
+        Path directory = (Path) key.watchable();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || denyFiles.contains(directory.resolve((Path) event.context()));
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,547 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4RangeSnapshot;
+import com.wynnn.ipfilter.index.Ipv4SubnetBuffer;
+import com.wynnn.ipfilter.model.DenyRuleSet;
+import com.wynnn.ipfilter.model.ReplicationStatus;
+import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 공유 directory 로 기본 차단 목록을 복제.
+ * <pre>
+ * manifest.properties      현재 generation, base 의 차단 IP 개수, 허용 목록, 규칙 파일의 SHA-256. 마지막에 rename 으로 교체
+ * base-{generation}.rules  base 규칙 (한 줄에 CIDR 하나)
+ * base-{generation}.snapshot compile 된 base 차단 대역 (Ipv4RangeSnapshot)
+ * deltas-{generation}.log  base 이후 추가/삭제한 규칙. 한 줄에 "sequence 기록시간 +|- CIDR" 을 덧붙여 씀
+ * follower-{node}.ack      follower 가 사용 중인 generation. 사용하는 동안 주기적으로 갱신
+ * </pre>
+ * leader 는 reload 하거나 delta log 가 max-log-entries 를 넘은 뒤 compaction 하면 새 generation 을 기록한다.
+ * 파일 기록은 규칙을 변경한 thread 가 아닌 deny-rule-publisher thread 에서 변경 순서대로 하므로, 차단 규칙의 lock 을 잡은 동안 I/O 를 하지 않는다.
+ * 기록에 실패하면 delta log 에 더 덧붙이지 않고 retry-interval 후 현재 규칙으로 새 generation 을 다시 기록한다.
+ * 실패한 delta log 의 마지막 줄이 잘렸더라도 이어 쓰지 않으므로, follower 는 줄바꿈으로 끝난 줄까지만 적용하고 새 generation 으로 넘어간다.
+ * 이전 generation 의 파일은 follower-timeout 안에 갱신된 ack 의 generation 과 직전 generation 을 남기므로,
+ * follower 가 memory-map 한 snapshot 이나 아직 읽는 중인 파일을 삭제하지 않는다.
+ * follower 는 poll-interval 마다 manifest 를 확인하여 generation 이 바뀌면 snapshot 을 memory-map 하여 base 로 사용하고 (compile 하지 않음),
+ * delta log 에서 새로 기록된 줄만 읽어 한 번에 적용한다. 같은 base 위에 같은 순서로 적용하므로 leader 와 같은 차단 대역이 된다.
+ * follower 는 시작할 때 기본 차단 목록을 compile 하지 않고, reload 해도 기본 차단 목록은 바꾸지 않으며 규칙 추가/삭제와 compaction 을 하지 않는다.
+ * <p>
+ * 이름별 차단 목록과 IPv6 차단 대역은 복제하지 않는다.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DenyRuleReplicator implements IpFilterConfiguration.RuleChangeListener {
+
+    static final String MANIFEST_FILE = "manifest.properties";
+    private static final int MAX_READ_BYTES = 1 << 24; // follower 가 한 번에 읽는 delta log 크기. 나머지는 다음 poll 에서 읽음
+    private static final Pattern GENERATION_FILE = Pattern.compile("(?:base|deltas)-(\\d+)\\.(?:rules|snapshot|log)");
+    private static final String ACK_PREFIX = "follower-";
+    private static final String ACK_SUFFIX = ".ack";
+
+    private final IpFilterConfiguration ipFilterConfiguration;
+    private ScheduledExecutorService executor; // leader 는 파일 기록, follower 는 poll
+    private Path directory;
+    private Path ackPath;     // follower 가 사용 중인 generation 을 기록하는 파일
+    private long ackedGeneration;
+    private long ackedAt;
+    private Writer logWriter; // leader 의 현재 generation delta log
+    private long logEntries;  // leader 의 현재 delta log 에 기록한 개수
+    private long logOffset;   // follower 가 현재 delta log 에서 읽은 byte 수
+    private boolean publishFailed;  // leader 가 기록에 실패하여 새 generation 을 다시 기록해야 함
+    private boolean retryScheduled; // leader 가 다시 기록하도록 예약함
+    private volatile long generation;
+    private volatile long sequence;
+    private volatile long lagMillis;
+    private volatile long lastSyncAt;
+    private volatile String lastError; // 마지막으로 실패한 기록 또는 적용. 성공하면 null
+    private volatile long failedSince;
+
+    /**
+     * @throws IllegalStateException follower 가 시작할 때 leader 가 기록한 규칙이 있지만 적용하지 못한 경우
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        ReplicationConfiguration replicationConfiguration = ipFilterConfiguration.getReplication();
+        ReplicationConfiguration.Role role = replicationConfiguration.getRole();
+        if (role == ReplicationConfiguration.Role.NONE) {
+            return;
+        }
+        if (StringUtils.isBlank(replicationConfiguration.getDirectory())) {
+            throw new IllegalArgumentException("ip-filter.replication.directory is required for role=" + role);
+        }
+        directory = Files.createDirectories(Paths.get(replicationConfiguration.getDirectory()).toAbsolutePath());
+        if (role == ReplicationConfiguration.Role.LEADER) {
+            readManifest().ifPresent(manifest -> { // 재시작해도 follower 가 새 generation 을 받도록 이어서 증가
+                generation = Long.parseLong(manifest.getProperty("generation"));
+                sequence = Long.parseLong(manifest.getProperty("sequence", "0"));
+            });
+            executor = newExecutor("deny-rule-publisher");
+            ipFilterConfiguration.setRuleChangeListener(this); // 현재 base 를 바로 기록
+            log.info("> replication leader directory={}, generation={}", directory, generation);
+            return;
+        }
+        ackPath = directory.resolve(ACK_PREFIX + ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9._-]", "_") + ACK_SUFFIX);
+        poll(); // 시작할 때 복제된 규칙을 바로 적용. IpFilterConfiguration 은 manifest 가 있으면 기본 차단 목록을 compile 하지 않았으므로 적용하지 못하면 기동을 중단
+        if (generation == 0 && readManifest().isPresent()) {
+            throw new IllegalStateException("failed to load replicated deny rules=" + directory);
+        }
+        long pollIntervalMillis = replicationConfiguration.getPollInterval().toMillis();
+        executor = newExecutor("deny-rule-replicator");
+        executor.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("> replication follower directory={}, generation={}", directory, generation);
+    }
+
+    private static ScheduledExecutorService newExecutor(String threadName) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); // 종료할 때 예약한 재시도는 기다리지 않음
+        return executor;
+    }
+
+    /**
+     * leader 는 이미 요청된 기록을 마친 뒤 종료하고, follower 는 poll 을 중단하고 ack 를 삭제하여 leader 가 generation 을 보관하지 않도록 한다.
+     */
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (ipFilterConfiguration.getReplication().getRole() == ReplicationConfiguration.Role.LEADER) {
+            ipFilterConfiguration.setRuleChangeListener(null); // 해제한 뒤에는 기록이 요청되지 않음
+            if (executor != null) {
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } else if (executor != null) {
+            executor.shutdownNow();
+        }
+        synchronized (this) {
+            if (logWriter != null) {
+                logWriter.close();
+                logWriter = null;
+            }
+            if (ackPath != null) {
+                Files.deleteIfExists(ackPath);
+            }
+        }
+    }
+
+    /**
+     * leader : 지금까지 요청된 기록이 끝날 때까지 대기
+     */
+    void awaitPublished() {
+        try {
+            executor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public ReplicationStatus getStatus() {
+        long failedAt = failedSince;
+        return new ReplicationStatus(ipFilterConfiguration.getReplication().getRole().name(), generation, sequence, lagMillis,
+                lastSyncAt > 0 ? Instant.ofEpochMilli(lastSyncAt) : null, lastError, failedAt > 0 ? Instant.ofEpochMilli(failedAt) : null);
+    }
+
+    /**
+     * 새 generation 의 기록을 publisher thread 에 요청. 차단 규칙의 lock 을 잡은 채 호출되므로 기다리지 않는다.
+     */
+    @Override
+    public void baseChanged(DenyRuleSet base, Ipv4SubnetBuffer subnets, List<String> allowRules, long[] addedRules, long[] removedRules, boolean reloaded) {
+        executor.execute(() -> publishBase(base, subnets, allowRules, addedRules, removedRules, reloaded));
+    }
+
+    @Override
+    public void rulesChanged(long[] rules, boolean added) {
+        executor.execute(() -> appendRules(rules, added));
+    }
+
+    /**
+     * reload 한 경우와 이전 기록에 실패한 경우 새 generation 을 기록. compaction 은 차단 대역을 바꾸지 않으므로 delta log 가 길어진 경우에만 기록한다.
+     * 기록한 뒤 모든 follower 가 지난 generation 의 파일을 삭제한다.
+     */
+    private synchronized void publishBase(DenyRuleSet base, Ipv4SubnetBuffer subnets, List<String> allowRules, long[] addedRules, long[] removedRules, boolean reloaded) {
+        if (!reloaded && !publishFailed && logEntries < ipFilterConfiguration.getReplication().getMaxLogEntries()) {
+            return;
+        }
+        long nextGeneration = generation + 1;
+        try {
+            byte[] sourceHash = writeRules(rulesPath(nextGeneration), subnets);
+            Ipv4RangeSnapshot.write(snapshotPath(nextGeneration), base.getRanges(), base.getNumDenyIps(), sourceHash);
+            if (logWriter != null) {
+                logWriter.close();
+            }
+            logWriter = Files.newBufferedWriter(logPath(nextGeneration), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            logEntries = 0;
+            long now = System.currentTimeMillis();
+            for (long rule : addedRules) { // base 에 반영하지 않은 규칙부터 기록
+                appendLog(rule, true, now);
+            }
+            for (long rule : removedRules) {
+                appendLog(rule, false, now);
+            }
+            logWriter.flush();
+
+            Properties manifest = new Properties();
+            manifest.setProperty("generation", String.valueOf(nextGeneration));
+            manifest.setProperty("sequence", String.valueOf(sequence));
+            manifest.setProperty("numDenyIps", String.valueOf(base.getNumDenyIps()));
+            manifest.setProperty("allow", String.join(",", allowRules));
+            manifest.setProperty("sourceHash", toHex(sourceHash));
+            writeManifest(manifest);
+            generation = nextGeneration;
+            lastSyncAt = now;
+            publishFailed = false;
+            clearError();
+            deleteUnusedGenerations();
+            log.info("> published deny rules generation={}, rules={}, pending={}, sequence={}", generation, subnets.size(), addedRules.length + removedRules.length, sequence);
+        } catch (IOException | UncheckedIOException e) { // 기록하던 delta log 는 manifest 가 가리키지 않으므로 follower 가 읽지 않음
+            failPublish("failed to publish deny rules generation=" + nextGeneration, e);
+        }
+    }
+
+    private synchronized void appendRules(long[] rules, boolean added) {
+        if (logWriter == null) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            for (long rule : rules) {
+                appendLog(rule, added, now);
+            }
+            logWriter.flush();
+            lastSyncAt = now;
+        } catch (IOException e) {
+            failPublish("failed to append deny rules=" + rules.length + ", generation=" + generation, e);
+        }
+    }
+
+    /**
+     * leader : 현재 delta log 를 닫아 더 덧붙이지 않고, retry-interval 후 새 generation 을 다시 기록하도록 예약.
+     * 다시 기록할 때까지 변경된 규칙은 다시 기록하는 base 와 delta 에 포함된다.
+     */
+    private synchronized void failPublish(String message, Exception e) {
+        Duration retryInterval = ipFilterConfiguration.getReplication().getRetryInterval();
+        log.error("> {}, retry in {}", message, retryInterval, e);
+        setError(message + ": " + e);
+        publishFailed = true;
+        if (logWriter != null) {
+            try {
+                logWriter.close();
+            } catch (IOException closeException) {
+                log.debug("> failed to close delta log generation={}", generation, closeException);
+            }
+            logWriter = null;
+        }
+        if (!retryScheduled && !executor.isShutdown()) {
+            retryScheduled = true;
+            executor.schedule(this::retryPublish, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * leader : 기록에 실패한 뒤 현재 base 와 base 에 반영하지 않은 규칙을 다시 전달받아 새 generation 으로 기록
+     */
+    void retryPublish() {
+        synchronized (this) {
+            retryScheduled = false;
+            if (!publishFailed) { // 그 사이 reload 하여 기록함
+                return;
+            }
+        }
+        try {
+            ipFilterConfiguration.notifyBaseChanged(); // publishBase 를 이 thread 에 요청
+        } catch (RuntimeException e) { // 기본 차단 목록을 읽지 못하면 다시 예약
+            failPublish("failed to read deny rules to publish", e);
+        }
+    }
+
+    private void setError(String error) {
+        if (lastError == null) {
+            failedSince = System.currentTimeMillis();
+        }
+        lastError = error;
+    }
+
+    private void clearError() {
+        lastError = null;
+        failedSince = 0;
+    }
+
+    private void appendLog(long rule, boolean added, long writtenAt) throws IOException {
+        logWriter.write(++sequence + " " + writtenAt + " " + (added ? '+' : '-') + " " + toCidr(rule) + "\n");
+        logEntries++;
+    }
+
+    /**
+     * leader : follower 가 사용 중일 수 있는 generation 보다 오래된 파일을 삭제.
+     * follower-timeout 안에 갱신된 ack 의 generation 과, 직전 manifest 를 읽고 아직 ack 하지 않은 follower 를 위해 직전 generation 을 남긴다.
+     * 그보다 오래 갱신되지 않은 ack 는 중단된 follower 로 보고 삭제한다.
+     */
+    private void deleteUnusedGenerations() {
+        long staleBefore = System.currentTimeMillis() - ipFilterConfiguration.getReplication().getFollowerTimeout().toMillis();
+        long oldestInUse = generation - 1;
+        try {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.collect(Collectors.toList());
+            }
+            for (Path ack : files) {
+                if (!isAckFile(ack)) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(ack).toMillis() < staleBefore) {
+                        Files.deleteIfExists(ack);
+                        log.warn("> deleted stale replication ack={}", ack.getFileName());
+                    } else {
+                        oldestInUse = Math.min(oldestInUse, Long.parseLong(new String(Files.readAllBytes(ack), StandardCharsets.UTF_8).trim()));
+                    }
+                } catch (NoSuchFileException | NumberFormatException e) { // follower 가 종료하면서 삭제함
+                    log.debug("> skip replication ack={}", ack.getFileName(), e);
+                }
+            }
+            for (Path file : files) {
+                Matcher matcher = GENERATION_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) < oldestInUse) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) { // 다음 generation 을 기록할 때 다시 삭제
+            log.warn("> failed to delete unused generations before={}", oldestInUse, e);
+        }
+    }
+
+    private static boolean isAckFile(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.startsWith(ACK_PREFIX) && fileName.endsWith(ACK_SUFFIX);
+    }
+
+    /**
+     * follower : 사용 중인 generation 을 ack 파일에 기록. generation 이 바뀌었거나 follower-timeout 의 절반이 지난 경우에만 기록한다.
+     */
+    private void writeAck() throws IOException {
+        long now = System.currentTimeMillis();
+        if (generation == 0 || (generation == ackedGeneration && now - ackedAt < ipFilterConfiguration.getReplication().getFollowerTimeout().toMillis() / 2)) {
+            return;
+        }
+        Path tempFile = ackPath.resolveSibling(ackPath.getFileName() + ".tmp");
+        Files.write(tempFile, String.valueOf(generation).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(tempFile, FileTime.fromMillis(now));
+        Files.move(tempFile, ackPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ackedGeneration = generation;
+        ackedAt = now;
+    }
+
+    /**
+     * follower : generation 이 바뀌었으면 새 base 를 적용하고, delta log 에서 새로 기록된 규칙을 적용
+     */
+    synchronized void poll() {
+        try {
+            Optional<Properties> manifest = readManifest();
+            if (!manifest.isPresent()) {
+                log.debug("> replicated deny rules not found={}", directory);
+                return;
+            }
+            long nextGeneration = Long.parseLong(manifest.get().getProperty("generation"));
+            if (nextGeneration != generation && !loadBase(nextGeneration, manifest.get())) {
+                setError("invalid replicated snapshot generation=" + nextGeneration);
+                writeAck(); // 새 generation 을 적용하지 못해도 사용 중인 generation 은 계속 보관되도록 함
+                return;
+            }
+            tailLog();
+            writeAck();
+            lastSyncAt = System.currentTimeMillis();
+            clearError();
+        } catch (IOException | RuntimeException e) { // 주기적으로 실행하는 작업이 중단되지 않도록 예외를 전파하지 않음. leader 가 새 generation 을 기록하면 넘어감
+            log.error("> failed to replicate deny rules, keep generation={}, sequence={}", generation, sequence, e);
+            setError("failed to replicate deny rules: " + e);
+        }
+    }
+
+    private boolean loadBase(long nextGeneration, Properties manifest) throws IOException {
+        byte[] sourceHash = fromHex(manifest.getProperty("sourceHash", ""));
+        Optional<Ipv4RangeSnapshot> snapshot = Ipv4RangeSnapshot.read(snapshotPath(nextGeneration), sourceHash);
+        if (!snapshot.isPresent()) {
+            log.warn("> invalid replicated snapshot generation={}, keep generation={}", nextGeneration, generation);
+            return false;
+        }
+        String allow = manifest.getProperty("allow", "");
+        List<String> allowRules = allow.isEmpty() ? Collections.emptyList() : Arrays.asList(allow.split(","));
+        ipFilterConfiguration.loadReplicaBase(snapshot.get().getRanges(), snapshot.get().getNumDenyIps(), allowRules, rulesPath(nextGeneration));
+        generation = nextGeneration;
+        sequence = Long.parseLong(manifest.getProperty("sequence", "0"));
+        logOffset = 0;
+        return true;
+    }
+
+    /**
+     * 마지막으로 읽은 위치부터 줄바꿈으로 끝난 줄만 읽어서 적용. 쓰는 중인 마지막 줄은 다음에 읽는다.
+     */
+    private void tailLog() throws IOException {
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(logPath(generation), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= logOffset) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - logOffset, MAX_READ_BYTES));
+            int read;
+            do {
+                read = channel.read(buffer, logOffset + buffer.position());
+            } while (read > 0 && buffer.hasRemaining());
+            bytes = Arrays.copyOf(buffer.array(), buffer.position());
+        } catch (NoSuchFileException e) { // ack 가 timeout 되어 leader 가 삭제함. 다음 poll 에서 새 generation 을 적용
+            return;
+        }
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0) {
+            return;
+        }
+        String[] lines = new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n");
+        long[] rules = new long[lines.length];
+        boolean[] added = new boolean[lines.length];
+        long lastWrittenAt = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String[] fields = lines[i].split(" ");
+            if (fields.length != 4) {
+                throw new IllegalStateException("invalid delta=" + lines[i] + ", generation=" + generation);
+            }
+            rules[i] = IpFilterConfiguration.parseRule(fields[3]);
+            added[i] = "+".equals(fields[2]);
+            sequence = Long.parseLong(fields[0]);
+            lastWrittenAt = Long.parseLong(fields[1]);
+        }
+        ipFilterConfiguration.applyReplicaRules(rules, added, lines.length);
+        logOffset += end;
+        lagMillis = Math.max(0, System.currentTimeMillis() - lastWrittenAt);
+    }
+
+    private Optional<Properties> readManifest() throws IOException {
+        Path manifestPath = directory.resolve(MANIFEST_FILE);
+        if (!Files.isRegularFile(manifestPath)) {
+            return Optional.empty();
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            manifest.load(in);
+        }
+        return Optional.of(manifest);
+    }
+
+    private void writeManifest(Properties manifest) throws IOException {
+        Path manifestPath = directory.resolve(MANIFEST_FILE);
+        Path tempFile = manifestPath.resolveSibling(MANIFEST_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            manifest.store(out, "ip-filter replication");
+        }
+        Files.move(tempFile, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * base 규칙을 CIDR 로 기록
+     *
+     * @return 기록한 파일의 SHA-256
+     */
+    private static byte[] writeRules(Path rulesFile, Ipv4SubnetBuffer subnets) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM must support SHA-256
+        }
+        Path tempFile = rulesFile.resolveSibling(rulesFile.getFileName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(Files.newOutputStream(tempFile), digest), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < subnets.size(); i++) {
+                writer.write(IpUtils.longToIp(subnets.getStartIpLong(i)) + "/" + subnets.getCidr(i) + "\n");
+            }
+        }
+        Files.move(tempFile, rulesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return digest.digest();
+    }
+
+    private static String toCidr(long rule) {
+        return IpUtils.longToIp(Ipv4SubnetBuffer.startIpLongOf(rule)) + "/" + Ipv4SubnetBuffer.cidrOf(rule);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private Path rulesPath(long generation) {
+        return directory.resolve("base-" + generation + ".rules");
+    }
+
+    private Path snapshotPath(long generation) {
+        return directory.resolve("base-" + generation + ".snapshot");
+    }
+
+    private Path logPath(long generation) {
+        return directory.resolve("deltas-" + generation + ".log");
+    }
+}
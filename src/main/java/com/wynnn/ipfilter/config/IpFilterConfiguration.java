@@ -1,18 +1,60 @@
 package com.wynnn.ipfilter.config;
 
-import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.wynnn.ipfilter.index.Ipv4BitmapIndex;
+import com.wynnn.ipfilter.index.Ipv4DenyIndex;
+import com.wynnn.ipfilter.index.Ipv4Dir24x8Index;
+import com.wynnn.ipfilter.index.Ipv4ExpiryWheel;
+import com.wynnn.ipfilter.index.Ipv4OverlayIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeSet;
+import com.wynnn.ipfilter.index.Ipv4RangeSnapshot;
+import com.wynnn.ipfilter.index.Ipv4RuleSet;
+import com.wynnn.ipfilter.index.Ipv4SubnetBuffer;
+import com.wynnn.ipfilter.index.Ipv4TwoLevelIndex;
+import com.wynnn.ipfilter.index.Ipv6RangeIndex;
+import com.wynnn.ipfilter.index.Ipv6SubnetBuffer;
+import com.wynnn.ipfilter.model.DenyRuleSet;
 import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 @Configuration
 @ConfigurationProperties(prefix = "ip-filter")
@@ -20,57 +62,1245 @@ import java.util.concurrent.atomic.AtomicLong;
 @Slf4j
 public class IpFilterConfiguration {
 
-    private TreeMap<Long, Ipv4Subnet> deny;
+    private List<String> denyRules = Collections.emptyList();
+    private List<String> allowRules = Collections.emptyList(); // deny 보다 우선하는 허용 목록. compile 시 차단 대역에서 제외
+    private List<String> denyIpv6Rules = Collections.emptyList();
+    @Setter
+    private String denyFile; // 한 줄에 CIDR 하나씩 기록된 차단 목록 파일 경로 (deny 목록과 함께 적용)
+    @Setter
+    private String denyIpv6File; // 한 줄에 IPv6 CIDR 하나씩 기록된 차단 목록 파일 경로 (deny-ipv6 목록과 함께 적용)
+    @Setter
+    private String snapshotFile; // compile 된 차단 대역을 저장하는 binary snapshot 파일 경로. 차단 규칙이 바뀌지 않았으면 compile 하지 않고 이 파일을 사용
+    @Setter
+    private boolean watchDenyFile; // deny-file, deny-ipv6-file 이 변경되면 자동으로 reload
+    @Setter
+    private Engine engine = Engine.AUTO;
+    @Setter
+    private Map<String, RuleList> lists = Collections.emptyMap(); // 이름으로 선택하는 차단 목록 (GET /ipv4?list=). IPv4 만 지원
+    @Setter
+    private Duration compactInterval = Duration.ofMinutes(1); // 실행 중 추가/삭제한 규칙을 base index 에 반영하는 주기. 0 이면 주기적으로 반영하지 않음
+    @Setter
+    private int compactThreshold = 1024; // 반영하지 않은 규칙이 이 개수 이상이면 주기와 관계없이 반영
+    @Setter
+    private Duration expiryTick = Duration.ofSeconds(1); // 만료 시간이 있는 규칙을 확인하는 간격. 규칙은 만료 시간 후 이 간격 안에 삭제된다
+    private final ReplicationConfiguration replication = new ReplicationConfiguration(); // ip-filter.replication. follower 이면 기본 차단 목록을 직접 compile 하지 않음
+    private final AtomicReference<DenyRuleSet> ruleSet = new AtomicReference<>(DenyRuleSet.EMPTY); // 조회에 사용하는 차단 규칙. reload 시 통째로 교체
+    private volatile long lastSwapNanos; // 마지막 reload 에서 rule set 교체에 걸린 시간
+    @Getter(AccessLevel.NONE)
+    private DenyRuleSet baseRuleSet = DenyRuleSet.EMPTY; // 실행 중 추가/삭제한 규칙을 반영하기 전의 rule set
+    @Getter(AccessLevel.NONE)
+    private Ipv4SubnetBuffer baseSubnets; // baseRuleSet 을 compile 한 정렬된 규칙 (규칙당 8 byte). base 규칙인지 대역만으로 판단할 수 없는 규칙을 처음 변경할 때 읽는다
+    @Getter(AccessLevel.NONE)
+    private Supplier<Ipv4SubnetBuffer> baseSubnetsLoader = this::parseDenySubnets; // baseSubnets 를 읽는 방법. 복제한 base 이면 복제된 규칙 파일
+    @Getter(AccessLevel.NONE)
+    private Ipv4RangeIndex allowRanges = Ipv4RangeIndex.EMPTY;
+    @Getter(AccessLevel.NONE)
+    private final Ipv4RuleSet runtimeAddedRules = new Ipv4RuleSet(); // 실행 중 추가한 규칙. reload 후에도 다시 적용
+    @Getter(AccessLevel.NONE)
+    private final Ipv4RuleSet runtimeRemovedRules = new Ipv4RuleSet(); // 실행 중 삭제한 규칙. reload 후에도 다시 적용
+    @Getter(AccessLevel.NONE)
+    private Ipv4RuleSet addedRules = new Ipv4RuleSet(); // base 에 반영하지 않은 추가 규칙 (base 에 없는 규칙만). overlay 가 복사하지 않고 조회에 사용
+    @Getter(AccessLevel.NONE)
+    private Ipv4RuleSet publishedAddedRules; // 마지막으로 만든 rule set 의 overlay 가 조회하는 addedRules. 같으면 변경하기 전에 복사
+    @Getter(AccessLevel.NONE)
+    private Ipv4RuleSet removedRules = new Ipv4RuleSet(); // base 에 반영하지 않은 삭제 규칙 (base 에 있는 규칙만)
+    @Getter(AccessLevel.NONE)
+    private Ipv4OverlayIndex overlay; // base 에 addedRules, removedRules 를 적용한 index. null 이면 rule set 을 교체할 때 다시 만듦
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<Map<String, DenyRuleSet>> namedRuleSets = new AtomicReference<>(Collections.emptyMap()); // reload 시 통째로 교체
+    @Getter(AccessLevel.NONE)
+    private Ipv4ExpiryWheel expiryWheel; // 만료 시간이 있는 추가 규칙. 처음 등록할 때 생성
+    @Getter(AccessLevel.NONE)
+    private RuleChangeListener ruleChangeListener; // 기본 차단 목록의 변경을 전달받는 listener (replication leader)
+    @Getter(AccessLevel.NONE)
+    private long baseGeneration; // base 를 교체할 때마다 증가. compaction 중에 reload 되었는지 확인
+    @Getter(AccessLevel.NONE)
+    private volatile boolean replicated; // leader 가 기록한 base 를 적용했는지 여부
     private final int MAX_NUM_DENY_IP = 30000000; // max number of deny IPs. (30 million)
-    private final AtomicLong numDenyIps = new AtomicLong(); // deny IP 카운터. /24 subnet 이 TreeMap 에 저장된 경우 차단하는 IP 개수는 256개로 판단.
+    private static final long NO_EXPIRY = Long.MAX_VALUE; // 만료되지 않는 규칙의 만료 시간
+    private static final int MIN_TASK_SIZE = 1 << 16; // compile 을 나누어 처리할 때 작업 하나가 처리할 최소 규칙 개수
+    private final int MIN_NUM_RANGES_FOR_BITMAP = 1000000; // AUTO 인 경우 차단 대역이 이 개수 이상이면 bitmap 사용 (sorted index 8MB 이상)
+    private final int MIN_NUM_RANGES_FOR_TWO_LEVEL = 65536; // AUTO 인 경우 차단 대역이 이 개수 이상이면 two-level index 사용 (sorted index 가 L2 cache 보다 큼)
+
+    /**
+     * 기본 차단 목록의 변경을 전달받는 listener. 규칙을 변경한 thread 에서 lock 을 잡은 채 변경 순서대로 호출되므로, 파일 기록처럼 오래 걸리는 작업은 다른 thread 에서 한다.
+     * 전달한 rule set, 규칙과 배열은 이후 변경하지 않는다.
+     */
+    public interface RuleChangeListener {
+
+        /**
+         * base 가 교체된 경우
+         *
+         * @param base         overlay 를 적용하기 전의 rule set
+         * @param subnets      base 를 compile 한 정렬된 규칙
+         * @param allowRules   base 와 추가 규칙에 적용한 허용 목록
+         * @param addedRules   base 에 반영하지 않은 추가 규칙 (Ipv4SubnetBuffer.key)
+         * @param removedRules base 에 반영하지 않은 삭제 규칙 (Ipv4SubnetBuffer.key)
+         * @param reloaded     차단 규칙 원본을 다시 읽은 경우 true, compaction 으로 같은 규칙을 다시 compile 한 경우 false
+         */
+        void baseChanged(DenyRuleSet base, Ipv4SubnetBuffer subnets, List<String> allowRules, long[] addedRules, long[] removedRules, boolean reloaded);
+
+        /**
+         * 규칙을 추가 또는 삭제 (만료 포함) 한 경우
+         *
+         * @param rules 변경한 규칙 (Ipv4SubnetBuffer.key)
+         * @param added 추가이면 true, 삭제이면 false
+         */
+        void rulesChanged(long[] rules, boolean added);
+    }
+
+    /**
+     * 이름으로 선택하는 차단 목록. base 목록들의 deny, deny-file 을 합친 대역을 같은 base 를 쓰는 목록끼리 공유하고,
+     * 목록의 deny, allow 는 공유 대역 위의 overlay 로 적용하므로 목록이 많아도 공통 차단 목록은 한 번만 compile 하고 보관한다.
+     */
+    @Getter
+    public static class RuleList {
+        private List<String> base = Collections.emptyList(); // 포함할 다른 목록 이름. base 목록의 base, allow 는 적용하지 않음
+        private List<String> deny = Collections.emptyList();
+        private List<String> allow = Collections.emptyList(); // base 목록을 포함한 이 목록의 차단 대역에서 제외
+        @Setter
+        private String denyFile;
+
+        public void setBase(List<String> base) {
+            this.base = Optional.ofNullable(base).orElse(Collections.emptyList());
+        }
+
+        public void setDeny(List<String> deny) {
+            this.deny = Optional.ofNullable(deny).orElse(Collections.emptyList());
+        }
+
+        public void setAllow(List<String> allow) {
+            this.allow = Optional.ofNullable(allow).orElse(Collections.emptyList());
+        }
+    }
+
+    public enum Engine {
+        AUTO,   // 차단 대역 개수와 사용 가능한 메모리에 따라 선택
+        SORTED, // 정렬된 배열에서 binary search (대역당 8 byte)
+        TWO_LEVEL, // 상위 16bit bucket table + bucket 별 B-tree (512KB + 대역당 약 6 byte)
+        BITMAP, // 2^32 bit off-heap bitmap (512MB 고정)
+        DIR_24_8 // 2^24 개 table + /24 별 256 개 block (64MB 이상). 차단 여부와 함께 해당 규칙을 알 수 있음
+    }
 
     public void setDeny(List<String> deny) {
-        numDenyIps.set(0);
-        this.deny = Optional.ofNullable(deny)
-                .filter(denies -> denies.size() > 0)
-                .map(this::parseSubnet)
-                .map(this::removeNestedSubnet)
-                .orElse(new TreeMap<>());
-        log.info("> completed to set deny={}", numDenyIps);
+        this.denyRules = Optional.ofNullable(deny).orElse(Collections.emptyList());
+    }
+
+    public void setAllow(List<String> allow) {
+        this.allowRules = Optional.ofNullable(allow).orElse(Collections.emptyList());
+    }
+
+    public void setDenyIpv6(List<String> denyIpv6) {
+        this.denyIpv6Rules = Optional.ofNullable(denyIpv6).orElse(Collections.emptyList());
+    }
+
+    public DenyRuleSet getRuleSet() {
+        return ruleSet.get();
+    }
+
+    public Ipv4RangeSet getRanges() {
+        return ruleSet.get().getRanges();
+    }
+
+    public Ipv4DenyIndex getDeny() {
+        return ruleSet.get().getDeny();
     }
 
     /**
-     * properties 에서 subnet 을 읽어와 Ipv4Subnet 으로 변환 및 정렬 (subnet 의 시작Ip 가 빠른 순서 및 CIDR 가 큰 순서)
+     * @return 이름별 차단 목록의 rule set
+     */
+    public Map<String, DenyRuleSet> getNamedRuleSets() {
+        return namedRuleSets.get();
+    }
+
+    /**
+     * 이름으로 선택한 차단 목록의 조회 index. 목록 개수와 관계없이 map 조회 한 번으로 찾는다.
      *
-     * @param denyIps properties 파일에 등록된 차단 IP 목록
-     * @return 변환 및 정렬된 subnet 정보
+     * @param list 목록 이름
+     * @throws NoSuchElementException 설정되지 않은 목록인 경우
+     */
+    public Ipv4DenyIndex getDeny(String list) {
+        DenyRuleSet ruleSet = namedRuleSets.get().get(list);
+        if (ruleSet == null) {
+            throw new NoSuchElementException("unknown deny list=" + list);
+        }
+        return ruleSet.getDeny();
+    }
+
+    /**
+     * deny IP 개수. /24 subnet 이 index 에 저장된 경우 차단하는 IP 개수는 256개로 판단.
+     */
+    public long getNumDenyIps() {
+        return ruleSet.get().getNumDenyIps();
+    }
+
+    /**
+     * base index 에 반영하지 않은 추가/삭제 규칙 개수
+     */
+    public synchronized int getNumPendingRules() {
+        return numPendingRules();
+    }
+
+    private int numPendingRules() {
+        return addedRules.size() + removedRules.size();
+    }
+
+    private boolean hasRuntimeRules() {
+        return !runtimeAddedRules.isEmpty() || !runtimeRemovedRules.isEmpty();
+    }
+
+    /**
+     * 만료 시간이 있는 추가 규칙 개수
+     */
+    public synchronized int getNumExpiringRules() {
+        return expiryWheel != null ? expiryWheel.size() : 0;
+    }
+
+    /**
+     * @return ip-filter.replication.role 이 FOLLOWER 이면 true. 기본 차단 목록은 leader 가 기록한 규칙으로만 바뀌므로 직접 추가/삭제하거나 compaction 하지 않는다
+     */
+    public boolean isFollower() {
+        return replication.getRole() == ReplicationConfiguration.Role.FOLLOWER;
+    }
+
+    /**
+     * @return follower 이고 leader 가 기록한 base 를 적용했거나 적용할 수 있으면 (manifest 가 있으면) true.
+     * 이때 reload 는 기본 차단 목록을 compile 하지 않고, 복제하지 않는 IPv6 차단 대역과 이름별 차단 목록만 다시 compile 한다
+     */
+    private boolean isReplica() {
+        return isFollower() && (replicated || (StringUtils.isNotBlank(replication.getDirectory())
+                && Files.isRegularFile(Paths.get(replication.getDirectory(), DenyRuleReplicator.MANIFEST_FILE))));
+    }
+
+    /**
+     * listener 를 등록하고 현재 base 와 반영하지 않은 규칙을 바로 전달. null 이면 등록을 해제한다.
+     */
+    public synchronized void setRuleChangeListener(RuleChangeListener ruleChangeListener) {
+        this.ruleChangeListener = ruleChangeListener;
+        notifyBaseChanged(true);
+    }
+
+    /**
+     * properties binding 이 끝난 후 차단 규칙을 compile 하고 조회 engine 을 선택.
+     * 시작 시점에는 차단 규칙을 읽지 못하거나 설정이 잘못되었으면 기동을 중단한다.
+     * follower 이고 leader 가 기록한 규칙이 있으면 기본 차단 목록은 compile 하지 않고 DenyRuleReplicator 가 시작할 때 적용한다.
+     *
+     * @throws IllegalArgumentException expiry-tick 이 0 이하인 경우 (만료 확인 작업을 예약할 수 없음)
+     */
+    @PostConstruct
+    public void init() {
+        if (expiryTick == null || expiryTick.isZero() || expiryTick.isNegative()) {
+            throw new IllegalArgumentException("ip-filter.expiry-tick must be positive=" + expiryTick);
+        }
+        reload();
+    }
+
+    /**
+     * 차단 규칙을 새로 compile 하여 조회 중인 rule set 과 교체.
+     * 새 rule set 은 완성된 후 reference 하나로 교체되므로, 조회 요청은 lock 없이 교체 전 또는 교체 후 rule set 중 하나만 본다.
+     * snapshot 파일이 설정되어 있고 차단 규칙이 바뀌지 않았으면 compile 하지 않고 snapshot 을 memory-map 하여 사용.
+     * follower 는 leader 가 기록한 기본 차단 목록을 유지하고 IPv6 차단 대역과 이름별 차단 목록만 다시 compile 한다.
+     *
+     * @return 교체된 rule set
+     * @throws UncheckedIOException deny-file 을 읽을 수 없는 경우. 이때 기존 rule set 은 그대로 유지된다.
+     */
+    public synchronized DenyRuleSet reload() {
+        if (isReplica()) {
+            return reloadUnreplicated();
+        }
+        long startTime = System.currentTimeMillis();
+        Path snapshotPath = StringUtils.isNotBlank(snapshotFile) ? Paths.get(snapshotFile) : null;
+        boolean keepSubnets = hasRuntimeRules(); // 규칙을 변경하지 않으면 compile 한 규칙을 보관하지 않고, 다시 읽을 때 원본이 같은지 hash 로 확인
+        byte[] sourceHash = snapshotPath != null || !keepSubnets ? computeSourceHash() : null;
+        Optional<Ipv4RangeSnapshot> snapshot = snapshotPath != null ? readSnapshot(snapshotPath, sourceHash) : Optional.empty();
+        Ipv4SubnetBuffer subnets = null;
+        Ipv4RangeSet ranges;
+        long numDenyIps;
+        allowRanges = compileAllow(allowRules);
+        baseSubnetsLoader = sourceHash != null ? () -> parseCompiledDenySubnets(sourceHash) : this::parseDenySubnets;
+        if (snapshot.isPresent()) {
+            ranges = snapshot.get().getRanges();
+            numDenyIps = snapshot.get().getNumDenyIps();
+            if (engine == Engine.DIR_24_8 || keepSubnets) { // 규칙이 필요한 경우에만 다시 읽음
+                subnets = parseDenySubnets();
+            }
+        } else {
+            subnets = parseDenySubnets();
+            ranges = compile(subnets);
+            numDenyIps = countDenyIps(ranges);
+            if (snapshotPath != null) {
+                writeSnapshot(snapshotPath, ranges, numDenyIps, sourceHash);
+            }
+        }
+        Ipv4DenyIndex deny = selectEngine(ranges, subnets);
+        Ipv6RangeIndex ipv6Deny = compileIpv6();
+        long buildMillis = System.currentTimeMillis() - startTime;
+
+        DenyRuleSet base = new DenyRuleSet(0, ranges, deny, ipv6Deny, numDenyIps, buildMillis, snapshot.isPresent(), System.currentTimeMillis());
+        Map<String, DenyRuleSet> nextNamedRuleSets = compileLists(base, ruleSet.get().getVersion() + 1);
+        DenyRuleSet next = replaceBase(base, keepSubnets ? subnets : null);
+
+        long swapStartTime = System.nanoTime();
+        ruleSet.set(next);
+        namedRuleSets.set(nextNamedRuleSets);
+        lastSwapNanos = System.nanoTime() - swapStartTime;
+        notifyBaseChanged(true);
+        log.info("> completed to set deny={}, engine={}, ipv6={}, version={}, fromSnapshot={}, elapsed={}ms, swap={}ns",
+                next.getNumDenyIps(), next.getDeny(), ipv6Deny, next.getVersion(), next.isFromSnapshot(), buildMillis, lastSwapNanos);
+        return next;
+    }
+
+    /**
+     * follower 의 reload. 기본 차단 목록의 base 와 overlay 는 그대로 두어 leader 의 delta 를 계속 같은 base 위에 적용하고,
+     * 복제하지 않는 IPv6 차단 대역과 이름별 차단 목록만 다시 compile 한다.
+     */
+    private DenyRuleSet reloadUnreplicated() {
+        long startTime = System.currentTimeMillis();
+        Ipv6RangeIndex ipv6Deny = compileIpv6();
+        DenyRuleSet base = baseRuleSet;
+        baseRuleSet = new DenyRuleSet(0, base.getRanges(), base.getDeny(), ipv6Deny, base.getNumDenyIps(),
+                base.getBuildMillis(), base.isFromSnapshot(), base.getLoadedAt());
+        Map<String, DenyRuleSet> nextNamedRuleSets = compileLists(baseRuleSet, ruleSet.get().getVersion() + 1);
+        DenyRuleSet next = nextRuleSet();
+
+        long swapStartTime = System.nanoTime();
+        ruleSet.set(next);
+        namedRuleSets.set(nextNamedRuleSets);
+        lastSwapNanos = System.nanoTime() - swapStartTime;
+        log.info("> completed to set ipv6={}, lists={}, keep replicated deny={}, version={}, elapsed={}ms, swap={}ns",
+                ipv6Deny, nextNamedRuleSets.keySet(), next.getNumDenyIps(), next.getVersion(), System.currentTimeMillis() - startTime, lastSwapNanos);
+        return next;
+    }
+
+    /**
+     * base 를 교체하고 실행 중 추가/삭제한 규칙을 새 base 에 다시 적용한 rule set 을 생성. 조회 중인 rule set 은 교체하지 않는다.
+     */
+    private DenyRuleSet replaceBase(DenyRuleSet base, Ipv4SubnetBuffer subnets) {
+        baseSubnets = subnets;
+        baseRuleSet = base;
+        baseGeneration++;
+        addedRules = new Ipv4RuleSet(); // 교체 전 overlay 가 조회하는 규칙은 바꾸지 않음
+        removedRules = new Ipv4RuleSet();
+        overlay = null;
+        runtimeAddedRules.forEach(rule -> applyRule(rule, true));
+        runtimeRemovedRules.forEach(rule -> applyRule(rule, false));
+        if (expiryWheel != null) { // 원본 규칙에 추가된 규칙은 만료되지 않음
+            for (long rule : runtimeAddedRules.toArray()) {
+                if (isBaseRule(rule) && expiryWheel.cancel(rule)) {
+                    runtimeAddedRules.remove(rule);
+                }
+            }
+        }
+        return nextRuleSet();
+    }
+
+    /**
+     * 다른 instance (replication leader) 가 compile 한 차단 대역을 base 로 사용. compile 하지 않고 전달받은 대역으로 조회 index 만 만들며,
+     * 규칙은 DIR_24_8 engine 이거나 base 규칙인지 대역만으로 판단할 수 없는 규칙이 바뀔 때 rulesFile 에서 읽는다. 이름별 차단 목록과 IPv6 차단 대역은 변경하지 않는다.
+     * 조회 index 생성과 규칙 파일 읽기는 lock 밖에서 처리하고 base 교체만 lock 안에서 한다.
+     *
+     * @param ranges     leader 의 base 차단 대역 (허용 대역 제외)
+     * @param numDenyIps 차단 IP 개수
+     * @param allowRules leader 의 허용 목록. 이후 추가되는 규칙에 적용
+     * @param rulesFile  base 규칙 파일 (한 줄에 CIDR 하나)
+     * @return 교체된 rule set
+     */
+    DenyRuleSet loadReplicaBase(Ipv4RangeSet ranges, long numDenyIps, List<String> allowRules, Path rulesFile) {
+        long startTime = System.currentTimeMillis();
+        Ipv4RangeIndex nextAllowRanges = compileAllow(allowRules);
+        Supplier<Ipv4SubnetBuffer> subnetsLoader = () -> {
+            Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+            loadDenyFile(rulesFile, subnets);
+            subnets.sort();
+            return subnets;
+        };
+        Ipv4SubnetBuffer subnets = engine == Engine.DIR_24_8 ? subnetsLoader.get() : null;
+        Ipv4DenyIndex deny = selectEngine(ranges, subnets);
+        synchronized (this) {
+            allowRanges = nextAllowRanges;
+            baseSubnetsLoader = subnetsLoader;
+            DenyRuleSet base = new DenyRuleSet(0, ranges, deny, baseRuleSet.getIpv6Deny(), numDenyIps,
+                    System.currentTimeMillis() - startTime, true, System.currentTimeMillis());
+            DenyRuleSet next = replaceBase(base, subnets);
+            ruleSet.set(next);
+            replicated = true;
+            log.info("> loaded replicated deny={}, engine={}, version={}, elapsed={}ms",
+                    next.getNumDenyIps(), next.getDeny(), next.getVersion(), base.getBuildMillis());
+            return next;
+        }
+    }
+
+    /**
+     * 다른 instance (replication leader) 에서 추가/삭제한 규칙을 순서대로 적용하고 rule set 을 한 번만 교체.
+     * leader 와 같은 base 위에 적용하므로, 없는 규칙을 삭제하거나 이미 있는 규칙을 추가해도 예외 없이 결과가 같아진다.
+     * base 규칙인지 대역만으로 판단할 수 없는 규칙이 있으면 base 규칙 파일을 lock 밖에서 한 번 읽은 뒤 적용한다.
+     *
+     * @param rules 변경한 규칙 (Ipv4SubnetBuffer.key)
+     * @param added 규칙별 추가 여부
+     * @param size  적용할 개수
+     * @return 교체된 rule set
+     */
+    DenyRuleSet applyReplicaRules(long[] rules, boolean[] added, int size) {
+        loadBaseSubnetsUnlocked(rules, size);
+        synchronized (this) {
+            currentOverlay();
+            for (int i = 0; i < size; i++) {
+                applyRule(rules[i], added[i]);
+            }
+            DenyRuleSet next = nextRuleSet();
+            ruleSet.set(next);
+            log.debug("> applied replicated deny rules={}, deny={}, version={}", size, next.getNumDenyIps(), next.getVersion());
+            return next;
+        }
+    }
+
+    /**
+     * 현재 base 와 base 에 반영하지 않은 규칙을 listener 에 다시 전달. listener 가 기록에 실패하여 처음부터 다시 기록하는 경우
+     *
+     * @throws IllegalStateException reload 후 원본이 바뀌어 base 규칙을 읽을 수 없는 경우
+     */
+    synchronized void notifyBaseChanged() {
+        notifyBaseChanged(true);
+    }
+
+    private void notifyBaseChanged(boolean reloaded) {
+        if (ruleChangeListener != null) {
+            loadBaseSubnets();
+            ruleChangeListener.baseChanged(baseRuleSet, baseSubnets, allowRules, addedRules.toArray(), removedRules.toArray(), reloaded);
+        }
+    }
+
+    /**
+     * 이름별 차단 목록을 compile.
+     * <ul>
+     *   <li>base 목록이 같은 목록들은 base 목록의 규칙을 합쳐 한 번만 compile 한 index 를 공유하고, 목록의 deny, allow 만 overlay 로 적용</li>
+     *   <li>base 가 없는 목록은 deny 에서 allow 를 제외하여 compile</li>
+     *   <li>compile 결과가 같은 대역 (기본 목록 포함) 은 같은 index 를 사용</li>
+     * </ul>
+     *
+     * @param defaultRuleSet 기본 차단 목록 (deny, deny-file) 의 rule set. 같은 대역이면 공유
+     * @param version        rule set version
+     * @throws IllegalArgumentException 설정되지 않은 목록을 base 로 지정한 경우
+     */
+    private Map<String, DenyRuleSet> compileLists(DenyRuleSet defaultRuleSet, long version) {
+        if (lists.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        long startTime = System.currentTimeMillis();
+        Map<String, Ipv4SubnetBuffer> listSubnets = new HashMap<>();
+        Map<Set<String>, DenyRuleSet> sharedBases = new HashMap<>();
+        Map<Ipv4RangeIndex, DenyRuleSet> compiled = new HashMap<>(); // 같은 대역은 같은 index 를 사용
+        if (defaultRuleSet.getRanges() instanceof Ipv4RangeIndex) {
+            compiled.put((Ipv4RangeIndex) defaultRuleSet.getRanges(), defaultRuleSet);
+        }
+        Map<String, DenyRuleSet> ruleSets = new TreeMap<>();
+        lists.forEach((name, list) -> {
+            Ipv4SubnetBuffer subnets = listSubnets.computeIfAbsent(name, key -> parseListSubnets(list));
+            Ipv4RangeIndex allow = compileAllow(list.getAllow());
+            DenyRuleSet ruleSet;
+            if (list.getBase().isEmpty()) {
+                ruleSet = intern(Ipv4RangeIndex.subtract(mergeSubnet(subnets), allow), subnets, compiled);
+            } else {
+                Set<String> baseNames = new TreeSet<>(list.getBase());
+                DenyRuleSet base = sharedBases.computeIfAbsent(baseNames, key -> compileSharedBase(key, listSubnets, compiled));
+                Ipv4RangeIndex added = Ipv4RangeIndex.subtract(mergeSubnet(subnets), allow);
+                if (added.size() == 0 && allow.size() == 0) {
+                    ruleSet = base;
+                } else {
+                    Ipv4OverlayIndex deny = Ipv4OverlayIndex.of(base.getDeny(), base.getRanges(), base.getNumDenyIps(), added, allow);
+                    ruleSet = new DenyRuleSet(0, base.getRanges(), deny, Ipv6RangeIndex.EMPTY, deny.numDenyIps(), 0, false, 0);
+                }
+            }
+            ruleSets.put(name, new DenyRuleSet(version, ruleSet.getRanges(), ruleSet.getDeny(), Ipv6RangeIndex.EMPTY,
+                    ruleSet.getNumDenyIps(), System.currentTimeMillis() - startTime, false, System.currentTimeMillis()));
+        });
+        log.info("> completed to set deny lists={}, shared bases={}, distinct ranges={}, elapsed={}ms",
+                ruleSets.keySet(), sharedBases.size(), compiled.size(), System.currentTimeMillis() - startTime);
+        return Collections.unmodifiableMap(ruleSets);
+    }
+
+    /**
+     * base 목록들의 deny, deny-file 을 합쳐서 compile
+     */
+    private DenyRuleSet compileSharedBase(Set<String> baseNames, Map<String, Ipv4SubnetBuffer> listSubnets, Map<Ipv4RangeIndex, DenyRuleSet> compiled) {
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        for (String baseName : baseNames) {
+            RuleList base = lists.get(baseName);
+            if (base == null) {
+                throw new IllegalArgumentException("unknown base deny list=" + baseName);
+            }
+            subnets.addAll(listSubnets.computeIfAbsent(baseName, key -> parseListSubnets(base)));
+        }
+        subnets.sort();
+        return intern(mergeSubnet(subnets), subnets, compiled);
+    }
+
+    /**
+     * 이미 같은 대역을 compile 했으면 그 index 를 사용하고, 없으면 조회 index 를 생성
+     */
+    private DenyRuleSet intern(Ipv4RangeIndex ranges, Ipv4SubnetBuffer subnets, Map<Ipv4RangeIndex, DenyRuleSet> compiled) {
+        return compiled.computeIfAbsent(ranges, key -> new DenyRuleSet(0, key, selectEngine(key, subnets), Ipv6RangeIndex.EMPTY, countDenyIps(key), 0, false, 0));
+    }
+
+    private Ipv4SubnetBuffer parseListSubnets(RuleList list) {
+        Ipv4SubnetBuffer subnets = parseSubnet(list.getDeny());
+        if (StringUtils.isNotBlank(list.getDenyFile())) {
+            loadDenyFile(Paths.get(list.getDenyFile()), subnets);
+        }
+        subnets.sort();
+        return subnets;
+    }
+
+    /**
+     * 차단 규칙 하나를 추가. base index 는 다시 만들지 않고 overlay 만 교체하므로 규칙 개수와 관계없이 바로 조회에 반영된다.
+     * 추가한 규칙은 reload 후에도 다시 적용되며, compaction 에서 base index 에 반영된다.
+     *
+     * @param cidr 추가할 규칙 (CIDR)
+     * @return 교체된 rule set
+     * @throws IllegalArgumentException CIDR 형식이 아닌 경우
+     * @throws IllegalStateException    추가하면 차단 IP 개수가 MAX_NUM_DENY_IP 를 넘거나 follower 인 경우
+     */
+    public DenyRuleSet addRule(String cidr) {
+        return addRule(cidr, null);
+    }
+
+    /**
+     * 만료 시간이 있는 차단 규칙을 추가. 만료되면 expireRules 에서 다른 만료된 규칙과 함께 삭제된다.
+     * 이미 만료 시간 없이 차단 중인 규칙이면 만료 시간을 적용하지 않고, 만료 시간이 있는 규칙이면 만료 시간을 바꾼다.
+     *
+     * @param cidr 추가할 규칙 (CIDR)
+     * @param ttl  차단 유지 시간. null 이거나 만료 시간이 long 범위를 넘으면 만료되지 않음
+     * @return 교체된 rule set
+     * @throws IllegalArgumentException CIDR 형식이 아니거나 ttl 이 0 이하인 경우
+     * @throws IllegalStateException    추가하면 차단 IP 개수가 MAX_NUM_DENY_IP 를 넘거나 follower 인 경우
      */
-    private TreeSet<Ipv4Subnet> parseSubnet(List<String> denyIps) {
-        TreeSet<Ipv4Subnet> subnets = new TreeSet<>();
-        for (String denyIp : denyIps) {
+    public DenyRuleSet addRule(String cidr, Duration ttl) {
+        return addRules(Collections.singletonList(cidr), ttl);
+    }
+
+    /**
+     * 여러 차단 규칙을 한 번에 추가하고 rule set 을 한 번만 교체. 하나라도 추가할 수 없으면 아무것도 추가하지 않는다.
+     *
+     * @param cidrs 추가할 규칙 (CIDR)
+     * @param ttl   차단 유지 시간. null 이거나 만료 시간이 long 범위를 넘으면 만료되지 않음
+     * @return 교체된 rule set
+     * @throws IllegalArgumentException CIDR 형식이 아니거나 ttl 이 0 이하인 경우
+     * @throws IllegalStateException    추가하면 차단 IP 개수가 MAX_NUM_DENY_IP 를 넘거나, follower 이거나, reload 후 원본이 바뀌어 base 규칙을 확인할 수 없는 경우
+     */
+    public DenyRuleSet addRules(Collection<String> cidrs, Duration ttl) {
+        checkNotFollower(cidrs);
+        long[] rules = cidrs.stream().mapToLong(IpFilterConfiguration::parseRule).toArray();
+        if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+            throw new IllegalArgumentException("ttl must be positive=" + ttl);
+        }
+        loadBaseSubnetsUnlocked(rules, rules.length);
+        return addRules(rules, cidrs, ttl);
+    }
+
+    private synchronized DenyRuleSet addRules(long[] rules, Collection<String> cidrs, Duration ttl) {
+        Ipv4OverlayIndex current = currentOverlay();
+        boolean[] permanent = new boolean[rules.length]; // 만료 시간 없이 이미 차단 중인 규칙
+        Ipv4RuleSet staged = new Ipv4RuleSet();   // base 에 없는 새 규칙. 차단 IP 개수를 확인한 뒤 addedRules 에 넣음
+        Ipv4RuleSet restored = new Ipv4RuleSet(); // 삭제했던 base 규칙
+        long numDenyIps = current.numDenyIps();
+        for (int i = 0; i < rules.length; i++) {
+            long rule = rules[i];
+            boolean expiring = expiryWheel != null && expiryWheel.contains(rule);
+            permanent[i] = !expiring && isDenied(rule);
+            if (isBaseRule(rule)) {
+                if (removedRules.contains(rule)) {
+                    restored.add(rule);
+                }
+            } else if (!addedRules.contains(rule) && !staged.contains(rule)) {
+                numDenyIps += current.countUncoveredIps(rule, staged);
+                staged.add(rule);
+            }
+        }
+        Ipv4RuleSet nextAddedRules = addedRules;
+        Ipv4RuleSet nextRemovedRules = removedRules;
+        Ipv4OverlayIndex next = null;
+        if (!restored.isEmpty()) { // 삭제했던 base 규칙을 되돌리면 removed 대역이 바뀌므로 복사한 규칙으로 다시 만듦
+            nextAddedRules = addedRules.copy();
+            staged.forEach(nextAddedRules::add);
+            nextRemovedRules = removedRules.copy();
+            restored.forEach(nextRemovedRules::remove);
+            next = buildOverlay(nextAddedRules, nextRemovedRules);
+            numDenyIps = next.numDenyIps();
+        }
+        if (numDenyIps > MAX_NUM_DENY_IP) {
+            throw new IllegalStateException("exceed max number of deny IPs=" + MAX_NUM_DENY_IP + ", rules=" + cidrs);
+        }
+        if (next == null) {
+            staged.forEach(writableAddedRules()::add);
+            overlay = overlay.withRules(addedRules, numPendingRules(), numDenyIps);
+        } else {
+            addedRules = nextAddedRules;
+            removedRules = nextRemovedRules;
+            overlay = next;
+        }
+        long nowMillis = System.currentTimeMillis();
+        long deadlineMillis = ttl != null ? deadlineOf(nowMillis, ttl) : NO_EXPIRY;
+        for (int i = 0; i < rules.length; i++) {
+            runtimeAddedRules.add(rules[i]);
+            runtimeRemovedRules.remove(rules[i]);
+            if (deadlineMillis == NO_EXPIRY) {
+                cancelExpiry(rules[i]);
+            } else if (!permanent[i]) {
+                if (expiryWheel == null) {
+                    expiryWheel = new Ipv4ExpiryWheel(expiryTick.toMillis(), nowMillis);
+                }
+                expiryWheel.schedule(rules[i], deadlineMillis);
+            }
+        }
+        DenyRuleSet nextRuleSet = nextRuleSet();
+        ruleSet.set(nextRuleSet);
+        if (ruleChangeListener != null) {
+            ruleChangeListener.rulesChanged(rules, true);
+        }
+        log.info("> added deny rules={}, ttl={}, deny={}, version={}", cidrs, ttl, nextRuleSet.getNumDenyIps(), nextRuleSet.getVersion());
+        return nextRuleSet;
+    }
+
+    /**
+     * 만료 시간이 지난 규칙을 한 번에 삭제하고 rule set 을 한 번만 교체
+     *
+     * @param nowMillis 현재 시간 (epoch millis)
+     * @return 삭제한 규칙 개수
+     */
+    public synchronized int expireRules(long nowMillis) {
+        if (expiryWheel == null) {
+            return 0;
+        }
+        long[] expired = ruleChangeListener != null ? new long[expiryWheel.size()] : null; // listener 에 전달할 만료된 규칙
+        int[] numCollected = new int[1];
+        currentOverlay();
+        int numExpired = expiryWheel.advance(nowMillis, rule -> {
+            if (expired != null) {
+                expired[numCollected[0]++] = rule;
+            }
+            runtimeAddedRules.remove(rule);
+            applyRule(rule, false);
+        });
+        if (numExpired > 0) {
+            DenyRuleSet next = nextRuleSet();
+            ruleSet.set(next);
+            if (expired != null) {
+                ruleChangeListener.rulesChanged(Arrays.copyOf(expired, numExpired), false);
+            }
+            log.info("> expired deny rules={}, deny={}, version={}", numExpired, next.getNumDenyIps(), next.getVersion());
+        }
+        return numExpired;
+    }
+
+    /**
+     * follower 에서 규칙을 바꾸면 leader 의 delta 를 다른 base 위에 적용하게 되므로 거부
+     */
+    private void checkNotFollower(Collection<String> cidrs) {
+        if (isFollower()) {
+            throw new IllegalStateException("deny rules are replicated from leader, change rules on leader=" + cidrs);
+        }
+    }
+
+    private void cancelExpiry(long rule) {
+        if (expiryWheel != null) {
+            expiryWheel.cancel(rule);
+        }
+    }
+
+    /**
+     * 차단 규칙 하나를 삭제. 삭제한 규칙을 포함하거나 그 안에 포함된 다른 규칙이 덮는 주소는 계속 차단한다.
+     *
+     * @param cidr 삭제할 규칙 (CIDR). 등록된 규칙과 같은 대역이어야 함
+     * @return 교체된 rule set
+     * @throws IllegalArgumentException CIDR 형식이 아닌 경우
+     * @throws NoSuchElementException   등록된 규칙이 아닌 경우
+     * @throws IllegalStateException    follower 이거나, reload 후 원본이 바뀌어 base 규칙을 확인할 수 없는 경우
+     */
+    public DenyRuleSet removeRule(String cidr) {
+        checkNotFollower(Collections.singletonList(cidr));
+        long rule = parseRule(cidr);
+        loadBaseSubnetsUnlocked(new long[]{rule}, 1);
+        synchronized (this) {
+            if (!isDenied(rule)) {
+                throw new NoSuchElementException("deny rule not found=" + cidr);
+            }
+            currentOverlay();
+            applyRule(rule, false);
+            runtimeAddedRules.remove(rule);
+            runtimeRemovedRules.add(rule);
+            cancelExpiry(rule);
+            DenyRuleSet next = nextRuleSet();
+            ruleSet.set(next);
+            if (ruleChangeListener != null) {
+                ruleChangeListener.rulesChanged(new long[]{rule}, false);
+            }
+            log.info("> removed deny rule={}, deny={}, version={}", cidr, next.getNumDenyIps(), next.getVersion());
+            return next;
+        }
+    }
+
+    /**
+     * 추가/삭제한 규칙을 base index 에 반영하여 overlay 를 비움.
+     * compile 하는 동안에는 lock 을 잡지 않으므로 규칙 변경과 조회는 기다리지 않으며, 그 사이 변경된 규칙은 새 base 의 overlay 로 남는다.
+     * compile 중에 reload 되면 결과를 버린다. follower 는 leader 가 새 generation 을 기록할 때 base 가 바뀌므로 compaction 하지 않는다.
+     *
+     * @return 교체된 rule set. 반영할 규칙이 없거나 follower 이면 현재 rule set
+     */
+    public DenyRuleSet compact() {
+        Ipv4SubnetBuffer subnets;
+        Supplier<Ipv4SubnetBuffer> subnetsLoader;
+        long[] compactingAdded;
+        long[] compactingRemoved;
+        long generation;
+        synchronized (this) {
+            if (numPendingRules() == 0 || isFollower()) {
+                return ruleSet.get();
+            }
+            subnets = baseSubnets;
+            subnetsLoader = baseSubnetsLoader;
+            compactingAdded = addedRules.toArray();
+            compactingRemoved = removedRules.toArray();
+            generation = baseGeneration;
+        }
+        long startTime = System.currentTimeMillis();
+        if (subnets == null) { // compile 과 같이 lock 밖에서 읽고, reload 되었으면 아래에서 결과를 버림
+            subnets = subnetsLoader.get();
+        }
+        Ipv4SubnetBuffer compactedSubnets = subnets;
+        Arrays.sort(compactingRemoved);
+        Ipv4SubnetBuffer nextSubnets = new Ipv4SubnetBuffer(subnets.size() + compactingAdded.length);
+        for (int i = 0; i < subnets.size(); i++) {
+            if (Arrays.binarySearch(compactingRemoved, subnets.getKey(i)) < 0) {
+                nextSubnets.add(subnets.getStartIpLong(i), subnets.getCidr(i));
+            }
+        }
+        for (long rule : compactingAdded) {
+            nextSubnets.add(Ipv4SubnetBuffer.startIpLongOf(rule), Ipv4SubnetBuffer.cidrOf(rule));
+        }
+        nextSubnets.sort();
+        Ipv4RangeIndex ranges = compile(nextSubnets);
+        Ipv4DenyIndex deny = selectEngine(ranges, nextSubnets);
+        long numDenyIps = countDenyIps(ranges);
+
+        synchronized (this) {
+            int numCompacted = compactingAdded.length + compactingRemoved.length;
+            if (generation != baseGeneration) {
+                log.info("> deny rules reloaded while compaction, discard compacted rules={}", numCompacted);
+                return ruleSet.get();
+            }
+            if (baseSubnets == null) {
+                baseSubnets = compactedSubnets;
+            }
+            // 현재 상태와 새 base 가 다른 규칙만 남김. compaction 중에 추가/삭제하거나 되돌린 규칙도 현재 상태를 따른다
+            Ipv4RuleSet nextAddedRules = new Ipv4RuleSet();
+            Ipv4RuleSet nextRemovedRules = new Ipv4RuleSet();
+            LongConsumer keepChanged = rule -> {
+                boolean denied = isDenied(rule);
+                if (denied != nextSubnets.contains(rule)) {
+                    (denied ? nextAddedRules : nextRemovedRules).add(rule);
+                }
+            };
+            Arrays.stream(compactingAdded).forEach(keepChanged);
+            Arrays.stream(compactingRemoved).forEach(keepChanged);
+            addedRules.forEach(keepChanged);
+            removedRules.forEach(keepChanged);
+            baseSubnets = nextSubnets;
+            baseRuleSet = new DenyRuleSet(0, ranges, deny, baseRuleSet.getIpv6Deny(), numDenyIps,
+                    System.currentTimeMillis() - startTime, false, System.currentTimeMillis());
+            baseGeneration++;
+            addedRules = nextAddedRules;
+            removedRules = nextRemovedRules;
+            overlay = null;
+            DenyRuleSet next = nextRuleSet();
+            ruleSet.set(next);
+            notifyBaseChanged(false);
+            log.info("> compacted deny rules={}, deny={}, engine={}, version={}, elapsed={}ms",
+                    numCompacted, next.getNumDenyIps(), next.getDeny(), next.getVersion(), baseRuleSet.getBuildMillis());
+            return next;
+        }
+    }
+
+    static long parseRule(String cidr) {
+        long parsed = cidr != null ? IpUtils.parseCidr(cidr, 0, cidr.length()) : IpUtils.INVALID_IP;
+        if (parsed == IpUtils.INVALID_IP) {
+            throw new IllegalArgumentException("invalid CIDR=" + cidr);
+        }
+        int bits = (int) (parsed & 0x3f);
+        return Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(parsed >>> 6, bits), bits);
+    }
+
+    /**
+     * @return nowMillis 에서 ttl 이 지난 시간. long 범위를 넘으면 NO_EXPIRY (음수로 넘어가 바로 만료되지 않도록 함)
+     */
+    private static long deadlineOf(long nowMillis, Duration ttl) {
+        try {
+            return Math.addExact(nowMillis, ttl.toMillis());
+        } catch (ArithmeticException e) {
+            return NO_EXPIRY;
+        }
+    }
+
+    /**
+     * base 규칙인지 대역만으로 판단할 수 없는 규칙이 있으면 base 규칙을 lock 밖에서 읽고, 그 사이 base 가 교체되지 않았으면 보관.
+     * 큰 deny-file 을 읽는 동안 규칙 만료, 복제된 delta 적용, reload 가 기다리지 않는다. base 가 교체되었으면 lock 안에서 필요할 때 다시 읽는다.
+     *
+     * @param rules 변경할 규칙 (Ipv4SubnetBuffer.key)
+     * @param size  확인할 개수
+     */
+    private void loadBaseSubnetsUnlocked(long[] rules, int size) {
+        Supplier<Ipv4SubnetBuffer> subnetsLoader = null;
+        long generation = 0;
+        synchronized (this) {
+            for (int i = 0; i < size && baseSubnets == null && subnetsLoader == null; i++) {
+                if (coveredByBase(rules[i])) {
+                    subnetsLoader = baseSubnetsLoader;
+                    generation = baseGeneration;
+                }
+            }
+        }
+        if (subnetsLoader == null) {
+            return;
+        }
+        Ipv4SubnetBuffer subnets = subnetsLoader.get();
+        synchronized (this) {
+            if (baseSubnets == null && generation == baseGeneration) {
+                baseSubnets = subnets;
+            }
+        }
+    }
+
+    private void loadBaseSubnets() {
+        if (baseSubnets == null) {
+            baseSubnets = baseSubnetsLoader.get();
+        }
+    }
+
+    /**
+     * 실행 중 변경한 규칙을 반영한 현재 상태에서 규칙이 차단 목록에 있는지 확인
+     */
+    private boolean isDenied(long rule) {
+        return addedRules.contains(rule) || (isBaseRule(rule) && !removedRules.contains(rule));
+    }
+
+    /**
+     * base 를 compile 한 규칙인지 확인. base 규칙의 대역은 모두 base 차단 대역이나 허용 대역에 있으므로 둘 다에 없는 주소가 있으면
+     * base 규칙을 읽지 않고 false 이며, 그 외에는 base 규칙을 읽어서 (처음 한 번) 확인한다.
+     * 새 대역을 차단하거나 그렇게 추가한 규칙을 삭제하는 변경은 base 규칙을 읽지 않는다.
+     */
+    private boolean isBaseRule(long rule) {
+        if (baseSubnets == null && !coveredByBase(rule)) {
+            return false;
+        }
+        loadBaseSubnets();
+        return baseSubnets.contains(rule);
+    }
+
+    /**
+     * 규칙의 대역이 모두 base 차단 대역 또는 허용 대역에 있는지 확인. 두 대역 목록에서 이어지는 대역을 binary search 로 따라간다
+     */
+    private boolean coveredByBase(long rule) {
+        long nextIpLong = Ipv4SubnetBuffer.startIpLongOf(rule);
+        long endIpLong = IpUtils.calcEndIpInSubnet(nextIpLong, Ipv4SubnetBuffer.cidrOf(rule));
+        while (nextIpLong <= endIpLong) {
+            long coveredTo = Math.max(coveredTo(baseRuleSet.getRanges(), nextIpLong), coveredTo(allowRanges, nextIpLong));
+            if (coveredTo < nextIpLong) {
+                return false;
+            }
+            nextIpLong = coveredTo + 1;
+        }
+        return true;
+    }
+
+    /**
+     * @return ranges 에서 ipLong 을 포함하는 대역의 끝 주소. 없으면 -1
+     */
+    private static long coveredTo(Ipv4RangeSet ranges, long ipLong) {
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ranges.getStartIpLong(mid) <= ipLong) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && ranges.getEndIpLong(high) >= ipLong ? ranges.getEndIpLong(high) : -1;
+    }
+
+    /**
+     * base 에 반영하지 않은 규칙에 변경을 적용. base 에 이미 반영된 변경은 보관하지 않으므로, base 에 있는 규칙을 추가하거나 base 에 없는 규칙을 삭제하면 이전 변경만 취소된다.
+     * base 에 없는 규칙은 overlay 의 차단 IP 개수만 갱신하고, base 규칙을 삭제하거나 되돌리면 overlay 를 다시 만들도록 비운다.
+     */
+    private void applyRule(long rule, boolean added) {
+        if (isBaseRule(rule)) {
+            if (added ? removedRules.remove(rule) : removedRules.add(rule)) {
+                overlay = null;
+            }
+        } else if (added && !addedRules.contains(rule)) {
+            Ipv4RuleSet rules = writableAddedRules();
+            long numNewDenyIps = overlay != null ? overlay.countUncoveredIps(rule, null) : 0;
+            rules.add(rule);
+            updateOverlayCounts(numNewDenyIps);
+        } else if (!added && addedRules.contains(rule)) {
+            writableAddedRules().remove(rule);
+            updateOverlayCounts(overlay != null ? -overlay.countUncoveredIps(rule, null) : 0);
+        }
+    }
+
+    /**
+     * 조회 중인 rule set 이 사용하는 addedRules 는 바꾸지 않도록, rule set 을 만든 뒤 처음 변경할 때 한 번 복사 (copy-on-write).
+     * 한 번의 변경 (addRules, 만료, 복제된 delta) 에서 여러 규칙을 바꾸어도 복사는 한 번이다.
+     */
+    private Ipv4RuleSet writableAddedRules() {
+        if (addedRules == publishedAddedRules) {
+            addedRules = addedRules.copy();
+            if (overlay != null) {
+                overlay = overlay.withRules(addedRules, overlay.numPendingRules(), overlay.numDenyIps());
+            }
+        }
+        return addedRules;
+    }
+
+    private void updateOverlayCounts(long numChangedDenyIps) {
+        if (overlay != null) {
+            overlay = overlay.withRules(addedRules, numPendingRules(), overlay.numDenyIps() + numChangedDenyIps);
+        }
+    }
+
+    private Ipv4OverlayIndex currentOverlay() {
+        if (overlay == null) {
+            overlay = buildOverlay(addedRules, removedRules);
+        }
+        return overlay;
+    }
+
+    private Ipv4OverlayIndex buildOverlay(Ipv4RuleSet addedRules, Ipv4RuleSet removedRules) {
+        DenyRuleSet base = baseRuleSet;
+        return Ipv4OverlayIndex.of(base.getDeny(), base.getRanges(), base.getNumDenyIps(), baseSubnets, addedRules, removedRules, allowRanges);
+    }
+
+    /**
+     * base rule set 에 반영하지 않은 규칙을 overlay 로 적용한 새 version 의 rule set
+     */
+    private DenyRuleSet nextRuleSet() {
+        long version = ruleSet.get().getVersion() + 1;
+        DenyRuleSet base = baseRuleSet;
+        Ipv4OverlayIndex deny = currentOverlay();
+        if (deny.numPendingRules() == 0) {
+            return new DenyRuleSet(version, base.getRanges(), base.getDeny(), base.getIpv6Deny(), base.getNumDenyIps(),
+                    base.getBuildMillis(), base.isFromSnapshot(), base.getLoadedAt());
+        }
+        publishedAddedRules = addedRules;
+        return new DenyRuleSet(version, base.getRanges(), deny, base.getIpv6Deny(), deny.numDenyIps(),
+                base.getBuildMillis(), base.isFromSnapshot(), System.currentTimeMillis());
+    }
+
+    /**
+     * parsing, 정렬, 병합을 각각 여러 core 에서 나누어 처리한 뒤 허용 대역을 제외.
+     * 결과는 서로 겹치지 않는 대역 목록 하나이므로, 허용 규칙이 많아도 조회는 한 번의 탐색으로 끝난다.
+     */
+    private Ipv4RangeIndex compile(Ipv4SubnetBuffer subnets) {
+        return Ipv4RangeIndex.subtract(mergeSubnet(subnets), allowRanges);
+    }
+
+    /**
+     * allow 목록을 겹치지 않는 허용 대역으로 병합
+     */
+    private Ipv4RangeIndex compileAllow(List<String> allowRules) {
+        if (allowRules.isEmpty()) {
+            return Ipv4RangeIndex.EMPTY;
+        }
+        Ipv4SubnetBuffer allowSubnets = parseSubnet(allowRules);
+        allowSubnets.sort();
+        return mergeSubnet(allowSubnets, 0, allowSubnets.size(), Long.MAX_VALUE);
+    }
+
+    /**
+     * deny 목록과 deny-file 의 subnet 을 읽어서 정렬
+     */
+    /**
+     * reload 할 때 compile 하고 보관하지 않은 규칙을 다시 읽음. 그 사이 deny, deny-file 이 바뀌었으면 조회 중인 index 와 다른 규칙이 되므로 거부한다.
+     *
+     * @param sourceHash reload 할 때 compile 한 원본의 hash
+     * @throws IllegalStateException 원본이 바뀌었거나 읽을 수 없는 경우. reload 하면 새 원본으로 compile 한 규칙을 사용한다
+     */
+    private Ipv4SubnetBuffer parseCompiledDenySubnets(byte[] sourceHash) {
+        Ipv4SubnetBuffer subnets;
+        try {
+            subnets = parseDenySubnets();
+            if (MessageDigest.isEqual(sourceHash, computeSourceHash())) {
+                return subnets;
+            }
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            throw new IllegalStateException("cannot read deny rules compiled at last reload, reload deny rules first", e);
+        }
+        throw new IllegalStateException("deny rules changed since last reload, reload deny rules first");
+    }
+
+    private Ipv4SubnetBuffer parseDenySubnets() {
+        Ipv4SubnetBuffer subnets = parseSubnet(denyRules);
+        if (StringUtils.isNotBlank(denyFile)) {
+            loadDenyFile(Paths.get(denyFile), subnets);
+        }
+        subnets.sort();
+        return subnets;
+    }
+
+    /**
+     * IPv6 차단 규칙 (deny-ipv6 목록, deny-ipv6-file) 을 compile. IPv4 와 같이 겹치거나 맞닿은 대역은 하나로 합친다.
+     */
+    private Ipv6RangeIndex compileIpv6() {
+        Ipv6SubnetBuffer subnets = new Ipv6SubnetBuffer(denyIpv6Rules.size());
+        long[] address = new long[2];
+        for (String denyIp : denyIpv6Rules) {
+            int prefixLength = denyIp != null ? IpUtils.parseIpv6Cidr(denyIp, 0, denyIp.length(), address) : -1;
+            if (prefixLength < 0) {
+                log.info("> exception when parse IP={}", denyIp);
+                continue;
+            }
+            subnets.add(address[0], address[1], prefixLength);
+        }
+        if (StringUtils.isNotBlank(denyIpv6File)) {
             try {
-                subnets.add(new Ipv4Subnet(denyIp));
-            } catch (Exception e) {
-                log.info("> exception when parse IP={}", denyIp, e);
+                DenyFileLoader.loadIpv6(Paths.get(denyIpv6File), subnets);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load deny file=" + denyIpv6File, e);
             }
         }
+        return Ipv6RangeIndex.of(subnets);
+    }
+
+    /**
+     * 차단 규칙 원본 (deny 목록, deny-file 내용, allow 목록) 과 compile 결과에 영향을 주는 설정의 SHA-256
+     */
+    private byte[] computeSourceHash() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM must support SHA-256
+        }
+        digest.update(ByteBuffer.allocate(4).putInt(0, MAX_NUM_DENY_IP));
+        for (String denyRule : denyRules) {
+            digest.update(String.valueOf(denyRule).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        digest.update((byte) 0); // separator between deny list and deny file
+        if (StringUtils.isNotBlank(denyFile)) {
+            try (FileChannel channel = FileChannel.open(Paths.get(denyFile), StandardOpenOption.READ)) {
+                long fileSize = channel.size();
+                for (long position = 0; position < fileSize; position += Integer.MAX_VALUE) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, fileSize - position)));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load deny file=" + denyFile, e);
+            }
+        }
+        digest.update((byte) 0); // separator between deny file and allow list
+        for (String allowRule : allowRules) {
+            digest.update(String.valueOf(allowRule).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return digest.digest();
+    }
+
+    private Optional<Ipv4RangeSnapshot> readSnapshot(Path snapshotPath, byte[] sourceHash) {
+        try {
+            return Ipv4RangeSnapshot.read(snapshotPath, sourceHash);
+        } catch (IOException e) {
+            log.warn("> cannot read snapshot={}, compile deny rules", snapshotPath, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeSnapshot(Path snapshotPath, Ipv4RangeSet ranges, long numDenyIps, byte[] sourceHash) {
+        try {
+            Ipv4RangeSnapshot.write(snapshotPath, ranges, numDenyIps, sourceHash);
+            log.info("> saved snapshot={}, ranges={}", snapshotPath, ranges.size());
+        } catch (IOException e) {
+            log.warn("> cannot write snapshot={}", snapshotPath, e);
+        }
+    }
+
+    /**
+     * engine 설정에 따라 조회 index 생성.
+     * AUTO 인 경우 차단 대역이 MIN_NUM_RANGES_FOR_BITMAP 이상이고 bitmap 을 할당할 direct memory 가 남아 있으면 bitmap 을,
+     * 그 외에 MIN_NUM_RANGES_FOR_TWO_LEVEL 이상이면 two-level index 를 사용.
+     * bitmap 할당에 실패하면 two-level index 를 사용. DIR_24_8 은 설정한 경우에만 사용한다.
+     *
+     * @param ranges  겹치지 않는 차단 대역
+     * @param subnets ranges 를 compile 한 정렬된 subnet. DIR_24_8 인 경우 null 이 아니어야 함
+     * @return 조회에 사용할 index
+     */
+    private Ipv4DenyIndex selectEngine(Ipv4RangeSet ranges, Ipv4SubnetBuffer subnets) {
+        if (engine == Engine.DIR_24_8) {
+            return Ipv4Dir24x8Index.of(subnets, ranges);
+        }
+        boolean useBitmap = engine == Engine.BITMAP
+                || (engine == Engine.AUTO && ranges.size() >= MIN_NUM_RANGES_FOR_BITMAP && hasMemoryForBitmap());
+        if (useBitmap) {
+            try {
+                return Ipv4BitmapIndex.of(ranges);
+            } catch (OutOfMemoryError e) {
+                log.warn("> cannot allocate bitmap({} bytes), fallback to two-level index. ranges={}", Ipv4BitmapIndex.BITMAP_BYTES, ranges.size(), e);
+                return Ipv4TwoLevelIndex.of(ranges);
+            }
+        }
+        boolean useTwoLevel = engine == Engine.TWO_LEVEL
+                || (engine == Engine.AUTO && ranges.size() >= MIN_NUM_RANGES_FOR_TWO_LEVEL);
+        return useTwoLevel ? Ipv4TwoLevelIndex.of(ranges) : ranges;
+    }
+
+    /**
+     * bitmap 은 direct buffer 로 할당하므로 heap 이 아닌 direct memory 한도에서 사용 중인 크기를 제외하여 확인
+     */
+    private boolean hasMemoryForBitmap() {
+        long usedBytes = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> "direct".equals(pool.getName()))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+        return maxDirectMemory() - usedBytes > 2 * Ipv4BitmapIndex.BITMAP_BYTES; // reload 중에는 이전 bitmap 과 함께 할당되므로 여유분 확보
+    }
+
+    /**
+     * @return -XX:MaxDirectMemorySize. 설정하지 않았거나 확인할 수 없으면 JVM 기본값과 같은 최대 heap 크기
+     */
+    static long maxDirectMemory() {
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            long maxBytes = hotSpot != null ? Long.parseLong(hotSpot.getVMOption("MaxDirectMemorySize").getValue()) : 0;
+            return maxBytes > 0 ? maxBytes : Runtime.getRuntime().maxMemory();
+        } catch (IllegalArgumentException e) { // HotSpot 이 아닌 JVM
+            return Runtime.getRuntime().maxMemory();
+        }
+    }
+
+    /**
+     * properties 에서 subnet 을 읽어와 buffer 에 저장. 목록을 나누어 병렬로 변환한 뒤 하나의 buffer 로 합친다.
+     *
+     * @param denyIps properties 파일에 등록된 차단 IP 목록
+     * @return 변환된 subnet buffer
+     */
+    private Ipv4SubnetBuffer parseSubnet(List<String> denyIps) {
+        int numTasks = numParallelTasks(denyIps.size());
+        Ipv4SubnetBuffer[] parts = IntStream.range(0, numTasks).parallel()
+                .mapToObj(i -> parseSubnet(denyIps, taskFrom(i, numTasks, denyIps.size()), taskFrom(i + 1, numTasks, denyIps.size())))
+                .toArray(Ipv4SubnetBuffer[]::new);
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer(denyIps.size());
+        for (Ipv4SubnetBuffer part : parts) {
+            subnets.addAll(part);
+        }
+        return subnets;
+    }
+
+    private static Ipv4SubnetBuffer parseSubnet(List<String> denyIps, int from, int to) {
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer(to - from);
+        for (String denyIp : denyIps.subList(from, to)) {
+            long parsed = denyIp != null ? IpUtils.parseCidr(denyIp, 0, denyIp.length()) : IpUtils.INVALID_IP;
+            if (parsed == IpUtils.INVALID_IP) {
+                log.info("> exception when parse IP={}", denyIp);
+                continue;
+            }
+            int cidr = (int) (parsed & 0x3f);
+            subnets.add(IpUtils.calcStartIpInSubnet(parsed >>> 6, cidr), cidr);
+        }
         return subnets;
     }
 
     /**
-     * 중첩된 subnet 을 제거
+     * size 개의 항목을 나누어 처리할 작업 개수. 작업 하나가 MIN_TASK_SIZE 이상을 처리하도록 하며, core 수보다 많게 나누어 작업 크기 편차를 흡수한다.
+     */
+    private static int numParallelTasks(int size) {
+        return (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, size / MIN_TASK_SIZE));
+    }
+
+    private static int taskFrom(int task, int numTasks, int size) {
+        return (int) ((long) size * task / numTasks);
+    }
+
+    private void loadDenyFile(Path denyFile, Ipv4SubnetBuffer subnets) {
+        try {
+            DenyFileLoader.load(denyFile, subnets);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load deny file=" + denyFile, e);
+        }
+    }
+
+    private static long countDenyIps(Ipv4RangeSet ranges) {
+        long numDenyIps = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            numDenyIps += ranges.getEndIpLong(i) - ranges.getStartIpLong(i) + 1;
+        }
+        return numDenyIps;
+    }
+
+    /**
+     * 정렬된 subnet 을 구간별로 나누어 병렬로 병합한 뒤, 구간 경계에서 겹치거나 맞닿은 대역을 합침.
+     * 합친 결과가 MAX_NUM_DENY_IP 를 넘으면 어느 규칙까지 적용할지 정렬 순서대로 판단해야 하므로 처음부터 순서대로 다시 병합한다.
      *
      * @param subnets 정렬된 subnet 정보
-     * @return 중첩이 제거된 subnet 정보
+     * @return 서로 겹치거나 맞닿지 않는 차단 대역 index
      */
-    private TreeMap<Long, Ipv4Subnet> removeNestedSubnet(TreeSet<Ipv4Subnet> subnets) {
-        TreeMap<Long, Ipv4Subnet> denyRules = new TreeMap<>();
-        for (Ipv4Subnet subnet : subnets) {
-            if (numDenyIps.get() > MAX_NUM_DENY_IP) { // MAX_NUM_DENY_IP 가 초과한 경우 더 이상 저장하지 않고 현재 TreeMap 을 return. 단, sorting 된 이후이므로 properties 파일에 기록된 순서가 아니니 주의
-                log.warn("> exceed max number of deny IPs : The deny applied only until the previous rule of this={}. not applied {}.", numDenyIps.get(), subnet);
+    private Ipv4RangeIndex mergeSubnet(Ipv4SubnetBuffer subnets) {
+        int numTasks = numParallelTasks(subnets.size());
+        if (numTasks == 1) {
+            return mergeSubnet(subnets, 0, subnets.size(), MAX_NUM_DENY_IP);
+        }
+        Ipv4RangeIndex[] parts = IntStream.range(0, numTasks).parallel()
+                .mapToObj(i -> mergeSubnet(subnets, taskFrom(i, numTasks, subnets.size()), taskFrom(i + 1, numTasks, subnets.size()), Long.MAX_VALUE))
+                .toArray(Ipv4RangeIndex[]::new);
+        Ipv4RangeIndex merged = Ipv4RangeIndex.union(parts);
+        if (countDenyIps(merged) > MAX_NUM_DENY_IP) {
+            return mergeSubnet(subnets, 0, subnets.size(), MAX_NUM_DENY_IP);
+        }
+        return merged;
+    }
+
+    /**
+     * 중첩되거나 맞닿은 subnet 을 하나의 대역으로 합침.
+     * subnet 은 시작 IP 순서(같으면 큰 대역 먼저)로 정렬되어 있으므로, 마지막 대역의 끝 IP + 1 보다 뒤에서 시작하는 subnet 만 새 대역이 되고
+     * 그 외에는 마지막 대역을 늘린다. 따라서 연속된 /32 목록도 대역 하나로 저장된다.
+     * MAX_NUM_DENY_IP 는 중복을 제외하고 실제로 차단하는 IP 개수로 판단한다.
+     *
+     * @param subnets       정렬된 subnet 정보
+     * @param from          병합할 첫 subnet 위치
+     * @param to            병합할 마지막 subnet 다음 위치
+     * @param maxNumDenyIps 차단 IP 개수가 이 값을 넘으면 이후 subnet 은 적용하지 않음
+     * @return 서로 겹치거나 맞닿지 않는 차단 대역 index
+     */
+    private static Ipv4RangeIndex mergeSubnet(Ipv4SubnetBuffer subnets, int from, int to, long maxNumDenyIps) {
+        int[] starts = new int[Math.min(to - from, 1024)]; // 합쳐진 후의 대역 개수는 알 수 없으므로 필요할 때 늘림
+        int[] ends = new int[starts.length];
+        int size = 0;
+        long numDenyIps = 0;
+        long lastEndIpLong = -2; // 0.0.0.0 이 마지막 대역과 맞닿은 것으로 판단하지 않도록 -1 보다 작게 시작
+        for (int i = from; i < to; i++) {
+            long startIpLong = subnets.getStartIpLong(i);
+            int cidr = subnets.getCidr(i);
+            long endIpLong = IpUtils.calcEndIpInSubnet(startIpLong, cidr);
+            if (endIpLong <= lastEndIpLong) { // 마지막 대역에 포함
+                continue;
+            }
+            if (numDenyIps > maxNumDenyIps) { // MAX_NUM_DENY_IP 가 초과한 경우 더 이상 저장하지 않고 현재 목록을 return. 단, sorting 된 이후이므로 properties 파일에 기록된 순서가 아니니 주의
+                log.warn("> exceed max number of deny IPs : The deny applied only until the previous rule of this={}. not applied {}/{}.", numDenyIps, IpUtils.longToIp(startIpLong), cidr);
                 break;
             }
-            Map.Entry<Long, Ipv4Subnet> floorEntry = denyRules.floorEntry(subnet.getIpLong());
-            if (floorEntry == null || !floorEntry.getValue().isNestedSubnet(subnet)) {
-                numDenyIps.addAndGet(IpUtils.NUM_SUBNET[subnet.getCidr()]);
-                denyRules.put(subnet.getStartIpLong(), subnet);
+            if (startIpLong > lastEndIpLong + 1) {
+                numDenyIps += endIpLong - startIpLong + 1;
+                if (size == starts.length) {
+                    int capacity = (int) Math.min(to - from, starts.length * 2L);
+                    starts = Arrays.copyOf(starts, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                }
+                starts[size] = (int) startIpLong;
+                size++;
+            } else { // 마지막 대역과 겹치거나 맞닿음
+                numDenyIps += endIpLong - lastEndIpLong;
             }
+            ends[size - 1] = (int) endIpLong;
+            lastEndIpLong = endIpLong;
         }
-        return denyRules;
+        return Ipv4RangeIndex.of(starts, ends, size);
     }
 }
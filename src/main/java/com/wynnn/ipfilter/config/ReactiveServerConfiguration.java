@@ -0,0 +1,20 @@
+package com.wynnn.ipfilter.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * reactive profile 에서 사용하는 server 설정.
+ * servlet 용 Tomcat 도 classpath 에 있으므로, 직접 지정하지 않으면 reactive 모드에서도 Tomcat 이 선택된다.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,30 @@
+package com.wynnn.ipfilter.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+/**
+ * 여러 instance 가 공유 directory 로 기본 차단 목록을 복제하는 설정 (ip-filter.replication).
+ * leader 는 compile 한 base 와 이후 추가/삭제한 규칙 (delta log) 을 directory 에 기록하고, follower 는 이를 읽어 compile 없이 적용한다.
+ * follower 의 기본 차단 목록은 leader 가 기록한 규칙으로만 바뀌어야 하므로, IpFilterConfiguration 이 role 에 따라 직접 compile 하지 않도록
+ * ip-filter 설정의 일부 (IpFilterConfiguration.replication) 로 binding 한다.
+ */
+@Getter
+@Setter
+public class ReplicationConfiguration {
+
+    public enum Role {
+        NONE,     // 복제하지 않음
+        LEADER,   // 자신의 차단 규칙을 directory 에 기록
+        FOLLOWER  // directory 의 차단 규칙을 읽어서 적용. 자신의 deny, deny-file 대신 사용
+    }
+
+    private Role role = Role.NONE;
+    private String directory; // leader 와 follower 가 공유하는 directory
+    private Duration pollInterval = Duration.ofSeconds(1); // follower 가 directory 를 확인하는 간격
+    private int maxLogEntries = 100000; // leader 의 delta log 가 이 개수 이상이면 compaction 후 새 base 를 기록
+    private Duration retryInterval = Duration.ofSeconds(1); // leader 가 기록에 실패하면 이 시간 후 새 generation 으로 다시 기록
+    private Duration followerTimeout = Duration.ofMinutes(1); // follower 의 ack 가 이 시간 동안 갱신되지 않으면 leader 가 그 generation 을 보관하지 않음
+}
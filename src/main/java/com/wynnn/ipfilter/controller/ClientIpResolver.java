@@ -0,0 +1,92 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.config.ClientIpConfiguration;
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 요청 header 에서 client IP 를 찾음. servlet 과 reactive controller 가 같은 규칙으로 찾도록 공유한다.
+ * <ul>
+ *   <li>신뢰하는 proxy 대역이 설정되어 있고 접속 주소가 그 대역이 아니면, header 는 client 가 임의로 넣을 수 있으므로 접속 주소를 사용</li>
+ *   <li>설정된 header 순서대로, 값 (ex. "client, proxy1, proxy2") 을 오른쪽부터 확인하여 신뢰하는 proxy 가 아닌 첫 번째 주소를 사용</li>
+ *   <li>모든 주소가 신뢰하는 proxy 이면 가장 왼쪽 주소, header 가 없으면 접속 주소를 사용</li>
+ * </ul>
+ * IPv4 형식이 아닌 주소는 신뢰하지 않으므로 그대로 반환되어 "Invalid IP" 로 응답된다. 빈 값과 "unknown" 은 건너뛴다.
+ */
+@Component
+@RequiredArgsConstructor
+public class ClientIpResolver {
+
+    private static final String UNKNOWN = "unknown";
+
+    private final ClientIpConfiguration clientIpConfiguration;
+
+    /**
+     * @param header     header 이름으로 값을 찾는 함수. 없으면 null
+     * @param remoteAddr 접속 주소
+     * @return client IP
+     */
+    public String resolve(UnaryOperator<String> header, Supplier<String> remoteAddr) {
+        Ipv4RangeIndex trustedProxies = clientIpConfiguration.getTrustedProxyRanges();
+        if (trustedProxies.size() > 0 && !isTrusted(trustedProxies, remoteAddr.get())) {
+            return remoteAddr.get();
+        }
+        for (String headerName : clientIpConfiguration.getHeaders()) {
+            String value = header.apply(headerName);
+            String clientIp = value != null ? findUntrustedHop(value, trustedProxies) : null;
+            if (clientIp != null) {
+                return clientIp;
+            }
+        }
+        return remoteAddr.get();
+    }
+
+    private static boolean isTrusted(Ipv4RangeIndex trustedProxies, String ipAddress) {
+        long ipLong = IpUtils.parseIpv4(ipAddress);
+        return ipLong != IpUtils.INVALID_IP && trustedProxies.contains((int) ipLong);
+    }
+
+    /**
+     * ',' 로 구분된 주소를 오른쪽부터 확인. 문자열을 나누지 않고 위치만 옮기며, 반환할 주소만 substring 한다.
+     *
+     * @return 신뢰하는 proxy 가 아닌 첫 번째 주소. 모두 신뢰하는 proxy 이면 가장 왼쪽 주소, 주소가 없으면 null
+     */
+    static String findUntrustedHop(String value, Ipv4RangeIndex trustedProxies) {
+        int leftmostFrom = -1;
+        int leftmostTo = -1;
+        for (int to = value.length(); to >= 0; ) {
+            int comma = value.lastIndexOf(',', to - 1);
+            int from = comma + 1;
+            int end = to;
+            while (from < end && Character.isWhitespace(value.charAt(from))) {
+                from++;
+            }
+            while (end > from && Character.isWhitespace(value.charAt(end - 1))) {
+                end--;
+            }
+            if (from < end && !isUnknown(value, from, end)) {
+                long ipLong = IpUtils.parseIpv4(value, from, end);
+                if (ipLong == IpUtils.INVALID_IP || !trustedProxies.contains((int) ipLong)) {
+                    return substring(value, from, end);
+                }
+                leftmostFrom = from;
+                leftmostTo = end;
+            }
+            to = comma;
+        }
+        return leftmostFrom >= 0 ? substring(value, leftmostFrom, leftmostTo) : null;
+    }
+
+    private static boolean isUnknown(String value, int from, int to) {
+        return to - from == UNKNOWN.length() && value.regionMatches(true, from, UNKNOWN, 0, UNKNOWN.length());
+    }
+
+    private static String substring(String value, int from, int to) {
+        return from == 0 && to == value.length() ? value : value.substring(from, to);
+    }
+}
@@ -0,0 +1,145 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.config.AdminConfiguration;
+import com.wynnn.ipfilter.config.DenyRuleReloader;
+import com.wynnn.ipfilter.config.DenyRuleReplicator;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.model.DenyRuleStatus;
+import com.wynnn.ipfilter.model.ReplicationStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+
+@RequestMapping("/admin/deny-rules")
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+public class DenyRuleAdminController {
+
+    private final IpFilterConfiguration ipFilterConfiguration;
+    private final DenyRuleReloader denyRuleReloader;
+    private final DenyRuleReplicator denyRuleReplicator;
+    private final AdminConfiguration adminConfiguration;
+
+    @GetMapping
+    public DenyRuleStatus getStatus() {
+        return currentStatus();
+    }
+
+    /**
+     * 이름별 차단 목록의 상태. 목록이 공유하는 index 의 메모리는 목록마다 포함된다.
+     */
+    @GetMapping("/lists")
+    public Map<String, DenyRuleStatus> getListStatus() {
+        Map<String, DenyRuleStatus> statuses = new LinkedHashMap<>();
+        ipFilterConfiguration.getNamedRuleSets().forEach((name, ruleSet) -> statuses.put(name, DenyRuleStatus.of(ruleSet, ipFilterConfiguration.getLastSwapNanos())));
+        return statuses;
+    }
+
+    /**
+     * 복제 상태. follower 는 마지막으로 적용한 delta 의 지연 시간 (lagMillis) 을 포함한다.
+     */
+    @GetMapping("/replication")
+    public ReplicationStatus getReplicationStatus() {
+        return denyRuleReplicator.getStatus();
+    }
+
+    /**
+     * 차단 규칙 reload 요청. 기본적으로 reload 완료를 기다리지 않고 202 와 현재 rule set 을 반환하므로, GET 으로 version 변경을 확인한다.
+     * replication follower 는 leader 가 기록한 기본 차단 목록을 유지하고 IPv6 차단 대역과 이름별 차단 목록만 다시 compile 한다.
+     *
+     * @param wait  true 인 경우 reload 가 끝난 후 교체된 rule set 을 반환
+     * @param token 관리 API token. ip-filter.admin.token 과 다르면 403
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<DenyRuleStatus> reload(@RequestParam(defaultValue = "false") boolean wait,
+                                                 @RequestHeader(value = AdminConfiguration.TOKEN_HEADER, required = false) String token) {
+        if (!adminConfiguration.isAuthorized(token)) {
+            return forbidden();
+        }
+        if (!wait) {
+            denyRuleReloader.requestReload();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(currentStatus());
+        }
+        try {
+            denyRuleReloader.requestReload().join();
+            return ResponseEntity.ok(currentStatus());
+        } catch (CompletionException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(currentStatus());
+        }
+    }
+
+    /**
+     * 차단 규칙 하나를 추가. reload 없이 바로 조회에 반영된다.
+     *
+     * @param cidr       추가할 규칙. 형식이 잘못되었으면 400, 차단 IP 개수가 최대 개수를 넘거나 replication follower 이면 409
+     * @param ttlSeconds 차단 유지 시간 (초). 없으면 만료되지 않음
+     * @param token      관리 API token. ip-filter.admin.token 과 다르면 403
+     */
+    @PostMapping("/rules")
+    public ResponseEntity<DenyRuleStatus> addRule(@RequestParam String cidr, @RequestParam(required = false) Long ttlSeconds,
+                                                  @RequestHeader(value = AdminConfiguration.TOKEN_HEADER, required = false) String token) {
+        if (!adminConfiguration.isAuthorized(token)) {
+            return forbidden();
+        }
+        try {
+            ipFilterConfiguration.addRule(cidr, ttlSeconds != null ? Duration.ofSeconds(ttlSeconds) : null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(currentStatus());
+        } catch (IllegalStateException e) {
+            log.warn("> cannot add deny rule={}", cidr, e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(currentStatus());
+        }
+        denyRuleReloader.requestCompactionIfNeeded();
+        return ResponseEntity.ok(currentStatus());
+    }
+
+    /**
+     * 차단 규칙 하나를 삭제. reload 없이 바로 조회에 반영된다.
+     *
+     * @param cidr  삭제할 규칙. 형식이 잘못되었으면 400, 등록된 규칙이 아니면 404, replication follower 이면 409
+     * @param token 관리 API token. ip-filter.admin.token 과 다르면 403
+     */
+    @DeleteMapping("/rules")
+    public ResponseEntity<DenyRuleStatus> removeRule(@RequestParam String cidr,
+                                                     @RequestHeader(value = AdminConfiguration.TOKEN_HEADER, required = false) String token) {
+        if (!adminConfiguration.isAuthorized(token)) {
+            return forbidden();
+        }
+        try {
+            ipFilterConfiguration.removeRule(cidr);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(currentStatus());
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(currentStatus());
+        } catch (IllegalStateException e) {
+            log.warn("> cannot remove deny rule={}", cidr, e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(currentStatus());
+        }
+        denyRuleReloader.requestCompactionIfNeeded();
+        return ResponseEntity.ok(currentStatus());
+    }
+
+    private static ResponseEntity<DenyRuleStatus> forbidden() {
+        log.warn("> rejected admin request without valid {}", AdminConfiguration.TOKEN_HEADER);
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+
+    private DenyRuleStatus currentStatus() {
+        return DenyRuleStatus.of(ipFilterConfiguration.getRuleSet(), ipFilterConfiguration.getLastSwapNanos());
+    }
+}
@@ -0,0 +1,172 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.index.Ipv4RateCounter;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.model.ResponseBytes;
+import com.wynnn.ipfilter.model.ResponseData;
+import com.wynnn.ipfilter.service.IpAuthenticationService;
+import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * /ipv4, /ipv6 API 의 응답 생성. servlet (Tomcat) 과 reactive (Netty) controller 가 같은 응답을 하도록 공유한다.
+ * 조회는 메모리에서 끝나고 blocking 이 없으므로 event loop thread 에서 직접 호출해도 된다.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IpAuthenticationHandler {
+
+    static final int MAX_BATCH_SIZE = 10000;
+
+    private final IpAuthenticationService ipAuthService;
+    private final IpFilterMetrics ipFilterMetrics;
+    private final AutoBanConfiguration autoBanConfiguration;
+
+    /**
+     * client IP 의 허용 여부를 확인. 응답 body 는 ResponseData 와 같은 JSON 이며, Jackson 을 거치지 않고 ResponseBytes 로 생성한다.
+     * 차단한 경우 engine 이 규칙을 기록하면 (DIR_24_8) 해당 규칙을 matchedRule 로 함께 응답한다.
+     * auto-ban 을 사용하면 허용한 요청을 목록과 관계없이 client IP 별로 세어 threshold 를 넘은 IP 를 모든 목록에서 차단한다.
+     */
+    public ResponseEntity<byte[]> authenticate(String clientIp) {
+        return authenticate(clientIp, null);
+    }
+
+    /**
+     * 이름으로 선택한 차단 목록에서 client IP 의 허용 여부를 확인. 설정되지 않은 목록이면 404 와 unknownList 에 목록 이름을 응답
+     *
+     * @param list 차단 목록 이름. null 이면 기본 목록
+     */
+    public ResponseEntity<byte[]> authenticate(String clientIp, String list) {
+        log.debug("> getClientIp={}, list={}", clientIp, list);
+        long clientIpLong = clientIp != null ? IpUtils.parseIpv4(clientIp) : IpUtils.INVALID_IP;
+        if (clientIpLong == IpUtils.INVALID_IP) {
+            ipFilterMetrics.countBadRequest(1);
+            return json(HttpStatus.BAD_REQUEST, ResponseBytes.invalidIp());
+        }
+        boolean allowed;
+        try {
+            allowed = list == null ? ipAuthService.hasAuth((int) clientIpLong) : ipAuthService.hasAuth(list, (int) clientIpLong);
+        } catch (NoSuchElementException e) {
+            ipFilterMetrics.countBadRequest(1);
+            return json(HttpStatus.NOT_FOUND, ResponseBytes.unknownList(clientIp, list));
+        }
+        if (allowed) {
+            ipFilterMetrics.countAllow(1);
+            countRequest((int) clientIpLong);
+            return json(HttpStatus.OK, ResponseBytes.authorized(clientIp));
+        }
+        ipFilterMetrics.countDeny(1);
+        String matchedRule = (list == null ? ipAuthService.findMatchedRule((int) clientIpLong) : ipAuthService.findMatchedRule(list, (int) clientIpLong))
+                .orElse(null);
+        if (matchedRule != null) {
+            log.debug("> denied clientIp={} by rule={}", clientIp, matchedRule);
+            return json(HttpStatus.FORBIDDEN, ResponseBytes.unauthorized(clientIp, matchedRule));
+        }
+        return json(HttpStatus.FORBIDDEN, ResponseBytes.unauthorized(clientIp));
+    }
+
+    /**
+     * IPv6 client 의 허용 여부를 확인. 응답 형식은 authenticate(String) 와 같다.
+     */
+    public ResponseEntity<byte[]> authenticateIpv6(String clientIp) {
+        log.debug("> getClientIp={}", clientIp);
+        long[] address = new long[2];
+        if (clientIp == null || !IpUtils.parseIpv6(clientIp, 0, clientIp.length(), address)) {
+            ipFilterMetrics.countBadRequest(1);
+            return json(HttpStatus.BAD_REQUEST, ResponseBytes.invalidIp());
+        }
+        if (ipAuthService.hasAuth(address[0], address[1])) {
+            ipFilterMetrics.countAllow(1);
+            return json(HttpStatus.OK, ResponseBytes.authorized(clientIp));
+        }
+        ipFilterMetrics.countDeny(1);
+        return json(HttpStatus.FORBIDDEN, ResponseBytes.unauthorized(clientIp));
+    }
+
+    /**
+     * client IP 의 요청 수를 세고, threshold 에 도달하면 차단. 차단은 rule set 과 별도의 hash set 에 상수 시간으로 추가하므로
+     * 응답을 지연시키지 않고, rule set version 이 바뀌지 않아 decision cache 도 유지된다.
+     */
+    private void countRequest(int clientIp) {
+        Ipv4RateCounter counter = autoBanConfiguration.getCounter();
+        long nowMillis = System.currentTimeMillis();
+        if (!counter.isEnabled() || !counter.increment(clientIp, nowMillis) || !autoBanConfiguration.ban(clientIp, nowMillis)) {
+            return;
+        }
+        log.info("> auto ban clientIp={}, rule={}, ttl={}", IpUtils.longToIp(Integer.toUnsignedLong(clientIp)),
+                autoBanConfiguration.toRule(clientIp), autoBanConfiguration.getTtl());
+        ipFilterMetrics.countAutoBan();
+    }
+
+    private static ResponseEntity<byte[]> json(HttpStatus status, byte[] body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * 여러 IP 의 허용 여부를 한 번에 확인. 결과는 요청 순서와 같고, IP 형식이 아닌 항목은 Deny / "Invalid IP" 로 응답
+     *
+     * @param clientIps 확인할 IP 목록 (최대 MAX_BATCH_SIZE 개)
+     */
+    public ResponseEntity<List<ResponseData>> authenticate(List<String> clientIps) {
+        return authenticate(clientIps, null);
+    }
+
+    /**
+     * 이름으로 선택한 차단 목록에서 여러 IP 의 허용 여부를 확인. 설정되지 않은 목록이면 404 와 함께 IP 마다 unknownList 에 목록 이름을 응답
+     *
+     * @param clientIps 확인할 IP 목록 (최대 MAX_BATCH_SIZE 개)
+     * @param list      차단 목록 이름. null 이면 기본 목록
+     */
+    public ResponseEntity<List<ResponseData>> authenticate(List<String> clientIps, String list) {
+        if (clientIps.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        int[] ips = new int[clientIps.size()];
+        boolean[] valid = new boolean[clientIps.size()];
+        for (int i = 0; i < ips.length; i++) {
+            long ipLong = clientIps.get(i) != null ? IpUtils.parseIpv4(clientIps.get(i)) : IpUtils.INVALID_IP;
+            valid[i] = ipLong != IpUtils.INVALID_IP;
+            ips[i] = (int) ipLong;
+        }
+        boolean[] results;
+        try {
+            results = list == null ? ipAuthService.hasAuth(ips) : ipAuthService.hasAuth(list, ips);
+        } catch (NoSuchElementException e) {
+            ipFilterMetrics.countBadRequest(ips.length);
+            List<ResponseData> responses = new ArrayList<>(ips.length);
+            for (int i = 0; i < ips.length; i++) {
+                responses.add(ResponseData.unknownList(valid[i] ? clientIps.get(i) : "Invalid IP", list));
+            }
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(responses);
+        }
+        List<ResponseData> responses = new ArrayList<>(ips.length);
+        int numAllow = 0;
+        int numInvalid = 0;
+        for (int i = 0; i < ips.length; i++) {
+            if (!valid[i]) {
+                numInvalid++;
+                responses.add(ResponseData.unauthorized("Invalid IP"));
+            } else if (results[i]) {
+                numAllow++;
+                responses.add(ResponseData.authorized(clientIps.get(i)));
+            } else {
+                responses.add(ResponseData.unauthorized(clientIps.get(i)));
+            }
+        }
+        ipFilterMetrics.countAllow(numAllow);
+        ipFilterMetrics.countDeny(ips.length - numAllow - numInvalid);
+        ipFilterMetrics.countBadRequest(numInvalid);
+        return ResponseEntity.ok(responses);
+    }
+}
@@ -0,0 +1,53 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.model.ResponseData;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * reactive profile (WebFlux, Netty) 에서 사용하는 /ipv4 API. IpAuthenticationController 와 같은 요청/응답을 event loop 에서 처리한다.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveIpAuthenticationController {
+
+    private final IpAuthenticationHandler ipAuthHandler;
+    private final ClientIpResolver clientIpResolver;
+
+    @GetMapping("/ipv4")
+    public ResponseEntity<byte[]> authenticateClientIp(ServerHttpRequest request, @RequestParam(required = false) String list) {
+        return ipAuthHandler.authenticate(clientIpResolver.resolve(request.getHeaders()::getFirst, () -> getRemoteAddr(request)), list);
+    }
+
+    @GetMapping("/ipv6")
+    public ResponseEntity<byte[]> authenticateClientIpv6(ServerHttpRequest request) {
+        return ipAuthHandler.authenticateIpv6(clientIpResolver.resolve(request.getHeaders()::getFirst, () -> getRemoteAddr(request)));
+    }
+
+    @PostMapping("/ipv4/batch")
+    public ResponseEntity<List<ResponseData>> authenticateIps(@RequestBody List<String> clientIps, @RequestParam(required = false) String list) {
+        return ipAuthHandler.authenticate(clientIps, list);
+    }
+
+    private static String getRemoteAddr(ServerHttpRequest request) {
+        return Optional.ofNullable(request.getRemoteAddress())
+                .map(InetSocketAddress::getAddress)
+                .map(InetAddress::getHostAddress)
+                .orElse(null);
+    }
+}
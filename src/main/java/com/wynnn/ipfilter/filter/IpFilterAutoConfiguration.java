@@ -0,0 +1,102 @@
+package com.wynnn.ipfilter.filter;
+
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.config.ClientIpConfiguration;
+import com.wynnn.ipfilter.config.DecisionCacheConfiguration;
+import com.wynnn.ipfilter.config.DenyRuleReloader;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.controller.ClientIpResolver;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.service.IpAuthenticationService;
+import com.wynnn.ipfilter.service.IpAuthenticationServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 다른 서비스에서 ip-filter jar 를 dependency 로 추가하고 ip-filter.servlet-filter.enabled=true 로 설정하면
+ * 차단 규칙을 compile 하여 IpFilterServletFilter 를 등록한다.
+ * 차단 규칙 설정 (ip-filter.deny, deny-file, allow, deny-ipv6, deny-ipv6-file, snapshot-file, watch-deny-file, client-ip, decision-cache) 과 reload 는 ip-filter 서버와 같다.
+ * 이미 같은 type 의 bean 이 있으면 (ex. ip-filter 서버 자신) 그 bean 을 사용한다.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "ip-filter.servlet-filter", name = "enabled", havingValue = "true")
+@AutoConfigureAfter(name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
+@EnableConfigurationProperties(IpFilterServletFilterProperties.class)
+public class IpFilterAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public IpFilterConfiguration ipFilterConfiguration() {
+        return new IpFilterConfiguration();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ClientIpConfiguration clientIpConfiguration() {
+        return new ClientIpConfiguration();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DecisionCacheConfiguration decisionCacheConfiguration() {
+        return new DecisionCacheConfiguration();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public AutoBanConfiguration autoBanConfiguration() {
+        return new AutoBanConfiguration(); // servlet filter 는 요청을 세지 않으므로 auto ban 설정은 ip-filter 서버에서만 사용
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DenyRuleReloader denyRuleReloader(IpFilterConfiguration ipFilterConfiguration) {
+        return new DenyRuleReloader(ipFilterConfiguration);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ClientIpResolver clientIpResolver(ClientIpConfiguration clientIpConfiguration) {
+        return new ClientIpResolver(clientIpConfiguration);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MeterRegistry ipFilterMeterRegistry() {
+        return new SimpleMeterRegistry(); // actuator 가 없는 서비스에서도 IpFilterMetrics 를 생성할 수 있도록 함
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public IpFilterMetrics ipFilterMetrics(MeterRegistry registry, IpFilterConfiguration ipFilterConfiguration,
+                                           @Value("${ip-filter.metrics.lookup-sample-rate:64}") int lookupSampleRate) {
+        return new IpFilterMetrics(registry, ipFilterConfiguration, lookupSampleRate);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public IpAuthenticationService ipAuthenticationService(IpFilterConfiguration ipFilterConfiguration, DecisionCacheConfiguration decisionCacheConfiguration,
+                                                           IpFilterMetrics ipFilterMetrics, AutoBanConfiguration autoBanConfiguration) {
+        return new IpAuthenticationServiceImpl(ipFilterConfiguration, decisionCacheConfiguration, ipFilterMetrics, autoBanConfiguration);
+    }
+
+    @Bean
+    public FilterRegistrationBean<IpFilterServletFilter> ipFilterServletFilter(IpFilterServletFilterProperties properties, ClientIpResolver clientIpResolver,
+                                                                               IpAuthenticationService ipAuthService, IpFilterMetrics ipFilterMetrics) {
+        FilterRegistrationBean<IpFilterServletFilter> registration = new FilterRegistrationBean<>(
+                new IpFilterServletFilter(clientIpResolver, ipAuthService, ipFilterMetrics));
+        registration.setUrlPatterns(properties.getUrlPatterns());
+        registration.setOrder(properties.getOrder());
+        return registration;
+    }
+}
@@ -0,0 +1,61 @@
+package com.wynnn.ipfilter.filter;
+
+import com.wynnn.ipfilter.controller.ClientIpResolver;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.model.ResponseBytes;
+import com.wynnn.ipfilter.service.IpAuthenticationService;
+import com.wynnn.ipfilter.utils.IpUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * /ipv4 API 를 호출하지 않고 서비스 process 안에서 차단 규칙을 적용하는 filter.
+ * 차단된 client 는 403 과 /ipv4 와 같은 응답 body 로 거부하고, 그 외에는 다음 filter 로 넘긴다.
+ * IPv4 와 IPv6 client 모두 확인하며, IP 형식이 아닌 주소는 판단할 수 없으므로 통과시킨다.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IpFilterServletFilter extends OncePerRequestFilter {
+
+    private final ClientIpResolver clientIpResolver;
+    private final IpAuthenticationService ipAuthService;
+    private final IpFilterMetrics ipFilterMetrics;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String clientIp = clientIpResolver.resolve(request::getHeader, request::getRemoteAddr);
+        if (clientIp == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long clientIpLong = IpUtils.parseIpv4(clientIp);
+        long[] ipv6Address = clientIpLong == IpUtils.INVALID_IP ? new long[2] : null;
+        if (ipv6Address != null && !IpUtils.parseIpv6(clientIp, 0, clientIp.length(), ipv6Address)) {
+            log.debug("> not IP client={}, pass", clientIp);
+            ipFilterMetrics.countBadRequest(1);
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (ipv6Address == null ? ipAuthService.hasAuth((int) clientIpLong) : ipAuthService.hasAuth(ipv6Address[0], ipv6Address[1])) {
+            ipFilterMetrics.countAllow(1);
+            filterChain.doFilter(request, response);
+            return;
+        }
+        ipFilterMetrics.countDeny(1);
+        byte[] body = ResponseBytes.unauthorized(clientIp);
+        response.setStatus(HttpStatus.FORBIDDEN.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
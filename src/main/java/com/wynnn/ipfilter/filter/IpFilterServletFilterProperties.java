@@ -0,0 +1,19 @@
+package com.wynnn.ipfilter.filter;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.Ordered;
+
+import java.util.Collections;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "ip-filter.servlet-filter")
+@Getter
+@Setter
+public class IpFilterServletFilterProperties {
+
+    private boolean enabled; // true 인 경우에만 filter 와 차단 규칙 bean 을 등록
+    private List<String> urlPatterns = Collections.singletonList("/*"); // filter 를 적용할 URL
+    private int order = Ordered.HIGHEST_PRECEDENCE + 10; // 다른 filter 보다 먼저 거부하도록 앞쪽에 배치
+}
@@ -0,0 +1,75 @@
+package com.wynnn.ipfilter.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * IPv4 전체 주소 공간(2^32)을 1bit 씩 표현하는 off-heap bitmap index.
+ * 규칙 개수와 상관없이 512MB 를 사용하지만, 조회는 분기 없이 메모리 1회 접근으로 끝난다.
+ */
+public final class Ipv4BitmapIndex implements Ipv4DenyIndex {
+
+    public static final long BITMAP_BYTES = 1L << 29; // 2^32 bits
+
+    private final LongBuffer words;
+    private final int size;
+
+    private Ipv4BitmapIndex(LongBuffer words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * 정렬된 차단 대역으로 bitmap 생성. 대역 안의 64bit word 는 한 번에 채운다.
+     *
+     * @param ranges 중첩이 제거된 차단 대역
+     * @return 생성된 bitmap index
+     * @throws OutOfMemoryError direct memory 가 부족한 경우
+     */
+    public static Ipv4BitmapIndex of(Ipv4RangeSet ranges) {
+        LongBuffer words = ByteBuffer.allocateDirect((int) BITMAP_BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+        for (int i = 0; i < ranges.size(); i++) {
+            fill(words, ranges.getStartIpLong(i), ranges.getEndIpLong(i));
+        }
+        return new Ipv4BitmapIndex(words, ranges.size());
+    }
+
+    private static void fill(LongBuffer words, long startIp, long endIp) {
+        int first = (int) (startIp >>> 6);
+        int last = (int) (endIp >>> 6);
+        long firstMask = -1L << startIp;            // bits from (startIp % 64) to 63
+        long lastMask = -1L >>> (63 - (endIp & 63)); // bits from 0 to (endIp % 64)
+        if (first == last) {
+            words.put(first, words.get(first) | (firstMask & lastMask));
+            return;
+        }
+        words.put(first, words.get(first) | firstMask);
+        for (int i = first + 1; i < last; i++) {
+            words.put(i, -1L);
+        }
+        words.put(last, words.get(last) | lastMask);
+    }
+
+    @Override
+    public boolean contains(int ip) {
+        return (words.get(ip >>> 6) & (1L << ip)) != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return BITMAP_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4BitmapIndex(size=" + size + ")";
+    }
+}
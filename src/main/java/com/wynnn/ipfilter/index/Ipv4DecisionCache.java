@@ -0,0 +1,152 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 자주 요청하는 client IP 의 차단 여부를 보관하는 고정 크기 cache.
+ * 항목 하나를 long 하나 (rule set version, IP, 허용 여부) 로 저장하므로 객체 생성과 lock 없이 여러 thread 에서 읽고 쓴다.
+ * 항목은 IP 의 hash 로 정해지는 WAYS 개 slot 중 하나에 저장되며 (set-associative), slot 이 모두 차 있으면 eviction 설정에 따라 하나를 교체한다.
+ * <p>
+ * 항목에 rule set version 이 포함되어 있으므로 reload 후에는 이전 version 의 항목이 조회되지 않고, 따로 비우지 않아도 새 항목으로 교체된다.
+ * 동시에 쓰는 경우 항목이 중복되거나 유실될 수 있지만, 항목 하나는 항상 원자적으로 읽고 쓰므로 잘못된 결과를 반환하지는 않는다.
+ */
+public final class Ipv4DecisionCache {
+
+    public static final Ipv4DecisionCache DISABLED = new Ipv4DecisionCache();
+    public static final int MISS = -1;
+    public static final int DENY = 0;
+    public static final int ALLOW = 1;
+    static final int WAYS = 4; // slot 4개 (32 byte) 가 cache line 하나에 들어감
+
+    private static final long VALID = 1L;
+    private static final long ALLOWED = 1L << 1;
+    private static final int IP_SHIFT = 2;
+    private static final int VERSION_SHIFT = 34;
+    private static final long VERSION_MASK = (1L << (64 - VERSION_SHIFT)) - 1;
+
+    public enum EvictionPolicy {
+        LRU,   // 조회된 항목을 set 의 맨 앞으로 옮기고, 가장 오래 조회되지 않은 항목을 교체
+        FIFO,  // 조회 순서와 관계없이 가장 먼저 저장된 항목을 교체. 조회 시 쓰기가 없음
+        RANDOM // 비어 있거나 이전 version 인 slot 이 없으면 임의의 항목을 교체
+    }
+
+    private final AtomicLongArray entries;
+    private final int setShift; // hash 의 상위 bit 를 set 위치로 사용
+    private final EvictionPolicy evictionPolicy;
+
+    private Ipv4DecisionCache() {
+        this.entries = new AtomicLongArray(0);
+        this.setShift = 32;
+        this.evictionPolicy = EvictionPolicy.LRU;
+    }
+
+    private Ipv4DecisionCache(int numSets, EvictionPolicy evictionPolicy) {
+        this.entries = new AtomicLongArray(numSets * WAYS);
+        this.setShift = 32 - Integer.numberOfTrailingZeros(numSets);
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @param capacity       저장할 최대 IP 개수. WAYS 의 배수인 2의 거듭제곱으로 올림 (항목당 8 byte)
+     * @param evictionPolicy set 이 가득 찬 경우 교체할 항목을 고르는 방법
+     * @return 생성된 cache. capacity 가 0 이하이면 DISABLED
+     */
+    public static Ipv4DecisionCache of(int capacity, EvictionPolicy evictionPolicy) {
+        if (capacity <= 0) {
+            return DISABLED;
+        }
+        int minSets = Math.max(1, (Math.min(capacity, 1 << 30) + WAYS - 1) / WAYS);
+        int numSets = Integer.highestOneBit(minSets * 2 - 1); // 2의 거듭제곱으로 올림
+        return new Ipv4DecisionCache(numSets, evictionPolicy);
+    }
+
+    public boolean isEnabled() {
+        return entries.length() > 0;
+    }
+
+    /**
+     * @param ip      unsigned 32bit IP
+     * @param version 판단에 사용한 rule set 의 version
+     * @return ALLOW, DENY. 저장되어 있지 않으면 MISS
+     */
+    public int get(int ip, long version) {
+        if (!isEnabled()) {
+            return MISS;
+        }
+        int base = setOf(ip);
+        long key = keyOf(ip, version);
+        for (int way = 0; way < WAYS; way++) {
+            long entry = entries.get(base + way);
+            if ((entry & ~ALLOWED) == key) {
+                if (way > 0 && evictionPolicy == EvictionPolicy.LRU) {
+                    insertFirst(base, way, entry);
+                }
+                return (entry & ALLOWED) != 0 ? ALLOW : DENY;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * @param ip      unsigned 32bit IP
+     * @param version 판단에 사용한 rule set 의 version
+     * @param allowed 허용 여부
+     */
+    public void put(int ip, long version, boolean allowed) {
+        if (!isEnabled()) {
+            return;
+        }
+        int base = setOf(ip);
+        long entry = keyOf(ip, version) | (allowed ? ALLOWED : 0);
+        if (evictionPolicy == EvictionPolicy.RANDOM) {
+            entries.lazySet(base + randomVictim(base, version), entry);
+        } else {
+            insertFirst(base, WAYS - 1, entry); // 마지막 slot 을 밀어냄
+        }
+    }
+
+    /**
+     * 비어 있거나 이전 version 의 slot 이 있으면 그 slot, 없으면 임의의 slot
+     */
+    private int randomVictim(int base, long version) {
+        for (int way = 0; way < WAYS; way++) {
+            long entry = entries.get(base + way);
+            if ((entry & VALID) == 0 || entry >>> VERSION_SHIFT != (version & VERSION_MASK)) {
+                return way;
+            }
+        }
+        return ThreadLocalRandom.current().nextInt(WAYS);
+    }
+
+    /**
+     * set 의 0 ~ way-1 번째 항목을 한 칸씩 뒤로 밀고 맨 앞에 entry 를 저장. way 번째 항목은 덮어쓴다.
+     */
+    private void insertFirst(int base, int way, long entry) {
+        for (int i = way; i > 0; i--) {
+            entries.lazySet(base + i, entries.get(base + i - 1));
+        }
+        entries.lazySet(base, entry);
+    }
+
+    private int setOf(int ip) {
+        return (int) (Integer.toUnsignedLong(ip * 0x9E3779B9) >>> setShift) * WAYS; // Fibonacci hashing. 연속된 IP 도 여러 set 에 흩어짐
+    }
+
+    private static long keyOf(int ip, long version) {
+        return (version & VERSION_MASK) << VERSION_SHIFT | Integer.toUnsignedLong(ip) << IP_SHIFT | VALID;
+    }
+
+    public int capacity() {
+        return entries.length();
+    }
+
+    public long memoryBytes() {
+        return 8L * entries.length();
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4DecisionCache(capacity=" + entries.length() + ", eviction=" + evictionPolicy + ")";
+    }
+}
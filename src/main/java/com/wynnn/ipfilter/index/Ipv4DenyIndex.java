@@ -0,0 +1,49 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.Optional;
+
+/**
+ * 차단 IP 조회용 index
+ */
+public interface Ipv4DenyIndex {
+
+    /**
+     * IP 가 차단 대역에 속하는지 확인
+     *
+     * @param ip unsigned 32bit IP
+     * @return 차단 대역에 속하면 true
+     */
+    boolean contains(int ip);
+
+    /**
+     * 여러 IP 를 한 번에 확인
+     *
+     * @param ips    unsigned 32bit IP 목록
+     * @param denied 결과를 저장할 배열. denied[i] 는 ips[i] 가 차단 대역에 속하는지 여부
+     */
+    default void containsAll(int[] ips, boolean[] denied) {
+        for (int i = 0; i < ips.length; i++) {
+            denied[i] = contains(ips[i]);
+        }
+    }
+
+    /**
+     * IP 가 속한 차단 규칙. 규칙을 기록하는 index (DIR-24-8) 만 지원한다.
+     *
+     * @param ip unsigned 32bit IP
+     * @return 차단 규칙 (CIDR). 차단 대역에 속하지 않거나 규칙을 기록하지 않는 index 이면 empty
+     */
+    default Optional<String> matchedRule(int ip) {
+        return Optional.empty();
+    }
+
+    /**
+     * @return index 를 구성하는 차단 대역 개수
+     */
+    int size();
+
+    /**
+     * @return index 가 사용하는 메모리 크기 (byte)
+     */
+    long memoryBytes();
+}
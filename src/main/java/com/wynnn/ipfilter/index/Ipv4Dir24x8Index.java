@@ -0,0 +1,169 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * router 의 DIR-24-8 방식으로 IP 마다 적용된 차단 규칙 번호를 저장하는 index.
+ * <ul>
+ *   <li>1단계 : IP 상위 24bit 로 찾는 2^24 개 table (64MB). /24 전체가 같은 규칙이면 규칙 번호 + 1, 일부만 차단하면 2단계 block 번호 (최상위 bit 표시)</li>
+ *   <li>2단계 : /24 하나를 IP 하위 8bit 로 나눈 256 개 block. /24 보다 작은 규칙이나 허용 대역에 걸린 /24 에서만 만든다</li>
+ * </ul>
+ * 조회는 규칙 개수와 관계없이 최대 2번의 메모리 접근으로 끝나며, 차단 여부와 함께 어느 규칙에 해당하는지 (CIDR) 알 수 있다.
+ * 규칙은 다른 규칙에 포함된 규칙을 제외하므로 (de-nested) IP 하나에는 규칙이 최대 하나만 해당하고, 포함 관계가 있으면 큰 대역의 규칙이 기록된다.
+ */
+public final class Ipv4Dir24x8Index implements Ipv4DenyIndex {
+
+    private static final int BLOCK_FLAG = 0x80000000;
+    private static final int BLOCK_SIZE = 256;
+    private static final int MAX_NUM_BLOCKS = 1 << 23; // block 번호 * 256 이 int 범위를 넘지 않도록 함
+
+    private final int[] table24; // 0: 차단하지 않음, 양수: 규칙 번호 + 1, BLOCK_FLAG | n: n 번째 block
+    private final int[] table8;  // block 별 256 개 항목. 0: 차단하지 않음, 양수: 규칙 번호 + 1
+    private final int[] ruleStarts;  // 규칙 번호별 시작 IP
+    private final byte[] ruleCidrs;  // 규칙 번호별 CIDR
+    private final int size;
+
+    private Ipv4Dir24x8Index(int[] table24, int[] table8, int[] ruleStarts, byte[] ruleCidrs, int size) {
+        this.table24 = table24;
+        this.table8 = table8;
+        this.ruleStarts = ruleStarts;
+        this.ruleCidrs = ruleCidrs;
+        this.size = size;
+    }
+
+    /**
+     * 차단 규칙 (subnet) 과 최종 차단 대역으로 index 생성. 최종 차단 대역에 포함된 주소만 규칙 번호를 기록하므로
+     * 허용 대역이나 MAX_NUM_DENY_IP 때문에 적용되지 않은 주소는 차단하지 않는다.
+     *
+     * @param subnets 정렬된 차단 규칙
+     * @param ranges  subnets 를 병합하고 허용 대역을 제외한 차단 대역
+     * @return 생성된 index
+     * @throws IllegalArgumentException 2단계 block 이 MAX_NUM_BLOCKS 를 넘는 경우
+     */
+    public static Ipv4Dir24x8Index of(Ipv4SubnetBuffer subnets, Ipv4RangeSet ranges) {
+        int[] ruleStarts = new int[Math.min(subnets.size(), 1024)];
+        byte[] ruleCidrs = new byte[ruleStarts.length];
+        int numRules = 0;
+        long lastEndIpLong = -1;
+        for (int i = 0; i < subnets.size(); i++) {
+            long endIpLong = IpUtils.calcEndIpInSubnet(subnets.getStartIpLong(i), subnets.getCidr(i));
+            if (endIpLong <= lastEndIpLong) { // 앞 규칙에 포함
+                continue;
+            }
+            if (numRules == ruleStarts.length) {
+                int capacity = (int) Math.min(subnets.size(), ruleStarts.length * 2L);
+                ruleStarts = Arrays.copyOf(ruleStarts, capacity);
+                ruleCidrs = Arrays.copyOf(ruleCidrs, capacity);
+            }
+            ruleStarts[numRules] = (int) subnets.getStartIpLong(i);
+            ruleCidrs[numRules] = (byte) subnets.getCidr(i);
+            numRules++;
+            lastEndIpLong = endIpLong;
+        }
+
+        Builder builder = new Builder();
+        int rangePos = 0;
+        for (int rule = 0; rule < numRules; rule++) { // 규칙과 차단 대역이 겹치는 구간마다 규칙 번호를 기록
+            long startIpLong = Integer.toUnsignedLong(ruleStarts[rule]);
+            long endIpLong = IpUtils.calcEndIpInSubnet(startIpLong, ruleCidrs[rule]);
+            while (rangePos < ranges.size() && ranges.getEndIpLong(rangePos) < startIpLong) {
+                rangePos++;
+            }
+            for (int pos = rangePos; pos < ranges.size() && ranges.getStartIpLong(pos) <= endIpLong; pos++) {
+                builder.fill(Math.max(startIpLong, ranges.getStartIpLong(pos)), Math.min(endIpLong, ranges.getEndIpLong(pos)), rule + 1);
+            }
+        }
+        return new Ipv4Dir24x8Index(builder.table24, Arrays.copyOf(builder.table8, builder.numBlocks * BLOCK_SIZE),
+                Arrays.copyOf(ruleStarts, numRules), Arrays.copyOf(ruleCidrs, numRules), ranges.size());
+    }
+
+    private static final class Builder {
+        private final int[] table24 = new int[1 << 24];
+        private int[] table8 = new int[64 * BLOCK_SIZE];
+        private int numBlocks;
+
+        void fill(long startIpLong, long endIpLong, int value) {
+            int first = (int) (startIpLong >>> 8);
+            int last = (int) (endIpLong >>> 8);
+            int firstFull = (startIpLong & 0xff) == 0 ? first : first + 1;
+            int lastFull = (endIpLong & 0xff) == 0xff ? last : last - 1;
+            if (first == last && (firstFull != first || lastFull != last)) { // /24 하나의 일부
+                fillBlock(first, (int) (startIpLong & 0xff), (int) (endIpLong & 0xff), value);
+                return;
+            }
+            if (firstFull != first) {
+                fillBlock(first, (int) (startIpLong & 0xff), 0xff, value);
+            }
+            if (lastFull != last) {
+                fillBlock(last, 0, (int) (endIpLong & 0xff), value);
+            }
+            if (firstFull <= lastFull) {
+                Arrays.fill(table24, firstFull, lastFull + 1, value);
+            }
+        }
+
+        private void fillBlock(int index24, int from, int to, int value) {
+            if ((table24[index24] & BLOCK_FLAG) == 0) {
+                if (numBlocks == MAX_NUM_BLOCKS) {
+                    throw new IllegalArgumentException("too many /24 blocks with partial rules, max=" + MAX_NUM_BLOCKS);
+                }
+                if ((numBlocks + 1) * BLOCK_SIZE > table8.length) {
+                    table8 = Arrays.copyOf(table8, (int) Math.min((long) MAX_NUM_BLOCKS * BLOCK_SIZE, table8.length * 2L));
+                }
+                Arrays.fill(table8, numBlocks * BLOCK_SIZE, (numBlocks + 1) * BLOCK_SIZE, table24[index24]);
+                table24[index24] = BLOCK_FLAG | numBlocks;
+                numBlocks++;
+            }
+            int base = (table24[index24] & ~BLOCK_FLAG) * BLOCK_SIZE;
+            Arrays.fill(table8, base + from, base + to + 1, value);
+        }
+    }
+
+    /**
+     * @param ip unsigned 32bit IP
+     * @return ip 가 속한 규칙 번호. 차단 대역이 아니면 -1
+     */
+    public int ruleIndex(int ip) {
+        int entry = table24[ip >>> 8];
+        if (entry < 0) { // BLOCK_FLAG
+            entry = table8[(entry & ~BLOCK_FLAG) * BLOCK_SIZE + (ip & 0xff)];
+        }
+        return entry - 1;
+    }
+
+    @Override
+    public boolean contains(int ip) {
+        return ruleIndex(ip) >= 0;
+    }
+
+    @Override
+    public Optional<String> matchedRule(int ip) {
+        int rule = ruleIndex(ip);
+        if (rule < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(IpUtils.longToIp(Integer.toUnsignedLong(ruleStarts[rule])) + "/" + ruleCidrs[rule]);
+    }
+
+    public int numRules() {
+        return ruleStarts.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 4L * table24.length + 4L * table8.length + 5L * ruleStarts.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4Dir24x8Index(size=" + size + ", rules=" + ruleStarts.length + ", blocks=" + table8.length / BLOCK_SIZE + ")";
+    }
+}
@@ -0,0 +1,257 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 만료 시간이 있는 차단 규칙을 관리하는 hierarchical timing wheel.
+ * LEVELS 단계의 wheel 에 SLOTS 개씩 slot 이 있고, level 의 slot 하나는 아래 level 의 wheel 한 바퀴에 해당한다.
+ * 규칙은 남은 tick 수에 맞는 level 의 slot 에 넣고, 아래 level 의 wheel 이 한 바퀴 돌 때마다 위 level 의 slot 을 아래로 옮기므로 (cascade)
+ * 등록, 취소는 규칙 개수와 관계없이 상수 시간이고 만료 처리는 만료된 규칙 개수에만 비례한다.
+ * <p>
+ * 항목은 객체 없이 배열 (규칙, 만료 tick, slot 연결, key 연결) 에 저장하고 만료된 자리는 다시 사용하므로,
+ * 짧은 차단이 많이 등록되고 만료되어도 배열이 늘어날 때 외에는 메모리를 할당하지 않는다.
+ * thread-safe 하지 않으므로 호출하는 쪽에서 동기화한다.
+ */
+public final class Ipv4ExpiryWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4; // tick 이 1초이면 약 194일까지 cascade 없이 배치
+    private static final int NONE = -1;
+
+    private final long tickMillis;
+    private final int[] slotHeads = new int[LEVELS * SLOTS]; // slot 별 첫 항목
+    private int[] keyHeads; // key hash 별 첫 항목
+    private long[] rules;
+    private long[] deadlineTicks;
+    private int[] slotNext;  // 같은 slot 의 다음 항목. 빈 항목이면 다음 빈 항목
+    private int[] slotPrev;
+    private int[] slotOf;
+    private int[] keyNext;   // 같은 key hash 의 다음 항목
+    private int freeHead = NONE;
+    private int used;        // 한 번이라도 사용한 항목 개수
+    private int size;
+    private long currentTick;
+
+    /**
+     * @param tickMillis 만료를 확인하는 간격. 규칙은 만료 시간 후 최대 1 tick 안에 만료된다
+     * @param nowMillis  현재 시간 (epoch millis)
+     */
+    public Ipv4ExpiryWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive=" + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        Arrays.fill(slotHeads, NONE);
+        allocate(64);
+    }
+
+    private void allocate(int capacity) {
+        rules = rules == null ? new long[capacity] : Arrays.copyOf(rules, capacity);
+        deadlineTicks = deadlineTicks == null ? new long[capacity] : Arrays.copyOf(deadlineTicks, capacity);
+        slotNext = slotNext == null ? new int[capacity] : Arrays.copyOf(slotNext, capacity);
+        slotPrev = slotPrev == null ? new int[capacity] : Arrays.copyOf(slotPrev, capacity);
+        slotOf = slotOf == null ? new int[capacity] : Arrays.copyOf(slotOf, capacity);
+        keyNext = keyNext == null ? new int[capacity] : Arrays.copyOf(keyNext, capacity);
+        keyHeads = new int[Math.max(1, Integer.highestOneBit(capacity) / 2)]; // 항목 2개당 key bucket 1개
+        Arrays.fill(keyHeads, NONE);
+        for (int entry = 0; entry < used; entry++) {
+            if (slotOf[entry] != NONE) {
+                int bucket = bucketOf(rules[entry]);
+                keyNext[entry] = keyHeads[bucket];
+                keyHeads[bucket] = entry;
+            }
+        }
+    }
+
+    /**
+     * 규칙의 만료 시간을 등록. 이미 등록된 규칙이면 만료 시간을 바꾼다.
+     *
+     * @param rule           규칙 (Ipv4SubnetBuffer.key)
+     * @param deadlineMillis 만료 시간 (epoch millis)
+     */
+    public void schedule(long rule, long deadlineMillis) {
+        cancel(rule);
+        if (freeHead == NONE && used == rules.length) {
+            allocate(rules.length * 2);
+        }
+        int entry;
+        if (freeHead != NONE) {
+            entry = freeHead;
+            freeHead = slotNext[entry];
+        } else {
+            entry = used++;
+        }
+        rules[entry] = rule;
+        long deadlineTick = deadlineMillis / tickMillis + (deadlineMillis % tickMillis > 0 ? 1 : 0); // 만료 시간보다 먼저 만료되지 않도록 올림. long 범위에 가까워도 overflow 없음
+        deadlineTicks[entry] = Math.max(currentTick + 1, deadlineTick);
+        int bucket = bucketOf(rule);
+        keyNext[entry] = keyHeads[bucket];
+        keyHeads[bucket] = entry;
+        place(entry);
+        size++;
+    }
+
+    /**
+     * 규칙의 만료 시간 등록을 취소
+     *
+     * @return 등록되어 있었으면 true
+     */
+    public boolean cancel(long rule) {
+        int bucket = bucketOf(rule);
+        for (int entry = keyHeads[bucket], prev = NONE; entry != NONE; prev = entry, entry = keyNext[entry]) {
+            if (rules[entry] == rule) {
+                if (prev == NONE) {
+                    keyHeads[bucket] = keyNext[entry];
+                } else {
+                    keyNext[prev] = keyNext[entry];
+                }
+                unlink(entry);
+                release(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(long rule) {
+        for (int entry = keyHeads[bucketOf(rule)]; entry != NONE; entry = keyNext[entry]) {
+            if (rules[entry] == rule) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 현재 시간까지 wheel 을 돌리며 만료된 규칙을 전달하고 등록을 해제
+     *
+     * @param nowMillis 현재 시간 (epoch millis)
+     * @param expired   만료된 규칙을 받을 consumer
+     * @return 만료된 규칙 개수
+     */
+    public int advance(long nowMillis, LongConsumer expired) {
+        long targetTick = nowMillis / tickMillis;
+        int numExpired = 0;
+        while (currentTick < targetTick) {
+            if (size == 0) { // 빈 wheel 은 돌리지 않고 현재 tick 으로 이동
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            int topLevel = 0; // 한 바퀴를 돈 가장 높은 level. 아래 level 로 옮긴 항목이 바로 다시 옮겨지도록 위 level 부터 cascade
+            while (topLevel + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (topLevel + 1))) - 1)) == 0) {
+                topLevel++;
+            }
+            for (int level = topLevel; level >= 1; level--) {
+                int slot = level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                int entry = slotHeads[slot];
+                slotHeads[slot] = NONE;
+                while (entry != NONE) {
+                    int next = slotNext[entry];
+                    place(entry);
+                    entry = next;
+                }
+            }
+            int slot = (int) (currentTick & (SLOTS - 1));
+            int entry = slotHeads[slot];
+            slotHeads[slot] = NONE;
+            while (entry != NONE) {
+                int next = slotNext[entry];
+                if (deadlineTicks[entry] > currentTick) { // 아직 만료되지 않음
+                    place(entry);
+                } else {
+                    long rule = rules[entry];
+                    removeKey(entry);
+                    release(entry);
+                    expired.accept(rule);
+                    numExpired++;
+                }
+                entry = next;
+            }
+        }
+        return numExpired;
+    }
+
+    /**
+     * 남은 tick 수로 level 을 정하고, 만료 tick 의 해당 level bit 로 slot 을 정함.
+     * 가장 높은 level 보다 멀면 가장 높은 level 의 마지막 slot 에 두고 cascade 될 때 다시 배치한다.
+     */
+    private void place(int entry) {
+        long remaining = deadlineTicks[entry] - currentTick;
+        int slot = NONE;
+        for (int level = 0; level < LEVELS; level++) {
+            if (remaining < 1L << (SLOT_BITS * (level + 1))) {
+                slot = level * SLOTS + (int) ((deadlineTicks[entry] >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                break;
+            }
+        }
+        if (slot == NONE) {
+            int level = LEVELS - 1;
+            slot = level * SLOTS + (int) (((currentTick >>> (SLOT_BITS * level)) - 1) & (SLOTS - 1));
+        }
+        slotOf[entry] = slot;
+        slotPrev[entry] = NONE;
+        slotNext[entry] = slotHeads[slot];
+        if (slotHeads[slot] != NONE) {
+            slotPrev[slotHeads[slot]] = entry;
+        }
+        slotHeads[slot] = entry;
+    }
+
+    private void unlink(int entry) {
+        int slot = slotOf[entry];
+        if (slotPrev[entry] == NONE) {
+            slotHeads[slot] = slotNext[entry];
+        } else {
+            slotNext[slotPrev[entry]] = slotNext[entry];
+        }
+        if (slotNext[entry] != NONE) {
+            slotPrev[slotNext[entry]] = slotPrev[entry];
+        }
+    }
+
+    private void removeKey(int entry) {
+        int bucket = bucketOf(rules[entry]);
+        if (keyHeads[bucket] == entry) {
+            keyHeads[bucket] = keyNext[entry];
+            return;
+        }
+        for (int prev = keyHeads[bucket]; prev != NONE; prev = keyNext[prev]) {
+            if (keyNext[prev] == entry) {
+                keyNext[prev] = keyNext[entry];
+                return;
+            }
+        }
+    }
+
+    private void release(int entry) {
+        slotOf[entry] = NONE;
+        slotNext[entry] = freeHead;
+        freeHead = entry;
+        size--;
+    }
+
+    private int bucketOf(long rule) {
+        long hash = rule * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (keyHeads.length - 1);
+    }
+
+    /**
+     * @return 만료 시간이 등록된 규칙 개수
+     */
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        return 4L * slotHeads.length + 4L * keyHeads.length + 32L * rules.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4ExpiryWheel(size=" + size + ", tick=" + tickMillis + "ms)";
+    }
+}
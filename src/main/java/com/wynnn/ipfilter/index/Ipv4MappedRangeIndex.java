@@ -0,0 +1,67 @@
+package com.wynnn.ipfilter.index;
+
+import java.nio.IntBuffer;
+
+/**
+ * snapshot 파일을 memory-map 한 영역에서 직접 조회하는 index. heap 에 대역을 복사하지 않는다.
+ * 조회 방식은 Ipv4RangeIndex 와 동일하다.
+ *
+ * @see Ipv4RangeSnapshot
+ */
+public final class Ipv4MappedRangeIndex implements Ipv4RangeSet {
+
+    private final IntBuffer starts; // unsigned start IP of each range
+    private final IntBuffer ends;   // unsigned end IP of each range
+    private final int size;
+
+    Ipv4MappedRangeIndex(IntBuffer starts, IntBuffer ends, int size) {
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    @Override
+    public boolean contains(int ip) {
+        int pos = floorIndex(ip);
+        return pos >= 0 && Integer.compareUnsigned(ip, ends.get(pos)) <= 0;
+    }
+
+    private int floorIndex(int ip) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Integer.compareUnsigned(starts.get(mid), ip) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getStartIpLong(int pos) {
+        return Integer.toUnsignedLong(starts.get(pos));
+    }
+
+    @Override
+    public long getEndIpLong(int pos) {
+        return Integer.toUnsignedLong(ends.get(pos));
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 8L * size;
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4MappedRangeIndex(size=" + size + ")";
+    }
+}
@@ -0,0 +1,383 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+
+/**
+ * compile 된 index (base) 위에 실행 중 추가/삭제한 규칙을 반영하는 index.
+ * 규칙이 바뀌어도 base 는 그대로 두고 overlay 만 교체하므로, 규칙 개수와 관계없이 변경이 바로 조회에 반영된다.
+ * <ul>
+ *   <li>addedRules : 추가한 규칙. 허용 대역을 제외하고 base 와 관계없이 차단. 조회 중인 index 의 hash set 은 바꾸지 않고, 변경하는 쪽에서 version 마다 한 번 복사하여 갱신한다</li>
+ *   <li>removed : 삭제한 base 규칙의 대역 중 남아 있는 다른 base 규칙 (상위 대역, 포함된 규칙) 이 덮지 않는 대역. base 에 있어도 차단하지 않음</li>
+ * </ul>
+ * 포함 관계의 규칙 중 하나만 삭제하면 남은 규칙이 덮는 주소는 계속 차단한다.
+ * base 에 없는 규칙을 추가/삭제하면 addedRules 와 차단 IP 개수만 바꾼 overlay 로 교체하고 (withRules),
+ * base 규칙을 삭제하거나 되돌린 경우에만 removed 를 다시 만든다. 규칙이 많이 쌓이면 base 를 다시 만들어 (compaction) overlay 를 비운다.
+ * 여러 목록이 같은 base 를 공유하고 목록별 차단/허용 대역만 overlay 로 두는 경우에도 사용한다.
+ */
+public final class Ipv4OverlayIndex implements Ipv4DenyIndex {
+
+    private static final Ipv4RuleSet NO_RULES = new Ipv4RuleSet();
+
+    private final Ipv4DenyIndex base;
+    private final Ipv4RangeSet baseRanges;
+    private final Ipv4RangeIndex added;
+    private final Ipv4RuleSet addedRules; // 추가한 규칙 (Ipv4SubnetBuffer.key). 조회에 사용하는 동안에는 변경하지 않음
+    private final Ipv4RangeSet allow;     // addedRules 에서 제외할 허용 대역
+    private final Ipv4RangeIndex removed;
+    private final int numPendingRules;
+    private final long numDenyIps;
+
+    private Ipv4OverlayIndex(Ipv4DenyIndex base, Ipv4RangeSet baseRanges, Ipv4RangeIndex added, Ipv4RuleSet addedRules, Ipv4RangeSet allow,
+                             Ipv4RangeIndex removed, int numPendingRules, long numDenyIps) {
+        this.base = base;
+        this.baseRanges = baseRanges;
+        this.added = added;
+        this.addedRules = addedRules;
+        this.allow = allow;
+        this.removed = removed;
+        this.numPendingRules = numPendingRules;
+        this.numDenyIps = numDenyIps;
+    }
+
+    /**
+     * base 에 추가/삭제한 규칙을 반영한 index 생성. 삭제한 규칙과 그 규칙에 걸린 base 규칙만 확인하여 removed 를 만들고,
+     * 차단 IP 개수는 추가한 규칙 전체를 정렬하여 센다.
+     *
+     * @param base           조회에 사용하는 compile 된 index
+     * @param baseRanges     base 와 같은 차단 대역
+     * @param baseNumDenyIps base 의 차단 IP 개수
+     * @param baseSubnets    base 를 compile 한 정렬된 규칙. removedRules 가 비어 있으면 null 이어도 됨
+     * @param addedRules     baseSubnets 에 없는 추가한 규칙. 복사하지 않고 조회에 그대로 사용하므로 이후 변경하지 않아야 함
+     * @param removedRules   baseSubnets 에 있는 삭제한 규칙
+     * @param allow          추가한 규칙에서 제외할 허용 대역
+     * @return 생성된 index
+     */
+    public static Ipv4OverlayIndex of(Ipv4DenyIndex base, Ipv4RangeSet baseRanges, long baseNumDenyIps, Ipv4SubnetBuffer baseSubnets,
+                                      Ipv4RuleSet addedRules, Ipv4RuleSet removedRules, Ipv4RangeSet allow) {
+        RangeBuffer uncovered = new RangeBuffer();
+        removedRules.forEach(rule -> addUncovered(rule, baseSubnets, removedRules, uncovered));
+        Ipv4RangeIndex removed = uncovered.merge();
+        long[] sortedAdded = addedRules.toArray();
+        Arrays.sort(sortedAdded);
+        Ipv4RangeIndex addedRanges = Ipv4RangeIndex.subtract(mergeRules(sortedAdded), allow);
+        long numDenyIps = countDenyIps(baseRanges, baseNumDenyIps, addedRanges, removed);
+        return new Ipv4OverlayIndex(base, baseRanges, Ipv4RangeIndex.EMPTY, addedRules, allow, removed,
+                addedRules.size() + removedRules.size(), numDenyIps);
+    }
+
+    /**
+     * 여러 목록이 공유하는 base 에 목록별 차단/허용 대역을 반영한 index 생성. base 는 복사하지 않는다.
+     *
+     * @param base           공유하는 compile 된 index
+     * @param baseRanges     base 와 같은 차단 대역
+     * @param baseNumDenyIps base 의 차단 IP 개수
+     * @param added          base 와 관계없이 차단할 대역
+     * @param removed        base 에 있어도 차단하지 않을 대역. added 와 겹치면 added 가 우선
+     * @return 생성된 index
+     */
+    public static Ipv4OverlayIndex of(Ipv4DenyIndex base, Ipv4RangeSet baseRanges, long baseNumDenyIps, Ipv4RangeIndex added, Ipv4RangeIndex removed) {
+        return new Ipv4OverlayIndex(base, baseRanges, added, NO_RULES, Ipv4RangeIndex.EMPTY, removed, 0,
+                countDenyIps(baseRanges, baseNumDenyIps, added, removed));
+    }
+
+    /**
+     * base - removed + added 의 개수. added 와 removed 가 겹치는 주소는 added 가 우선한다
+     */
+    private static long countDenyIps(Ipv4RangeSet baseRanges, long baseNumDenyIps, Ipv4RangeIndex added, Ipv4RangeIndex removed) {
+        Ipv4RangeIndex addedInRemoved = Ipv4RangeIndex.subtract(added, Ipv4RangeIndex.subtract(added, removed));
+        return baseNumDenyIps - countOverlap(removed, baseRanges)
+                + countIps(added) - countOverlap(added, baseRanges) + countOverlap(addedInRemoved, baseRanges);
+    }
+
+    /**
+     * 같은 base, removed 에 다른 addedRules 를 적용한 index. 규칙 개수와 관계없이 객체 하나만 만든다.
+     *
+     * @param addedRules      이 index 의 addedRules 를 복사하여 갱신한 규칙
+     * @param numPendingRules base 에 반영되지 않은 추가/삭제 규칙 개수
+     * @param numDenyIps      차단 IP 개수 (countUncoveredIps 로 갱신한 값)
+     */
+    public Ipv4OverlayIndex withRules(Ipv4RuleSet addedRules, int numPendingRules, long numDenyIps) {
+        return new Ipv4OverlayIndex(base, baseRanges, added, addedRules, allow, removed, numPendingRules, numDenyIps);
+    }
+
+    /**
+     * addedRules 에 없는 규칙을 추가하면 새로 차단되는 IP 개수. addedRules 에서 삭제한 뒤 호출하면 더 이상 차단되지 않는 IP 개수가 된다.
+     * 상위 대역 규칙이 추가되어 있으면 0 이고, 그 외에는 규칙의 대역에서 허용 대역과 추가된 포함 규칙, 남아 있는 base 대역을 제외한 개수이다.
+     * 상위 대역은 사용된 prefix 길이마다 hash 조회 한 번으로, 포함된 규칙은 가능한 key 가 적으면 나열하여 찾고 많으면 추가한 규칙을 훑으므로
+     * /32 규칙은 추가한 규칙 개수와 관계없이 상수 시간이다.
+     *
+     * @param rule   추가/삭제할 규칙 (Ipv4SubnetBuffer.key)
+     * @param staged 함께 추가하는 중이라 addedRules 에는 아직 없는 규칙. 없으면 null
+     * @return 차단 IP 개수의 변화량 (0 이상)
+     */
+    public long countUncoveredIps(long rule, Ipv4RuleSet staged) {
+        long startIpLong = Ipv4SubnetBuffer.startIpLongOf(rule);
+        int cidr = Ipv4SubnetBuffer.cidrOf(rule);
+        long endIpLong = IpUtils.calcEndIpInSubnet(startIpLong, cidr);
+        Ipv4RuleSet stagedRules = staged != null ? staged : NO_RULES;
+        long cidrMask = addedRules.cidrMask() | stagedRules.cidrMask();
+        for (int parentCidr = 0; parentCidr < cidr; parentCidr++) {
+            long parent = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(startIpLong, parentCidr), parentCidr);
+            if ((cidrMask & (1L << parentCidr)) != 0 && (addedRules.contains(parent) || stagedRules.contains(parent))) {
+                return 0;
+            }
+        }
+        RangeBuffer covered = new RangeBuffer(); // 규칙의 대역 중 이미 차단하거나 허용하는 대역
+        long childMask = cidrMask >>> (cidr + 1) << (cidr + 1);
+        long numCandidates = 0;
+        for (long remaining = childMask; remaining != 0; remaining &= remaining - 1) {
+            numCandidates += 1L << (Long.numberOfTrailingZeros(remaining) - cidr);
+        }
+        if (numCandidates <= addedRules.capacity() + stagedRules.capacity()) {
+            for (long remaining = childMask; remaining != 0; remaining &= remaining - 1) {
+                int childCidr = Long.numberOfTrailingZeros(remaining);
+                for (long i = 0; i < 1L << (childCidr - cidr); i++) {
+                    long child = Ipv4SubnetBuffer.key(startIpLong + (i << (32 - childCidr)), childCidr);
+                    if (addedRules.contains(child) || stagedRules.contains(child)) {
+                        long childStartIpLong = Ipv4SubnetBuffer.startIpLongOf(child);
+                        covered.add(childStartIpLong, IpUtils.calcEndIpInSubnet(childStartIpLong, childCidr));
+                    }
+                }
+            }
+        } else {
+            LongConsumer addChild = child -> {
+                long childStartIpLong = Ipv4SubnetBuffer.startIpLongOf(child);
+                if (Ipv4SubnetBuffer.cidrOf(child) > cidr && startIpLong <= childStartIpLong && childStartIpLong <= endIpLong) {
+                    covered.add(childStartIpLong, IpUtils.calcEndIpInSubnet(childStartIpLong, Ipv4SubnetBuffer.cidrOf(child)));
+                }
+            };
+            addedRules.forEach(addChild);
+            stagedRules.forEach(addChild);
+        }
+        addOverlap(added, startIpLong, endIpLong, covered);
+        addOverlap(allow, startIpLong, endIpLong, covered);
+        Ipv4RangeIndex coveredRanges = covered.merge();
+
+        long numIps = 0;
+        long nextIpLong = startIpLong; // 아직 확인하지 않은 첫 주소
+        for (int i = 0; i <= coveredRanges.size(); i++) {
+            long to = i < coveredRanges.size() ? coveredRanges.getStartIpLong(i) - 1 : endIpLong;
+            if (nextIpLong <= to) {
+                numIps += to - nextIpLong + 1 - countBaseDenyIps(nextIpLong, to);
+            }
+            if (i < coveredRanges.size()) {
+                nextIpLong = coveredRanges.getEndIpLong(i) + 1;
+            }
+        }
+        return numIps;
+    }
+
+    /**
+     * [from, to] 에서 ranges 와 겹치는 대역을 buffer 에 추가
+     */
+    private static void addOverlap(Ipv4RangeSet ranges, long from, long to, RangeBuffer buffer) {
+        for (int pos = Math.max(0, floorIndex(ranges, from)); pos < ranges.size() && ranges.getStartIpLong(pos) <= to; pos++) {
+            long overlapFrom = Math.max(from, ranges.getStartIpLong(pos));
+            long overlapTo = Math.min(to, ranges.getEndIpLong(pos));
+            if (overlapFrom <= overlapTo) {
+                buffer.add(overlapFrom, overlapTo);
+            }
+        }
+    }
+
+    /**
+     * [from, to] 중 base 에 있고 removed 에 없는 주소 개수
+     */
+    private long countBaseDenyIps(long from, long to) {
+        long numIps = 0;
+        for (int pos = Math.max(0, floorIndex(baseRanges, from)); pos < baseRanges.size() && baseRanges.getStartIpLong(pos) <= to; pos++) {
+            long overlapFrom = Math.max(from, baseRanges.getStartIpLong(pos));
+            long overlapTo = Math.min(to, baseRanges.getEndIpLong(pos));
+            if (overlapFrom > overlapTo) {
+                continue;
+            }
+            numIps += overlapTo - overlapFrom + 1;
+            for (int removedPos = Math.max(0, floorIndex(removed, overlapFrom)); removedPos < removed.size() && removed.getStartIpLong(removedPos) <= overlapTo; removedPos++) {
+                numIps -= Math.max(0, Math.min(overlapTo, removed.getEndIpLong(removedPos)) - Math.max(overlapFrom, removed.getStartIpLong(removedPos)) + 1);
+            }
+        }
+        return numIps;
+    }
+
+    /**
+     * 삭제한 규칙의 대역 중 남은 base 규칙이 덮지 않는 대역을 buffer 에 추가. 추가한 규칙이 덮는 주소는 조회할 때 added 가 우선한다.
+     * CIDR 규칙은 서로 일부만 겹치지 않으므로, 상위 대역 규칙 (최대 32개) 과 이 대역 안에서 시작하는 규칙만 확인하면 된다.
+     */
+    private static void addUncovered(long rule, Ipv4SubnetBuffer baseSubnets, Ipv4RuleSet removedRules, RangeBuffer uncovered) {
+        long startIpLong = Ipv4SubnetBuffer.startIpLongOf(rule);
+        int cidr = Ipv4SubnetBuffer.cidrOf(rule);
+        long endIpLong = IpUtils.calcEndIpInSubnet(startIpLong, cidr);
+        for (int parentCidr = 0; parentCidr < cidr; parentCidr++) {
+            long parent = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(startIpLong, parentCidr), parentCidr);
+            if (baseSubnets.contains(parent) && !removedRules.contains(parent)) { // 상위 대역이 남아 있으면 삭제해도 차단 대역은 그대로
+                return;
+            }
+        }
+        long nextIpLong = startIpLong; // 아직 덮는 규칙을 찾지 못한 첫 주소
+        for (int pos = baseSubnets.ceilingIndex(startIpLong); pos < baseSubnets.size() && baseSubnets.getStartIpLong(pos) <= endIpLong; pos++) {
+            long key = baseSubnets.getKey(pos);
+            if (key == rule || removedRules.contains(key)) {
+                continue;
+            }
+            long childStartIpLong = baseSubnets.getStartIpLong(pos);
+            if (childStartIpLong > nextIpLong) {
+                uncovered.add(nextIpLong, childStartIpLong - 1);
+            }
+            nextIpLong = Math.max(nextIpLong, IpUtils.calcEndIpInSubnet(childStartIpLong, baseSubnets.getCidr(pos)) + 1);
+        }
+        if (nextIpLong <= endIpLong) {
+            uncovered.add(nextIpLong, endIpLong);
+        }
+    }
+
+    /**
+     * 정렬된 규칙을 겹치지 않는 대역으로 병합
+     */
+    private static Ipv4RangeIndex mergeRules(long[] sortedRules) {
+        RangeBuffer ranges = new RangeBuffer();
+        for (long rule : sortedRules) {
+            long startIpLong = Ipv4SubnetBuffer.startIpLongOf(rule);
+            ranges.add(startIpLong, IpUtils.calcEndIpInSubnet(startIpLong, Ipv4SubnetBuffer.cidrOf(rule)));
+        }
+        return ranges.merge();
+    }
+
+    private static long countIps(Ipv4RangeSet ranges) {
+        long numIps = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            numIps += ranges.getEndIpLong(i) - ranges.getStartIpLong(i) + 1;
+        }
+        return numIps;
+    }
+
+    /**
+     * ranges 와 baseRanges 가 겹치는 주소 개수. ranges 의 대역마다 겹치는 base 대역만 확인한다.
+     */
+    private static long countOverlap(Ipv4RangeSet ranges, Ipv4RangeSet baseRanges) {
+        long numIps = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            long startIpLong = ranges.getStartIpLong(i);
+            long endIpLong = ranges.getEndIpLong(i);
+            for (int pos = Math.max(0, floorIndex(baseRanges, startIpLong)); pos < baseRanges.size() && baseRanges.getStartIpLong(pos) <= endIpLong; pos++) {
+                long from = Math.max(startIpLong, baseRanges.getStartIpLong(pos));
+                long to = Math.min(endIpLong, baseRanges.getEndIpLong(pos));
+                numIps += Math.max(0, to - from + 1);
+            }
+        }
+        return numIps;
+    }
+
+    private static int floorIndex(Ipv4RangeSet ranges, long ipLong) {
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ranges.getStartIpLong(mid) <= ipLong) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * 순서 없이 추가한 대역을 정렬하여 겹치거나 맞닿은 대역을 합치는 buffer.
+     * 시작 IP 를 상위 32bit, 끝 IP 를 하위 32bit 에 저장하고 부호 bit 를 뒤집어 signed 정렬이 unsigned 순서가 되도록 함
+     */
+    private static final class RangeBuffer {
+        private long[] ranges = new long[16];
+        private int size;
+
+        void add(long startIpLong, long endIpLong) {
+            if (size == ranges.length) {
+                ranges = Arrays.copyOf(ranges, size * 2);
+            }
+            ranges[size++] = (startIpLong << 32 | endIpLong) ^ Long.MIN_VALUE;
+        }
+
+        Ipv4RangeIndex merge() {
+            Arrays.sort(ranges, 0, size);
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            int numRanges = 0;
+            long lastEndIpLong = -2;
+            for (int i = 0; i < size; i++) {
+                long range = ranges[i] ^ Long.MIN_VALUE;
+                long startIpLong = range >>> 32;
+                long endIpLong = range & 0xffffffffL;
+                if (startIpLong > lastEndIpLong + 1) {
+                    starts[numRanges++] = (int) startIpLong;
+                } else if (endIpLong <= lastEndIpLong) {
+                    continue;
+                }
+                ends[numRanges - 1] = (int) endIpLong;
+                lastEndIpLong = endIpLong;
+            }
+            return Ipv4RangeIndex.of(starts, ends, numRanges);
+        }
+    }
+
+    @Override
+    public boolean contains(int ip) {
+        return added.contains(ip) || (addedRules.containsIp(ip) && !allow.contains(ip)) || (base.contains(ip) && !removed.contains(ip));
+    }
+
+    @Override
+    public void containsAll(int[] ips, boolean[] denied) {
+        base.containsAll(ips, denied);
+        for (int i = 0; i < ips.length; i++) {
+            denied[i] = added.contains(ips[i]) || (addedRules.containsIp(ips[i]) && !allow.contains(ips[i])) || (denied[i] && !removed.contains(ips[i]));
+        }
+    }
+
+    /**
+     * 추가한 규칙에 속하면 그 규칙 (포함 관계이면 큰 대역), 그 외에는 base 의 규칙.
+     * base 규칙을 삭제했지만 그 안에 포함된 규칙이 남아 있는 주소는 compaction 전까지 삭제한 규칙으로 표시될 수 있다.
+     */
+    @Override
+    public Optional<String> matchedRule(int ip) {
+        long rule = addedRules.findRule(ip);
+        if (rule != Ipv4RuleSet.NONE && !allow.contains(ip)) {
+            return Optional.of(IpUtils.longToIp(Ipv4SubnetBuffer.startIpLongOf(rule)) + "/" + Ipv4SubnetBuffer.cidrOf(rule));
+        }
+        return base.contains(ip) && !removed.contains(ip) ? base.matchedRule(ip) : Optional.empty();
+    }
+
+    public Ipv4DenyIndex getBase() {
+        return base;
+    }
+
+    /**
+     * @return base 에 반영되지 않은 추가/삭제 규칙 개수
+     */
+    public int numPendingRules() {
+        return numPendingRules;
+    }
+
+    /**
+     * @return 추가/삭제한 규칙을 반영한 차단 IP 개수
+     */
+    public long numDenyIps() {
+        return numDenyIps;
+    }
+
+    @Override
+    public int size() {
+        return base.size();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return base.memoryBytes() + added.memoryBytes() + removed.memoryBytes() + addedRules.memoryBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4OverlayIndex(base=" + base + ", added=" + (added.size() + addedRules.size()) + ", removed=" + removed.size() + ", pendingRules=" + numPendingRules + ")";
+    }
+}
@@ -0,0 +1,205 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 차단 IP 대역을 두 개의 int 배열(시작 IP, 끝 IP)로 보관하는 불변 index.
+ * IP 는 unsigned 32bit 값으로 저장하며, 대역은 시작 IP 기준으로 정렬되어 있고 서로 겹치지 않아야 한다.
+ * 대역 하나당 8 byte 만 사용하므로 TreeMap&lt;Long, Ipv4Subnet&gt; 대비 heap 사용량이 1/10 이하로 줄어든다.
+ */
+public final class Ipv4RangeIndex implements Ipv4RangeSet {
+
+    public static final Ipv4RangeIndex EMPTY = new Ipv4RangeIndex(new int[0], new int[0]);
+
+    private final int[] starts; // unsigned start IP of each range
+    private final int[] ends;   // unsigned end IP of each range
+
+    private Ipv4RangeIndex(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * 중첩이 제거된 subnet 목록으로 index 생성
+     *
+     * @param subnets 시작 IP 순서로 정렬되어 있고 서로 겹치지 않는 subnet 목록
+     * @return 생성된 index
+     */
+    public static Ipv4RangeIndex of(Collection<Ipv4Subnet> subnets) {
+        int[] starts = new int[subnets.size()];
+        int[] ends = new int[subnets.size()];
+        int i = 0;
+        for (Ipv4Subnet subnet : subnets) {
+            starts[i] = (int) subnet.getStartIpLong();
+            ends[i] = (int) subnet.getEndIpLong();
+            i++;
+        }
+        return new Ipv4RangeIndex(starts, ends);
+    }
+
+    /**
+     * 시작 IP, 끝 IP 배열의 앞 size 개 대역으로 index 생성
+     *
+     * @param starts 시작 IP 순서로 정렬되어 있고 서로 겹치지 않는 대역의 시작 IP (unsigned)
+     * @param ends   각 대역의 끝 IP (unsigned)
+     * @param size   사용할 대역 개수
+     * @return 생성된 index
+     */
+    public static Ipv4RangeIndex of(int[] starts, int[] ends, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        if (starts.length == size && ends.length == size) {
+            return new Ipv4RangeIndex(starts, ends);
+        }
+        return new Ipv4RangeIndex(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+    }
+
+    /**
+     * 시작 IP 순서로 나누어 만든 index 들을 하나로 합침. 앞 index 의 마지막 대역과 겹치거나 맞닿은 대역은 하나의 대역으로 합친다.
+     *
+     * @param parts 각 index 의 첫 대역이 앞 index 의 첫 대역보다 뒤에서 시작하도록 정렬된 index 목록
+     * @return 합쳐진 index
+     */
+    public static Ipv4RangeIndex union(Ipv4RangeIndex[] parts) {
+        int total = 0;
+        for (Ipv4RangeIndex part : parts) {
+            total += part.size();
+        }
+        int[] starts = new int[total];
+        int[] ends = new int[total];
+        int size = 0;
+        long lastEndIpLong = -2;
+        for (Ipv4RangeIndex part : parts) {
+            int pos = 0;
+            for (; pos < part.size() && part.getStartIpLong(pos) <= lastEndIpLong + 1; pos++) { // 앞 대역과 겹치거나 맞닿음
+                if (part.getEndIpLong(pos) > lastEndIpLong) {
+                    lastEndIpLong = part.getEndIpLong(pos);
+                    ends[size - 1] = part.ends[pos];
+                }
+            }
+            int length = part.size() - pos;
+            if (length > 0) {
+                System.arraycopy(part.starts, pos, starts, size, length);
+                System.arraycopy(part.ends, pos, ends, size, length);
+                size += length;
+                lastEndIpLong = Integer.toUnsignedLong(ends[size - 1]);
+            }
+        }
+        return of(starts, ends, size);
+    }
+
+    /**
+     * 차단 대역에서 허용 대역을 뺀 대역 목록. 두 목록을 한 번씩만 순회하며, 허용 대역에 걸친 차단 대역은 허용 대역 앞뒤로 잘라서 저장한다.
+     * 잘린 대역 사이에는 항상 허용 대역이 있으므로 결과도 서로 겹치거나 맞닿지 않는다.
+     *
+     * @param deny  서로 겹치지 않는 차단 대역
+     * @param allow 서로 겹치지 않는 허용 대역
+     * @return 허용 대역이 제외된 차단 대역 index
+     */
+    public static Ipv4RangeIndex subtract(Ipv4RangeSet deny, Ipv4RangeSet allow) {
+        if (allow.size() == 0 && deny instanceof Ipv4RangeIndex) {
+            return (Ipv4RangeIndex) deny;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) deny.size() + allow.size()); // 허용 대역 하나는 차단 대역을 최대 하나 더 나눔
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int size = 0;
+        int allowPos = 0;
+        for (int i = 0; i < deny.size(); i++) {
+            long startIpLong = deny.getStartIpLong(i);
+            long endIpLong = deny.getEndIpLong(i);
+            while (allowPos < allow.size() && allow.getEndIpLong(allowPos) < startIpLong) {
+                allowPos++;
+            }
+            for (int pos = allowPos; pos < allow.size() && allow.getStartIpLong(pos) <= endIpLong; pos++) {
+                if (allow.getStartIpLong(pos) > startIpLong) {
+                    starts[size] = (int) startIpLong;
+                    ends[size] = (int) (allow.getStartIpLong(pos) - 1);
+                    size++;
+                }
+                startIpLong = Math.max(startIpLong, allow.getEndIpLong(pos) + 1);
+            }
+            if (startIpLong <= endIpLong) {
+                starts[size] = (int) startIpLong;
+                ends[size] = (int) endIpLong;
+                size++;
+            }
+        }
+        return of(starts, ends, size);
+    }
+
+    @Override
+    public boolean contains(int ip) {
+        int pos = floorIndex(ip);
+        return pos >= 0 && Integer.compareUnsigned(ip, ends[pos]) <= 0;
+    }
+
+    /**
+     * 시작 IP 가 주어진 IP 보다 작거나 같은 대역 중 마지막 대역의 위치 (TreeMap.floorEntry 와 동일한 의미)
+     *
+     * @param ip unsigned 32bit IP
+     * @return 대역 위치. 해당하는 대역이 없으면 -1
+     */
+    int floorIndex(int ip) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Integer.compareUnsigned(starts[mid], ip) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    @Override
+    public int size() {
+        return starts.length;
+    }
+
+    @Override
+    public long getStartIpLong(int pos) {
+        return Integer.toUnsignedLong(starts[pos]);
+    }
+
+    @Override
+    public long getEndIpLong(int pos) {
+        return Integer.toUnsignedLong(ends[pos]);
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 8L * starts.length;
+    }
+
+    /**
+     * 같은 대역 목록이면 같은 index. 여러 목록에서 compile 결과가 같으면 하나만 보관하기 위해 사용
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Ipv4RangeIndex)) {
+            return false;
+        }
+        Ipv4RangeIndex other = (Ipv4RangeIndex) o;
+        return Arrays.equals(starts, other.starts) && Arrays.equals(ends, other.ends);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4RangeIndex(size=" + starts.length + ")";
+    }
+}
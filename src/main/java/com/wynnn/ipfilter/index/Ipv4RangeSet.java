@@ -0,0 +1,64 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.Arrays;
+
+/**
+ * 시작 IP 기준으로 정렬되어 있고 서로 겹치지 않는 차단 대역 목록
+ */
+public interface Ipv4RangeSet extends Ipv4DenyIndex {
+
+    long getStartIpLong(int pos);
+
+    long getEndIpLong(int pos);
+
+    /**
+     * IP 를 정렬한 뒤 차단 대역과 함께 한 번만 순회하여 확인.
+     * 다음 IP 가 속할 대역은 현재 위치부터 exponential search 로 찾으므로, IP 개수보다 대역이 훨씬 많아도 대역 전체를 훑지 않는다.
+     * 작은 batch 는 정렬 비용이 더 크므로 IP 마다 binary search 한다.
+     */
+    @Override
+    default void containsAll(int[] ips, boolean[] denied) {
+        if (ips.length < 1024) {
+            Ipv4DenyIndex.super.containsAll(ips, denied);
+            return;
+        }
+        long[] sorted = new long[ips.length]; // 상위 32bit 에 IP, 하위 32bit 에 요청 순서. 부호 bit 를 뒤집어 signed 정렬이 unsigned IP 순서가 되도록 함
+        for (int i = 0; i < ips.length; i++) {
+            sorted[i] = ((long) (ips[i] ^ Integer.MIN_VALUE) << 32) | i;
+        }
+        Arrays.sort(sorted);
+        int pos = 0;
+        for (long entry : sorted) {
+            long ip = Integer.toUnsignedLong((int) (entry >> 32) ^ Integer.MIN_VALUE);
+            pos = ceilingEndIndex(ip, pos);
+            denied[(int) entry] = pos < size() && getStartIpLong(pos) <= ip;
+        }
+    }
+
+    /**
+     * from 위치부터 끝 IP 가 ip 이상인 첫 대역의 위치
+     *
+     * @return 대역 위치. 해당하는 대역이 없으면 size()
+     */
+    private int ceilingEndIndex(long ip, int from) {
+        int size = size();
+        if (from >= size || getEndIpLong(from) >= ip) {
+            return from;
+        }
+        int low = from; // 끝 IP 가 ip 보다 작은 대역
+        int high = (int) Math.min(size, low + 1L);
+        for (long step = 1; high < size && getEndIpLong(high) < ip; step <<= 1) {
+            low = high;
+            high = (int) Math.min(size, low + step);
+        }
+        while (low + 1 < high) { // 끝 IP 가 ip 이상인 첫 대역은 (low, high] 범위에 있음
+            int mid = (low + high) >>> 1;
+            if (getEndIpLong(mid) < ip) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+}
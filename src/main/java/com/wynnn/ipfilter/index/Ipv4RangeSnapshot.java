@@ -0,0 +1,158 @@
+package com.wynnn.ipfilter.index;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * compile 된 차단 대역을 저장하는 binary snapshot 파일.
+ * <pre>
+ * header (64 byte, little endian)
+ *   int    magic        "IPFS"
+ *   int    version      FORMAT_VERSION
+ *   int    numRanges
+ *   int    reserved
+ *   long   numDenyIps   차단 IP 개수
+ *   long   checksum     payload 의 CRC32C
+ *   byte[32] sourceHash 차단 규칙 원본 (deny 목록, deny-file) 의 SHA-256
+ * payload
+ *   int[numRanges] 시작 IP (unsigned)
+ *   int[numRanges] 끝 IP (unsigned)
+ * </pre>
+ */
+@Getter
+@Slf4j
+public final class Ipv4RangeSnapshot {
+
+    public static final int MAGIC = 0x49504653; // "IPFS"
+    public static final int FORMAT_VERSION = 2; // 2: 맞닿은 대역을 하나로 합쳐서 저장
+    public static final int SOURCE_HASH_BYTES = 32;
+    static final int HEADER_BYTES = 64;
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final Ipv4MappedRangeIndex ranges;
+    private final long numDenyIps;
+
+    private Ipv4RangeSnapshot(Ipv4MappedRangeIndex ranges, long numDenyIps) {
+        this.ranges = ranges;
+        this.numDenyIps = numDenyIps;
+    }
+
+    /**
+     * 차단 대역을 snapshot 파일로 저장. 임시 파일에 쓴 뒤 rename 하므로, 쓰는 도중에 다른 process 가 불완전한 파일을 읽지 않는다.
+     *
+     * @param snapshotFile 저장할 파일
+     * @param ranges       중첩이 제거된 차단 대역
+     * @param numDenyIps   차단 IP 개수
+     * @param sourceHash   차단 규칙 원본의 SHA-256
+     * @throws IOException 파일을 쓸 수 없는 경우
+     */
+    public static void write(Path snapshotFile, Ipv4RangeSet ranges, long numDenyIps, byte[] sourceHash) throws IOException {
+        if (sourceHash.length != SOURCE_HASH_BYTES) {
+            throw new IllegalArgumentException("sourceHash must be " + SOURCE_HASH_BYTES + " bytes");
+        }
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C checksum = new CRC32C();
+            channel.position(HEADER_BYTES);
+            for (int column = 0; column < 2; column++) { // starts, then ends
+                for (int i = 0; i < ranges.size(); i++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer, checksum);
+                    }
+                    buffer.putInt((int) (column == 0 ? ranges.getStartIpLong(i) : ranges.getEndIpLong(i)));
+                }
+            }
+            flush(channel, buffer, checksum);
+
+            buffer.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putInt(ranges.size())
+                    .putInt(0)
+                    .putLong(numDenyIps)
+                    .putLong(checksum.getValue())
+                    .put(sourceHash)
+                    .flip();
+            channel.write(buffer, 0);
+            channel.force(true);
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32C checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * snapshot 파일을 memory-map 하여 읽음.
+     * 파일이 없거나, 형식/version/checksum 이 맞지 않거나, 원본이 변경된 경우 (sourceHash 불일치) empty 를 반환
+     *
+     * @param snapshotFile 읽을 파일
+     * @param sourceHash   현재 차단 규칙 원본의 SHA-256
+     * @return 유효한 snapshot
+     * @throws IOException 파일을 읽을 수 없는 경우
+     */
+    public static Optional<Ipv4RangeSnapshot> read(Path snapshotFile, byte[] sourceHash) throws IOException {
+        if (!Files.isRegularFile(snapshotFile)) {
+            log.info("> snapshot not found={}", snapshotFile);
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                log.warn("> invalid snapshot={}, size={}", snapshotFile, fileSize);
+                return Optional.empty();
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize); // mapping 은 channel 을 닫아도 유지됨
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            int magic = mapped.getInt(0);
+            int version = mapped.getInt(4);
+            int numRanges = mapped.getInt(8);
+            long numDenyIps = mapped.getLong(16);
+            long checksum = mapped.getLong(24);
+            byte[] storedHash = new byte[SOURCE_HASH_BYTES];
+            mapped.position(32);
+            mapped.get(storedHash);
+            if (magic != MAGIC || version != FORMAT_VERSION || numRanges < 0 || fileSize != HEADER_BYTES + 8L * numRanges) {
+                log.warn("> invalid snapshot={}, magic={}, version={}, ranges={}, size={}", snapshotFile, magic, version, numRanges, fileSize);
+                return Optional.empty();
+            }
+            if (!Arrays.equals(storedHash, sourceHash)) {
+                log.info("> deny rules are changed after snapshot={}", snapshotFile);
+                return Optional.empty();
+            }
+            mapped.position(HEADER_BYTES);
+            ByteBuffer payload = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C actualChecksum = new CRC32C();
+            actualChecksum.update(payload.duplicate());
+            if (actualChecksum.getValue() != checksum) {
+                log.warn("> checksum mismatch of snapshot={}", snapshotFile);
+                return Optional.empty();
+            }
+            IntBuffer values = payload.asIntBuffer();
+            IntBuffer starts = values.duplicate().position(0).limit(numRanges).slice();
+            IntBuffer ends = values.duplicate().position(numRanges).limit(2 * numRanges).slice();
+            return Optional.of(new Ipv4RangeSnapshot(new Ipv4MappedRangeIndex(starts, ends, numRanges), numDenyIps));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * client IP 별 요청 개수를 sliding window 로 세는 고정 크기 counter.
+ * 항목 하나를 long 하나 (IP, 보고 여부, window, 이전 window 개수, 현재 window 개수) 로 저장하고 CAS 로 갱신하므로 객체 생성과 lock 없이 여러 thread 에서 센다.
+ * 항목은 IP 의 hash 로 정해지는 WAYS 개 slot (stripe) 중 하나에 저장되어, 서로 다른 IP 는 대부분 다른 cache line 에서 경쟁 없이 갱신된다.
+ * <p>
+ * 요청률은 이전 window 개수를 현재 window 에서 지난 시간만큼 줄여 현재 window 개수에 더한 값으로 추정한다 (sliding window counter).
+ * slot 이 모두 차 있으면 추정 요청 수가 가장 적은 항목을 교체하므로, 출발지 IP 를 무작위로 바꾸는 요청이 많아도 메모리는 capacity 로 고정되고
+ * 요청을 많이 보내는 IP 는 밀려나지 않는다.
+ * window 는 하위 TAG_BITS bit 만 저장하므로 2^TAG_BITS 개 window 동안 요청이 없던 IP 는 드물게 이전 개수가 남아 있을 수 있다.
+ */
+public final class Ipv4RateCounter {
+
+    public static final Ipv4RateCounter DISABLED = new Ipv4RateCounter();
+    public static final int MAX_THRESHOLD = (1 << 13) - 1; // window 별 개수는 13bit 에서 더 늘어나지 않음
+    static final int WAYS = 4;
+
+    private static final int COUNT_BITS = 13;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int PREV_SHIFT = COUNT_BITS;
+    private static final int TAG_SHIFT = COUNT_BITS * 2;
+    private static final int TAG_BITS = 5;
+    private static final long TAG_MASK = (1L << TAG_BITS) - 1;
+    private static final long REPORTED = 1L << (TAG_SHIFT + TAG_BITS);
+    private static final int IP_SHIFT = 32;
+    private static final int MAX_RETRIES = 4; // 같은 항목을 동시에 갱신하는 경우 재시도 횟수. 넘으면 이번 요청은 세지 않음
+
+    private final AtomicLongArray entries;
+    private final int setShift;
+    private final long windowMillis;
+    private final int threshold;
+
+    private Ipv4RateCounter() {
+        this.entries = new AtomicLongArray(0);
+        this.setShift = 32;
+        this.windowMillis = 1;
+        this.threshold = MAX_THRESHOLD;
+    }
+
+    private Ipv4RateCounter(int numSets, long windowMillis, int threshold) {
+        this.entries = new AtomicLongArray(numSets * WAYS);
+        this.setShift = 32 - Integer.numberOfTrailingZeros(numSets);
+        this.windowMillis = windowMillis;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param capacity     추적할 최대 IP 개수. WAYS 의 배수인 2의 거듭제곱으로 올림 (항목당 8 byte)
+     * @param windowMillis 요청 수를 세는 window 길이
+     * @param threshold    window 동안 이 개수 이상 요청하면 한 번 보고 (1 ~ MAX_THRESHOLD)
+     * @return 생성된 counter. capacity 가 0 이하이면 DISABLED
+     * @throws IllegalArgumentException windowMillis 가 0 이하이거나 threshold 가 범위를 벗어난 경우
+     */
+    public static Ipv4RateCounter of(int capacity, long windowMillis, int threshold) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive=" + windowMillis);
+        }
+        if (threshold < 1 || threshold > MAX_THRESHOLD) {
+            throw new IllegalArgumentException("threshold must be between 1 and " + MAX_THRESHOLD + "=" + threshold);
+        }
+        if (capacity <= 0) {
+            return DISABLED;
+        }
+        int minSets = Math.max(1, (Math.min(capacity, 1 << 30) + WAYS - 1) / WAYS);
+        int numSets = Integer.highestOneBit(minSets * 2 - 1); // 2의 거듭제곱으로 올림
+        return new Ipv4RateCounter(numSets, windowMillis, threshold);
+    }
+
+    public boolean isEnabled() {
+        return entries.length() > 0;
+    }
+
+    /**
+     * 요청 하나를 세고, 추정 요청 수가 threshold 에 처음 도달했는지 확인. 보고 여부는 window 가 바뀌면 초기화된다.
+     *
+     * @param ip        unsigned 32bit IP
+     * @param nowMillis 요청 시간 (epoch millis)
+     * @return 이번 요청으로 threshold 에 도달했으면 true. 같은 window 에서는 한 번만 true
+     */
+    public boolean increment(int ip, long nowMillis) {
+        if (!isEnabled()) {
+            return false;
+        }
+        long window = nowMillis / windowMillis;
+        long remainingMillis = windowMillis - nowMillis % windowMillis;
+        int base = setOf(ip);
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            int victim = 0;
+            long victimCount = Long.MAX_VALUE;
+            int way = 0;
+            long entry = 0;
+            for (; way < WAYS; way++) {
+                entry = entries.get(base + way);
+                if (entry != 0 && ipOf(entry) == ip) {
+                    break;
+                }
+                long count = estimate(entry, window, remainingMillis);
+                if (count < victimCount) {
+                    victim = way;
+                    victimCount = count;
+                }
+            }
+            if (way == WAYS) { // 처음 세는 IP
+                way = victim;
+                entry = entries.get(base + way);
+            }
+            long prev = 0;
+            long curr = 0;
+            boolean reported = false;
+            if (entry != 0 && ipOf(entry) == ip) {
+                long tag = (entry >>> TAG_SHIFT) & TAG_MASK;
+                if (tag == (window & TAG_MASK)) {
+                    prev = (entry >>> PREV_SHIFT) & COUNT_MASK;
+                    curr = entry & COUNT_MASK;
+                    reported = (entry & REPORTED) != 0;
+                } else if (tag == ((window - 1) & TAG_MASK)) {
+                    prev = entry & COUNT_MASK;
+                }
+            }
+            curr = Math.min(curr + 1, COUNT_MASK);
+            boolean crossed = !reported && prev * remainingMillis / windowMillis + curr >= threshold;
+            long next = Integer.toUnsignedLong(ip) << IP_SHIFT | (reported || crossed ? REPORTED : 0)
+                    | (window & TAG_MASK) << TAG_SHIFT | prev << PREV_SHIFT | curr;
+            if (entries.compareAndSet(base + way, entry, next)) {
+                return crossed;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ip        unsigned 32bit IP
+     * @param nowMillis 현재 시간 (epoch millis)
+     * @return 추정 요청 수. 추적하지 않는 IP 이면 0
+     */
+    public long estimate(int ip, long nowMillis) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        int base = setOf(ip);
+        for (int way = 0; way < WAYS; way++) {
+            long entry = entries.get(base + way);
+            if (entry != 0 && ipOf(entry) == ip) {
+                return estimate(entry, nowMillis / windowMillis, windowMillis - nowMillis % windowMillis);
+            }
+        }
+        return 0;
+    }
+
+    private long estimate(long entry, long window, long remainingMillis) {
+        long tag = (entry >>> TAG_SHIFT) & TAG_MASK;
+        if (entry == 0) {
+            return 0;
+        } else if (tag == (window & TAG_MASK)) {
+            return ((entry >>> PREV_SHIFT) & COUNT_MASK) * remainingMillis / windowMillis + (entry & COUNT_MASK);
+        } else if (tag == ((window - 1) & TAG_MASK)) {
+            return (entry & COUNT_MASK) * remainingMillis / windowMillis;
+        }
+        return 0;
+    }
+
+    private static int ipOf(long entry) {
+        return (int) (entry >>> IP_SHIFT);
+    }
+
+    private int setOf(int ip) {
+        return (int) (Integer.toUnsignedLong(ip * 0x9E3779B9) >>> setShift) * WAYS; // Fibonacci hashing. 연속된 IP 도 여러 set 에 흩어짐
+    }
+
+    public int capacity() {
+        return entries.length();
+    }
+
+    public long memoryBytes() {
+        return 8L * entries.length();
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4RateCounter(capacity=" + entries.length() + ", window=" + windowMillis + "ms, threshold=" + threshold + ")";
+    }
+}
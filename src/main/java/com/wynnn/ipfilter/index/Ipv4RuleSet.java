@@ -0,0 +1,222 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * 차단 규칙 (Ipv4SubnetBuffer.key) 을 객체 없이 long 하나로 보관하는 open addressing hash set.
+ * 규칙은 한 thread 에서만 변경하고 (호출하는 쪽에서 동기화), 조회는 lock 없이 여러 thread 에서 한다.
+ * <ul>
+ *   <li>삭제한 자리는 DELETED 로 남겨 동시에 탐색 중인 조회가 끊기지 않도록 하고, table 을 늘리거나 정리할 때는 새 table 을 다 채운 뒤 reference 하나로 교체</li>
+ *   <li>규칙에 사용된 prefix 길이를 bit mask 로 보관하여 IP 조회는 사용된 길이만 확인. auto ban 처럼 길이가 하나이면 hash 조회 한 번으로 끝난다</li>
+ * </ul>
+ * 추가, 삭제, 조회 모두 규칙 개수와 관계없이 상수 시간이다.
+ */
+public final class Ipv4RuleSet {
+
+    public static final long NONE = -1; // 규칙이 없음. key(0.0.0.0, 0) 이 0 이므로 음수를 사용
+    private static final long EMPTY = -1;
+    private static final long DELETED = -2;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile AtomicLongArray keys = newTable(MIN_CAPACITY);
+    private volatile long cidrMask; // 규칙에 사용된 prefix 길이. bit n 이 1 이면 /n 규칙이 있음
+    private final int[] numRulesByCidr = new int[33];
+    private int size;
+    private int used; // 규칙과 DELETED 가 차지한 자리. capacity 의 절반을 넘지 않음
+
+    private static AtomicLongArray newTable(int capacity) {
+        AtomicLongArray table = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            table.lazySet(i, EMPTY);
+        }
+        return table;
+    }
+
+    /**
+     * @return 새로 추가했으면 true, 이미 있으면 false
+     */
+    public boolean add(long rule) {
+        AtomicLongArray table = keys;
+        int mask = table.length() - 1;
+        int free = -1;
+        for (int slot = slotOf(rule, mask); ; slot = (slot + 1) & mask) {
+            long key = table.get(slot);
+            if (key == rule) {
+                return false;
+            } else if (key == DELETED && free < 0) {
+                free = slot;
+            } else if (key == EMPTY) {
+                if (free < 0) {
+                    free = slot;
+                    used++;
+                }
+                break;
+            }
+        }
+        table.set(free, rule);
+        size++;
+        int cidr = Ipv4SubnetBuffer.cidrOf(rule);
+        if (numRulesByCidr[cidr]++ == 0) {
+            cidrMask |= 1L << cidr;
+        }
+        if (used * 2 > table.length()) {
+            rehash(Math.max(MIN_CAPACITY, Integer.highestOneBit(size * 8 - 1))); // 규칙 개수의 4배 이상인 2의 거듭제곱
+        }
+        return true;
+    }
+
+    /**
+     * @return 삭제했으면 true, 없으면 false
+     */
+    public boolean remove(long rule) {
+        AtomicLongArray table = keys;
+        int slot = indexOf(table, rule);
+        if (slot < 0) {
+            return false;
+        }
+        table.set(slot, DELETED);
+        size--;
+        int cidr = Ipv4SubnetBuffer.cidrOf(rule);
+        if (--numRulesByCidr[cidr] == 0) {
+            cidrMask &= ~(1L << cidr);
+        }
+        return true;
+    }
+
+    public boolean contains(long rule) {
+        return indexOf(keys, rule) >= 0;
+    }
+
+    /**
+     * @param ip unsigned 32bit IP
+     * @return ip 를 포함하는 규칙이 있으면 true. 사용된 prefix 길이마다 hash 조회 한 번
+     */
+    public boolean containsIp(int ip) {
+        return findRule(ip) != NONE;
+    }
+
+    /**
+     * @param ip unsigned 32bit IP
+     * @return ip 를 포함하는 규칙 중 가장 큰 대역. 없으면 NONE
+     */
+    public long findRule(int ip) {
+        long remaining = cidrMask;
+        if (remaining == 0) {
+            return NONE;
+        }
+        AtomicLongArray table = keys;
+        long ipLong = Integer.toUnsignedLong(ip);
+        while (remaining != 0) {
+            int cidr = Long.numberOfTrailingZeros(remaining);
+            remaining &= remaining - 1;
+            long rule = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(ipLong, cidr), cidr);
+            if (indexOf(table, rule) >= 0) {
+                return rule;
+            }
+        }
+        return NONE;
+    }
+
+    private static int indexOf(AtomicLongArray table, long rule) {
+        int mask = table.length() - 1;
+        for (int slot = slotOf(rule, mask); ; slot = (slot + 1) & mask) {
+            long key = table.get(slot);
+            if (key == rule) {
+                return slot;
+            } else if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private static int slotOf(long rule, int mask) {
+        return (int) ((rule * 0x9E3779B97F4A7C15L) >>> 32) & mask; // Fibonacci hashing. 연속된 대역도 여러 자리에 흩어짐
+    }
+
+    /**
+     * 규칙만 새 table 로 옮겨 DELETED 를 정리한 뒤 교체. 교체 전에 조회를 시작한 thread 는 이전 table 을 끝까지 본다.
+     */
+    private void rehash(int capacity) {
+        AtomicLongArray table = keys;
+        AtomicLongArray next = newTable(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < table.length(); i++) {
+            long key = table.get(i);
+            if (key >= 0) {
+                int slot = slotOf(key, mask);
+                while (next.get(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                next.lazySet(slot, key);
+            }
+        }
+        used = size;
+        keys = next;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        AtomicLongArray table = keys;
+        for (int i = 0; i < table.length(); i++) {
+            long key = table.get(i);
+            if (key >= 0) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    public long[] toArray() {
+        long[] rules = new long[size];
+        int[] numCollected = new int[1];
+        forEach(rule -> rules[numCollected[0]++] = rule);
+        return rules;
+    }
+
+    /**
+     * table 을 그대로 복사. hash 를 다시 계산하지 않으므로 규칙 개수가 아닌 capacity 에 비례하는 배열 복사이다
+     */
+    public Ipv4RuleSet copy() {
+        AtomicLongArray table = keys;
+        long[] copied = new long[table.length()];
+        for (int i = 0; i < copied.length; i++) {
+            copied[i] = table.get(i);
+        }
+        Ipv4RuleSet copy = new Ipv4RuleSet();
+        copy.keys = new AtomicLongArray(copied);
+        copy.cidrMask = cidrMask;
+        System.arraycopy(numRulesByCidr, 0, copy.numRulesByCidr, 0, numRulesByCidr.length);
+        copy.size = size;
+        copy.used = used;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 규칙에 사용된 prefix 길이. bit n 이 1 이면 /n 규칙이 있음
+     */
+    public long cidrMask() {
+        return cidrMask;
+    }
+
+    public int capacity() {
+        return keys.length();
+    }
+
+    public long memoryBytes() {
+        return 8L * keys.length();
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4RuleSet(size=" + size + ", capacity=" + keys.length() + ")";
+    }
+}
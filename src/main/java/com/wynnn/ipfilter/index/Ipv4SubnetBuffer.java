@@ -0,0 +1,103 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.Arrays;
+
+/**
+ * compile 중인 subnet 을 객체 생성 없이 long 하나로 보관하는 buffer.
+ * 상위 bit 에 subnet 의 시작 IP (unsigned 32bit), 하위 6bit 에 CIDR 를 저장하므로
+ * 값 그대로 정렬하면 Ipv4Subnet 과 같은 순서 (시작 IP 가 빠른 순서, 같으면 큰 대역 먼저) 가 된다.
+ */
+public final class Ipv4SubnetBuffer {
+
+    private static final int CIDR_BITS = 6;
+    private static final long CIDR_MASK = (1L << CIDR_BITS) - 1;
+
+    private long[] subnets;
+    private int size;
+
+    public Ipv4SubnetBuffer() {
+        this(1024);
+    }
+
+    public Ipv4SubnetBuffer(int initialCapacity) {
+        this.subnets = new long[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * @param startIpLong subnet 의 시작 IP
+     * @param cidr        subnet mask bit 수 (0 ~ 32)
+     */
+    public void add(long startIpLong, int cidr) {
+        if (size == subnets.length) {
+            subnets = Arrays.copyOf(subnets, (int) Math.min(Integer.MAX_VALUE - 8, subnets.length * 2L));
+        }
+        subnets[size++] = (startIpLong << CIDR_BITS) | cidr;
+    }
+
+    /**
+     * 다른 buffer 의 subnet 을 모두 추가. 나누어 parsing 한 결과를 합칠 때 사용
+     */
+    public Ipv4SubnetBuffer addAll(Ipv4SubnetBuffer other) {
+        if (size + other.size > subnets.length) {
+            subnets = Arrays.copyOf(subnets, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(subnets.length * 2L, (long) size + other.size)));
+        }
+        System.arraycopy(other.subnets, 0, subnets, size, other.size);
+        size += other.size;
+        return this;
+    }
+
+    /**
+     * 값 순서로 정렬. 규칙이 많으면 여러 core 에서 나누어 정렬한다 (Arrays.parallelSort)
+     */
+    public void sort() {
+        Arrays.parallelSort(subnets, 0, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * subnet 을 buffer 에 저장하는 값. 규칙을 값 하나로 비교하거나 Set 에 보관할 때 사용
+     */
+    public static long key(long startIpLong, int cidr) {
+        return (startIpLong << CIDR_BITS) | cidr;
+    }
+
+    public static long startIpLongOf(long key) {
+        return key >>> CIDR_BITS;
+    }
+
+    public static int cidrOf(long key) {
+        return (int) (key & CIDR_MASK);
+    }
+
+    public long getKey(int pos) {
+        return subnets[pos];
+    }
+
+    /**
+     * 정렬된 buffer 에 subnet 이 있는지 확인
+     */
+    public boolean contains(long key) {
+        return Arrays.binarySearch(subnets, 0, size, key) >= 0;
+    }
+
+    /**
+     * 정렬된 buffer 에서 시작 IP 가 startIpLong 이상인 첫 subnet 의 위치
+     *
+     * @return subnet 위치. 없으면 size()
+     */
+    public int ceilingIndex(long startIpLong) {
+        int pos = Arrays.binarySearch(subnets, 0, size, key(startIpLong, 0));
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    public long getStartIpLong(int pos) {
+        return subnets[pos] >>> CIDR_BITS;
+    }
+
+    public int getCidr(int pos) {
+        return (int) (subnets[pos] & CIDR_MASK);
+    }
+}
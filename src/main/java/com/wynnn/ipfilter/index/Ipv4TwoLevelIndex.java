@@ -0,0 +1,150 @@
+package com.wynnn.ipfilter.index;
+
+/**
+ * 차단 대역을 IP 상위 16bit 로 나눈 bucket 과, bucket 안의 static B-tree 로 찾는 index.
+ * <ul>
+ *   <li>1단계 : bucket (상위 16bit) 마다 B-tree 위치와, 이전 bucket 에서 시작하여 이 bucket 까지 이어지는 대역이 덮는 주소 개수를 long 하나에 저장</li>
+ *   <li>2단계 : bucket 안에서 시작하는 대역의 시작 IP 하위 16bit 를 BLOCK_KEYS 개 (64 byte) 단위 block 으로 묶은 B-tree (S-tree) 로 저장.
+ *       block 하나에서 다음 block 을 정하므로 bucket 에 대역이 수천 개 있어도 2~3 block 만 읽는다</li>
+ * </ul>
+ * 시작 IP 와 끝 IP 의 상위 16bit 는 bucket 에서 알 수 있으므로 대역 하나당 하위 16bit 만 (key 는 block 정렬을 위해 int, 끝 IP 는 char) 저장한다.
+ * 정렬된 배열의 binary search 는 대역이 많으면 조회마다 20 개 이상의 cache line 을 읽지만,
+ * 이 index 는 bucket table, B-tree block 2~3 개, 끝 IP 만 읽는다.
+ */
+public final class Ipv4TwoLevelIndex implements Ipv4DenyIndex {
+
+    static final int BLOCK_KEYS = 16; // int 16개 = 64 byte
+    private static final int NUM_BUCKETS = 1 << 16;
+    private static final int PADDING_KEY = 1 << 16; // 하위 16bit 보다 항상 큼
+    private static final long COVERED_MASK = (1L << 17) - 1;
+
+    private final long[] buckets; // 상위 32bit: bucket 의 첫 key 위치, 하위 17bit: 이전 bucket 에서 이어지는 대역이 덮는 주소 개수 (0 ~ 65536)
+    private final int[] keys;     // bucket 별 B-tree. 대역 시작 IP 의 하위 16bit, 빈 자리는 PADDING_KEY
+    private final char[] ends;    // keys 와 같은 위치에 대역 끝 IP 의 하위 16bit. 다음 bucket 까지 이어지면 0xffff
+    private final int size;
+
+    private Ipv4TwoLevelIndex(long[] buckets, int[] keys, char[] ends, int size) {
+        this.buckets = buckets;
+        this.keys = keys;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    /**
+     * 정렬된 차단 대역으로 index 생성
+     *
+     * @param ranges 중첩이 제거된 차단 대역
+     * @return 생성된 index
+     */
+    public static Ipv4TwoLevelIndex of(Ipv4RangeSet ranges) {
+        int[] firstRange = new int[NUM_BUCKETS + 1]; // bucket 에서 시작하는 첫 대역의 위치
+        long[] buckets = new long[NUM_BUCKETS + 1];
+        for (int i = 0, bucket = 0; bucket <= NUM_BUCKETS; bucket++) {
+            while (i < ranges.size() && ranges.getStartIpLong(i) >>> 16 < bucket) {
+                i++;
+            }
+            firstRange[bucket] = i;
+        }
+        long numKeys = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            buckets[bucket] = numKeys << 32;
+            numKeys += blocksOf(firstRange[bucket + 1] - firstRange[bucket]) * (long) BLOCK_KEYS;
+        }
+        if (numKeys > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many ranges=" + ranges.size());
+        }
+        buckets[NUM_BUCKETS] = numKeys << 32;
+        for (int i = 0; i < ranges.size(); i++) { // 여러 bucket 에 걸친 대역은 다음 bucket 들에 덮는 주소 개수를 기록
+            long startIpLong = ranges.getStartIpLong(i);
+            long endIpLong = ranges.getEndIpLong(i);
+            for (long bucket = (startIpLong >>> 16) + 1; bucket <= endIpLong >>> 16; bucket++) {
+                long covered = bucket < endIpLong >>> 16 ? NUM_BUCKETS : (endIpLong & 0xffff) + 1;
+                buckets[(int) bucket] |= covered;
+            }
+        }
+
+        int[] keys = new int[(int) numKeys];
+        char[] ends = new char[(int) numKeys];
+        int[] cursor = new int[1];
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            int from = firstRange[bucket];
+            int numRanges = firstRange[bucket + 1] - from;
+            if (numRanges == 0) {
+                continue;
+            }
+            cursor[0] = from;
+            build(ranges, from + numRanges, bucket, keys, ends, (int) (buckets[bucket] >>> 32), blocksOf(numRanges), 0, cursor);
+        }
+        return new Ipv4TwoLevelIndex(buckets, keys, ends, ranges.size());
+    }
+
+    private static int blocksOf(int numRanges) {
+        return (numRanges + BLOCK_KEYS - 1) / BLOCK_KEYS;
+    }
+
+    /**
+     * block 을 in-order 로 순회하며 정렬된 대역을 차례로 채움. block k 의 i 번째 자식은 k * (BLOCK_KEYS + 1) + i + 1 번째 block
+     */
+    private static void build(Ipv4RangeSet ranges, int to, int bucket, int[] keys, char[] ends, int base, int numBlocks, int block, int[] cursor) {
+        if (block >= numBlocks) {
+            return;
+        }
+        for (int i = 0; i < BLOCK_KEYS; i++) {
+            build(ranges, to, bucket, keys, ends, base, numBlocks, child(block, i), cursor);
+            int pos = base + block * BLOCK_KEYS + i;
+            if (cursor[0] < to) {
+                keys[pos] = (int) (ranges.getStartIpLong(cursor[0]) & 0xffff);
+                long endIpLong = ranges.getEndIpLong(cursor[0]);
+                ends[pos] = (char) (endIpLong >>> 16 > bucket ? 0xffff : endIpLong & 0xffff);
+                cursor[0]++;
+            } else {
+                keys[pos] = PADDING_KEY;
+            }
+        }
+        build(ranges, to, bucket, keys, ends, base, numBlocks, child(block, BLOCK_KEYS), cursor);
+    }
+
+    private static int child(int block, int i) {
+        return block * (BLOCK_KEYS + 1) + i + 1;
+    }
+
+    @Override
+    public boolean contains(int ip) {
+        int bucket = ip >>> 16;
+        int low = ip & 0xffff;
+        long entry = buckets[bucket];
+        if (low < (entry & COVERED_MASK)) { // 이전 bucket 에서 시작한 대역에 속함
+            return true;
+        }
+        int base = (int) (entry >>> 32);
+        int numBlocks = ((int) (buckets[bucket + 1] >>> 32) - base) / BLOCK_KEYS;
+        int found = -1; // 시작 IP 가 ip 보다 작거나 같은 마지막 대역의 위치. 더 깊은 block 에서 찾은 대역이 ip 에 더 가깝다
+        for (int block = 0; block < numBlocks; ) {
+            int offset = base + block * BLOCK_KEYS;
+            int i = 0;
+            while (i < BLOCK_KEYS && keys[offset + i] <= low) {
+                i++;
+            }
+            if (i > 0) {
+                found = offset + i - 1;
+            }
+            block = child(block, i);
+        }
+        return found >= 0 && low <= ends[found];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 8L * buckets.length + 4L * keys.length + 2L * ends.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv4TwoLevelIndex(size=" + size + ")";
+    }
+}
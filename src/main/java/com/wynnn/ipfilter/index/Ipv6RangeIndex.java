@@ -0,0 +1,156 @@
+package com.wynnn.ipfilter.index;
+
+import java.util.Arrays;
+
+/**
+ * IPv6 차단 대역을 정렬된 배열에 저장하고 binary search 로 조회하는 index.
+ * 대부분의 규칙은 /64 이하 prefix (ex. /48, /56, /64) 이므로, 하위 64bit 전체를 덮는 대역은 상위 64bit 만 저장하고 (대역당 16 byte)
+ * 그 외의 대역만 128bit 전체를 저장한다 (대역당 32 byte). 두 배열의 대역은 서로 겹치지 않는다.
+ */
+public final class Ipv6RangeIndex {
+
+    public static final Ipv6RangeIndex EMPTY = new Ipv6RangeIndex(new long[0], new long[0], new long[0], new long[0], new long[0], new long[0]);
+
+    private final long[] prefixStarts; // /64 단위 대역의 시작 주소 상위 64bit (unsigned)
+    private final long[] prefixEnds;   // /64 단위 대역의 끝 주소 상위 64bit
+    private final long[] startHis;     // 그 외 대역의 시작 주소
+    private final long[] startLos;
+    private final long[] endHis;       // 그 외 대역의 끝 주소
+    private final long[] endLos;
+
+    private Ipv6RangeIndex(long[] prefixStarts, long[] prefixEnds, long[] startHis, long[] startLos, long[] endHis, long[] endLos) {
+        this.prefixStarts = prefixStarts;
+        this.prefixEnds = prefixEnds;
+        this.startHis = startHis;
+        this.startLos = startLos;
+        this.endHis = endHis;
+        this.endLos = endLos;
+    }
+
+    /**
+     * subnet 을 정렬하고 겹치거나 맞닿은 대역을 합쳐서 index 생성.
+     * 시작 주소와 끝 주소를 각각 정렬했을 때, i+1 번째 시작 주소가 i 번째 끝 주소 + 1 보다 크면 그 사이에는 어느 subnet 도 없으므로 대역이 끝난다.
+     * buffer 의 정렬 순서가 바뀌므로 이후에는 buffer 를 다시 사용하지 않는다.
+     *
+     * @param subnets 차단 subnet
+     * @return 생성된 index
+     */
+    public static Ipv6RangeIndex of(Ipv6SubnetBuffer subnets) {
+        subnets.sortBounds();
+        int size = subnets.size();
+        int capacity = Math.min(size, 1024); // 합쳐진 후의 대역 개수는 알 수 없으므로 필요할 때 늘림
+        long[] prefixStarts = new long[capacity];
+        long[] prefixEnds = new long[capacity];
+        long[] startHis = new long[capacity];
+        long[] startLos = new long[capacity];
+        long[] endHis = new long[capacity];
+        long[] endLos = new long[capacity];
+        int numPrefixes = 0;
+        int numRanges = 0;
+        int first = 0; // 현재 대역의 첫 시작 주소 위치
+        for (int i = 0; i < size; i++) {
+            long endHi = subnets.getEndHi(i);
+            long endLo = subnets.getEndLo(i);
+            if (i + 1 < size && !isAfterGap(endHi, endLo, subnets.getStartHi(i + 1), subnets.getStartLo(i + 1))) {
+                continue;
+            }
+            long startHi = subnets.getStartHi(first);
+            long startLo = subnets.getStartLo(first);
+            if (startLo == 0 && endLo == -1L) {
+                if (numPrefixes == prefixStarts.length) {
+                    prefixStarts = Arrays.copyOf(prefixStarts, Math.min(size, numPrefixes * 2));
+                    prefixEnds = Arrays.copyOf(prefixEnds, prefixStarts.length);
+                }
+                prefixStarts[numPrefixes] = startHi;
+                prefixEnds[numPrefixes] = endHi;
+                numPrefixes++;
+            } else {
+                if (numRanges == startHis.length) {
+                    int grown = Math.min(size, numRanges * 2);
+                    startHis = Arrays.copyOf(startHis, grown);
+                    startLos = Arrays.copyOf(startLos, grown);
+                    endHis = Arrays.copyOf(endHis, grown);
+                    endLos = Arrays.copyOf(endLos, grown);
+                }
+                startHis[numRanges] = startHi;
+                startLos[numRanges] = startLo;
+                endHis[numRanges] = endHi;
+                endLos[numRanges] = endLo;
+                numRanges++;
+            }
+            first = i + 1;
+        }
+        return new Ipv6RangeIndex(Arrays.copyOf(prefixStarts, numPrefixes), Arrays.copyOf(prefixEnds, numPrefixes),
+                Arrays.copyOf(startHis, numRanges), Arrays.copyOf(startLos, numRanges),
+                Arrays.copyOf(endHis, numRanges), Arrays.copyOf(endLos, numRanges));
+    }
+
+    /**
+     * @return (startHi, startLo) 가 (endHi, endLo) + 1 보다 크면 true
+     */
+    private static boolean isAfterGap(long endHi, long endLo, long startHi, long startLo) {
+        if (Ipv6SubnetBuffer.compare(startHi, startLo, endHi, endLo) <= 0) {
+            return false;
+        }
+        boolean adjacent = endLo == -1L ? startLo == 0 && startHi == endHi + 1 : startHi == endHi && startLo == endLo + 1;
+        return !adjacent;
+    }
+
+    /**
+     * @param hi 조회할 주소의 상위 64bit
+     * @param lo 조회할 주소의 하위 64bit
+     * @return 차단 대역에 포함되면 true
+     */
+    public boolean contains(long hi, long lo) {
+        int pos = floorIndex(prefixStarts, hi);
+        if (pos >= 0 && Long.compareUnsigned(hi, prefixEnds[pos]) <= 0) {
+            return true;
+        }
+        pos = floorIndex(hi, lo);
+        return pos >= 0 && Ipv6SubnetBuffer.compare(hi, lo, endHis[pos], endLos[pos]) <= 0;
+    }
+
+    private static int floorIndex(long[] starts, long value) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(starts[mid], value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private int floorIndex(long hi, long lo) {
+        int low = 0;
+        int high = startHis.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Ipv6SubnetBuffer.compare(startHis[mid], startLos[mid], hi, lo) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return 합쳐진 대역 개수
+     */
+    public int size() {
+        return prefixStarts.length + startHis.length;
+    }
+
+    public long memoryBytes() {
+        return 16L * prefixStarts.length + 32L * startHis.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Ipv6RangeIndex(prefixes=" + prefixStarts.length + ", ranges=" + startHis.length + ")";
+    }
+}
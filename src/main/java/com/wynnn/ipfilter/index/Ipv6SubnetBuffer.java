@@ -0,0 +1,128 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+
+import java.util.Arrays;
+
+/**
+ * compile 중인 IPv6 subnet 을 객체 생성 없이 보관하는 buffer.
+ * subnet 마다 시작 주소와 끝 주소를 (상위 64bit, 하위 64bit) 쌍으로 저장한다.
+ * 겹치는 대역을 합칠 때는 시작 주소 목록과 끝 주소 목록을 각각 정렬하면 충분하므로 (Ipv6RangeIndex.of) subnet 단위로 묶어서 정렬하지 않는다.
+ */
+public final class Ipv6SubnetBuffer {
+
+    private long[] startHis;
+    private long[] startLos;
+    private long[] endHis;
+    private long[] endLos;
+    private int size;
+
+    public Ipv6SubnetBuffer() {
+        this(1024);
+    }
+
+    public Ipv6SubnetBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        startHis = new long[capacity];
+        startLos = new long[capacity];
+        endHis = new long[capacity];
+        endLos = new long[capacity];
+    }
+
+    /**
+     * @param startHi      subnet 시작 주소의 상위 64bit (prefix 밖의 bit 는 0)
+     * @param startLo      subnet 시작 주소의 하위 64bit
+     * @param prefixLength prefix 길이 (0 ~ 128)
+     */
+    public void add(long startHi, long startLo, int prefixLength) {
+        if (size == startHis.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, startHis.length * 2L);
+            startHis = Arrays.copyOf(startHis, capacity);
+            startLos = Arrays.copyOf(startLos, capacity);
+            endHis = Arrays.copyOf(endHis, capacity);
+            endLos = Arrays.copyOf(endLos, capacity);
+        }
+        startHis[size] = startHi;
+        startLos[size] = startLo;
+        endHis[size] = prefixLength >= 64 ? startHi : startHi | ~IpUtils.prefixMask(prefixLength);
+        endLos[size] = startLo | ~IpUtils.prefixMask(prefixLength - 64);
+        size++;
+    }
+
+    /**
+     * 시작 주소 목록과 끝 주소 목록을 각각 unsigned 128bit 순서로 정렬. 정렬 후에는 i 번째 시작 주소와 i 번째 끝 주소가 같은 subnet 이 아닐 수 있다.
+     */
+    void sortBounds() {
+        sort(startHis, startLos, 0, size - 1);
+        sort(endHis, endLos, 0, size - 1);
+    }
+
+    /**
+     * (hi, lo) 쌍을 unsigned 128bit 값 순서로 정렬하는 quicksort. 짧은 구간은 insertion sort
+     */
+    private static void sort(long[] his, long[] los, int left, int right) {
+        while (right - left > 16) {
+            int mid = (left + right) >>> 1;
+            long pivotHi = his[mid];
+            long pivotLo = los[mid];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (compare(his[i], los[i], pivotHi, pivotLo) < 0) {
+                    i++;
+                }
+                while (compare(his[j], los[j], pivotHi, pivotLo) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(his, los, i++, j--);
+                }
+            }
+            if (j - left < right - i) { // 작은 쪽만 재귀 호출하여 stack 깊이를 log(n) 으로 제한
+                sort(his, los, left, j);
+                left = i;
+            } else {
+                sort(his, los, i, right);
+                right = j;
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            for (int j = i; j > left && compare(his[j - 1], los[j - 1], his[j], los[j]) > 0; j--) {
+                swap(his, los, j - 1, j);
+            }
+        }
+    }
+
+    static int compare(long hi1, long lo1, long hi2, long lo2) {
+        return hi1 != hi2 ? Long.compareUnsigned(hi1, hi2) : Long.compareUnsigned(lo1, lo2);
+    }
+
+    private static void swap(long[] his, long[] los, int i, int j) {
+        long hi = his[i];
+        his[i] = his[j];
+        his[j] = hi;
+        long lo = los[i];
+        los[i] = los[j];
+        los[j] = lo;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    long getStartHi(int pos) {
+        return startHis[pos];
+    }
+
+    long getStartLo(int pos) {
+        return startLos[pos];
+    }
+
+    long getEndHi(int pos) {
+        return endHis[pos];
+    }
+
+    long getEndLo(int pos) {
+        return endLos[pos];
+    }
+}
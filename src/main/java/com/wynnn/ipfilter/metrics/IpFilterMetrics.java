@@ -0,0 +1,132 @@
+package com.wynnn.ipfilter.metrics;
+
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 차단 여부 판단 결과와 조회 시간, 적용 중인 차단 규칙 상태를 Micrometer 로 노출.
+ * <ul>
+ *   <li>ipfilter.lookup : 조회 시간 (p50, p99, p999). 조회 자체가 수십 ns 이므로 lookupSampleRate 번 중 한 번만 측정</li>
+ *   <li>ipfilter.decisions : result=allow|deny|bad_request 별 응답 개수</li>
+ *   <li>ipfilter.decision.cache : result=hit|miss 별 decision cache 조회 개수. cache 를 사용하는 경우에만 증가</li>
+ *   <li>ipfilter.decision.cache.hit.ratio : 시작 후 전체 decision cache 조회 중 hit 비율</li>
+ *   <li>ipfilter.auto.bans : 요청 수가 threshold 를 넘어 자동으로 차단을 요청한 개수</li>
+ *   <li>ipfilter.rules.* : 대역 개수, 차단 IP 개수, index 메모리, 마지막 build 시간, version. 조회 시점의 rule set 을 읽음</li>
+ * </ul>
+ */
+@Component
+public class IpFilterMetrics {
+
+    private final int lookupSampleRate; // 0 이면 조회 시간을 측정하지 않음
+    private final Timer lookupTimer;
+    private final Counter allowCounter;
+    private final Counter denyCounter;
+    private final Counter badRequestCounter;
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter autoBanCounter;
+
+    public IpFilterMetrics(MeterRegistry registry, IpFilterConfiguration ipFilterConfiguration,
+                           @Value("${ip-filter.metrics.lookup-sample-rate:64}") int lookupSampleRate) {
+        this.lookupSampleRate = lookupSampleRate;
+        this.lookupTimer = Timer.builder("ipfilter.lookup")
+                .description("Deny index lookup latency (sampled)")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        this.allowCounter = decisionCounter(registry, "allow");
+        this.denyCounter = decisionCounter(registry, "deny");
+        this.badRequestCounter = decisionCounter(registry, "bad_request");
+        this.cacheHitCounter = cacheCounter(registry, "hit");
+        this.cacheMissCounter = cacheCounter(registry, "miss");
+        this.autoBanCounter = Counter.builder("ipfilter.auto.bans")
+                .description("Number of client IPs banned for exceeding the request threshold")
+                .register(registry);
+        Gauge.builder("ipfilter.decision.cache.hit.ratio", this, IpFilterMetrics::cacheHitRatio)
+                .description("Hit ratio of the decision cache since start")
+                .register(registry);
+
+        Gauge.builder("ipfilter.rules.ranges", ipFilterConfiguration, configuration -> configuration.getRanges().size())
+                .description("Number of merged deny ranges")
+                .register(registry);
+        Gauge.builder("ipfilter.rules.ipv6.ranges", ipFilterConfiguration, configuration -> configuration.getRuleSet().getIpv6Deny().size())
+                .description("Number of merged IPv6 deny ranges")
+                .register(registry);
+        Gauge.builder("ipfilter.rules.deny.ips", ipFilterConfiguration, IpFilterConfiguration::getNumDenyIps)
+                .description("Number of IPv4 addresses covered by deny rules")
+                .register(registry);
+        Gauge.builder("ipfilter.rules.memory", ipFilterConfiguration, configuration -> configuration.getDeny().memoryBytes())
+                .description("Memory used by the lookup index")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ipfilter.rules.build.duration", ipFilterConfiguration, configuration -> configuration.getRuleSet().getBuildMillis())
+                .description("Time taken to build the current rule set")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("ipfilter.rules.version", ipFilterConfiguration, configuration -> configuration.getRuleSet().getVersion())
+                .description("Version of the current rule set, increased on each reload")
+                .register(registry);
+    }
+
+    private static Counter decisionCounter(MeterRegistry registry, String result) {
+        return Counter.builder("ipfilter.decisions")
+                .description("Number of authorization decisions")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static Counter cacheCounter(MeterRegistry registry, String result) {
+        return Counter.builder("ipfilter.decision.cache")
+                .description("Number of decision cache lookups")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private double cacheHitRatio() {
+        double hits = cacheHitCounter.count();
+        double total = hits + cacheMissCounter.count();
+        return total > 0 ? hits / total : 0;
+    }
+
+    /**
+     * @return 이번 조회 시간을 측정해야 하면 true
+     */
+    public boolean sampleLookup() {
+        return lookupSampleRate > 0 && ThreadLocalRandom.current().nextInt(lookupSampleRate) == 0;
+    }
+
+    public void recordLookup(long elapsedNanos) {
+        lookupTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countCacheHit() {
+        cacheHitCounter.increment();
+    }
+
+    public void countCacheMiss() {
+        cacheMissCounter.increment();
+    }
+
+    public void countAutoBan() {
+        autoBanCounter.increment();
+    }
+
+    public void countAllow(int count) {
+        allowCounter.increment(count);
+    }
+
+    public void countDeny(int count) {
+        denyCounter.increment(count);
+    }
+
+    public void countBadRequest(int count) {
+        badRequestCounter.increment(count);
+    }
+}
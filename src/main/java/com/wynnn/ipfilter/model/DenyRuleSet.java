@@ -0,0 +1,29 @@
+package com.wynnn.ipfilter.model;
+
+import com.wynnn.ipfilter.index.Ipv4DenyIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeSet;
+import com.wynnn.ipfilter.index.Ipv6RangeIndex;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 한 번의 compile 로 만들어진 차단 규칙. 생성 후 변경되지 않으므로 조회 중에 규칙이 교체되어도 일관된 결과를 얻는다.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class DenyRuleSet {
+
+    public static final DenyRuleSet EMPTY = new DenyRuleSet(0, Ipv4RangeIndex.EMPTY, Ipv4RangeIndex.EMPTY, Ipv6RangeIndex.EMPTY, 0, 0, false, 0);
+
+    private final long version;         // reload 할 때마다 1씩 증가
+    private final Ipv4RangeSet ranges;  // 중첩이 제거된 차단 대역
+    private final Ipv4DenyIndex deny;   // 조회에 사용하는 index (engine 설정에 따라 ranges 또는 bitmap). 실행 중 변경한 규칙이 있으면 overlay
+    private final Ipv6RangeIndex ipv6Deny; // IPv6 차단 대역. snapshot 에 포함되지 않으므로 항상 compile 한다
+    private final long numDenyIps;      // 차단 IP 개수
+    private final long buildMillis;     // compile (또는 snapshot 로드) 과 engine 생성에 걸린 시간
+    private final boolean fromSnapshot; // snapshot 파일에서 로드했는지 여부
+    private final long loadedAt;        // epoch millis
+}
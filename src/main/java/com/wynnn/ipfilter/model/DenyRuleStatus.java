@@ -0,0 +1,44 @@
+package com.wynnn.ipfilter.model;
+
+import com.wynnn.ipfilter.index.Ipv4DenyIndex;
+import com.wynnn.ipfilter.index.Ipv4OverlayIndex;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@Data
+public class DenyRuleStatus {
+    private long version;
+    private String engine;
+    private int numRanges;
+    private long numDenyIps;
+    private int numIpv6Ranges;
+    private int numPendingRules; // base index 에 반영하지 않은 추가/삭제 규칙 개수
+    private long memoryBytes;
+    private long buildMillis;
+    private long swapNanos;
+    private boolean fromSnapshot;
+    private Instant loadedAt;
+
+    public static DenyRuleStatus of(DenyRuleSet ruleSet, long swapNanos) {
+        Ipv4DenyIndex engine = ruleSet.getDeny();
+        int numPendingRules = 0;
+        if (engine instanceof Ipv4OverlayIndex) {
+            numPendingRules = ((Ipv4OverlayIndex) engine).numPendingRules();
+            engine = ((Ipv4OverlayIndex) engine).getBase();
+        }
+        return new DenyRuleStatus(ruleSet.getVersion(),
+                engine.getClass().getSimpleName(),
+                ruleSet.getRanges().size(),
+                ruleSet.getNumDenyIps(),
+                ruleSet.getIpv6Deny().size(),
+                numPendingRules,
+                ruleSet.getDeny().memoryBytes() + ruleSet.getIpv6Deny().memoryBytes(),
+                ruleSet.getBuildMillis(),
+                swapNanos,
+                ruleSet.isFromSnapshot(),
+                Instant.ofEpochMilli(ruleSet.getLoadedAt()));
+    }
+}
@@ -0,0 +1,18 @@
+package com.wynnn.ipfilter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@Data
+public class ReplicationStatus {
+    private String role;
+    private long generation;   // 기록 (leader) 또는 적용 (follower) 한 base 번호
+    private long sequence;     // 기록 또는 적용한 마지막 delta 번호
+    private long lagMillis;    // follower 가 마지막 delta 를 적용한 시간 - leader 가 기록한 시간. leader 는 0
+    private Instant lastSyncAt; // 마지막으로 기록 또는 directory 를 확인한 시간
+    private String lastError;   // 마지막으로 실패한 기록 또는 적용. 다시 성공하면 null
+    private Instant failedSince; // 실패가 계속된 시작 시간. 다시 성공하면 null
+}
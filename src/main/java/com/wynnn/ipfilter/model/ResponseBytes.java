@@ -0,0 +1,119 @@
+package com.wynnn.ipfilter.model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ResponseData 를 Jackson 으로 직렬화한 것과 같은 JSON 을 미리 encoding 해둔 template 에 client IP 만 끼워서 생성.
+ * clientIp 는 IpUtils.parseIpv4 또는 parseIpv6 를 통과한 문자열 (16진수, '.', ':'), matchedRule 은 CIDR 이어야 하며, escape 하지 않는다.
+ * 요청에서 받은 그대로인 목록 이름만 Jackson 과 같은 규칙으로 escape 한다.
+ */
+public final class ResponseBytes {
+
+    private static final byte[] ALLOW_PREFIX = ascii("{\"resultMessage\":\"Allow\",\"clientIp\":\"");
+    private static final byte[] DENY_PREFIX = ascii("{\"resultMessage\":\"Deny\",\"clientIp\":\"");
+    private static final byte[] MATCHED_RULE = ascii("\",\"matchedRule\":\"");
+    private static final byte[] SUFFIX = ascii("\"}");
+    private static final byte[] INVALID_IP = ascii("{\"resultMessage\":\"Deny\",\"clientIp\":\"Invalid IP\"}");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private ResponseBytes() {
+    }
+
+    private static byte[] ascii(String json) {
+        return json.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @see ResponseData#authorized(String)
+     */
+    public static byte[] authorized(String clientIp) {
+        return splice(ALLOW_PREFIX, clientIp);
+    }
+
+    /**
+     * @see ResponseData#unauthorized(String)
+     */
+    public static byte[] unauthorized(String clientIp) {
+        return splice(DENY_PREFIX, clientIp);
+    }
+
+    /**
+     * @see ResponseData#unauthorized(String, String)
+     */
+    public static byte[] unauthorized(String clientIp, String matchedRule) {
+        byte[] body = new byte[DENY_PREFIX.length + clientIp.length() + MATCHED_RULE.length + matchedRule.length() + SUFFIX.length];
+        int length = put(body, 0, DENY_PREFIX);
+        length = put(body, length, clientIp);
+        length = put(body, length, MATCHED_RULE);
+        length = put(body, length, matchedRule);
+        put(body, length, SUFFIX);
+        return body;
+    }
+
+    /**
+     * 오류 응답이므로 미리 encoding 하지 않고 목록 이름을 escape 하여 생성
+     *
+     * @see ResponseData#unknownList(String, String)
+     */
+    public static byte[] unknownList(String clientIp, String list) {
+        StringBuilder json = new StringBuilder("{\"resultMessage\":\"Deny\",\"clientIp\":\"").append(clientIp).append("\",\"unknownList\":\"");
+        for (int i = 0; i < list.length(); i++) {
+            char c = list.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                appendControl(json, c);
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendControl(StringBuilder json, char c) {
+        switch (c) {
+            case '\b':
+                json.append("\\b");
+                break;
+            case '\t':
+                json.append("\\t");
+                break;
+            case '\n':
+                json.append("\\n");
+                break;
+            case '\f':
+                json.append("\\f");
+                break;
+            case '\r':
+                json.append("\\r");
+                break;
+            default:
+                json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+        }
+    }
+
+    /**
+     * ResponseData.unauthorized("Invalid IP") 와 같은 응답. 호출하는 쪽에서 수정하지 않도록 매번 복사본을 반환
+     */
+    public static byte[] invalidIp() {
+        return INVALID_IP.clone();
+    }
+
+    private static byte[] splice(byte[] prefix, String clientIp) {
+        byte[] body = new byte[prefix.length + clientIp.length() + SUFFIX.length];
+        put(body, put(body, put(body, 0, prefix), clientIp), SUFFIX);
+        return body;
+    }
+
+    private static int put(byte[] body, int offset, byte[] bytes) {
+        System.arraycopy(bytes, 0, body, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    private static int put(byte[] body, int offset, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            body[offset + i] = (byte) ascii.charAt(i);
+        }
+        return offset + ascii.length();
+    }
+}
@@ -1,5 +1,6 @@
 package com.wynnn.ipfilter.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -8,12 +9,24 @@ import lombok.Data;
 public class ResponseData {
     private String resultMessage;
     private String clientIp;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String matchedRule; // 차단한 규칙 (CIDR). 규칙을 기록하는 engine (DIR_24_8) 에서만 응답
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String unknownList; // 요청한 차단 목록이 설정되어 있지 않은 경우 그 이름
 
     public static ResponseData authorized(String clientIp) {
-        return new ResponseData("Allow", clientIp);
+        return new ResponseData("Allow", clientIp, null, null);
     }
 
     public static ResponseData unauthorized(String clientIp) {
-        return new ResponseData("Deny", clientIp);
+        return new ResponseData("Deny", clientIp, null, null);
+    }
+
+    public static ResponseData unauthorized(String clientIp, String matchedRule) {
+        return new ResponseData("Deny", clientIp, matchedRule, null);
+    }
+
+    public static ResponseData unknownList(String clientIp, String list) {
+        return new ResponseData("Deny", clientIp, null, list);
     }
 }
@@ -1,5 +1,21 @@
 package com.wynnn.ipfilter.service;
 
+import java.util.Optional;
+
 public interface IpAuthenticationService {
     boolean hasAuth(String clientIp);
+
+    boolean hasAuth(int clientIp);
+
+    boolean[] hasAuth(int[] clientIps);
+
+    boolean hasAuth(long clientIpHi, long clientIpLo);
+
+    Optional<String> findMatchedRule(int clientIp);
+
+    boolean hasAuth(String list, int clientIp);
+
+    boolean[] hasAuth(String list, int[] clientIps);
+
+    Optional<String> findMatchedRule(String list, int clientIp);
 }
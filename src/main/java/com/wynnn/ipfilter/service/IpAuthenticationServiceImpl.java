@@ -1,12 +1,17 @@
 package com.wynnn.ipfilter.service;
 
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.config.DecisionCacheConfiguration;
 import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.index.Ipv4DecisionCache;
+import com.wynnn.ipfilter.index.Ipv4DenyIndex;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.model.DenyRuleSet;
 import com.wynnn.ipfilter.utils.IpUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -14,16 +19,151 @@ import java.util.Optional;
 @Slf4j
 public class IpAuthenticationServiceImpl implements IpAuthenticationService {
 
+    private static final long IPV4_MAPPED_PREFIX = 0xffffL; // ::ffff:0:0/96
+
     private final IpFilterConfiguration ipFilterConfiguration;
+    private final DecisionCacheConfiguration decisionCacheConfiguration;
+    private final IpFilterMetrics ipFilterMetrics;
+    private final AutoBanConfiguration autoBanConfiguration;
 
+    /**
+     * @throws IllegalArgumentException IP 주소 형식이 아닌 경우 exception 발생
+     */
     @Override
     public boolean hasAuth(String clientIp) {
-        long clientIpLong = IpUtils.ipToLong(clientIp);
-        boolean result = Optional.ofNullable(ipFilterConfiguration.getDeny().floorEntry(clientIpLong))
-                .map(Map.Entry::getValue)
-                .map(subnet -> !subnet.isInRange(clientIpLong))
-                .orElse(true);
-        log.debug("> hasAuth(clientIp={}): {}", clientIp, result);
+        long clientIpLong = IpUtils.parseIpv4(clientIp);
+        if (clientIpLong == IpUtils.INVALID_IP) {
+            throw new IllegalArgumentException(String.format("Cannot parse IP=%s because invalid format", clientIp));
+        }
+        return hasAuth((int) clientIpLong);
+    }
+
+    @Override
+    public boolean hasAuth(int clientIp) {
+        boolean result;
+        if (ipFilterMetrics.sampleLookup()) { // 일부 조회만 측정하여 nanoTime 호출 비용이 모든 조회에 더해지지 않도록 함
+            long startTime = System.nanoTime();
+            result = lookup(clientIp);
+            ipFilterMetrics.recordLookup(System.nanoTime() - startTime);
+        } else {
+            result = lookup(clientIp);
+        }
+        if (log.isDebugEnabled()) { // avoid boxing and varargs on the hot path
+            log.debug("> hasAuth(clientIp={}): {}", IpUtils.longToIp(Integer.toUnsignedLong(clientIp)), result);
+        }
         return result;
     }
+
+    /**
+     * auto ban 으로 차단 중인 IP 를 먼저 확인. decision cache 를 사용하면 cache 에서 먼저 찾고, 없으면 차단 대역에서 찾은 결과를 rule set version 과 함께 저장.
+     * auto ban 은 rule set version 과 별도이므로 cache 에 저장하지 않는다.
+     */
+    private boolean lookup(int clientIp) {
+        if (autoBanConfiguration.isBanned(clientIp)) {
+            return false;
+        }
+        Ipv4DecisionCache decisionCache = decisionCacheConfiguration.getCache();
+        if (!decisionCache.isEnabled()) {
+            return !ipFilterConfiguration.getDeny().contains(clientIp);
+        }
+        DenyRuleSet ruleSet = ipFilterConfiguration.getRuleSet(); // 판단과 cache 저장에 같은 rule set 을 사용
+        int cached = decisionCache.get(clientIp, ruleSet.getVersion());
+        if (cached != Ipv4DecisionCache.MISS) {
+            ipFilterMetrics.countCacheHit();
+            return cached == Ipv4DecisionCache.ALLOW;
+        }
+        ipFilterMetrics.countCacheMiss();
+        boolean allowed = !ruleSet.getDeny().contains(clientIp);
+        decisionCache.put(clientIp, ruleSet.getVersion(), allowed);
+        return allowed;
+    }
+
+    /**
+     * 여러 IP 를 한 번에 확인. 정렬된 차단 대역을 사용하는 경우 IP 마다 binary search 하지 않고 한 번의 merge 로 처리한다.
+     *
+     * @param clientIps unsigned 32bit IP 목록
+     * @return 요청 순서대로 각 IP 의 허용 여부
+     */
+    @Override
+    public boolean[] hasAuth(int[] clientIps) {
+        return hasAuth(ipFilterConfiguration.getDeny(), clientIps);
+    }
+
+    /**
+     * auto ban 은 차단 목록과 관계없이 client IP 를 차단하므로 모든 목록에서 함께 확인
+     */
+    private boolean[] hasAuth(Ipv4DenyIndex deny, int[] clientIps) {
+        boolean[] results = new boolean[clientIps.length];
+        deny.containsAll(clientIps, results);
+        for (int i = 0; i < results.length; i++) {
+            results[i] = !results[i] && !autoBanConfiguration.isBanned(clientIps[i]);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("> hasAuth(clientIps={})", clientIps.length);
+        }
+        return results;
+    }
+
+    /**
+     * 이름으로 선택한 차단 목록에서 client IP 의 허용 여부를 확인. decision cache 는 기본 목록에만 사용하고, auto ban 은 모든 목록에 적용한다.
+     *
+     * @param list 차단 목록 이름. null 이면 기본 목록
+     * @throws java.util.NoSuchElementException 설정되지 않은 목록인 경우
+     */
+    @Override
+    public boolean hasAuth(String list, int clientIp) {
+        if (list == null) {
+            return hasAuth(clientIp);
+        }
+        Ipv4DenyIndex deny = ipFilterConfiguration.getDeny(list); // 설정되지 않은 목록이면 차단 중인 IP 라도 NoSuchElementException
+        boolean result = !autoBanConfiguration.isBanned(clientIp) && !deny.contains(clientIp);
+        if (log.isDebugEnabled()) {
+            log.debug("> hasAuth(list={}, clientIp={}): {}", list, IpUtils.longToIp(Integer.toUnsignedLong(clientIp)), result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean[] hasAuth(String list, int[] clientIps) {
+        return list == null ? hasAuth(clientIps) : hasAuth(ipFilterConfiguration.getDeny(list), clientIps);
+    }
+
+    @Override
+    public Optional<String> findMatchedRule(String list, int clientIp) {
+        if (list == null) {
+            return findMatchedRule(clientIp);
+        }
+        Ipv4DenyIndex deny = ipFilterConfiguration.getDeny(list);
+        Optional<String> ban = autoBanConfiguration.findBan(clientIp);
+        return ban.isPresent() ? ban : deny.matchedRule(clientIp);
+    }
+
+    /**
+     * client IP 를 차단한 규칙. 감사 log 나 규칙별 통계를 위해 사용하며, auto ban 대역이거나 규칙을 기록하는 engine (DIR_24_8) 에서만 찾을 수 있다.
+     *
+     * @param clientIp unsigned 32bit IP
+     * @return 차단 규칙 (CIDR). 허용된 IP 이거나 engine 이 규칙을 기록하지 않으면 empty
+     */
+    @Override
+    public Optional<String> findMatchedRule(int clientIp) {
+        Optional<String> ban = autoBanConfiguration.findBan(clientIp);
+        return ban.isPresent() ? ban : ipFilterConfiguration.getDeny().matchedRule(clientIp);
+    }
+
+    /**
+     * IPv6 주소의 허용 여부. IPv4-mapped 주소 (::ffff:a.b.c.d) 는 IPv4 차단 규칙도 함께 확인한다.
+     *
+     * @param clientIpHi IPv6 주소의 상위 64bit
+     * @param clientIpLo IPv6 주소의 하위 64bit
+     */
+    @Override
+    public boolean hasAuth(long clientIpHi, long clientIpLo) {
+        DenyRuleSet ruleSet = ipFilterConfiguration.getRuleSet();
+        boolean denied = ruleSet.getIpv6Deny().contains(clientIpHi, clientIpLo)
+                || (clientIpHi == 0 && (clientIpLo >>> 32) == IPV4_MAPPED_PREFIX && (autoBanConfiguration.isBanned((int) clientIpLo) || ruleSet.getDeny().contains((int) clientIpLo)));
+        if (log.isDebugEnabled()) {
+            log.debug("> hasAuth(clientIp={}:{}): {}", Long.toHexString(clientIpHi), Long.toHexString(clientIpLo), !denied);
+        }
+        return !denied;
+    }
 }
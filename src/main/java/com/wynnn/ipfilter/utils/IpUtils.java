@@ -10,10 +10,260 @@ public class IpUtils {
     public static final Pattern IP_PATTERN = Pattern.compile("^(([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\.){3}([01]?\\d\\d?|2[0-4]\\d|25[0-5])$");
     public static final Pattern CIDR_PATTERN = Pattern.compile("^(([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\.){3}([01]?\\d\\d?|2[0-4]\\d|25[0-5])(/([0-9]|[1-2][0-9]|3[0-2]))?$");
 
+    public static final long INVALID_IP = -1L;
+
     public static boolean isValidIpFormat(String ipAddress) {
         return IP_PATTERN.matcher(ipAddress).matches();
     }
 
+    /**
+     * IPv4 문자열을 검증하면서 unsigned 32bit 값으로 변환. 정규식, split, 객체 생성 없이 한 번만 순회한다.
+     * IP_PATTERN 과 동일한 입력을 허용한다 (각 자리는 1~3자리 숫자이고 255 이하, 앞자리 0 허용, 공백 불가)
+     *
+     * @param ipAddress IPv4 address without CIDR notation
+     * @return 0 ~ 2^32-1 사이의 IP 값. 올바른 형식이 아닌 경우 INVALID_IP
+     */
+    public static long parseIpv4(CharSequence ipAddress) {
+        return ipAddress == null ? INVALID_IP : parseIpv4(ipAddress, 0, ipAddress.length());
+    }
+
+    /**
+     * 문자열의 [from, to) 구간을 IPv4 로 변환
+     *
+     * @see #parseIpv4(CharSequence)
+     */
+    public static long parseIpv4(CharSequence ipAddress, int from, int to) {
+        long result = 0;
+        int octet = 0;
+        int numDigits = 0;
+        int numDots = 0;
+        for (int i = from; i < to; i++) {
+            char c = ipAddress.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++numDigits > 3) {
+                    return INVALID_IP;
+                }
+                octet = octet * 10 + (c - '0');
+            } else if (c == '.') {
+                if (numDigits == 0 || octet > 255 || ++numDots > 3) {
+                    return INVALID_IP;
+                }
+                result = (result << 8) | octet;
+                octet = 0;
+                numDigits = 0;
+            } else {
+                return INVALID_IP;
+            }
+        }
+        if (numDots != 3 || numDigits == 0 || octet > 255) {
+            return INVALID_IP;
+        }
+        return (result << 8) | octet;
+    }
+
+    /**
+     * CIDR 표기법을 포함한 IPv4 문자열의 [from, to) 구간을 변환. CIDR_PATTERN 과 동일한 입력을 허용하며, CIDR 표기법이 아닌 경우 /32 로 인식
+     *
+     * @return 상위 bit 에 IP, 하위 6bit 에 CIDR 를 담은 값 ((ipLong &lt;&lt; 6) | cidr). 올바른 형식이 아닌 경우 INVALID_IP
+     */
+    public static long parseCidr(CharSequence ipAddress, int from, int to) {
+        int slash = to;
+        for (int i = from; i < to; i++) {
+            if (ipAddress.charAt(i) == '/') {
+                slash = i;
+                break;
+            }
+        }
+        long ipLong = parseIpv4(ipAddress, from, slash);
+        if (ipLong == INVALID_IP) {
+            return INVALID_IP;
+        }
+        int cidr = slash == to ? 32 : parseCidrBits(ipAddress, slash + 1, to);
+        if (cidr < 0) {
+            return INVALID_IP;
+        }
+        return (ipLong << 6) | cidr;
+    }
+
+    private static int parseCidrBits(CharSequence ipAddress, int from, int to) {
+        int numDigits = to - from;
+        if (numDigits < 1 || numDigits > 2) {
+            return -1;
+        }
+        char first = ipAddress.charAt(from);
+        if (first < '0' || first > '9' || (numDigits == 2 && first == '0')) { // "05" is not allowed
+            return -1;
+        }
+        int cidr = first - '0';
+        if (numDigits == 2) {
+            char second = ipAddress.charAt(from + 1);
+            if (second < '0' || second > '9') {
+                return -1;
+            }
+            cidr = cidr * 10 + (second - '0');
+        }
+        return cidr <= 32 ? cidr : -1;
+    }
+
+    /**
+     * IPv6 문자열의 [from, to) 구간을 상위/하위 64bit 로 변환. parseIpv4 처럼 split, 객체 생성 없이 한 번만 순회한다.
+     * 1~4 자리 16진수 group, 한 번의 "::" 생략, 마지막 32bit 의 IPv4 표기 (ex. ::ffff:1.2.3.4) 를 허용하고, zone ID (%eth0) 는 허용하지 않음
+     *
+     * @param address IPv6 address without prefix length
+     * @param out     out[0] 에 상위 64bit, out[1] 에 하위 64bit 를 저장
+     * @return 올바른 형식이면 true. false 인 경우 out 은 변경되지 않음
+     */
+    public static boolean parseIpv6(CharSequence address, int from, int to, long[] out) {
+        long hi = 0;
+        long lo = 0;
+        long tailHi = 0; // "::" 뒤의 group. 끝에 맞추어 오른쪽부터 채워짐
+        long tailLo = 0;
+        int numHeadGroups = 0;
+        int numTailGroups = 0;
+        boolean compressed = false;
+        int i = from;
+        if (to - from >= 2 && address.charAt(from) == ':' && address.charAt(from + 1) == ':') {
+            compressed = true;
+            i += 2;
+        } else if (from < to && address.charAt(from) == ':') {
+            return false;
+        } else if (from == to) {
+            return false;
+        }
+        while (i < to) {
+            int end = i;
+            boolean dotted = false;
+            while (end < to && address.charAt(end) != ':') {
+                dotted |= address.charAt(end) == '.';
+                end++;
+            }
+            long value;
+            int numGroups;
+            if (dotted) { // IPv4 표기는 마지막에만 올 수 있음
+                value = end == to ? parseIpv4(address, i, end) : INVALID_IP;
+                if (value == INVALID_IP) {
+                    return false;
+                }
+                numGroups = 2;
+            } else {
+                value = parseHexGroup(address, i, end);
+                if (value < 0) {
+                    return false;
+                }
+                numGroups = 1;
+            }
+            if (numHeadGroups + numTailGroups + numGroups > 8) {
+                return false;
+            }
+            if (compressed) {
+                int bits = 16 * numGroups;
+                tailHi = (tailHi << bits) | (tailLo >>> (64 - bits));
+                tailLo = (tailLo << bits) | value;
+                numTailGroups += numGroups;
+            } else {
+                for (int g = numGroups - 1; g >= 0; g--, numHeadGroups++) {
+                    long group = (value >>> (16 * g)) & 0xffff;
+                    if (numHeadGroups < 4) {
+                        hi |= group << (16 * (3 - numHeadGroups));
+                    } else {
+                        lo |= group << (16 * (7 - numHeadGroups));
+                    }
+                }
+            }
+            if (end == to) {
+                break;
+            }
+            if (end + 1 < to && address.charAt(end + 1) == ':') { // "::"
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i = end + 2;
+            } else if (end + 1 == to) { // 끝이 ':' 하나
+                return false;
+            } else {
+                i = end + 1;
+            }
+        }
+        if (compressed ? numHeadGroups + numTailGroups > 7 : numHeadGroups != 8) {
+            return false;
+        }
+        out[0] = hi | tailHi;
+        out[1] = lo | tailLo;
+        return true;
+    }
+
+    private static int parseHexGroup(CharSequence address, int from, int to) {
+        if (to - from < 1 || to - from > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(address.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * prefix 길이를 포함한 IPv6 문자열 (ex. 2001:db8::/32) 의 [from, to) 구간을 변환. prefix 길이가 없으면 /128 로 인식
+     *
+     * @param out out[0], out[1] 에 prefix 의 시작 주소 (prefix 밖의 bit 는 0) 를 저장
+     * @return prefix 길이 (0 ~ 128). 올바른 형식이 아닌 경우 -1
+     */
+    public static int parseIpv6Cidr(CharSequence address, int from, int to, long[] out) {
+        int slash = to;
+        for (int i = from; i < to; i++) {
+            if (address.charAt(i) == '/') {
+                slash = i;
+                break;
+            }
+        }
+        int prefixLength = slash == to ? 128 : parsePrefixLength(address, slash + 1, to);
+        if (prefixLength < 0 || !parseIpv6(address, from, slash, out)) {
+            return -1;
+        }
+        out[0] &= prefixMask(prefixLength);
+        out[1] &= prefixMask(prefixLength - 64);
+        return prefixLength;
+    }
+
+    private static int parsePrefixLength(CharSequence address, int from, int to) {
+        int numDigits = to - from;
+        if (numDigits < 1 || numDigits > 3 || (numDigits > 1 && address.charAt(from) == '0')) { // "064" is not allowed
+            return -1;
+        }
+        int prefixLength = 0;
+        for (int i = from; i < to; i++) {
+            char c = address.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            prefixLength = prefixLength * 10 + (c - '0');
+        }
+        return prefixLength <= 128 ? prefixLength : -1;
+    }
+
+    /**
+     * 64bit 값에서 상위 bits 개의 bit 만 1 인 mask. bits 가 0 이하이면 0, 64 이상이면 모든 bit 가 1
+     */
+    public static long prefixMask(int bits) {
+        if (bits <= 0) {
+            return 0;
+        }
+        return bits >= 64 ? -1L : -1L << (64 - bits);
+    }
+
+    public static String longToIp(long ipLong) {
+        return ((ipLong >> 24) & 0xFF) + "."
+                + ((ipLong >> 16) & 0xFF) + "."
+                + ((ipLong >> 8) & 0xFF) + "."
+                + (ipLong & 0xFF);
+    }
+
     public static final long[] NUM_SUBNET = initNumSubnet();
 
     private static long[] initNumSubnet() {
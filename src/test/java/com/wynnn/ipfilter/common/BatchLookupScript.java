@@ -0,0 +1,65 @@
+package com.wynnn.ipfilter.common;
+
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * 단건 조회 (contains) 반복과 batch 조회 (containsAll) 의 처리량 비교.
+ * 대역은 1M 개, batch 는 같은 IP 목록을 사용한다.
+ */
+@Slf4j
+public class BatchLookupScript {
+
+    private static final int NUM_RANGES = 1000000;
+    private static final int[] BATCH_SIZES = {100, 1000, 10000};
+    private static final int NUM_ROUNDS = 200;
+
+//    @Test
+    public void compareThroughput() {
+        Random random = new Random(1275);
+        int[] starts = new int[NUM_RANGES];
+        int[] ends = new int[NUM_RANGES];
+        for (int i = 0; i < NUM_RANGES; i++) {
+            starts[i] = (int) (4096L * i);
+            ends[i] = starts[i] + random.nextInt(2048);
+        }
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(starts, ends, NUM_RANGES);
+
+        for (int batchSize : BATCH_SIZES) {
+            int[] ips = new int[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                ips[i] = random.nextInt();
+            }
+            boolean[] denied = new boolean[batchSize];
+            for (int warmUp = 0; warmUp < 3; warmUp++) {
+                single(index, ips, denied);
+                batch(index, ips, denied);
+            }
+            long singleNanos = single(index, ips, denied);
+            long batchNanos = batch(index, ips, denied);
+            log.info("> batch={} single={}ns/ip batch={}ns/ip", batchSize,
+                    singleNanos / ((long) NUM_ROUNDS * batchSize), batchNanos / ((long) NUM_ROUNDS * batchSize));
+        }
+    }
+
+    private static long single(Ipv4RangeIndex index, int[] ips, boolean[] denied) {
+        long startTime = System.nanoTime();
+        for (int round = 0; round < NUM_ROUNDS; round++) {
+            for (int i = 0; i < ips.length; i++) {
+                denied[i] = index.contains(ips[i]);
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static long batch(Ipv4RangeIndex index, int[] ips, boolean[] denied) {
+        long startTime = System.nanoTime();
+        for (int round = 0; round < NUM_ROUNDS; round++) {
+            index.containsAll(ips, denied);
+        }
+        return System.nanoTime() - startTime;
+    }
+}
@@ -2,6 +2,7 @@ package com.wynnn.ipfilter.common;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -24,6 +25,18 @@ public class CreateMillionIpScript {
         printWriter.close();
     }
 
+    /**
+     * ip-filter.deny-file 용 차단 목록 (한 줄에 CIDR 하나)
+     */
+//    @Test
+    public void writeDenyFile() throws IOException {
+        PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter("manual-ip-denies.txt")));
+        IntStream.range(1, NUM_CREATE_IP+1).forEach((i) -> {
+            printWriter.printf("%s/32\n", longToIp(i));
+        });
+        printWriter.close();
+    }
+
     private String longToIp(long ip) {
 
         return ((ip >> 24) & 0xFF) + "."
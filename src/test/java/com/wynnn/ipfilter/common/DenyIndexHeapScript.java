@@ -0,0 +1,68 @@
+package com.wynnn.ipfilter.common;
+
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * TreeMap&lt;Long, Ipv4Subnet&gt; 와 Ipv4RangeIndex 의 heap 사용량 비교.
+ * 30M 규칙을 측정하려면 -Xmx 를 충분히 크게 (TreeMap 기준 4GB 이상) 지정해야 한다.
+ */
+@Slf4j
+public class DenyIndexHeapScript {
+
+    private static final int[] NUM_RULES = {1000000, 10000000, 30000000};
+
+//    @Test
+    public void compareHeapUsage() {
+        for (int numRules : NUM_RULES) {
+            long treeMapBytes = measure(() -> buildTreeMap(numRules));
+            long indexBytes = measure(() -> buildIndex(numRules));
+            log.info("> rules={} TreeMap={}MB Ipv4RangeIndex={}MB", numRules, treeMapBytes >> 20, indexBytes >> 20);
+        }
+    }
+
+    private static long measure(Supplier<Object> builder) {
+        long before = usedHeap();
+        Object retained = builder.get();
+        long after = usedHeap();
+        log.debug("> measured {}", retained.getClass().getSimpleName());
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static TreeMap<Long, Ipv4Subnet> buildTreeMap(int numRules) {
+        TreeMap<Long, Ipv4Subnet> deny = new TreeMap<>();
+        for (int i = 0; i < numRules; i++) {
+            Ipv4Subnet subnet = new Ipv4Subnet(ruleOf(i));
+            deny.put(subnet.getStartIpLong(), subnet);
+        }
+        return deny;
+    }
+
+    private static Ipv4RangeIndex buildIndex(int numRules) {
+        List<Ipv4Subnet> subnets = new ArrayList<>(numRules);
+        for (int i = 0; i < numRules; i++) {
+            subnets.add(new Ipv4Subnet(ruleOf(i)));
+        }
+        return Ipv4RangeIndex.of(subnets);
+    }
+
+    private static String ruleOf(long i) {
+        long ip = 2 * i + 1; // every other /32, so that no two rules are adjacent
+        return ((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF) + "/32";
+    }
+}
@@ -0,0 +1,96 @@
+package com.wynnn.ipfilter.common;
+
+import com.wynnn.ipfilter.IpFilterApplication;
+import com.wynnn.ipfilter.config.AdminConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 한 machine 에서 leader 1개, follower FOLLOWERS 개 JVM 을 실행하여 공유 directory 복제를 확인.
+ * leader 에 규칙을 추가한 후 각 follower 가 차단할 때까지 걸린 시간과 follower 가 보고한 lag 을 출력한다.
+ */
+@Slf4j
+public class ReplicationClusterScript {
+
+    private static final int LEADER_PORT = 18080;
+    private static final int FOLLOWERS = 2;
+    private static final String RULE = "203.0.113.0/24";
+    private static final String CLIENT_IP = "203.0.113.7";
+    private static final String ADMIN_TOKEN = "replication-script";
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+//    @Test
+    public void replicateAddedRule() throws Exception {
+        Path directory = Files.createTempDirectory("ip-filter-replication");
+        List<Process> processes = new ArrayList<>();
+        try {
+            processes.add(start(LEADER_PORT, "leader", directory));
+            for (int i = 1; i <= FOLLOWERS; i++) {
+                processes.add(start(LEADER_PORT + i, "follower", directory));
+            }
+            for (int i = 0; i <= FOLLOWERS; i++) {
+                waitUntil(LEADER_PORT + i, "/admin/deny-rules", 200, Duration.ofMinutes(1));
+            }
+
+            long started = System.nanoTime();
+            send(LEADER_PORT, HttpRequest.newBuilder(uri(LEADER_PORT, "/admin/deny-rules/rules?cidr=" + RULE))
+                    .header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN).POST(HttpRequest.BodyPublishers.noBody()));
+            for (int i = 1; i <= FOLLOWERS; i++) {
+                waitUntil(LEADER_PORT + i, "/ipv4", 403, Duration.ofSeconds(30));
+                log.info("> follower={} denied rule={} after={}ms, status={}", LEADER_PORT + i, RULE,
+                        (System.nanoTime() - started) / 1_000_000, send(LEADER_PORT + i, HttpRequest.newBuilder(uri(LEADER_PORT + i, "/admin/deny-rules/replication"))).body());
+            }
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    private static Process start(int port, String role, Path directory) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), IpFilterApplication.class.getName(),
+                "--server.port=" + port,
+                "--ip-filter.admin.token=" + ADMIN_TOKEN,
+                "--ip-filter.replication.role=" + role,
+                "--ip-filter.replication.directory=" + directory,
+                "--ip-filter.replication.poll-interval=100ms")
+                .redirectOutput(directory.resolve(role + "-" + port + ".log").toFile())
+                .redirectErrorStream(true)
+                .start();
+    }
+
+    private void waitUntil(int port, String path, int status, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                if (send(port, HttpRequest.newBuilder(uri(port, path)).header("X-Forwarded-For", CLIENT_IP)).statusCode() == status) {
+                    return;
+                }
+            } catch (IOException e) {
+                log.debug("> not ready port={}", port);
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("timeout port=" + port + ", path=" + path + ", status=" + status);
+    }
+
+    private HttpResponse<String> send(int port, HttpRequest.Builder request) throws Exception {
+        return client.send(request.timeout(Duration.ofSeconds(5)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(int port, String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,70 @@
+package com.wynnn.ipfilter.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * servlet (Tomcat) 과 reactive (Netty) 모드의 GET /ipv4 처리량 비교.
+ * 서버를 먼저 실행한 후 (ex. java -jar ip-filter.jar --spring.profiles.active=release[,reactive])
+ * -Dtarget=http://localhost:8080 로 대상 서버를 지정하여 실행한다.
+ */
+@Slf4j
+public class ServingModeLoadScript {
+
+    private static final String TARGET = System.getProperty("target", "http://localhost:8080");
+    private static final int[] CONNECTIONS = {100, 1000, 5000};
+    private static final int REQUESTS_PER_CONNECTION = 20;
+
+//    @Test
+    public void compareThroughput() {
+        for (int connections : CONNECTIONS) {
+            run(connections, REQUESTS_PER_CONNECTION); // warm up
+            run(connections, REQUESTS_PER_CONNECTION);
+        }
+    }
+
+    private static void run(int connections, int requestsPerConnection) {
+        ConnectionProvider provider = ConnectionProvider.builder("load")
+                .maxConnections(connections)
+                .pendingAcquireTimeout(Duration.ofMinutes(1))
+                .build();
+        HttpClient client = HttpClient.create(provider).baseUrl(TARGET);
+        int numRequests = connections * requestsPerConnection;
+        long[] latencies = new long[numRequests];
+        AtomicLongArray statuses = new AtomicLongArray(6); // 1xx ~ 5xx, error
+        long started = System.nanoTime();
+        Flux.range(0, numRequests)
+                .flatMap(i -> {
+                    long requested = System.nanoTime();
+                    return client.headers(headers -> headers.set("X-Forwarded-For", clientIpOf(i)))
+                            .get().uri("/ipv4")
+                            .responseSingle((response, body) -> body.thenReturn(response.status().code()))
+                            .doOnNext(status -> statuses.incrementAndGet(status / 100 - 1))
+                            .onErrorResume(e -> {
+                                statuses.incrementAndGet(5);
+                                return Flux.<Integer>empty().next();
+                            })
+                            .doFinally(signal -> latencies[i] = System.nanoTime() - requested);
+                }, connections)
+                .blockLast();
+        long elapsed = System.nanoTime() - started;
+        provider.dispose();
+
+        Arrays.sort(latencies);
+        log.info("> connections={} requests={} throughput={}/s p50={}ms p99={}ms 2xx={} 4xx={} error={}",
+                connections, numRequests, numRequests * 1_000_000_000L / elapsed,
+                latencies[numRequests / 2] / 1_000_000.0, latencies[(int) (numRequests * 0.99)] / 1_000_000.0,
+                statuses.get(1), statuses.get(3), statuses.get(5));
+    }
+
+    private static String clientIpOf(int i) {
+        return "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+    }
+}
@@ -1,13 +1,12 @@
 package com.wynnn.ipfilter.common;
 
 import com.wynnn.ipfilter.config.IpFilterConfiguration;
-import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.index.Ipv4RangeSet;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
 
 @Slf4j
 public class TestUtil {
@@ -73,10 +72,11 @@ public class TestUtil {
     public static final String IP_HEADER_UNKNOWN = "UNKNOWN";
     public static final String IP_LOOPBACK = "127.0.0.1";
 
-    public static TreeMap<Long, Ipv4Subnet> createDummyDenyRule() {
+    public static Ipv4RangeSet createDummyDenyRule() {
         IpFilterConfiguration ipFilterConfiguration = new IpFilterConfiguration();
         ipFilterConfiguration.setDeny(Arrays.asList(TEST_FILTER_DENY_LIST));
-        return ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        return ipFilterConfiguration.getRanges();
     }
 
     public static Map<Long, String> createDummyIpPool() {
@@ -0,0 +1,85 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AutoBanConfigurationTest {
+
+    private final AutoBanConfiguration configuration = new AutoBanConfiguration();
+
+    @AfterEach
+    void tearDown() {
+        configuration.destroy();
+    }
+
+    private static int ip(String ip) {
+        return (int) IpUtils.ipToLong(ip);
+    }
+
+    @Test
+    void test_ban_then_deny_prefix_until_ttl() {
+        configuration.setEnabled(true);
+        configuration.setPrefixLength(24);
+        configuration.setTtl(Duration.ofMinutes(1));
+        configuration.init();
+        long nowMillis = System.currentTimeMillis();
+        boolean banned = configuration.ban(ip("10.0.1.7"), nowMillis);
+        assertAll("test if IP is banned, then deny its prefix without a rule set change",
+                () -> assertTrue(banned),
+                () -> assertFalse(configuration.ban(ip("10.0.1.200"), nowMillis)),
+                () -> assertTrue(configuration.isBanned(ip("10.0.1.255"))),
+                () -> assertFalse(configuration.isBanned(ip("10.0.2.0"))),
+                () -> assertEquals(Optional.of("10.0.1.0/24"), configuration.findBan(ip("10.0.1.1"))),
+                () -> assertEquals(Optional.empty(), configuration.findBan(ip("10.0.2.1"))),
+                () -> assertEquals(1, configuration.getNumBans()));
+
+        assertEquals(0, configuration.expireBans(nowMillis + Duration.ofSeconds(30).toMillis()));
+        assertEquals(1, configuration.expireBans(nowMillis + Duration.ofMinutes(1).toMillis() + configuration.getExpiryTick().toMillis()));
+        assertAll("test if ttl is passed, then release the ban",
+                () -> assertFalse(configuration.isBanned(ip("10.0.1.7"))),
+                () -> assertEquals(0, configuration.getNumBans()));
+    }
+
+    @Test
+    void test_ban_if_banned_again_then_extend_ttl() {
+        configuration.setEnabled(true);
+        configuration.setTtl(Duration.ofMinutes(1));
+        configuration.init();
+        long nowMillis = System.currentTimeMillis();
+        configuration.ban(ip("10.0.0.1"), nowMillis);
+        configuration.ban(ip("10.0.0.1"), nowMillis + Duration.ofSeconds(50).toMillis());
+
+        configuration.expireBans(nowMillis + Duration.ofSeconds(70).toMillis());
+        assertTrue(configuration.isBanned(ip("10.0.0.1")), "test if banned again, then expire from the last ban");
+    }
+
+    @Test
+    void test_ban_if_disabled_then_ignore() {
+        configuration.init();
+        assertAll(
+                () -> assertFalse(configuration.ban(ip("10.0.0.1"), System.currentTimeMillis())),
+                () -> assertFalse(configuration.isBanned(ip("10.0.0.1"))),
+                () -> assertEquals(0, configuration.expireBans(Long.MAX_VALUE / 2)));
+    }
+
+    @Test
+    void test_init_if_out_of_range_then_throw() {
+        configuration.setEnabled(true);
+        configuration.setPrefixLength(7);
+        assertThrows(IllegalArgumentException.class, configuration::init);
+
+        configuration.setPrefixLength(32);
+        configuration.setExpiryTick(Duration.ZERO);
+        assertThrows(IllegalArgumentException.class, configuration::init);
+    }
+}
@@ -0,0 +1,55 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientIpConfigurationTest {
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    @Test
+    void test_init_merge_trusted_proxies() {
+        ClientIpConfiguration clientIpConfiguration = new ClientIpConfiguration();
+        clientIpConfiguration.setTrustedProxies(Arrays.asList("10.0.1.0/24", "10.0.0.0/24", "10.0.0.7", "192.168.0.0/16", "255.255.255.255"));
+        clientIpConfiguration.init();
+
+        Ipv4RangeIndex ranges = clientIpConfiguration.getTrustedProxyRanges();
+        assertAll(
+                () -> assertEquals(3, ranges.size()),
+                () -> assertTrue(ranges.contains(ip("10.0.0.0"))),
+                () -> assertTrue(ranges.contains(ip("10.0.1.255"))),
+                () -> assertFalse(ranges.contains(ip("10.0.2.0"))),
+                () -> assertTrue(ranges.contains(ip("192.168.100.1"))),
+                () -> assertTrue(ranges.contains(ip("255.255.255.255"))),
+                () -> assertFalse(ranges.contains(ip("255.255.255.254"))));
+    }
+
+    @Test
+    void test_init_if_empty_then_empty_ranges() {
+        ClientIpConfiguration clientIpConfiguration = new ClientIpConfiguration();
+        clientIpConfiguration.setTrustedProxies(null);
+        clientIpConfiguration.init();
+        assertAll(
+                () -> assertEquals(0, clientIpConfiguration.getTrustedProxyRanges().size()),
+                () -> assertEquals(ClientIpConfiguration.DEFAULT_HEADERS, clientIpConfiguration.getHeaders()));
+    }
+
+    @Test
+    void test_init_if_invalid_cidr_then_exception() {
+        ClientIpConfiguration clientIpConfiguration = new ClientIpConfiguration();
+        clientIpConfiguration.setTrustedProxies(Collections.singletonList("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, clientIpConfiguration::init);
+    }
+}
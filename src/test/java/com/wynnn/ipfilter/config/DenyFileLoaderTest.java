@@ -0,0 +1,122 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.index.Ipv4SubnetBuffer;
+import com.wynnn.ipfilter.index.Ipv6RangeIndex;
+import com.wynnn.ipfilter.index.Ipv6SubnetBuffer;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DenyFileLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(String content) throws IOException {
+        return Files.write(tempDir.resolve("deny.txt"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void test_load_skip_blank_comment_and_invalid_lines() throws IOException {
+        Path denyFile = write("# deny list\n"
+                + "10.0.0.27/16\n"
+                + "\n"
+                + "  1.1.1.1  \r\n"
+                + "10.0.0.0 /32\n"          // invalid, space before CIDR
+                + "172.16.0.0/12 # office\n"
+                + "10.256.0.0/8\n"          // invalid octet
+                + "192.168.0.0/05\n"        // invalid CIDR (leading zero)
+                + "255.255.255.255");       // no line feed at the end of file
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        int numLoaded = DenyFileLoader.load(denyFile, subnets);
+        subnets.sort();
+        assertAll(
+                () -> assertEquals(4, numLoaded),
+                () -> assertEquals(4, subnets.size()),
+                () -> assertEquals(IpUtils.ipToLong("1.1.1.1"), subnets.getStartIpLong(0)),
+                () -> assertEquals(32, subnets.getCidr(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), subnets.getStartIpLong(1)),
+                () -> assertEquals(16, subnets.getCidr(1)),
+                () -> assertEquals(IpUtils.ipToLong("172.16.0.0"), subnets.getStartIpLong(2)),
+                () -> assertEquals(12, subnets.getCidr(2)),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), subnets.getStartIpLong(3)),
+                () -> assertEquals(32, subnets.getCidr(3)));
+    }
+
+    @Test
+    void test_loadIpv6_skip_blank_comment_and_invalid_lines() throws IOException {
+        Path denyFile = write("\uFEFF# IPv6 deny list\n"
+                + "2001:db8::/32\n"
+                + "\n"
+                + "  fe80::1  \r\n"
+                + "2001:db8:1::/48 # branch\n"
+                + "2001:db8::/129\n"       // invalid prefix length
+                + "10.0.0.0/8\n"           // IPv4
+                + "2400:cb00::/32");        // no line feed at the end of file
+        Ipv6SubnetBuffer subnets = new Ipv6SubnetBuffer();
+        int numLoaded = DenyFileLoader.loadIpv6(denyFile, subnets);
+        Ipv6RangeIndex index = Ipv6RangeIndex.of(subnets);
+        assertAll(
+                () -> assertEquals(4, numLoaded),
+                () -> assertEquals(3, index.size()),
+                () -> assertTrue(index.contains(0xfe80000000000000L, 1)),
+                () -> assertTrue(index.contains(0x2400cb0000000000L, 0)));
+    }
+
+    @Test
+    void test_load_with_byte_order_mark() throws IOException {
+        Path denyFile = write("\uFEFF1.1.1.1/24\n");
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        assertAll(
+                () -> assertEquals(1, DenyFileLoader.load(denyFile, subnets)),
+                () -> assertEquals(IpUtils.ipToLong("1.1.1.0"), subnets.getStartIpLong(0)));
+    }
+
+    @Test
+    void test_load_lines_across_chunks() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append(IpUtils.longToIp(i * 7L)).append("/32\n");
+        }
+        Path denyFile = write(content.toString());
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        int numLoaded = DenyFileLoader.load(denyFile, subnets, 64); // a few lines per chunk
+        assertAll(
+                () -> assertEquals(1000, numLoaded),
+                () -> assertEquals(0, subnets.getStartIpLong(0)),
+                () -> assertEquals(999 * 7L, subnets.getStartIpLong(999)));
+    }
+
+    @Test
+    void test_load_if_line_longer_than_chunk_then_throw() throws IOException {
+        Path denyFile = write("255.255.255.255/32\n1.1.1.1\n");
+        assertThrows(IOException.class, () -> DenyFileLoader.load(denyFile, new Ipv4SubnetBuffer(), 8));
+    }
+
+    @Test
+    void test_load_slices_in_parallel_keep_line_number() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append(i % 100 == 99 ? "invalid" : IpUtils.longToIp(i * 7L) + "/32").append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Path denyFile = write(content.toString());
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        int numLoaded = DenyFileLoader.load(denyFile, subnets, 1 << 20, 16); // several slices in a chunk
+        assertAll(
+                () -> assertEquals(990, numLoaded),
+                () -> assertEquals(990, subnets.size()),
+                () -> assertEquals(0, subnets.getStartIpLong(0)),
+                () -> assertEquals(7L * 100, subnets.getStartIpLong(99)), // file order is kept
+                () -> assertEquals(998 * 7L, subnets.getStartIpLong(989)));
+    }
+}
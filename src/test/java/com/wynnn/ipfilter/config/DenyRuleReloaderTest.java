@@ -0,0 +1,100 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.model.DenyRuleSet;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DenyRuleReloaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DenyRuleReloader reloader;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (reloader != null) {
+            reloader.destroy();
+        }
+    }
+
+    private IpFilterConfiguration configuration(Path denyFile, boolean watch) {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDenyFile(denyFile.toString());
+        configuration.setWatchDenyFile(watch);
+        configuration.init();
+        return configuration;
+    }
+
+    private static boolean denied(IpFilterConfiguration configuration, String ip) {
+        return configuration.getDeny().contains((int) IpUtils.ipToLong(ip));
+    }
+
+    @Test
+    void test_requestReload_then_swap_rule_set() throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Collections.singletonList("10.0.0.1/32"));
+        IpFilterConfiguration configuration = configuration(denyFile, false);
+        reloader = new DenyRuleReloader(configuration);
+        reloader.init();
+        DenyRuleSet before = configuration.getRuleSet();
+
+        Files.write(denyFile, Arrays.asList("10.0.0.1/32", "10.0.0.2/32"));
+        DenyRuleSet after = reloader.requestReload().join();
+        assertAll("test if reload is requested, then build new rule set and swap it",
+                () -> assertEquals(before.getVersion() + 1, after.getVersion()),
+                () -> assertSame(after, configuration.getRuleSet()),
+                () -> assertEquals(2, configuration.getNumDenyIps()),
+                () -> assertTrue(denied(configuration, "10.0.0.2")),
+                () -> assertFalse(before.getDeny().contains((int) IpUtils.ipToLong("10.0.0.2")))); // 교체 전 rule set 은 변경되지 않음
+    }
+
+    @Test
+    void test_requestReload_if_failed_then_keep_rule_set() throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Collections.singletonList("10.0.0.1/32"));
+        IpFilterConfiguration configuration = configuration(denyFile, false);
+        reloader = new DenyRuleReloader(configuration);
+        reloader.init();
+        DenyRuleSet before = configuration.getRuleSet();
+
+        Files.delete(denyFile);
+        assertThrows(CompletionException.class, () -> reloader.requestReload().join());
+        assertAll("test if reload is failed, then keep previous rule set",
+                () -> assertSame(before, configuration.getRuleSet()),
+                () -> assertTrue(denied(configuration, "10.0.0.1")));
+    }
+
+    @Test
+    void test_watch_deny_file_then_reload() throws IOException, InterruptedException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Collections.singletonList("10.0.0.1/32"));
+        IpFilterConfiguration configuration = configuration(denyFile, true);
+        reloader = new DenyRuleReloader(configuration);
+        reloader.init();
+        long version = configuration.getRuleSet().getVersion();
+
+        Files.write(denyFile, Arrays.asList("10.0.0.1/32", "10.0.0.2/32"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!denied(configuration, "10.0.0.2") && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertAll("test if deny file is changed, then reload automatically",
+                () -> assertTrue(denied(configuration, "10.0.0.2")),
+                () -> assertTrue(configuration.getRuleSet().getVersion() > version));
+    }
+}
@@ -0,0 +1,275 @@
+package com.wynnn.ipfilter.config;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DenyRuleReplicatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<DenyRuleReplicator> replicators = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (DenyRuleReplicator replicator : replicators) {
+            replicator.destroy();
+        }
+    }
+
+    private DenyRuleReplicator replicator(IpFilterConfiguration configuration, ReplicationConfiguration.Role role, int maxLogEntries) throws IOException {
+        setReplication(configuration, role, maxLogEntries);
+        DenyRuleReplicator replicator = new DenyRuleReplicator(configuration);
+        replicator.init();
+        replicators.add(replicator);
+        return replicator;
+    }
+
+    private void setReplication(IpFilterConfiguration configuration, ReplicationConfiguration.Role role, int maxLogEntries) {
+        ReplicationConfiguration replicationConfiguration = configuration.getReplication();
+        replicationConfiguration.setRole(role);
+        replicationConfiguration.setDirectory(tempDir.toString());
+        replicationConfiguration.setPollInterval(Duration.ofHours(1)); // poll 을 직접 호출
+        replicationConfiguration.setMaxLogEntries(maxLogEntries);
+        replicationConfiguration.setRetryInterval(Duration.ofHours(1)); // retryPublish 를 직접 호출
+    }
+
+    private static IpFilterConfiguration configuration(String... denyRules) {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Arrays.asList(denyRules));
+        configuration.init();
+        return configuration;
+    }
+
+    private static boolean denied(IpFilterConfiguration configuration, String ip) {
+        return configuration.getDeny().contains((int) IpUtils.ipToLong(ip));
+    }
+
+    @Test
+    void test_follower_then_apply_leader_base_and_deltas() throws IOException {
+        IpFilterConfiguration leader = configuration("10.0.0.0/8", "10.1.0.0/16");
+        leader.setAllow(Collections.singletonList("20.0.0.128/25"));
+        leader.reload();
+        leader.addRule("20.0.0.0/24");
+        DenyRuleReplicator leaderReplicator = replicator(leader, ReplicationConfiguration.Role.LEADER, 1000);
+        leaderReplicator.awaitPublished();
+        IpFilterConfiguration follower = configuration("30.0.0.0/8");
+        DenyRuleReplicator followerReplicator = replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+        assertAll("test if follower is started, then use leader base from snapshot with pending rules",
+                () -> assertTrue(follower.getRuleSet().isFromSnapshot()),
+                () -> assertFalse(denied(follower, "30.0.0.1")),
+                () -> assertTrue(denied(follower, "20.0.0.1")),
+                () -> assertFalse(denied(follower, "20.0.0.129")),
+                () -> assertEquals(leader.getNumDenyIps(), follower.getNumDenyIps()));
+
+        leader.removeRule("10.0.0.0/8");
+        leader.addRule("40.0.0.0/24", Duration.ofMinutes(1));
+        leaderReplicator.awaitPublished();
+        followerReplicator.poll();
+        assertAll("test if leader changes rules, then follower applies deltas in order",
+                () -> assertFalse(denied(follower, "10.2.0.0")),
+                () -> assertTrue(denied(follower, "10.1.0.1")),
+                () -> assertTrue(denied(follower, "40.0.0.1")),
+                () -> assertEquals(leader.getNumDenyIps(), follower.getNumDenyIps()),
+                () -> assertEquals(leaderReplicator.getStatus().getSequence(), followerReplicator.getStatus().getSequence()),
+                () -> assertEquals(1, followerReplicator.getStatus().getGeneration()),
+                () -> assertTrue(followerReplicator.getStatus().getLagMillis() >= 0));
+
+        leader.expireRules(System.currentTimeMillis() + Duration.ofMinutes(2).toMillis());
+        leaderReplicator.awaitPublished();
+        followerReplicator.poll();
+        assertFalse(denied(follower, "40.0.0.1"), "test if rule is expired on leader, then remove on follower");
+    }
+
+    @Test
+    void test_leader_reload_or_compact_then_publish_new_generation() throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Collections.singletonList("10.0.0.1/32"));
+        IpFilterConfiguration leader = new IpFilterConfiguration();
+        leader.setDenyFile(denyFile.toString());
+        leader.init();
+        DenyRuleReplicator leaderReplicator = replicator(leader, ReplicationConfiguration.Role.LEADER, 2);
+        leaderReplicator.awaitPublished();
+        IpFilterConfiguration follower = configuration();
+        DenyRuleReplicator followerReplicator = replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 2);
+
+        Files.write(denyFile, Arrays.asList("10.0.0.1/32", "10.0.0.2/32"));
+        leader.reload();
+        leader.addRule("50.0.0.0/24");
+        leaderReplicator.awaitPublished();
+        followerReplicator.poll();
+        assertAll("test if leader is reloaded, then follower switches to new generation",
+                () -> assertEquals(2, followerReplicator.getStatus().getGeneration()),
+                () -> assertTrue(denied(follower, "10.0.0.2")),
+                () -> assertTrue(denied(follower, "50.0.0.1")));
+
+        leader.addRule("50.0.1.0/24");
+        leader.compact();
+        leader.removeRule("50.0.0.0/24");
+        leaderReplicator.awaitPublished();
+        followerReplicator.poll();
+        assertAll("test if delta log is long, then compaction publishes new generation with same rules",
+                () -> assertEquals(3, leaderReplicator.getStatus().getGeneration()),
+                () -> assertEquals(3, followerReplicator.getStatus().getGeneration()),
+                () -> assertFalse(denied(follower, "50.0.0.1")),
+                () -> assertTrue(denied(follower, "50.0.1.1")),
+                () -> assertEquals(leader.getNumDenyIps(), follower.getNumDenyIps()));
+
+        leaderReplicator.destroy();
+        DenyRuleReplicator restarted = replicator(leader, ReplicationConfiguration.Role.LEADER, 2);
+        restarted.awaitPublished();
+        assertEquals(4, restarted.getStatus().getGeneration(), "test if leader is restarted, then continue generation");
+    }
+
+    @Test
+    void test_leader_publish_then_retain_generations_in_use_by_followers() throws IOException {
+        IpFilterConfiguration leader = configuration("10.0.0.0/8");
+        DenyRuleReplicator leaderReplicator = replicator(leader, ReplicationConfiguration.Role.LEADER, 1000);
+        leaderReplicator.awaitPublished();
+        IpFilterConfiguration follower = configuration();
+        DenyRuleReplicator followerReplicator = replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+
+        leader.reload();
+        leader.reload();
+        leaderReplicator.awaitPublished();
+        assertAll("test if follower does not ack new generations, then retain its generation",
+                () -> assertTrue(Files.exists(tempDir.resolve("base-1.snapshot"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("deltas-1.log"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("base-2.snapshot"))));
+
+        followerReplicator.poll();
+        leader.reload();
+        leaderReplicator.awaitPublished();
+        assertAll("test if follower acks new generation, then delete generations older than the previous one",
+                () -> assertEquals(3, followerReplicator.getStatus().getGeneration()),
+                () -> assertFalse(Files.exists(tempDir.resolve("base-1.snapshot"))),
+                () -> assertFalse(Files.exists(tempDir.resolve("deltas-1.log"))),
+                () -> assertFalse(Files.exists(tempDir.resolve("base-2.rules"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("base-3.snapshot"))));
+
+        followerReplicator.destroy();
+        Path staleAck = Files.write(tempDir.resolve("follower-stopped.ack"), Collections.singletonList("3"));
+        Files.setLastModifiedTime(staleAck, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofMinutes(2).toMillis()));
+        leader.reload();
+        leaderReplicator.awaitPublished();
+        assertAll("test if follower is stopped or its ack is stale, then do not retain its generation",
+                () -> assertFalse(Files.exists(tempDir.resolve("base-3.snapshot"))),
+                () -> assertFalse(Files.exists(tempDir.resolve("follower-stopped.ack"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("base-4.snapshot"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("base-5.snapshot"))));
+    }
+
+    @Test
+    void test_leader_if_publish_failed_then_retry_with_new_generation() throws IOException {
+        IpFilterConfiguration leader = configuration("10.0.0.0/8");
+        DenyRuleReplicator leaderReplicator = replicator(leader, ReplicationConfiguration.Role.LEADER, 1000);
+        leaderReplicator.awaitPublished();
+        IpFilterConfiguration follower = configuration();
+        DenyRuleReplicator followerReplicator = replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+
+        Path blocked = Files.createDirectories(tempDir.resolve("base-2.rules.tmp")); // 새 generation 의 규칙 파일을 쓰지 못하도록 함
+        Files.write(blocked.resolve("file"), Collections.singletonList("blocked"));
+        leader.addRule("20.0.0.1");
+        leader.reload();
+        leader.addRule("30.0.0.1");
+        leaderReplicator.awaitPublished();
+        assertAll("test if publish failed, then keep generation and expose failure",
+                () -> assertEquals(1, leaderReplicator.getStatus().getGeneration()),
+                () -> assertTrue(leaderReplicator.getStatus().getLastError().contains("generation=2")),
+                () -> assertNotNull(leaderReplicator.getStatus().getFailedSince()));
+
+        Files.delete(blocked.resolve("file"));
+        Files.delete(blocked);
+        leaderReplicator.retryPublish();
+        leaderReplicator.awaitPublished();
+        followerReplicator.poll();
+        assertAll("test if publish is retried, then follower applies rules changed while failing",
+                () -> assertEquals(2, leaderReplicator.getStatus().getGeneration()),
+                () -> assertNull(leaderReplicator.getStatus().getLastError()),
+                () -> assertNull(leaderReplicator.getStatus().getFailedSince()),
+                () -> assertEquals(2, followerReplicator.getStatus().getGeneration()),
+                () -> assertTrue(denied(follower, "20.0.0.1")),
+                () -> assertTrue(denied(follower, "30.0.0.1")),
+                () -> assertEquals(leader.getNumDenyIps(), follower.getNumDenyIps()));
+    }
+
+    @Test
+    void test_follower_then_do_not_change_replicated_rules_locally() throws IOException {
+        IpFilterConfiguration leader = configuration("10.0.0.0/8");
+        leader.addRule("20.0.0.0/24");
+        replicator(leader, ReplicationConfiguration.Role.LEADER, 1000).awaitPublished();
+        IpFilterConfiguration follower = configuration("30.0.0.0/8");
+        replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+        long numDenyIps = follower.getNumDenyIps();
+
+        follower.reload();
+        follower.compact();
+        assertAll("test if follower is reloaded or compacted, then keep replicated base and pending rules",
+                () -> assertTrue(denied(follower, "10.0.0.1")),
+                () -> assertTrue(denied(follower, "20.0.0.1")),
+                () -> assertFalse(denied(follower, "30.0.0.1")),
+                () -> assertEquals(numDenyIps, follower.getNumDenyIps()),
+                () -> assertEquals(1, follower.getNumPendingRules()),
+                () -> assertThrows(IllegalStateException.class, () -> follower.addRule("40.0.0.0/24")),
+                () -> assertThrows(IllegalStateException.class, () -> follower.removeRule("20.0.0.0/24")));
+    }
+
+    @Test
+    void test_follower_if_delta_is_not_covered_by_base_then_do_not_read_base_rules() throws IOException {
+        IpFilterConfiguration leader = configuration("10.0.0.0/8");
+        DenyRuleReplicator leaderReplicator = replicator(leader, ReplicationConfiguration.Role.LEADER, 1000);
+        leaderReplicator.awaitPublished();
+        IpFilterConfiguration follower = configuration();
+        DenyRuleReplicator followerReplicator = replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+        Files.delete(tempDir.resolve("base-1.rules")); // 읽으면 실패
+
+        leader.addRule("20.0.0.0/24");
+        leader.addRule("20.0.1.0/24");
+        leader.removeRule("20.0.0.0/24");
+        leaderReplicator.awaitPublished();
+        followerReplicator.poll();
+        assertAll("test if deltas are outside of base, then apply without reading base rules file",
+                () -> assertFalse(denied(follower, "20.0.0.1")),
+                () -> assertTrue(denied(follower, "20.0.1.1")),
+                () -> assertTrue(denied(follower, "10.0.0.1")),
+                () -> assertEquals(leader.getNumDenyIps(), follower.getNumDenyIps()),
+                () -> assertEquals(leader.getNumPendingRules(), follower.getNumPendingRules()));
+    }
+
+    @Test
+    void test_follower_init_if_manifest_exists_then_do_not_compile_deny_rules() throws IOException {
+        IpFilterConfiguration leader = configuration("10.0.0.0/8");
+        replicator(leader, ReplicationConfiguration.Role.LEADER, 1000).awaitPublished();
+        IpFilterConfiguration follower = new IpFilterConfiguration();
+        follower.setDeny(Collections.singletonList("30.0.0.0/8"));
+        follower.setDenyFile(tempDir.resolve("not-exists.txt").toString()); // compile 하면 기동 실패
+        setReplication(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+        follower.init();
+        assertEquals(0, follower.getNumDenyIps(), "test if follower starts with manifest, then wait for replicated base");
+
+        replicator(follower, ReplicationConfiguration.Role.FOLLOWER, 1000);
+        assertAll("test if follower replicator starts, then apply leader base",
+                () -> assertTrue(denied(follower, "10.0.0.1")),
+                () -> assertFalse(denied(follower, "30.0.0.1")),
+                () -> assertEquals(leader.getNumDenyIps(), follower.getNumDenyIps()));
+    }
+}
@@ -1,31 +1,50 @@
 package com.wynnn.ipfilter.config;
 
 import com.wynnn.ipfilter.common.TestUtil;
+import com.wynnn.ipfilter.index.Ipv4BitmapIndex;
+import com.wynnn.ipfilter.index.Ipv4DenyIndex;
+import com.wynnn.ipfilter.index.Ipv4Dir24x8Index;
+import com.wynnn.ipfilter.index.Ipv4MappedRangeIndex;
+import com.wynnn.ipfilter.index.Ipv4OverlayIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeSet;
+import com.wynnn.ipfilter.index.Ipv4TwoLevelIndex;
+import com.wynnn.ipfilter.index.Ipv6RangeIndex;
+import com.wynnn.ipfilter.model.DenyRuleSet;
 import com.wynnn.ipfilter.model.Ipv4Subnet;
 import com.wynnn.ipfilter.utils.IpUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
 import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
 import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
 import org.springframework.core.io.ClassPathResource;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Properties;
-import java.util.TreeMap;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Slf4j
 public class IpFilterConfigurationTest {
@@ -48,8 +67,9 @@ public class IpFilterConfigurationTest {
     @Test
     void test_setDeny_load() {
         ipFilterConfiguration.setDeny(Arrays.asList(TestUtil.TEST_FILTER_DENY_LIST));
-        log.debug("> denyRules={}", ipFilterConfiguration.getDeny());
-        assertEquals(6, ipFilterConfiguration.getDeny().size());
+        ipFilterConfiguration.init();
+        log.debug("> denyRules={}", ipFilterConfiguration.getRanges());
+        assertEquals(5, ipFilterConfiguration.getRanges().size()); // 1.1.1.1 ~ 1.1.1.2 are merged
     }
 
 
@@ -57,109 +77,104 @@ public class IpFilterConfigurationTest {
     void test_setDeny_if_invalidSubnet_then_skip() {
         String[] denyRules = {"10.0.0.0 /32", "10 .0.0.0/24", "10.256.267.289"}; // do not allow space chars in the middle of IP string
         ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
-        assertEquals(0, ipFilterConfiguration.getDeny().size());
+        ipFilterConfiguration.init();
+        assertEquals(0, ipFilterConfiguration.getRanges().size());
     }
 
     @Test
     void test_setDeny_if_not_cidr_notation_then_set_32bit_mask() {
         String denyRule = "10.0.0.0";
         ipFilterConfiguration.setDeny(Collections.singletonList(denyRule));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("if denyRule has only ipv4 and not include cidr notation, then set 32 bit mask",
                 () -> assertEquals(1, deny.size()),
-                () -> assertNotNull(deny.get(IpUtils.ipToLong(denyRule))),
-                () -> assertEquals(32, deny.get(IpUtils.ipToLong(denyRule)).getCidr()));
+                () -> assertEquals(IpUtils.ipToLong(denyRule), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong(denyRule), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_set_valid() {
         String denyRule = "10.10.10.11/24"; // 10.10.10.0 ~ 10.10.10.255
         ipFilterConfiguration.setDeny(Collections.singletonList(denyRule));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rule is 10.10.10.11/24, then denyIPs must be 10.10.10.0 ~ 10.10.10.255",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(24, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("10.10.10.11"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.10.10.0"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.10.10.255"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("10.10.10.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.10.10.255"), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_set_valid_if_ip_is_all() {
         String denyRule = "0.0.0.0/0"; // 0.0.0.0 ~ 255.255.255.255
         ipFilterConfiguration.setDeny(Collections.singletonList(denyRule));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rule is 0.0.0.0/0 then denyIPs must be 0.0.0.0 ~ 255.255.255.255",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(0, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("0.0.0.0"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("0.0.0.0"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("0.0.0.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_set_valid_if_ip_is_start() {
         String denyRule = "0.0.0.1/24"; // 0.0.0.0 ~ 0.0.0.255
         ipFilterConfiguration.setDeny(Collections.singletonList(denyRule));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rule is 0.0.0.0/24 then denyIPs must be 0.0.0.0 ~ 0.0.0.255",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(24, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("0.0.0.1"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("0.0.0.0"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("0.0.0.255"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("0.0.0.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("0.0.0.255"), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_set_valid_if_ip_is_end() {
         String denyRule = "255.255.255.255/24"; // 255.255.255.0 ~ 0.0.0.255
         ipFilterConfiguration.setDeny(Collections.singletonList(denyRule));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rule is 255.255.255.255/24 then denyIPs must be 255.255.255.0 ~ 255.255.255.255",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(24, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("255.255.255.0"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_set_valid_if_32bit() {
         String denyRule = "10.10.255.11/32"; // 10.10.255.11 only
         ipFilterConfiguration.setDeny(Collections.singletonList(denyRule));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rule is 10.10.255.11/32, then denyIP must be 10.10.255.11 only",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(32, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("10.10.255.11"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.10.255.11"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.10.255.11"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("10.10.255.11"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.10.255.11"), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_remove_nested_range_same_mask() {
         String[] denyRules = {"10.0.0.100/24", "10.0.0.200/24", "10.0.0.1/24"};
         ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rules are nested (with same cidr), then aggregate",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(24, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.100"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.255"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.255"), deny.getEndIpLong(0)));
     }
 
     @Test
     void test_setDeny_remove_nested_range_different_mask() {
         String[] denyRules = {"10.0.0.100/24", "10.0.0.200/30", "10.0.0.1/26"};
         ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if deny rules are nested, then aggregate (even if different mask)",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(24, deny.firstEntry().getValue().getCidr()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.100"), deny.firstEntry().getValue().getIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.firstEntry().getValue().getStartIpLong()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.255"), deny.firstEntry().getValue().getEndIpLong()));
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.255"), deny.getEndIpLong(0)));
     }
 
     @Test
@@ -170,26 +185,22 @@ public class IpFilterConfigurationTest {
         // 1.0.20.0 ~ 1.0.20.7
         String[] denyRules = {"1.0.0.10/30", "1.0.1.2/31", "1.0.1.3/31", "1.0.20.3/30", "1.0.20.1/29"};
         ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
 
         // when
         String[] expectDenyRanges = {"1.0.0.8/30", "1.0.1.2/31", "1.0.20.0/29"};
-        Map<Long, Ipv4Subnet> expect = new HashMap<>();
-        for (String expectDenyRange : expectDenyRanges) {
-            Ipv4Subnet subnet = new Ipv4Subnet(expectDenyRange);
-            expect.put(subnet.getStartIpLong(), subnet);
-        }
 
         // then
-        Stream<Executable> executables = expect.keySet().stream()
-                .map(expect::get)
-                .map(expectValues -> () -> assertAll(
-                        String.format("test range start with %s", expectValues.getIpLong()),
-                        () -> assertNotNull(deny.get(expectValues.getStartIpLong())),
-                        () -> assertEquals(expectValues.getCidr(), deny.get(expectValues.getStartIpLong()).getCidr()),
-                        () -> assertEquals(expectValues.getStartIpLong(), deny.get(expectValues.getStartIpLong()).getStartIpLong()),
-                        () -> assertEquals(expectValues.getEndIpLong(), deny.get(expectValues.getStartIpLong()).getEndIpLong())
-                ));
+        Stream<Executable> executables = IntStream.range(0, expectDenyRanges.length)
+                .mapToObj(i -> {
+                    Ipv4Subnet expectValues = new Ipv4Subnet(expectDenyRanges[i]);
+                    return () -> assertAll(
+                            String.format("test range start with %s", expectValues.getIpLong()),
+                            () -> assertEquals(expectValues.getStartIpLong(), deny.getStartIpLong(i)),
+                            () -> assertEquals(expectValues.getEndIpLong(), deny.getEndIpLong(i))
+                    );
+                });
         assertAll("test if deny rules are nested, then aggregate (even if different mask)",
                 () -> assertEquals(3, deny.size()),
                 () -> assertAll(executables));
@@ -199,20 +210,532 @@ public class IpFilterConfigurationTest {
     void test_setDeny_if_exceed_max_count_then_stop_to_set() {
         String[] denyRules = {"10.0.0.0/8", "11.0.0.0/8", "12.0.0.0/8", "13.0.0.0/8"};
         ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         assertAll("test if exceed max count of deny IPs (30 million) then stop to set",
-                () -> assertEquals(2, deny.size()),
-                () -> assertEquals(IpUtils.ipToLong("11.0.0.0"), deny.lastEntry().getKey()));
+                () -> assertEquals(1, deny.size()), // 10.0.0.0/8 and 11.0.0.0/8 are merged
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("11.255.255.255"), deny.getEndIpLong(0)),
+                () -> assertEquals(2L << 24, ipFilterConfiguration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_setDeny_if_exceed_max_count_then_count_covered_ips_only() {
+        String[] denyRules = {"10.0.0.0/8", "10.0.0.0/9", "10.128.0.0/9", "11.0.0.0/9", "11.128.0.0/9", "12.0.0.0/9"};
+        ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
+        assertAll("test if deny rules are nested, then count covered IPs only when check max count",
+                () -> assertEquals(1, deny.size()),
+                () -> assertEquals(IpUtils.ipToLong("11.255.255.255"), deny.getEndIpLong(0)), // 10.0.0.0/9 and 10.128.0.0/9 are not counted again
+                () -> assertEquals(4L << 23, ipFilterConfiguration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_setDeny_merge_adjacent_range() {
+        String[] denyRules = {"10.0.0.3", "10.0.0.0/31", "10.0.0.2", "10.0.0.4/30", "10.0.0.9", "0.0.0.0", "255.255.255.255", "255.255.255.254"};
+        ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
+        assertAll("test if deny rules are adjacent, then merge into one range",
+                () -> assertEquals(4, deny.size()),
+                () -> assertEquals(IpUtils.ipToLong("0.0.0.0"), deny.getEndIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.getStartIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.7"), deny.getEndIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.9"), deny.getStartIpLong(2)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.9"), deny.getEndIpLong(2)),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.254"), deny.getStartIpLong(3)),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), deny.getEndIpLong(3)),
+                () -> assertEquals(1 + 8 + 1 + 2, ipFilterConfiguration.getNumDenyIps()));
     }
 
     @Test
     void test_setDeny_if_nested() {
         String[] denyRules = {"10.0.0.1/32", "10.0.0.2/32", "10.0.0.3/32", "10.0.0.4/8"};
         ipFilterConfiguration.setDeny(Arrays.asList(denyRules));
-        TreeMap<Long, Ipv4Subnet> deny = ipFilterConfiguration.getDeny();
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
         log.debug(">>>>>>>>> {}", deny);
         assertAll("test if exceed max count of deny IPs (30 million) then stop to set",
                 () -> assertEquals(1, deny.size()),
-                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.lastEntry().getKey()));
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.getStartIpLong(deny.size() - 1)));
+    }
+
+    @Test
+    void test_setDeny_merge_in_parallel_same_as_sequential() {
+        List<String> denyRules = new ArrayList<>();
+        BitSet expect = new BitSet();
+        for (int i = 0; i < 300000; i++) {
+            String denyRule = IpUtils.longToIp(4L * i) + (i % 1000 == 0 ? "/20" : "/32"); // /20 covers the following /32s
+            denyRules.add(denyRule);
+            Ipv4Subnet subnet = new Ipv4Subnet(denyRule);
+            expect.set((int) subnet.getStartIpLong(), (int) subnet.getEndIpLong() + 1);
+        }
+        denyRules.add("0.12.0.0/15"); // across the boundary of parallel tasks
+        expect.set((int) IpUtils.ipToLong("0.12.0.0"), (int) IpUtils.ipToLong("0.13.255.255") + 1);
+
+        ipFilterConfiguration.setDeny(denyRules);
+        ipFilterConfiguration.init();
+        Ipv4RangeSet deny = ipFilterConfiguration.getRanges();
+        BitSet actual = new BitSet();
+        int expectSize = 0;
+        for (int from = expect.nextSetBit(0); from >= 0; from = expect.nextSetBit(expect.nextClearBit(from))) {
+            expectSize++;
+        }
+        for (int i = 0; i < deny.size(); i++) {
+            actual.set((int) deny.getStartIpLong(i), (int) deny.getEndIpLong(i) + 1);
+        }
+        int expectNumRanges = expectSize;
+        assertAll("test if many rules are merged in parallel, then result is same as merged sequentially",
+                () -> assertEquals(expect, actual),
+                () -> assertEquals(expectNumRanges, deny.size()),
+                () -> assertEquals(expect.cardinality(), ipFilterConfiguration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_init_if_engine_auto_and_few_rules_then_sorted() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Arrays.asList(TestUtil.TEST_FILTER_DENY_LIST));
+        configuration.init();
+        assertAll("test if engine is auto and number of rules is small, then use sorted index",
+                () -> assertTrue(configuration.getDeny() instanceof Ipv4RangeIndex),
+                () -> assertSame(configuration.getRanges(), configuration.getDeny()));
+    }
+
+    @Test
+    void test_init_if_engine_two_level_then_two_level() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setEngine(IpFilterConfiguration.Engine.TWO_LEVEL);
+        configuration.setDeny(Arrays.asList(TestUtil.TEST_FILTER_DENY_LIST));
+        configuration.init();
+        Stream<Executable> executables = Stream.of(TestUtil.TEST_EXPECT_DENY_IP)
+                .map(denyIp -> () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong(denyIp))));
+        Stream<Executable> allowExecutables = Stream.of(TestUtil.TEST_EXPECT_ALLOW_IP)
+                .map(allowIp -> () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong(allowIp))));
+        assertAll("test if engine is two-level, then use two-level index",
+                () -> assertTrue(configuration.getDeny() instanceof Ipv4TwoLevelIndex),
+                () -> assertEquals(configuration.getRanges().size(), configuration.getDeny().size()),
+                () -> assertAll(executables),
+                () -> assertAll(allowExecutables));
+    }
+
+    @Test
+    void test_init_if_engine_dir_24_8_then_find_matched_rule(@TempDir Path tempDir) {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        List<IpFilterConfiguration> configurations = new ArrayList<>();
+        for (int i = 0; i < 2; i++) { // compile, then read snapshot
+            IpFilterConfiguration configuration = new IpFilterConfiguration();
+            configuration.setEngine(IpFilterConfiguration.Engine.DIR_24_8);
+            configuration.setDeny(Arrays.asList("10.0.0.0/8", "10.1.0.0/16", "1.1.1.1"));
+            configuration.setAllow(Collections.singletonList("10.1.2.0/24"));
+            configuration.setSnapshotFile(snapshotFile.toString());
+            configuration.init();
+            configurations.add(configuration);
+        }
+        Stream<Executable> executables = configurations.stream().map(configuration -> () -> assertAll(
+                () -> assertTrue(configuration.getDeny() instanceof Ipv4Dir24x8Index),
+                () -> assertEquals("10.0.0.0/8", configuration.getDeny().matchedRule((int) IpUtils.ipToLong("10.1.1.1")).orElse(null)),
+                () -> assertEquals("1.1.1.1/32", configuration.getDeny().matchedRule((int) IpUtils.ipToLong("1.1.1.1")).orElse(null)),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("10.1.2.1"))),
+                () -> assertFalse(configuration.getDeny().matchedRule((int) IpUtils.ipToLong("1.1.1.2")).isPresent())));
+        assertAll(
+                () -> assertTrue(configurations.get(1).getRuleSet().isFromSnapshot()),
+                () -> assertAll(executables));
+    }
+
+    @Test
+    void test_init_if_engine_bitmap_then_bitmap() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setEngine(IpFilterConfiguration.Engine.BITMAP);
+        configuration.setDeny(Arrays.asList(TestUtil.TEST_FILTER_DENY_LIST));
+        configuration.init();
+        Stream<Executable> executables = Stream.of(TestUtil.TEST_EXPECT_DENY_IP)
+                .map(denyIp -> () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong(denyIp))));
+        assertAll("test if engine is bitmap, then use bitmap index",
+                () -> assertTrue(configuration.getDeny() instanceof Ipv4BitmapIndex),
+                () -> assertEquals(configuration.getRanges().size(), configuration.getDeny().size()),
+                () -> assertAll(executables));
+    }
+
+    @Test
+    void test_maxDirectMemory_then_positive() {
+        long maxDirectMemory = IpFilterConfiguration.maxDirectMemory();
+        assertTrue(maxDirectMemory > 0, "max direct memory=" + maxDirectMemory);
+    }
+
+    @Test
+    void test_init_load_deny_file_with_deny_list(@TempDir Path tempDir) throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Arrays.asList("10.0.0.1/32", "1.0.0.10/30", "invalid"));
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Arrays.asList("10.0.0.0/24", "2.2.2.2"));
+        configuration.setDenyFile(denyFile.toString());
+        configuration.init();
+        Ipv4RangeSet deny = configuration.getRanges();
+        assertAll("test if deny file is set, then rules in the file are applied together with deny list",
+                () -> assertEquals(3, deny.size()),
+                () -> assertEquals(IpUtils.ipToLong("1.0.0.8"), deny.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("2.2.2.2"), deny.getStartIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), deny.getStartIpLong(2)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.255"), deny.getEndIpLong(2)),
+                () -> assertEquals(256 + 4 + 1, configuration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_init_exclude_allow_rules_from_deny(@TempDir Path tempDir) throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Collections.singletonList("172.16.0.0/12"));
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Arrays.asList("10.0.0.0/8", "1.1.1.1"));
+        configuration.setDenyFile(denyFile.toString());
+        configuration.setAllow(Arrays.asList("10.1.2.0/24", "172.16.0.1", "1.1.1.1", "invalid", "192.168.0.0/16"));
+        configuration.init();
+        Ipv4RangeSet deny = configuration.getRanges();
+        assertAll("test if allow rules are set, then allowed IPs are removed from deny ranges",
+                () -> assertEquals(4, deny.size()),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("1.1.1.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.1.1.255"))),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("10.1.2.100"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.1.3.0"))),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("172.16.0.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("172.16.0.2"))),
+                () -> assertEquals((1L << 24) - 256 + (1L << 20) - 1, configuration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_init_if_allow_rules_changed_then_rebuild_snapshot(@TempDir Path tempDir) throws IOException {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        IpFilterConfiguration first = new IpFilterConfiguration();
+        first.setDeny(Collections.singletonList("10.0.0.0/8"));
+        first.setSnapshotFile(snapshotFile.toString());
+        first.init();
+
+        IpFilterConfiguration second = new IpFilterConfiguration();
+        second.setDeny(Collections.singletonList("10.0.0.0/8"));
+        second.setAllow(Collections.singletonList("10.0.0.1"));
+        second.setSnapshotFile(snapshotFile.toString());
+        second.init();
+        assertAll(
+                () -> assertFalse(second.getRuleSet().isFromSnapshot()),
+                () -> assertEquals(2, second.getRanges().size()),
+                () -> assertFalse(second.getDeny().contains((int) IpUtils.ipToLong("10.0.0.1"))));
+    }
+
+    @Test
+    void test_init_load_ipv6_deny_list_and_file(@TempDir Path tempDir) throws IOException {
+        Path denyIpv6File = Files.write(tempDir.resolve("deny-ipv6.txt"), Arrays.asList("2001:db8:1::/48", "fe80::/64", "invalid"));
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        configuration.setDenyIpv6(Arrays.asList("2001:db8::/32", "::1", null));
+        configuration.setDenyIpv6File(denyIpv6File.toString());
+        configuration.init();
+        Ipv6RangeIndex ipv6Deny = configuration.getRuleSet().getIpv6Deny();
+        assertAll(
+                () -> assertEquals(3, ipv6Deny.size()),
+                () -> assertTrue(ipv6Deny.contains(0x20010db8ffff0000L, 0)),
+                () -> assertTrue(ipv6Deny.contains(0, 1)),
+                () -> assertFalse(ipv6Deny.contains(0, 2)),
+                () -> assertEquals(1, configuration.getRanges().size()));
+    }
+
+    @Test
+    void test_init_if_deny_file_not_exists_then_throw(@TempDir Path tempDir) {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDenyFile(tempDir.resolve("not-exists.txt").toString());
+        assertThrows(UncheckedIOException.class, configuration::init);
+    }
+
+    @Test
+    void test_init_if_snapshot_is_valid_then_use_snapshot(@TempDir Path tempDir) throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Arrays.asList("10.0.0.1/32", "1.0.0.10/30"));
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        IpFilterConfiguration first = new IpFilterConfiguration();
+        first.setDeny(Collections.singletonList("2.2.2.2"));
+        first.setDenyFile(denyFile.toString());
+        first.setSnapshotFile(snapshotFile.toString());
+        first.init(); // compile and write snapshot
+
+        IpFilterConfiguration second = new IpFilterConfiguration();
+        second.setDeny(Collections.singletonList("2.2.2.2"));
+        second.setDenyFile(denyFile.toString());
+        second.setSnapshotFile(snapshotFile.toString());
+        second.init(); // read snapshot
+        Ipv4RangeSet deny = second.getRanges();
+        assertAll("test if deny rules are not changed, then use snapshot",
+                () -> assertTrue(Files.exists(snapshotFile)),
+                () -> assertTrue(first.getRanges() instanceof Ipv4RangeIndex),
+                () -> assertTrue(deny instanceof Ipv4MappedRangeIndex),
+                () -> assertEquals(3, deny.size()),
+                () -> assertEquals(first.getNumDenyIps(), second.getNumDenyIps()),
+                () -> assertTrue(second.getDeny().contains((int) IpUtils.ipToLong("1.0.0.11"))),
+                () -> assertTrue(second.getDeny().contains((int) IpUtils.ipToLong("2.2.2.2"))),
+                () -> assertTrue(second.getDeny().contains((int) IpUtils.ipToLong("10.0.0.1"))));
+    }
+
+    @Test
+    void test_init_if_deny_rules_changed_then_rebuild_snapshot(@TempDir Path tempDir) throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Collections.singletonList("10.0.0.1/32"));
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        IpFilterConfiguration first = new IpFilterConfiguration();
+        first.setDenyFile(denyFile.toString());
+        first.setSnapshotFile(snapshotFile.toString());
+        first.init();
+
+        Files.write(denyFile, Arrays.asList("10.0.0.1/32", "10.0.0.3/32"));
+        IpFilterConfiguration second = new IpFilterConfiguration();
+        second.setDenyFile(denyFile.toString());
+        second.setSnapshotFile(snapshotFile.toString());
+        second.init();
+
+        IpFilterConfiguration third = new IpFilterConfiguration();
+        third.setDenyFile(denyFile.toString());
+        third.setSnapshotFile(snapshotFile.toString());
+        third.init();
+        assertAll("test if deny rules are changed, then compile again and overwrite snapshot",
+                () -> assertTrue(second.getRanges() instanceof Ipv4RangeIndex),
+                () -> assertEquals(2, second.getRanges().size()),
+                () -> assertTrue(third.getRanges() instanceof Ipv4MappedRangeIndex),
+                () -> assertEquals(2, third.getRanges().size()));
+    }
+
+    @Test
+    void test_addRule_removeRule_then_apply_without_rebuild() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Arrays.asList("10.0.0.0/8", "10.1.0.0/16"));
+        configuration.init();
+        Ipv4RangeSet ranges = configuration.getRanges();
+        long version = configuration.getRuleSet().getVersion();
+
+        configuration.addRule("20.0.0.0/24");
+        configuration.removeRule("10.0.0.0/8");
+        assertAll("test if rules are added and removed, then apply to overlay and keep nested rule",
+                () -> assertSame(ranges, configuration.getRanges()),
+                () -> assertEquals(version + 2, configuration.getRuleSet().getVersion()),
+                () -> assertTrue(configuration.getDeny() instanceof Ipv4OverlayIndex),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.255"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.1.2.3"))),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("10.2.0.0"))),
+                () -> assertEquals(256 + 65536, configuration.getNumDenyIps()),
+                () -> assertEquals(2, configuration.getNumPendingRules()),
+                () -> assertThrows(NoSuchElementException.class, () -> configuration.removeRule("10.0.0.0/8")),
+                () -> assertThrows(IllegalArgumentException.class, () -> configuration.addRule("10.0.0.0/33")));
+
+        configuration.compact();
+        assertAll("test if compacted, then rebuild base index without overlay",
+                () -> assertTrue(configuration.getDeny() instanceof Ipv4RangeIndex),
+                () -> assertEquals(2, configuration.getRanges().size()),
+                () -> assertEquals(256 + 65536, configuration.getNumDenyIps()),
+                () -> assertEquals(0, configuration.getNumPendingRules()));
+
+        configuration.reload();
+        assertAll("test if reloaded, then apply runtime rules again",
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("10.2.0.0"))),
+                () -> assertEquals(256 + 65536, configuration.getNumDenyIps()),
+                () -> assertEquals(2, configuration.getNumPendingRules()));
+    }
+
+    @Test
+    void test_addRule_with_ttl_then_expire_in_batch() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        configuration.init();
+        long now = System.currentTimeMillis();
+
+        configuration.addRule("20.0.0.0/24", Duration.ofMinutes(1));
+        configuration.addRule("20.0.1.0/24", Duration.ofMinutes(1));
+        configuration.addRule("20.0.2.0/24", Duration.ofMinutes(10));
+        configuration.addRule("10.0.0.0/8", Duration.ofMinutes(1)); // 만료 시간 없이 차단 중인 규칙
+        long version = configuration.getRuleSet().getVersion();
+        assertAll("test if rules with ttl are added, then deny until expired",
+                () -> assertEquals(3, configuration.getNumExpiringRules()),
+                () -> assertEquals(0, configuration.expireRules(now)),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.1.1"))));
+
+        int numExpired = configuration.expireRules(now + Duration.ofMinutes(2).toMillis());
+        assertAll("test if ttl is passed, then remove expired rules with one swap and keep permanent rule",
+                () -> assertEquals(2, numExpired),
+                () -> assertEquals(version + 1, configuration.getRuleSet().getVersion()),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.1.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.2.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.1.1.1"))),
+                () -> assertEquals(1, configuration.getNumExpiringRules()));
+
+        configuration.compact();
+        configuration.reload();
+        assertEquals(1, configuration.expireRules(now + Duration.ofMinutes(20).toMillis()),
+                "test if compacted and reloaded, then rule with ttl still expires");
+        assertAll("test if all ttl rules are expired, then only original rules remain",
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.2.1"))),
+                () -> assertEquals(1 << 24, configuration.getNumDenyIps()),
+                () -> assertEquals(0, configuration.getNumExpiringRules()));
+    }
+
+    @Test
+    void test_addRule_if_ttl_overflows_then_do_not_expire() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.init();
+        long now = System.currentTimeMillis();
+
+        configuration.addRule("20.0.0.0/24", Duration.ofMillis(Long.MAX_VALUE - now + 1)); // now + ttl 이 음수로 넘어감
+        configuration.addRule("20.0.1.0/24", Duration.ofSeconds(Long.MAX_VALUE)); // toMillis() 가 long 범위를 넘음
+        configuration.addRule("20.0.2.0/24", Duration.ofMillis(Long.MAX_VALUE - now - Duration.ofDays(1).toMillis())); // long 범위 끝 근처의 만료 시간
+        assertAll("test if ttl is too long, then keep rules without expiring them early",
+                () -> assertEquals(1, configuration.getNumExpiringRules()),
+                () -> assertEquals(0, configuration.expireRules(now + Duration.ofDays(365).toMillis())),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.1.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.2.1"))));
+    }
+
+    @Test
+    void test_addRule_or_removeRule_then_do_not_change_published_rule_set() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        configuration.init();
+        configuration.addRule("20.0.0.0/24");
+        DenyRuleSet before = configuration.getRuleSet();
+
+        configuration.addRules(Arrays.asList("20.0.1.0/24", "20.0.2.0/24"), null);
+        configuration.removeRule("20.0.0.0/24");
+        DenyRuleSet beforeExpiry = configuration.getRuleSet();
+        configuration.addRule("20.0.3.0/24", Duration.ofMinutes(1));
+        configuration.expireRules(System.currentTimeMillis() + Duration.ofMinutes(2).toMillis());
+        assertAll("test if rules are changed, then rule sets already published keep their rules and counts",
+                () -> assertTrue(before.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertFalse(before.getDeny().contains((int) IpUtils.ipToLong("20.0.1.1"))),
+                () -> assertEquals((1 << 24) + 256, before.getNumDenyIps()),
+                () -> assertFalse(beforeExpiry.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertTrue(beforeExpiry.getDeny().contains((int) IpUtils.ipToLong("20.0.2.1"))),
+                () -> assertFalse(beforeExpiry.getDeny().contains((int) IpUtils.ipToLong("20.0.3.1"))),
+                () -> assertEquals((1 << 24) + 512, beforeExpiry.getNumDenyIps()),
+                () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.3.1"))),
+                () -> assertEquals((1 << 24) + 512, configuration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_addRules_then_swap_once() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        configuration.init();
+        long version = configuration.getRuleSet().getVersion();
+
+        configuration.addRules(Arrays.asList("20.0.0.1/32", "20.0.1.0/24"), Duration.ofMinutes(1));
+        assertAll("test if rules are added together, then swap rule set once",
+                () -> assertEquals(version + 1, configuration.getRuleSet().getVersion()),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.1.255"))),
+                () -> assertEquals(2, configuration.getNumExpiringRules()),
+                () -> assertThrows(IllegalArgumentException.class, () -> configuration.addRules(Arrays.asList("20.0.2.1/32", "bad"), null)));
+        assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.2.1")), "test if any rule is invalid, then add nothing");
+    }
+
+    @Test
+    void test_addRule_if_exceed_max_count_then_throw() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        configuration.init();
+        long version = configuration.getRuleSet().getVersion();
+        assertAll("test if added rule exceeds max number of deny IPs, then keep current rule set",
+                () -> assertThrows(IllegalStateException.class, () -> configuration.addRule("20.0.0.0/8")),
+                () -> assertEquals(version, configuration.getRuleSet().getVersion()),
+                () -> assertEquals(0, configuration.getNumPendingRules()));
+    }
+
+    @Test
+    void test_addRule_if_base_rule_removed_then_restore() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDeny(Arrays.asList("10.0.0.0/8", "10.1.0.0/16"));
+        configuration.init();
+        configuration.removeRule("10.0.0.0/8");
+        configuration.addRules(Arrays.asList("10.0.0.0/8", "20.0.0.1"), null);
+        assertAll("test if removed base rule is added again, then deny base rule and cancel pending removal",
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.2.0.0"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertEquals((1L << 24) + 1, configuration.getNumDenyIps()),
+                () -> assertEquals(1, configuration.getNumPendingRules()));
+    }
+
+    @Test
+    void test_init_if_expiry_tick_not_positive_then_throw() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setExpiryTick(Duration.ZERO);
+        assertThrows(IllegalArgumentException.class, configuration::init);
+    }
+
+    @Test
+    void test_removeRule_if_loaded_from_snapshot_then_read_rules(@TempDir Path tempDir) {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        for (int i = 0; i < 2; i++) { // compile, then read snapshot
+            IpFilterConfiguration configuration = new IpFilterConfiguration();
+            configuration.setDeny(Arrays.asList("10.0.0.0/24", "10.0.0.0/25"));
+            configuration.setSnapshotFile(snapshotFile.toString());
+            configuration.init();
+            configuration.removeRule("10.0.0.0/24");
+            assertAll("test if rule is removed, then keep nested rule",
+                    () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.0.0.127"))),
+                    () -> assertFalse(configuration.getDeny().contains((int) IpUtils.ipToLong("10.0.0.128"))),
+                    () -> assertEquals(128, configuration.getNumDenyIps()));
+        }
+    }
+
+    @Test
+    void test_removeRule_if_deny_file_changed_since_reload_then_throw(@TempDir Path tempDir) throws IOException {
+        Path denyFile = Files.write(tempDir.resolve("deny.txt"), Arrays.asList("10.0.0.0/24", "10.0.0.0/25"));
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        configuration.setDenyFile(denyFile.toString());
+        configuration.init();
+        Files.write(denyFile, Collections.singletonList("10.0.0.0/25"));
+        long version = configuration.getRuleSet().getVersion();
+        assertThrows(IllegalStateException.class, () -> configuration.removeRule("10.0.0.0/24"));
+        configuration.addRules(Collections.singletonList("20.0.0.1"), null); // base 규칙과 겹치지 않으면 읽지 않음
+        Files.delete(denyFile);
+        assertThrows(IllegalStateException.class, () -> configuration.addRules(Collections.singletonList("10.0.0.128/25"), null));
+        assertAll("test if deny-file changed since reload, then refuse rules covered by base and keep compiled rules",
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("10.0.0.255"))),
+                () -> assertTrue(configuration.getDeny().contains((int) IpUtils.ipToLong("20.0.0.1"))),
+                () -> assertEquals(version + 1, configuration.getRuleSet().getVersion()),
+                () -> assertEquals(257, configuration.getNumDenyIps()));
+    }
+
+    @Test
+    void test_init_named_lists_share_base_and_identical_ranges() {
+        Properties properties = new Properties();
+        properties.put("ip-filter.deny[0]", "10.0.0.0/8");
+        properties.put("ip-filter.lists.common.deny[0]", "10.0.0.0/8");
+        properties.put("ip-filter.lists.common.deny[1]", "20.0.0.0/16");
+        properties.put("ip-filter.lists.partnerA.base[0]", "common");
+        properties.put("ip-filter.lists.partnerA.deny[0]", "30.0.0.0/24");
+        properties.put("ip-filter.lists.partnerA.allow[0]", "10.1.0.0/16");
+        properties.put("ip-filter.lists.partnerB.base[0]", "common");
+        properties.put("ip-filter.lists.partnerB.deny[0]", "40.0.0.1");
+        properties.put("ip-filter.lists.partnerC.base[0]", "common");
+        properties.put("ip-filter.lists.legacy.deny[0]", "10.0.0.0/8");
+        IpFilterConfiguration configuration = new Binder(new MapConfigurationPropertySource(properties)).bind("ip-filter", IpFilterConfiguration.class).get();
+        configuration.init();
+
+        Ipv4DenyIndex common = configuration.getDeny("common");
+        assertAll("test if lists have the same base, then share the compiled base and apply each list as overlay",
+                () -> assertEquals(5, configuration.getNamedRuleSets().size()),
+                () -> assertSame(common, ((Ipv4OverlayIndex) configuration.getDeny("partnerA")).getBase()),
+                () -> assertSame(common, ((Ipv4OverlayIndex) configuration.getDeny("partnerB")).getBase()),
+                () -> assertSame(common, configuration.getDeny("partnerC")),
+                () -> assertSame(configuration.getDeny(), configuration.getDeny("legacy")),
+                () -> assertTrue(configuration.getDeny("partnerA").contains((int) IpUtils.ipToLong("30.0.0.1"))),
+                () -> assertFalse(configuration.getDeny("partnerA").contains((int) IpUtils.ipToLong("10.1.0.1"))),
+                () -> assertTrue(configuration.getDeny("partnerA").contains((int) IpUtils.ipToLong("20.0.255.255"))),
+                () -> assertFalse(configuration.getDeny("partnerA").contains((int) IpUtils.ipToLong("40.0.0.1"))),
+                () -> assertTrue(configuration.getDeny("partnerB").contains((int) IpUtils.ipToLong("10.1.0.1"))),
+                () -> assertTrue(configuration.getDeny("partnerB").contains((int) IpUtils.ipToLong("40.0.0.1"))),
+                () -> assertEquals((1L << 24) + (1L << 16) + 256 - (1L << 16), configuration.getNamedRuleSets().get("partnerA").getNumDenyIps()),
+                () -> assertThrows(NoSuchElementException.class, () -> configuration.getDeny("unknown")));
+    }
+
+    @Test
+    void test_init_if_base_list_not_exists_then_throw() {
+        IpFilterConfiguration configuration = new IpFilterConfiguration();
+        IpFilterConfiguration.RuleList list = new IpFilterConfiguration.RuleList();
+        list.setBase(Collections.singletonList("unknown"));
+        configuration.setLists(Collections.singletonMap("partnerA", list));
+        assertThrows(IllegalArgumentException.class, configuration::init);
     }
 }
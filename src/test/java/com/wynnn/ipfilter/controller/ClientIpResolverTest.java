@@ -0,0 +1,84 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.config.ClientIpConfiguration;
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.wynnn.ipfilter.common.TestUtil.IP_CLIENT_1;
+import static com.wynnn.ipfilter.common.TestUtil.IP_LOOPBACK;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ClientIpResolverTest {
+
+    private static final String PROXY_1 = "192.168.0.10";
+    private static final String PROXY_2 = "192.168.0.20";
+
+    private static ClientIpResolver resolver(String... trustedProxies) {
+        ClientIpConfiguration clientIpConfiguration = new ClientIpConfiguration();
+        clientIpConfiguration.setTrustedProxies(Arrays.asList(trustedProxies));
+        clientIpConfiguration.init();
+        return new ClientIpResolver(clientIpConfiguration);
+    }
+
+    private static String resolve(ClientIpResolver resolver, String remoteAddr, String... headers) {
+        Map<String, String> headerMap = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            headerMap.put(headers[i], headers[i + 1]);
+        }
+        return resolver.resolve(headerMap::get, () -> remoteAddr);
+    }
+
+    @Test
+    void test_resolve_without_trusted_proxies() {
+        ClientIpResolver resolver = resolver();
+        assertAll(
+                () -> assertEquals(IP_LOOPBACK, resolve(resolver, IP_LOOPBACK)),
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", IP_CLIENT_1)),
+                () -> assertEquals(PROXY_2, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", IP_CLIENT_1 + ", " + PROXY_1 + "," + PROXY_2)),
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", " unknown , ", "Proxy-Client-IP", IP_CLIENT_1)),
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", IP_CLIENT_1 + ",unknown")));
+    }
+
+    @Test
+    void test_resolve_skip_trusted_proxies_from_right() {
+        ClientIpResolver resolver = resolver("192.168.0.0/24", IP_LOOPBACK);
+        assertAll(
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", IP_CLIENT_1 + ", " + PROXY_1 + ", " + PROXY_2)),
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", "1.2.3.4, " + IP_CLIENT_1 + ", " + PROXY_1)), // spoofed 1.2.3.4
+                () -> assertEquals(PROXY_1, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", PROXY_1 + "," + PROXY_2)),
+                () -> assertEquals("not-ip", resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", IP_CLIENT_1 + ",not-ip," + PROXY_1)),
+                () -> assertEquals(IP_LOOPBACK, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", ",")));
+    }
+
+    @Test
+    void test_resolve_if_remote_is_not_trusted_proxy_then_ignore_headers() {
+        ClientIpResolver resolver = resolver("192.168.0.0/24");
+        assertAll(
+                () -> assertEquals("8.8.8.8", resolve(resolver, "8.8.8.8", "X-Forwarded-For", IP_CLIENT_1)),
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, PROXY_1, "X-Forwarded-For", IP_CLIENT_1)));
+    }
+
+    @Test
+    void test_resolve_with_configured_header_order() {
+        ClientIpConfiguration clientIpConfiguration = new ClientIpConfiguration();
+        clientIpConfiguration.setHeaders(Collections.singletonList("X-Real-IP"));
+        clientIpConfiguration.init();
+        ClientIpResolver resolver = new ClientIpResolver(clientIpConfiguration);
+        assertAll(
+                () -> assertEquals(IP_CLIENT_1, resolve(resolver, IP_LOOPBACK, "X-Real-IP", IP_CLIENT_1, "X-Forwarded-For", PROXY_1)),
+                () -> assertEquals(IP_LOOPBACK, resolve(resolver, IP_LOOPBACK, "X-Forwarded-For", PROXY_1)));
+    }
+
+    @Test
+    void test_findUntrustedHop_returns_same_instance_if_single_value() {
+        String value = IP_CLIENT_1;
+        assertSame(value, ClientIpResolver.findUntrustedHop(value, Ipv4RangeIndex.EMPTY));
+    }
+}
@@ -0,0 +1,175 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.config.AdminConfiguration;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "ip-filter.admin.token=" + DenyRuleAdminControllerTest.ADMIN_TOKEN)
+@AutoConfigureMockMvc
+class DenyRuleAdminControllerTest {
+
+    static final String ADMIN_TOKEN = "test-admin-token";
+
+    @Autowired
+    private IpFilterConfiguration ipFilterConfiguration;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void test_getStatus() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/admin/deny-rules"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.version").value(ipFilterConfiguration.getRuleSet().getVersion()))
+                .andExpect(jsonPath("$.numRanges").value(ipFilterConfiguration.getRanges().size()))
+                .andExpect(jsonPath("$.numDenyIps").value(ipFilterConfiguration.getNumDenyIps()))
+                .andExpect(jsonPath("$.engine").value(ipFilterConfiguration.getDeny().getClass().getSimpleName()));
+    }
+
+    @Test
+    void test_reload_and_wait_then_version_increased() throws Exception {
+        long version = ipFilterConfiguration.getRuleSet().getVersion();
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/reload").param("wait", "true").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.version").value(version + 1))
+                .andExpect(jsonPath("$.numRanges").value(ipFilterConfiguration.getRanges().size()))
+                .andExpect(jsonPath("$.buildMillis").exists())
+                .andExpect(jsonPath("$.swapNanos").exists());
+    }
+
+    @Test
+    void test_reload_without_wait_then_accepted() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/reload").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.ACCEPTED.value()))
+                .andExpect(jsonPath("$.version").exists());
+    }
+
+    @Test
+    void test_reload_if_token_invalid_then_forbidden() throws Exception {
+        long version = ipFilterConfiguration.getRuleSet().getVersion();
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/reload").param("wait", "true"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()));
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/reload").param("wait", "true").header(AdminConfiguration.TOKEN_HEADER, "invalid"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()));
+        assertEquals(version, ipFilterConfiguration.getRuleSet().getVersion());
+    }
+
+    @Test
+    void test_addRule_and_removeRule_then_apply_immediately() throws Exception {
+        long version = ipFilterConfiguration.getRuleSet().getVersion();
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "30.0.0.0/24").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.version").value(version + 1))
+                .andExpect(jsonPath("$.numPendingRules").value(1));
+        assertTrue(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("30.0.0.1")));
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/admin/deny-rules/rules").param("cidr", "30.0.0.0/24").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.version").value(version + 2))
+                .andExpect(jsonPath("$.numPendingRules").value(0));
+        assertFalse(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("30.0.0.1")));
+    }
+
+    @Test
+    void test_addRule_and_removeRule_if_token_invalid_then_forbidden() throws Exception {
+        ipFilterConfiguration.addRule("33.0.0.0/24");
+        long version = ipFilterConfiguration.getRuleSet().getVersion();
+        mockMvc.perform(MockMvcRequestBuilders.delete("/admin/deny-rules/rules").param("cidr", "33.0.0.0/24"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()));
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "33.0.1.0/24").header(AdminConfiguration.TOKEN_HEADER, "invalid"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()));
+        assertAll(
+                () -> assertEquals(version, ipFilterConfiguration.getRuleSet().getVersion()),
+                () -> assertTrue(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("33.0.0.1"))));
+        ipFilterConfiguration.removeRule("33.0.0.0/24");
+    }
+
+    @Test
+    void test_addRule_with_ttl_then_expire() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "32.0.0.0/24").param("ttlSeconds", "60").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()));
+        assertTrue(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("32.0.0.1")));
+
+        ipFilterConfiguration.expireRules(System.currentTimeMillis() + 120_000);
+        assertFalse(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("32.0.0.1")));
+    }
+
+    @Test
+    void test_addRule_if_ttl_overflows_then_do_not_expire() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "32.0.2.0/24").param("ttlSeconds", String.valueOf(Long.MAX_VALUE)).header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()));
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "32.0.3.0/24").param("ttlSeconds", "9223372036854775").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()));
+
+        ipFilterConfiguration.expireRules(System.currentTimeMillis() + 120_000);
+        assertTrue(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("32.0.2.1")));
+        assertTrue(ipFilterConfiguration.getDeny().contains((int) IpUtils.ipToLong("32.0.3.1")));
+        ipFilterConfiguration.removeRule("32.0.2.0/24"); // 다른 test 의 차단 IP 개수에 영향을 주지 않도록 삭제
+        ipFilterConfiguration.removeRule("32.0.3.0/24");
+    }
+
+    @Test
+    void test_addRule_if_ttl_not_positive_then_bad_request() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "32.0.1.0/24").param("ttlSeconds", "0").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+    }
+
+    @Test
+    void test_addRule_if_invalid_then_bad_request() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/deny-rules/rules").param("cidr", "30.0.0.0/33").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+    }
+
+    @Test
+    void test_removeRule_if_not_exists_then_not_found() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.delete("/admin/deny-rules/rules").param("cidr", "31.0.0.0/24").header(AdminConfiguration.TOKEN_HEADER, ADMIN_TOKEN))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.NOT_FOUND.value()));
+    }
+
+    @Test
+    void test_getListStatus() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/admin/deny-rules/lists"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.length()").value(ipFilterConfiguration.getNamedRuleSets().size()));
+    }
+
+    @Test
+    void test_getReplicationStatus() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/admin/deny-rules/replication"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.role").value("NONE"))
+                .andExpect(jsonPath("$.generation").value(0));
+    }
+}
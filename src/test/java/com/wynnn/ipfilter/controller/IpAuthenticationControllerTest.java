@@ -1,5 +1,7 @@
 package com.wynnn.ipfilter.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wynnn.ipfilter.model.ResponseData;
 import com.wynnn.ipfilter.service.IpAuthenticationService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,11 +13,18 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
 import static com.wynnn.ipfilter.common.TestUtil.IP_CLIENT_1;
 import static com.wynnn.ipfilter.common.TestUtil.IP_HEADER_UNKNOWN;
 import static com.wynnn.ipfilter.common.TestUtil.IP_LOOPBACK;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -31,9 +40,12 @@ class IpAuthenticationControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Test
     void test_authenticateClientIp_blankHeaderValue() throws Exception {
-        given(ipAuthService.hasAuth(anyString())).willReturn(true);
+        given(ipAuthService.hasAuth(anyInt())).willReturn(true);
         mockMvc.perform(MockMvcRequestBuilders.get("/ipv4"))
                 .andDo(print())
                 .andExpect(status().is(HttpStatus.OK.value()))
@@ -42,9 +54,17 @@ class IpAuthenticationControllerTest {
                 .andExpect(jsonPath("$.clientIp").value(IP_LOOPBACK));
     }
 
+    @Test
+    void test_authenticateClientIp_body_same_as_response_data() throws Exception {
+        given(ipAuthService.hasAuth(anyInt())).willReturn(false);
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header("X-Forwarded-For", IP_CLIENT_1))
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()))
+                .andExpect(content().string(objectMapper.writeValueAsString(ResponseData.unauthorized(IP_CLIENT_1))));
+    }
+
     @Test
     void test_authenticateClientIp_has_x_forwarded_for_header() throws Exception {
-        given(ipAuthService.hasAuth(anyString())).willReturn(true);
+        given(ipAuthService.hasAuth(anyInt())).willReturn(true);
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header("X-Forwarded-For", IP_CLIENT_1))
                 .andDo(print())
@@ -71,7 +91,7 @@ class IpAuthenticationControllerTest {
     @Test
     void test_authenticateClientIp_has_other_header() throws Exception {
         final String[] otherHeaderNames = {"Proxy-Client-IP", "WL-Proxy-Client-IP", "HTTP_CLIENT_IP", "HTTP_X_FORWARDED_FOR"};
-        given(ipAuthService.hasAuth(anyString())).willReturn(true);
+        given(ipAuthService.hasAuth(anyInt())).willReturn(true);
 
         for (String clientIpHeaderName : otherHeaderNames) {
             mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header(clientIpHeaderName, IP_CLIENT_1))
@@ -99,7 +119,7 @@ class IpAuthenticationControllerTest {
 
     @Test
     void test_authenticateClientIp_if_allow() throws Exception {
-        given(ipAuthService.hasAuth(anyString())).willReturn(true);
+        given(ipAuthService.hasAuth(anyInt())).willReturn(true);
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header("X-Forwarded-For", IP_CLIENT_1))
                 .andDo(print())
@@ -111,7 +131,7 @@ class IpAuthenticationControllerTest {
 
     @Test
     void test_authenticateClientIp_if_deny() throws Exception {
-        given(ipAuthService.hasAuth(anyString())).willReturn(false);
+        given(ipAuthService.hasAuth(anyInt())).willReturn(false);
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header("X-Forwarded-For", IP_CLIENT_1))
                 .andDo(print())
@@ -120,4 +140,122 @@ class IpAuthenticationControllerTest {
                 .andExpect(jsonPath("$.resultMessage").value("Deny"))
                 .andExpect(jsonPath("$.clientIp").value(IP_CLIENT_1));
     }
+
+    @Test
+    void test_authenticateClientIp_if_deny_with_matched_rule() throws Exception {
+        given(ipAuthService.hasAuth(anyInt())).willReturn(false);
+        given(ipAuthService.findMatchedRule(anyInt())).willReturn(Optional.of("10.0.0.0/8"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header("X-Forwarded-For", "10.0.0.1"))
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()))
+                .andExpect(jsonPath("$.resultMessage").value("Deny"))
+                .andExpect(jsonPath("$.matchedRule").value("10.0.0.0/8"))
+                .andExpect(content().string(objectMapper.writeValueAsString(ResponseData.unauthorized("10.0.0.1", "10.0.0.0/8"))));
+    }
+
+    @Test
+    void test_authenticateClientIp_if_invalid_ip() throws Exception {
+        given(ipAuthService.hasAuth(anyInt())).willReturn(true);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").header("X-Forwarded-For", "1.1.1.1/24"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.resultMessage").value("Deny"))
+                .andExpect(jsonPath("$.clientIp").value("Invalid IP"));
+    }
+
+    @Test
+    void test_authenticateClientIpv6() throws Exception {
+        given(ipAuthService.hasAuth(anyLong(), anyLong())).willReturn(false);
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv6").header("X-Forwarded-For", "2001:db8::1"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.resultMessage").value("Deny"))
+                .andExpect(jsonPath("$.clientIp").value("2001:db8::1"));
+        verify(ipAuthService).hasAuth(0x20010db800000000L, 1L);
+
+        given(ipAuthService.hasAuth(anyLong(), anyLong())).willReturn(true);
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv6").with(request -> {
+            request.setRemoteAddr("0:0:0:0:0:0:0:1");
+            return request;
+        }))
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(jsonPath("$.resultMessage").value("Allow"))
+                .andExpect(jsonPath("$.clientIp").value("0:0:0:0:0:0:0:1"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv6")) // IPv4 client
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(jsonPath("$.clientIp").value("Invalid IP"));
+    }
+
+    @Test
+    void test_authenticateIps_keep_request_order() throws Exception {
+        given(ipAuthService.hasAuth(any(int[].class))).willReturn(new boolean[]{true, false, true});
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/ipv4/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"" + IP_CLIENT_1 + "\", \"10.0.0.1\", \"1.1.1.1/24\"]"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].resultMessage").value("Allow"))
+                .andExpect(jsonPath("$[0].clientIp").value(IP_CLIENT_1))
+                .andExpect(jsonPath("$[1].resultMessage").value("Deny"))
+                .andExpect(jsonPath("$[1].clientIp").value("10.0.0.1"))
+                .andExpect(jsonPath("$[2].resultMessage").value("Deny"))
+                .andExpect(jsonPath("$[2].clientIp").value("Invalid IP"));
+    }
+
+    @Test
+    void test_authenticateIps_if_too_many_ips() throws Exception {
+        StringBuilder content = new StringBuilder("[");
+        for (int i = 0; i <= 10000; i++) {
+            content.append(i == 0 ? "" : ",").append("\"1.1.1.1\"");
+        }
+        mockMvc.perform(MockMvcRequestBuilders.post("/ipv4/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(content.append("]").toString()))
+                .andExpect(status().is(HttpStatus.PAYLOAD_TOO_LARGE.value()));
+    }
+
+    @Test
+    void test_authenticateClientIp_with_list() throws Exception {
+        given(ipAuthService.hasAuth(eq("partnerA"), anyInt())).willReturn(false);
+        given(ipAuthService.findMatchedRule(eq("partnerA"), anyInt())).willReturn(Optional.empty());
+        given(ipAuthService.hasAuth(eq("unknown"), anyInt())).willThrow(new NoSuchElementException("unknown deny list=unknown"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").param("list", "partnerA").header("X-Forwarded-For", IP_CLIENT_1))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.FORBIDDEN.value()))
+                .andExpect(jsonPath("$.clientIp").value(IP_CLIENT_1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ipv4").param("list", "unknown").header("X-Forwarded-For", IP_CLIENT_1))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.NOT_FOUND.value()))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.resultMessage").value("Deny"))
+                .andExpect(jsonPath("$.clientIp").value(IP_CLIENT_1))
+                .andExpect(jsonPath("$.unknownList").value("unknown"));
+    }
+
+    @Test
+    void test_authenticateIps_if_unknown_list() throws Exception {
+        given(ipAuthService.hasAuth(eq("unknown"), any(int[].class))).willThrow(new NoSuchElementException("unknown deny list=unknown"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/ipv4/batch")
+                .param("list", "unknown")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"" + IP_CLIENT_1 + "\", \"invalid\"]"))
+                .andDo(print())
+                .andExpect(status().is(HttpStatus.NOT_FOUND.value()))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].resultMessage").value("Deny"))
+                .andExpect(jsonPath("$[0].clientIp").value(IP_CLIENT_1))
+                .andExpect(jsonPath("$[0].unknownList").value("unknown"))
+                .andExpect(jsonPath("$[1].clientIp").value("Invalid IP"))
+                .andExpect(jsonPath("$[1].unknownList").value("unknown"));
+    }
 }
@@ -0,0 +1,89 @@
+package com.wynnn.ipfilter.controller;
+
+import com.wynnn.ipfilter.service.IpAuthenticationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.wynnn.ipfilter.common.TestUtil.IP_CLIENT_1;
+import static com.wynnn.ipfilter.common.TestUtil.IP_HEADER_UNKNOWN;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+class ReactiveIpAuthenticationControllerTest {
+
+    @MockBean
+    private IpAuthenticationService ipAuthService;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Test
+    void test_servlet_controller_not_loaded() {
+        assertFalse(applicationContext.containsBean("ipAuthenticationController"));
+    }
+
+    @Test
+    void test_authenticateClientIp_if_allow() {
+        given(ipAuthService.hasAuth(anyInt())).willReturn(true);
+
+        webTestClient.get().uri("/ipv4").header("X-Forwarded-For", IP_CLIENT_1)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.resultMessage").isEqualTo("Allow")
+                .jsonPath("$.clientIp").isEqualTo(IP_CLIENT_1);
+    }
+
+    @Test
+    void test_authenticateClientIp_if_deny() {
+        given(ipAuthService.hasAuth(anyInt())).willReturn(false);
+
+        webTestClient.get().uri("/ipv4").header("X-Forwarded-For", IP_HEADER_UNKNOWN).header("Proxy-Client-IP", IP_CLIENT_1)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.FORBIDDEN)
+                .expectBody()
+                .jsonPath("$.resultMessage").isEqualTo("Deny")
+                .jsonPath("$.clientIp").isEqualTo(IP_CLIENT_1);
+    }
+
+    @Test
+    void test_authenticateClientIp_if_invalid_ip() {
+        webTestClient.get().uri("/ipv4").header("X-Forwarded-For", "1.1.1.1/24")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.BAD_REQUEST)
+                .expectBody()
+                .jsonPath("$.resultMessage").isEqualTo("Deny")
+                .jsonPath("$.clientIp").isEqualTo("Invalid IP");
+    }
+
+    @Test
+    void test_authenticateIps() {
+        given(ipAuthService.hasAuth(any(int[].class))).willReturn(new boolean[]{false, true});
+
+        webTestClient.post().uri("/ipv4/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[\"10.0.0.1\", \"" + IP_CLIENT_1 + "\", \"invalid\"]")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].resultMessage").isEqualTo("Deny")
+                .jsonPath("$[1].resultMessage").isEqualTo("Allow")
+                .jsonPath("$[2].clientIp").isEqualTo("Invalid IP");
+    }
+}
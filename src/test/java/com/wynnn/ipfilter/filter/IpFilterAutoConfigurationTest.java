@@ -0,0 +1,45 @@
+package com.wynnn.ipfilter.filter;
+
+import com.wynnn.ipfilter.config.DenyRuleReloader;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.service.IpAuthenticationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpFilterAutoConfigurationTest {
+
+    private final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(IpFilterAutoConfiguration.class));
+
+    @Test
+    void test_disabled_by_default() {
+        contextRunner.run(context -> assertThat(context)
+                .doesNotHaveBean(FilterRegistrationBean.class)
+                .doesNotHaveBean(IpFilterConfiguration.class));
+    }
+
+    @Test
+    void test_enabled() {
+        contextRunner.withPropertyValues("ip-filter.servlet-filter.enabled=true", "ip-filter.deny=10.0.0.0/8",
+                "ip-filter.servlet-filter.url-patterns=/api/*")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(FilterRegistrationBean.class)
+                            .hasSingleBean(DenyRuleReloader.class)
+                            .hasSingleBean(IpAuthenticationService.class);
+                    assertThat(context.getBean(FilterRegistrationBean.class).getUrlPatterns()).containsExactly("/api/*");
+                    assertThat(context.getBean(IpFilterConfiguration.class).getNumDenyIps()).isEqualTo(1L << 24);
+                });
+    }
+
+    @Test
+    void test_enabled_uses_existing_beans() {
+        IpFilterConfiguration existing = new IpFilterConfiguration();
+        contextRunner.withPropertyValues("ip-filter.servlet-filter.enabled=true")
+                .withBean(IpFilterConfiguration.class, () -> existing)
+                .run(context -> assertThat(context.getBean(IpFilterConfiguration.class)).isSameAs(existing));
+    }
+}
@@ -0,0 +1,93 @@
+package com.wynnn.ipfilter.filter;
+
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.config.ClientIpConfiguration;
+import com.wynnn.ipfilter.config.DecisionCacheConfiguration;
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import com.wynnn.ipfilter.controller.ClientIpResolver;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.model.ResponseBytes;
+import com.wynnn.ipfilter.service.IpAuthenticationServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+
+import static com.wynnn.ipfilter.common.TestUtil.IP_CLIENT_1;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IpFilterServletFilterTest {
+
+    private IpFilterServletFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        IpFilterConfiguration ipFilterConfiguration = new IpFilterConfiguration();
+        ipFilterConfiguration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        ipFilterConfiguration.setDenyIpv6(Collections.singletonList("2001:db8::/32"));
+        ipFilterConfiguration.init();
+        ClientIpConfiguration clientIpConfiguration = new ClientIpConfiguration();
+        clientIpConfiguration.init();
+        IpFilterMetrics ipFilterMetrics = new IpFilterMetrics(new SimpleMeterRegistry(), ipFilterConfiguration, 0);
+        filter = new IpFilterServletFilter(new ClientIpResolver(clientIpConfiguration),
+                new IpAuthenticationServiceImpl(ipFilterConfiguration, new DecisionCacheConfiguration(), ipFilterMetrics, new AutoBanConfiguration()), ipFilterMetrics);
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders");
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    @Test
+    void test_allow_then_continue_chain() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request(IP_CLIENT_1), response, chain);
+        assertAll(
+                () -> assertNotNull(chain.getRequest()),
+                () -> assertEquals(HttpStatus.OK.value(), response.getStatus()));
+    }
+
+    @Test
+    void test_deny_then_reject() throws Exception {
+        MockHttpServletRequest request = request(IP_CLIENT_1);
+        request.addHeader("X-Forwarded-For", "10.1.2.3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        assertAll(
+                () -> assertNull(chain.getRequest()),
+                () -> assertEquals(HttpStatus.FORBIDDEN.value(), response.getStatus()),
+                () -> assertArrayEquals(ResponseBytes.unauthorized("10.1.2.3"), response.getContentAsByteArray()));
+    }
+
+    @Test
+    void test_ipv6() throws Exception {
+        MockFilterChain allowChain = new MockFilterChain();
+        filter.doFilter(request("0:0:0:0:0:0:0:1"), new MockHttpServletResponse(), allowChain);
+        MockHttpServletResponse denyResponse = new MockHttpServletResponse();
+        MockFilterChain denyChain = new MockFilterChain();
+        filter.doFilter(request("2001:db8::1"), denyResponse, denyChain);
+        assertAll(
+                () -> assertNotNull(allowChain.getRequest()),
+                () -> assertNull(denyChain.getRequest()),
+                () -> assertEquals(HttpStatus.FORBIDDEN.value(), denyResponse.getStatus()));
+    }
+
+    @Test
+    void test_not_ip_then_continue_chain() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("unix-socket"), new MockHttpServletResponse(), chain);
+        assertNotNull(chain.getRequest());
+    }
+}
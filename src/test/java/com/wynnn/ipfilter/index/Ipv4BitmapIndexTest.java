@@ -0,0 +1,81 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4BitmapIndexTest {
+
+    private static final String[] DENY_RULES = {
+            "0.0.0.0/32",
+            "1.0.0.60/30",     // inside one word
+            "1.0.0.64/26",     // exactly one word
+            "1.1.1.5/31",
+            "10.0.0.0/8",      // many words
+            "128.0.0.0/32",    // sign bit of int
+            "172.16.0.0/12",
+            "255.255.255.255/32"
+    };
+
+    private static Ipv4RangeIndex ranges;
+    private static Ipv4BitmapIndex bitmap;
+
+    @BeforeAll
+    static void setUp() {
+        ranges = Ipv4RangeIndex.of(Arrays.stream(DENY_RULES).map(Ipv4Subnet::new).collect(Collectors.toList())); // already sorted
+        bitmap = Ipv4BitmapIndex.of(ranges);
+    }
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    @Test
+    void test_contains_boundary() {
+        assertAll(
+                () -> assertTrue(bitmap.contains(ip("0.0.0.0"))),
+                () -> assertFalse(bitmap.contains(ip("0.0.0.1"))),
+                () -> assertFalse(bitmap.contains(ip("1.0.0.59"))),
+                () -> assertTrue(bitmap.contains(ip("1.0.0.60"))),
+                () -> assertTrue(bitmap.contains(ip("1.0.0.127"))),
+                () -> assertFalse(bitmap.contains(ip("1.0.0.128"))),
+                () -> assertFalse(bitmap.contains(ip("1.1.1.3"))),
+                () -> assertTrue(bitmap.contains(ip("1.1.1.4"))),
+                () -> assertTrue(bitmap.contains(ip("1.1.1.5"))),
+                () -> assertFalse(bitmap.contains(ip("9.255.255.255"))),
+                () -> assertTrue(bitmap.contains(ip("10.0.0.0"))),
+                () -> assertTrue(bitmap.contains(ip("10.255.255.255"))),
+                () -> assertFalse(bitmap.contains(ip("11.0.0.0"))),
+                () -> assertFalse(bitmap.contains(ip("127.255.255.255"))),
+                () -> assertTrue(bitmap.contains(ip("128.0.0.0"))),
+                () -> assertFalse(bitmap.contains(ip("128.0.0.1"))),
+                () -> assertTrue(bitmap.contains(ip("255.255.255.255"))),
+                () -> assertFalse(bitmap.contains(ip("255.255.255.254"))));
+    }
+
+    @Test
+    void test_contains_same_as_sorted_index() {
+        Random random = new Random(1275);
+        for (int i = 0; i < 1000000; i++) {
+            int ip = random.nextInt();
+            assertEquals(ranges.contains(ip), bitmap.contains(ip), () -> "ip=" + Integer.toUnsignedString(ip));
+        }
+    }
+
+    @Test
+    void test_size_and_memoryBytes() {
+        assertAll(
+                () -> assertEquals(ranges.size(), bitmap.size()),
+                () -> assertEquals(512L * 1024 * 1024, bitmap.memoryBytes()));
+    }
+}
@@ -0,0 +1,111 @@
+package com.wynnn.ipfilter.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4DecisionCacheTest {
+
+    @Test
+    void test_of_round_up_capacity() {
+        assertAll(
+                () -> assertSame(Ipv4DecisionCache.DISABLED, Ipv4DecisionCache.of(0, Ipv4DecisionCache.EvictionPolicy.LRU)),
+                () -> assertFalse(Ipv4DecisionCache.DISABLED.isEnabled()),
+                () -> assertEquals(Ipv4DecisionCache.MISS, Ipv4DecisionCache.DISABLED.get(1, 1)),
+                () -> assertEquals(4, Ipv4DecisionCache.of(1, Ipv4DecisionCache.EvictionPolicy.LRU).capacity()),
+                () -> assertEquals(16, Ipv4DecisionCache.of(13, Ipv4DecisionCache.EvictionPolicy.LRU).capacity()),
+                () -> assertEquals(1 << 16, Ipv4DecisionCache.of(1 << 16, Ipv4DecisionCache.EvictionPolicy.LRU).capacity()),
+                () -> assertEquals(8L << 16, Ipv4DecisionCache.of(1 << 16, Ipv4DecisionCache.EvictionPolicy.LRU).memoryBytes()));
+    }
+
+    @Test
+    void test_get_and_put() {
+        Ipv4DecisionCache cache = Ipv4DecisionCache.of(1024, Ipv4DecisionCache.EvictionPolicy.LRU);
+        cache.put(0, 1, false); // 0.0.0.0
+        cache.put(-1, 1, true); // 255.255.255.255
+        assertAll(
+                () -> assertTrue(cache.isEnabled()),
+                () -> assertEquals(Ipv4DecisionCache.DENY, cache.get(0, 1)),
+                () -> assertEquals(Ipv4DecisionCache.ALLOW, cache.get(-1, 1)),
+                () -> assertEquals(Ipv4DecisionCache.MISS, cache.get(1, 1)),
+                () -> assertEquals(Ipv4DecisionCache.MISS, cache.get(0, 2), "test if version is changed, then miss"),
+                () -> assertEquals(Ipv4DecisionCache.MISS, Ipv4DecisionCache.of(1024, Ipv4DecisionCache.EvictionPolicy.LRU).get(0, 0), "test if empty, then miss"));
+    }
+
+    @Test
+    void test_eviction_in_full_set() {
+        for (Ipv4DecisionCache.EvictionPolicy evictionPolicy : Ipv4DecisionCache.EvictionPolicy.values()) {
+            Ipv4DecisionCache cache = Ipv4DecisionCache.of(Ipv4DecisionCache.WAYS, evictionPolicy); // single set
+            for (int ip = 0; ip < Ipv4DecisionCache.WAYS; ip++) {
+                cache.put(ip, 1, true);
+            }
+            cache.get(0, 1); // LRU : 0 becomes the most recently used
+            cache.put(100, 1, true);
+            int numCached = 0;
+            for (int ip = 0; ip < Ipv4DecisionCache.WAYS; ip++) {
+                numCached += cache.get(ip, 1) != Ipv4DecisionCache.MISS ? 1 : 0;
+            }
+            int cached = numCached;
+            assertAll(evictionPolicy.name(),
+                    () -> assertEquals(Ipv4DecisionCache.ALLOW, cache.get(100, 1)),
+                    () -> assertEquals(Ipv4DecisionCache.WAYS - 1, cached));
+        }
+        Ipv4DecisionCache lru = Ipv4DecisionCache.of(Ipv4DecisionCache.WAYS, Ipv4DecisionCache.EvictionPolicy.LRU);
+        Ipv4DecisionCache fifo = Ipv4DecisionCache.of(Ipv4DecisionCache.WAYS, Ipv4DecisionCache.EvictionPolicy.FIFO);
+        for (int ip = 0; ip < Ipv4DecisionCache.WAYS; ip++) {
+            lru.put(ip, 1, true);
+            fifo.put(ip, 1, true);
+        }
+        lru.get(0, 1);
+        fifo.get(0, 1);
+        lru.put(100, 1, true);
+        fifo.put(100, 1, true);
+        assertAll(
+                () -> assertEquals(Ipv4DecisionCache.ALLOW, lru.get(0, 1)),
+                () -> assertEquals(Ipv4DecisionCache.MISS, lru.get(1, 1)),
+                () -> assertEquals(Ipv4DecisionCache.MISS, fifo.get(0, 1)),
+                () -> assertEquals(Ipv4DecisionCache.ALLOW, fifo.get(1, 1)));
+    }
+
+    @Test
+    void test_concurrent_access_never_return_wrong_decision() throws Exception {
+        Ipv4DecisionCache cache = Ipv4DecisionCache.of(64, Ipv4DecisionCache.EvictionPolicy.LRU); // small cache to force eviction
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int seed = thread;
+                results.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 200000; i++) {
+                        int ip = random.nextInt(1024);
+                        boolean allowed = (ip & 1) == 0;
+                        int cached = cache.get(ip, 1);
+                        if (cached == Ipv4DecisionCache.MISS) {
+                            cache.put(ip, 1, allowed);
+                        } else if ((cached == Ipv4DecisionCache.ALLOW) != allowed) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
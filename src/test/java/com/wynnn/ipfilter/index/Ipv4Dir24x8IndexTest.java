@@ -0,0 +1,108 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4Dir24x8IndexTest {
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    private static Ipv4SubnetBuffer subnets(String... cidrs) {
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        for (String cidr : cidrs) {
+            long parsed = IpUtils.parseCidr(cidr, 0, cidr.length());
+            int mask = (int) (parsed & 0x3f);
+            subnets.add(IpUtils.calcStartIpInSubnet(parsed >>> 6, mask), mask);
+        }
+        subnets.sort();
+        return subnets;
+    }
+
+    private static Ipv4RangeIndex merge(Ipv4SubnetBuffer subnets) {
+        int[] starts = new int[subnets.size()];
+        int[] ends = new int[subnets.size()];
+        int size = 0;
+        long lastEndIpLong = -2;
+        for (int i = 0; i < subnets.size(); i++) {
+            long startIpLong = subnets.getStartIpLong(i);
+            long endIpLong = IpUtils.calcEndIpInSubnet(startIpLong, subnets.getCidr(i));
+            if (endIpLong <= lastEndIpLong) {
+                continue;
+            }
+            if (startIpLong > lastEndIpLong + 1) {
+                starts[size++] = (int) startIpLong;
+            }
+            ends[size - 1] = (int) endIpLong;
+            lastEndIpLong = endIpLong;
+        }
+        return Ipv4RangeIndex.of(starts, ends, size);
+    }
+
+    @Test
+    void test_matchedRule_and_boundary() {
+        Ipv4SubnetBuffer subnets = subnets("0.0.0.0/32", "1.1.1.4/30", "1.1.1.8/30", "10.0.0.0/8", "10.1.2.0/24", "10.255.255.255/32",
+                "172.16.0.128/25", "172.16.1.0/24", "255.255.255.255/32");
+        Ipv4Dir24x8Index index = Ipv4Dir24x8Index.of(subnets, merge(subnets));
+        assertAll(
+                () -> assertEquals(7, index.numRules()), // nested rules are removed
+                () -> assertEquals(Optional.of("0.0.0.0/32"), index.matchedRule(ip("0.0.0.0"))),
+                () -> assertFalse(index.contains(ip("0.0.0.1"))),
+                () -> assertFalse(index.contains(ip("1.1.1.3"))),
+                () -> assertEquals(Optional.of("1.1.1.4/30"), index.matchedRule(ip("1.1.1.7"))),
+                () -> assertEquals(Optional.of("1.1.1.8/30"), index.matchedRule(ip("1.1.1.8"))), // merged range, but rule is kept
+                () -> assertFalse(index.contains(ip("1.1.1.12"))),
+                () -> assertEquals(Optional.of("10.0.0.0/8"), index.matchedRule(ip("10.1.2.3"))), // outer rule of nested rules
+                () -> assertEquals(Optional.of("10.0.0.0/8"), index.matchedRule(ip("10.255.255.255"))),
+                () -> assertFalse(index.contains(ip("11.0.0.0"))),
+                () -> assertFalse(index.contains(ip("172.16.0.127"))),
+                () -> assertEquals(Optional.of("172.16.0.128/25"), index.matchedRule(ip("172.16.0.128"))),
+                () -> assertEquals(Optional.of("172.16.1.0/24"), index.matchedRule(ip("172.16.1.255"))),
+                () -> assertEquals(Optional.empty(), index.matchedRule(ip("172.16.2.0"))),
+                () -> assertEquals(Optional.of("255.255.255.255/32"), index.matchedRule(ip("255.255.255.255"))),
+                () -> assertTrue(index.memoryBytes() >= 4L << 24));
+    }
+
+    @Test
+    void test_only_addresses_in_ranges_are_denied() {
+        Ipv4SubnetBuffer subnets = subnets("10.0.0.0/8", "20.0.0.0/24");
+        Ipv4RangeIndex allow = Ipv4RangeIndex.of(new int[]{ip("10.1.2.0"), ip("10.2.0.5"), ip("20.0.0.0")}, new int[]{ip("10.1.2.255"), ip("10.2.0.9"), ip("20.0.0.255")}, 3);
+        Ipv4RangeIndex ranges = Ipv4RangeIndex.subtract(merge(subnets), allow);
+        Ipv4Dir24x8Index index = Ipv4Dir24x8Index.of(subnets, ranges);
+        assertAll(
+                () -> assertTrue(index.contains(ip("10.1.1.255"))),
+                () -> assertFalse(index.contains(ip("10.1.2.0"))),
+                () -> assertTrue(index.contains(ip("10.1.3.0"))),
+                () -> assertTrue(index.contains(ip("10.2.0.4"))),
+                () -> assertFalse(index.contains(ip("10.2.0.5"))),
+                () -> assertFalse(index.contains(ip("10.2.0.9"))),
+                () -> assertEquals(Optional.of("10.0.0.0/8"), index.matchedRule(ip("10.2.0.10"))),
+                () -> assertFalse(index.contains(ip("20.0.0.1"))));
+    }
+
+    @Test
+    void test_contains_same_as_sorted_index() {
+        Random random = new Random(1275);
+        String[] cidrs = new String[5000];
+        for (int i = 0; i < cidrs.length; i++) {
+            cidrs[i] = IpUtils.longToIp(0x0a000000L + random.nextInt(1 << 20)) + "/" + (20 + random.nextInt(13));
+        }
+        Ipv4SubnetBuffer subnets = subnets(cidrs);
+        Ipv4RangeIndex sorted = merge(subnets);
+        Ipv4Dir24x8Index index = Ipv4Dir24x8Index.of(subnets, sorted);
+        for (int i = 0; i < 200000; i++) {
+            int ip = 0x0a000000 - 1000 + random.nextInt((1 << 20) + 2000);
+            assertEquals(sorted.contains(ip), index.contains(ip));
+            assertEquals(sorted.contains(ip), index.matchedRule(ip).isPresent());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.wynnn.ipfilter.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4ExpiryWheelTest {
+
+    @Test
+    void test_advance_then_expire_after_deadline() {
+        Ipv4ExpiryWheel wheel = new Ipv4ExpiryWheel(1000, 0);
+        wheel.schedule(1, 1500);
+        wheel.schedule(2, 3000);
+        List<Long> expired = new ArrayList<>();
+
+        int first = wheel.advance(1999, expired::add);
+        int second = wheel.advance(2000, expired::add);
+        int third = wheel.advance(10_000, expired::add);
+        assertAll("test if deadline is passed, then expire in deadline order and not before deadline",
+                () -> assertEquals(0, first),
+                () -> assertEquals(1, second),
+                () -> assertEquals(1, third),
+                () -> assertEquals(Arrays.asList(1L, 2L), expired),
+                () -> assertEquals(0, wheel.size()));
+    }
+
+    @Test
+    void test_schedule_if_deadline_near_max_then_do_not_expire_early() {
+        Ipv4ExpiryWheel wheel = new Ipv4ExpiryWheel(1000, 0);
+        wheel.schedule(1, Long.MAX_VALUE);
+        wheel.schedule(2, Long.MAX_VALUE - 1);
+        assertEquals(0, wheel.advance(60_000, rule -> { }),
+                "test if deadline is near Long.MAX_VALUE, then round up without overflow");
+        assertEquals(2, wheel.size());
+    }
+
+    @Test
+    void test_schedule_if_exists_then_reschedule_and_cancel() {
+        Ipv4ExpiryWheel wheel = new Ipv4ExpiryWheel(1000, 0);
+        wheel.schedule(1, 2000);
+        wheel.schedule(1, 100_000);
+        wheel.schedule(2, 2000);
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(50_000, expired::add);
+        boolean cancelled = wheel.cancel(1);
+        assertAll("test if rule is rescheduled, then only new deadline is used and cancel removes it",
+                () -> assertEquals(Arrays.asList(2L), expired),
+                () -> assertTrue(cancelled),
+                () -> assertFalse(wheel.contains(1)),
+                () -> assertFalse(wheel.cancel(1)),
+                () -> assertEquals(0, wheel.advance(200_000, expired::add)));
+    }
+
+    @Test
+    void test_advance_same_as_sorted_deadlines() {
+        Random random = new Random(3);
+        Ipv4ExpiryWheel wheel = new Ipv4ExpiryWheel(1, 0);
+        long[] deadlines = new long[20_000];
+        for (int rule = 0; rule < deadlines.length; rule++) {
+            deadlines[rule] = 1 + (random.nextBoolean() ? random.nextInt(5000) : random.nextInt(1 << 25)); // 모든 level 과 범위 밖
+            wheel.schedule(rule, deadlines[rule]);
+        }
+        long[] expiredAt = new long[deadlines.length];
+        long[] now = new long[1];
+        for (now[0] = 0; wheel.size() > 0; now[0] += 1 + random.nextInt(1 << 12)) {
+            wheel.advance(now[0], rule -> expiredAt[(int) rule] = now[0]);
+        }
+        for (int rule = 0; rule < deadlines.length; rule++) {
+            assertTrue(expiredAt[rule] >= deadlines[rule], "rule=" + rule);
+            assertTrue(expiredAt[rule] - deadlines[rule] <= 1 << 12, "rule=" + rule);
+        }
+    }
+
+    @Test
+    void test_schedule_after_expire_then_reuse_entries() {
+        Ipv4ExpiryWheel wheel = new Ipv4ExpiryWheel(1, 0);
+        for (int rule = 0; rule < 1000; rule++) {
+            wheel.schedule(rule, 10);
+        }
+        long memoryBytes = wheel.memoryBytes();
+        for (int round = 1; round <= 10; round++) {
+            assertEquals(1000, wheel.advance(round * 10L, rule -> { }));
+            for (int rule = 0; rule < 1000; rule++) {
+                wheel.schedule(rule + round * 1000L, round * 10L + 10);
+            }
+        }
+        assertEquals(memoryBytes, wheel.memoryBytes(), "test if expired entries are reused, then arrays do not grow");
+    }
+}
@@ -0,0 +1,224 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4OverlayIndexTest {
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    private static long rule(String cidr) {
+        long parsed = IpUtils.parseCidr(cidr, 0, cidr.length());
+        int mask = (int) (parsed & 0x3f);
+        return Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(parsed >>> 6, mask), mask);
+    }
+
+    private static long[] rules(String... cidrs) {
+        return Arrays.stream(cidrs).mapToLong(Ipv4OverlayIndexTest::rule).toArray();
+    }
+
+    private static Ipv4SubnetBuffer subnets(long... rules) {
+        Ipv4SubnetBuffer subnets = new Ipv4SubnetBuffer();
+        for (long rule : rules) {
+            subnets.add(Ipv4SubnetBuffer.startIpLongOf(rule), Ipv4SubnetBuffer.cidrOf(rule));
+        }
+        subnets.sort();
+        return subnets;
+    }
+
+    private static Ipv4RangeIndex merge(Ipv4SubnetBuffer subnets) {
+        int[] starts = new int[subnets.size()];
+        int[] ends = new int[subnets.size()];
+        int size = 0;
+        long lastEndIpLong = -2;
+        for (int i = 0; i < subnets.size(); i++) {
+            long startIpLong = subnets.getStartIpLong(i);
+            long endIpLong = IpUtils.calcEndIpInSubnet(startIpLong, subnets.getCidr(i));
+            if (endIpLong <= lastEndIpLong) {
+                continue;
+            }
+            if (startIpLong > lastEndIpLong + 1) {
+                starts[size++] = (int) startIpLong;
+            }
+            ends[size - 1] = (int) endIpLong;
+            lastEndIpLong = endIpLong;
+        }
+        return Ipv4RangeIndex.of(starts, ends, size);
+    }
+
+    private static long countIps(Ipv4RangeSet ranges) {
+        long numIps = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            numIps += ranges.getEndIpLong(i) - ranges.getStartIpLong(i) + 1;
+        }
+        return numIps;
+    }
+
+    private static Ipv4RuleSet ruleSet(long... rules) {
+        Ipv4RuleSet ruleSet = new Ipv4RuleSet();
+        for (long rule : rules) {
+            ruleSet.add(rule);
+        }
+        return ruleSet;
+    }
+
+    private static Ipv4OverlayIndex overlay(Ipv4SubnetBuffer base, long[] added, long[] removed, Ipv4RangeSet allow) {
+        Ipv4RangeIndex baseRanges = Ipv4RangeIndex.subtract(merge(base), allow);
+        return Ipv4OverlayIndex.of(baseRanges, baseRanges, countIps(baseRanges), base, ruleSet(added), ruleSet(removed), allow);
+    }
+
+    @Test
+    void test_remove_nested_rule_then_keep_parent() {
+        Ipv4SubnetBuffer base = subnets(rules("10.0.0.0/8", "10.1.0.0/16", "1.1.1.1"));
+        Ipv4OverlayIndex index = overlay(base, new long[0], rules("10.1.0.0/16"), Ipv4RangeIndex.EMPTY);
+        assertAll("test if nested rule is removed, then addresses are still denied by parent rule",
+                () -> assertTrue(index.contains(ip("10.1.0.0"))),
+                () -> assertTrue(index.contains(ip("10.255.0.0"))),
+                () -> assertEquals(1, index.numPendingRules()),
+                () -> assertEquals((1L << 24) + 1, index.numDenyIps()));
+    }
+
+    @Test
+    void test_remove_parent_rule_then_keep_nested() {
+        Ipv4SubnetBuffer base = subnets(rules("10.0.0.0/8", "10.1.0.0/16", "10.2.3.4"));
+        Ipv4OverlayIndex index = overlay(base, new long[0], rules("10.0.0.0/8"), Ipv4RangeIndex.EMPTY);
+        assertAll("test if parent rule is removed, then nested rules are still denied",
+                () -> assertTrue(index.contains(ip("10.1.255.255"))),
+                () -> assertTrue(index.contains(ip("10.2.3.4"))),
+                () -> assertFalse(index.contains(ip("10.2.3.3"))),
+                () -> assertFalse(index.contains(ip("10.0.0.0"))),
+                () -> assertFalse(index.contains(ip("10.255.255.255"))),
+                () -> assertEquals((1L << 16) + 1, index.numDenyIps()));
+    }
+
+    @Test
+    void test_add_rule_then_deny_except_allow() {
+        Ipv4RangeIndex allow = merge(subnets(rules("20.0.0.128/25")));
+        Ipv4SubnetBuffer base = subnets(rules("10.0.0.0/24"));
+        Ipv4OverlayIndex index = overlay(base, rules("20.0.0.0/24", "10.0.0.0/25"), new long[0], allow);
+        assertAll("test if rule is added, then deny added rule except allow ranges",
+                () -> assertTrue(index.contains(ip("20.0.0.127"))),
+                () -> assertFalse(index.contains(ip("20.0.0.128"))),
+                () -> assertTrue(index.contains(ip("10.0.0.255"))),
+                () -> assertEquals(Optional.of("20.0.0.0/24"), index.matchedRule(ip("20.0.0.1"))),
+                () -> assertEquals(256 + 128, index.numDenyIps()));
+    }
+
+    @Test
+    void test_add_and_remove_same_as_rebuild() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            List<Long> baseRules = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int cidr = 20 + random.nextInt(13);
+                baseRules.add(Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(0x0a000000L | random.nextInt(1 << 16), cidr), cidr));
+            }
+            long[] added = new long[5];
+            for (int i = 0; i < added.length; i++) {
+                int cidr = 20 + random.nextInt(13);
+                added[i] = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(0x0a000000L | random.nextInt(1 << 16), cidr), cidr);
+            }
+            long[] removed = baseRules.stream().filter(rule -> random.nextInt(4) == 0).mapToLong(Long::longValue).distinct().toArray();
+            Ipv4RangeIndex allow = merge(subnets(Ipv4SubnetBuffer.key(0x0a008000L, 22)));
+
+            Ipv4SubnetBuffer base = subnets(baseRules.stream().mapToLong(Long::longValue).toArray());
+            long[] pendingAdded = Arrays.stream(added).filter(rule -> !base.contains(rule)).distinct().toArray();
+            Ipv4OverlayIndex index = overlay(base, pendingAdded, removed, allow);
+
+            long[] expectRules = baseRules.stream().mapToLong(Long::longValue).filter(rule -> Arrays.stream(removed).noneMatch(r -> r == rule)).toArray();
+            Ipv4RangeIndex expect = Ipv4RangeIndex.subtract(merge(subnets(concat(expectRules, pendingAdded))), allow);
+
+            int[] ips = new int[1 << 16];
+            for (int i = 0; i < ips.length; i++) {
+                ips[i] = 0x0a000000 | i;
+            }
+            boolean[] denied = new boolean[ips.length];
+            boolean[] expectDenied = new boolean[ips.length];
+            index.containsAll(ips, denied);
+            expect.containsAll(ips, expectDenied);
+            assertArrayEquals(expectDenied, denied, "round=" + round);
+            assertEquals(countIps(expect), index.numDenyIps(), "round=" + round);
+        }
+    }
+
+    @Test
+    void test_countUncoveredIps_same_as_rebuild() {
+        Random random = new Random(11);
+        Ipv4RangeIndex allow = merge(subnets(Ipv4SubnetBuffer.key(0x0a008000L, 22)));
+        for (int round = 0; round < 50; round++) {
+            long[] baseRules = new long[30];
+            for (int i = 0; i < baseRules.length; i++) {
+                int cidr = 18 + random.nextInt(15);
+                baseRules[i] = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(0x0a000000L | random.nextInt(1 << 16), cidr), cidr);
+            }
+            Ipv4SubnetBuffer base = subnets(baseRules);
+            Ipv4RangeIndex baseRanges = Ipv4RangeIndex.subtract(merge(base), allow);
+            Ipv4RuleSet removedRules = ruleSet(Arrays.stream(baseRules).filter(rule -> random.nextInt(4) == 0).toArray());
+            Ipv4RuleSet addedRules = new Ipv4RuleSet();
+            Ipv4OverlayIndex index = Ipv4OverlayIndex.of(baseRanges, baseRanges, countIps(baseRanges), base, addedRules, removedRules, allow);
+            long numDenyIps = index.numDenyIps();
+            for (int i = 0; i < 40; i++) {
+                int cidr = 16 + random.nextInt(17);
+                long rule = Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(0x0a000000L | random.nextInt(1 << 16), cidr), cidr);
+                if (base.contains(rule)) {
+                    continue;
+                }
+                if (addedRules.contains(rule) && random.nextBoolean()) {
+                    addedRules.remove(rule);
+                    numDenyIps -= index.countUncoveredIps(rule, null);
+                } else if (!addedRules.contains(rule)) {
+                    numDenyIps += index.countUncoveredIps(rule, null);
+                    addedRules.add(rule);
+                }
+                Ipv4OverlayIndex rebuilt = Ipv4OverlayIndex.of(baseRanges, baseRanges, countIps(baseRanges), base, addedRules, removedRules, allow);
+                assertEquals(rebuilt.numDenyIps(), numDenyIps, "round=" + round + ", step=" + i);
+            }
+        }
+    }
+
+    @Test
+    void test_countUncoveredIps_with_staged_rules() {
+        Ipv4SubnetBuffer base = subnets(rules("10.0.0.0/24"));
+        Ipv4OverlayIndex index = overlay(base, new long[0], new long[0], Ipv4RangeIndex.EMPTY);
+        Ipv4RuleSet staged = ruleSet(rules("20.0.0.0/25"));
+        assertAll("test if rules are added together, then count addresses not covered by base and staged rules",
+                () -> assertEquals(128, index.countUncoveredIps(rule("20.0.0.0/24"), staged)),
+                () -> assertEquals(0, index.countUncoveredIps(rule("20.0.0.1"), staged)),
+                () -> assertEquals(256, index.countUncoveredIps(rule("10.0.0.0/23"), staged)),
+                () -> assertEquals(0, index.countUncoveredIps(rule("10.0.0.1"), null)));
+    }
+
+    @Test
+    void test_contains_if_added_rules_changed_then_apply_without_rebuild() {
+        Ipv4SubnetBuffer base = subnets(rules("10.0.0.0/24"));
+        Ipv4RuleSet addedRules = new Ipv4RuleSet();
+        Ipv4RangeIndex baseRanges = merge(base);
+        Ipv4OverlayIndex index = Ipv4OverlayIndex.of(baseRanges, baseRanges, countIps(baseRanges), base, addedRules, new Ipv4RuleSet(), Ipv4RangeIndex.EMPTY);
+        addedRules.add(rule("20.0.0.1"));
+        addedRules.add(rule("20.0.0.0/16"));
+        assertAll("test if added rules are changed in place, then overlay looks up the changed rules",
+                () -> assertTrue(index.contains(ip("20.0.255.255"))),
+                () -> assertEquals(Optional.of("20.0.0.0/16"), index.matchedRule(ip("20.0.0.1"))),
+                () -> assertEquals(Optional.empty(), index.matchedRule(ip("20.1.0.0"))));
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
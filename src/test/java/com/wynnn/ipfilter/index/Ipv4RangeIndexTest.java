@@ -0,0 +1,185 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4RangeIndexTest {
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    @Test
+    void test_contains_empty() {
+        assertAll(
+                () -> assertEquals(0, Ipv4RangeIndex.EMPTY.size()),
+                () -> assertFalse(Ipv4RangeIndex.EMPTY.contains(ip("0.0.0.0"))),
+                () -> assertFalse(Ipv4RangeIndex.EMPTY.contains(ip("255.255.255.255"))));
+    }
+
+    @Test
+    void test_contains_range_boundary() {
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("10.0.0.0/8"), new Ipv4Subnet("172.16.0.0/12")));
+        assertAll(
+                () -> assertFalse(index.contains(ip("9.255.255.255"))),
+                () -> assertTrue(index.contains(ip("10.0.0.0"))),
+                () -> assertTrue(index.contains(ip("10.255.255.255"))),
+                () -> assertFalse(index.contains(ip("11.0.0.0"))),
+                () -> assertFalse(index.contains(ip("172.15.255.255"))),
+                () -> assertTrue(index.contains(ip("172.16.0.0"))),
+                () -> assertTrue(index.contains(ip("172.31.255.255"))),
+                () -> assertFalse(index.contains(ip("172.32.0.0"))));
+    }
+
+    @Test
+    void test_contains_unsigned_order() {
+        // ranges above 128.0.0.0 are negative as signed int, and must be sorted after the others
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("1.1.1.1"), new Ipv4Subnet("127.255.255.255"),
+                new Ipv4Subnet("128.0.0.0"), new Ipv4Subnet("255.255.255.0/24")));
+        assertAll(
+                () -> assertEquals(4, index.size()),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.0"), index.getStartIpLong(3)),
+                () -> assertEquals(IpUtils.ipToLong("255.255.255.255"), index.getEndIpLong(3)),
+                () -> assertTrue(index.contains(ip("1.1.1.1"))),
+                () -> assertTrue(index.contains(ip("127.255.255.255"))),
+                () -> assertTrue(index.contains(ip("128.0.0.0"))),
+                () -> assertFalse(index.contains(ip("128.0.0.1"))),
+                () -> assertTrue(index.contains(ip("255.255.255.255"))),
+                () -> assertFalse(index.contains(ip("255.255.254.255"))),
+                () -> assertFalse(index.contains(ip("0.0.0.0"))));
+    }
+
+    @Test
+    void test_contains_all() {
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(Collections.singletonList(new Ipv4Subnet("0.0.0.0/0")));
+        assertAll(
+                () -> assertTrue(index.contains(ip("0.0.0.0"))),
+                () -> assertTrue(index.contains(ip("127.0.0.1"))),
+                () -> assertTrue(index.contains(ip("255.255.255.255"))));
+    }
+
+    @Test
+    void test_memoryBytes() {
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("1.1.1.1"), new Ipv4Subnet("2.2.2.2")));
+        assertEquals(16, index.memoryBytes());
+    }
+
+    @Test
+    void test_union_merge_ranges_across_parts() {
+        Ipv4RangeIndex first = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("1.1.1.1"), new Ipv4Subnet("10.0.0.0/24")));
+        Ipv4RangeIndex second = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("10.0.0.128/25"), new Ipv4Subnet("10.0.1.0/24"), new Ipv4Subnet("11.0.0.0/8")));
+        Ipv4RangeIndex third = Ipv4RangeIndex.of(Collections.singletonList(new Ipv4Subnet("200.0.0.0/8")));
+        Ipv4RangeIndex union = Ipv4RangeIndex.union(new Ipv4RangeIndex[]{first, Ipv4RangeIndex.EMPTY, second, third});
+        assertAll(
+                () -> assertEquals(4, union.size()),
+                () -> assertEquals(IpUtils.ipToLong("1.1.1.1"), union.getEndIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.0.0"), union.getStartIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.1.255"), union.getEndIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("11.0.0.0"), union.getStartIpLong(2)),
+                () -> assertEquals(IpUtils.ipToLong("200.255.255.255"), union.getEndIpLong(3)));
+    }
+
+    @Test
+    void test_subtract_split_deny_ranges_by_allow_ranges() {
+        Ipv4RangeIndex deny = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("1.1.1.0/24"), new Ipv4Subnet("10.0.0.0/8"), new Ipv4Subnet("20.0.0.0/24"), new Ipv4Subnet("20.0.2.0/24")));
+        Ipv4RangeIndex allow = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("10.0.0.0/24"), new Ipv4Subnet("10.1.2.0/24"), new Ipv4Subnet("10.255.255.255"), new Ipv4Subnet("20.0.0.0/22")));
+        Ipv4RangeIndex subtracted = Ipv4RangeIndex.subtract(deny, allow);
+        assertAll(
+                () -> assertEquals(3, subtracted.size()),
+                () -> assertEquals(IpUtils.ipToLong("1.1.1.0"), subtracted.getStartIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("1.1.1.255"), subtracted.getEndIpLong(0)),
+                () -> assertEquals(IpUtils.ipToLong("10.0.1.0"), subtracted.getStartIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("10.1.1.255"), subtracted.getEndIpLong(1)),
+                () -> assertEquals(IpUtils.ipToLong("10.1.3.0"), subtracted.getStartIpLong(2)),
+                () -> assertEquals(IpUtils.ipToLong("10.255.255.254"), subtracted.getEndIpLong(2)),
+                () -> assertSame(deny, Ipv4RangeIndex.subtract(deny, Ipv4RangeIndex.EMPTY)),
+                () -> assertEquals(0, Ipv4RangeIndex.subtract(deny, Ipv4RangeIndex.of(Collections.singletonList(new Ipv4Subnet("0.0.0.0/0")))).size()));
+    }
+
+    @Test
+    void test_subtract_same_as_contains() {
+        Random random = new Random(1275);
+        for (int round = 0; round < 100; round++) {
+            Ipv4RangeIndex deny = randomRanges(random);
+            Ipv4RangeIndex allow = randomRanges(random);
+            Ipv4RangeIndex subtracted = Ipv4RangeIndex.subtract(deny, allow);
+            for (int ip = 0; ip < 1024; ip++) {
+                assertEquals(deny.contains(ip) && !allow.contains(ip), subtracted.contains(ip));
+            }
+            for (int i = 1; i < subtracted.size(); i++) {
+                assertTrue(subtracted.getStartIpLong(i) > subtracted.getEndIpLong(i - 1) + 1); // not overlapped nor adjacent
+            }
+        }
+    }
+
+    private static Ipv4RangeIndex randomRanges(Random random) {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int size = 0;
+        for (int ip = random.nextInt(64); ip < 1024 && size < starts.length; ip = ends[size - 1] + 2 + random.nextInt(64)) {
+            starts[size] = ip;
+            ends[size] = Math.min(1023, ip + random.nextInt(64));
+            size++;
+        }
+        return Ipv4RangeIndex.of(starts, ends, size);
+    }
+
+    @Test
+    void test_containsAll_keep_request_order() {
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(Arrays.asList(new Ipv4Subnet("1.1.1.1"), new Ipv4Subnet("10.0.0.0/8"), new Ipv4Subnet("255.255.255.0/24")));
+        int[] ips = {ip("255.255.255.255"), ip("1.1.1.1"), ip("11.0.0.0"), ip("10.0.0.1"), ip("1.1.1.1"), ip("0.0.0.0")};
+        boolean[] denied = new boolean[ips.length];
+        index.containsAll(ips, denied);
+        assertArrayEquals(new boolean[]{true, true, false, true, true, false}, denied);
+    }
+
+    @Test
+    void test_containsAll_same_as_contains() {
+        Random random = new Random(1275);
+        int[] starts = new int[100000];
+        int[] ends = new int[starts.length];
+        long startIp = 0;
+        for (int i = 0; i < starts.length; i++) {
+            startIp += 2 + random.nextInt(40000);
+            starts[i] = (int) startIp;
+            ends[i] = (int) (startIp + random.nextInt(1000));
+            startIp += 1000;
+        }
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(starts, ends, starts.length);
+        for (int batchSize : new int[]{0, 1, 10, 1000, 5000, 100000}) {
+            int[] ips = new int[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                ips[i] = random.nextBoolean() ? random.nextInt() : starts[random.nextInt(starts.length)] + random.nextInt(1001) - 1;
+            }
+            boolean[] expected = new boolean[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                expected[i] = index.contains(ips[i]);
+            }
+            boolean[] denied = new boolean[batchSize];
+            index.containsAll(ips, denied);
+            assertArrayEquals(expected, denied, "batchSize=" + batchSize);
+        }
+    }
+
+    @Test
+    void test_equals_if_same_ranges() {
+        Ipv4RangeIndex index = Ipv4RangeIndex.of(new int[]{1, 10}, new int[]{5, 20}, 2);
+        assertAll(
+                () -> assertEquals(index, Ipv4RangeIndex.of(new int[]{1, 10, 0}, new int[]{5, 20, 0}, 2)),
+                () -> assertEquals(index.hashCode(), Ipv4RangeIndex.of(new int[]{1, 10}, new int[]{5, 20}, 2).hashCode()),
+                () -> assertNotEquals(index, Ipv4RangeIndex.of(new int[]{1, 10}, new int[]{5, 21}, 2)));
+    }
+}
@@ -0,0 +1,107 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4RangeSnapshotTest {
+
+    private static final byte[] SOURCE_HASH = new byte[Ipv4RangeSnapshot.SOURCE_HASH_BYTES];
+    private static final Ipv4RangeIndex RANGES = Ipv4RangeIndex.of(Arrays.asList(
+            new Ipv4Subnet("1.1.1.1"), new Ipv4Subnet("10.0.0.0/8"), new Ipv4Subnet("255.255.255.0/24")));
+
+    @TempDir
+    Path tempDir;
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    @Test
+    void test_write_and_read() throws IOException {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        Ipv4RangeSnapshot.write(snapshotFile, RANGES, 16777473L, SOURCE_HASH);
+
+        Ipv4RangeSnapshot snapshot = Ipv4RangeSnapshot.read(snapshotFile, SOURCE_HASH).orElseThrow(AssertionError::new);
+        Ipv4MappedRangeIndex ranges = snapshot.getRanges();
+        assertAll(
+                () -> assertEquals(64 + 8 * 3, Files.size(snapshotFile)),
+                () -> assertFalse(Files.exists(tempDir.resolve("deny.snapshot.tmp"))),
+                () -> assertEquals(16777473L, snapshot.getNumDenyIps()),
+                () -> assertEquals(3, ranges.size()),
+                () -> assertEquals(RANGES.getStartIpLong(2), ranges.getStartIpLong(2)),
+                () -> assertEquals(RANGES.getEndIpLong(2), ranges.getEndIpLong(2)),
+                () -> assertTrue(ranges.contains(ip("1.1.1.1"))),
+                () -> assertFalse(ranges.contains(ip("1.1.1.2"))),
+                () -> assertTrue(ranges.contains(ip("10.255.255.255"))),
+                () -> assertTrue(ranges.contains(ip("255.255.255.255"))),
+                () -> assertFalse(ranges.contains(ip("255.255.254.255"))));
+    }
+
+    @Test
+    void test_write_and_read_empty() throws IOException {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        Ipv4RangeSnapshot.write(snapshotFile, Ipv4RangeIndex.EMPTY, 0, SOURCE_HASH);
+        Ipv4RangeSnapshot snapshot = Ipv4RangeSnapshot.read(snapshotFile, SOURCE_HASH).orElseThrow(AssertionError::new);
+        assertAll(
+                () -> assertEquals(0, snapshot.getRanges().size()),
+                () -> assertFalse(snapshot.getRanges().contains(ip("0.0.0.0"))));
+    }
+
+    @Test
+    void test_read_if_not_exists_then_empty() throws IOException {
+        assertFalse(Ipv4RangeSnapshot.read(tempDir.resolve("not-exists"), SOURCE_HASH).isPresent());
+    }
+
+    @Test
+    void test_read_if_source_changed_then_empty() throws IOException {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        Ipv4RangeSnapshot.write(snapshotFile, RANGES, 0, SOURCE_HASH);
+        byte[] otherHash = SOURCE_HASH.clone();
+        otherHash[31] = 1;
+        assertFalse(Ipv4RangeSnapshot.read(snapshotFile, otherHash).isPresent());
+    }
+
+    @Test
+    void test_read_if_corrupted_then_empty() throws IOException {
+        Path snapshotFile = tempDir.resolve("deny.snapshot");
+        Ipv4RangeSnapshot.write(snapshotFile, RANGES, 0, SOURCE_HASH);
+        overwrite(snapshotFile, Ipv4RangeSnapshot.HEADER_BYTES + 1); // payload
+        Optional<Ipv4RangeSnapshot> corruptedPayload = Ipv4RangeSnapshot.read(snapshotFile, SOURCE_HASH);
+
+        Ipv4RangeSnapshot.write(snapshotFile, RANGES, 0, SOURCE_HASH);
+        overwrite(snapshotFile, 4); // version
+        Optional<Ipv4RangeSnapshot> otherVersion = Ipv4RangeSnapshot.read(snapshotFile, SOURCE_HASH);
+
+        Ipv4RangeSnapshot.write(snapshotFile, RANGES, 0, SOURCE_HASH);
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile.toFile(), "rw")) {
+            file.setLength(file.length() - 4); // truncated
+        }
+        Optional<Ipv4RangeSnapshot> truncated = Ipv4RangeSnapshot.read(snapshotFile, SOURCE_HASH);
+
+        assertAll(
+                () -> assertFalse(corruptedPayload.isPresent()),
+                () -> assertFalse(otherVersion.isPresent()),
+                () -> assertFalse(truncated.isPresent()));
+    }
+
+    private static void overwrite(Path file, long position) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.seek(position);
+            randomAccessFile.write(0x7f);
+        }
+    }
+}
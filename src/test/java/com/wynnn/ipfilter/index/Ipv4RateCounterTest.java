@@ -0,0 +1,111 @@
+package com.wynnn.ipfilter.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4RateCounterTest {
+
+    @Test
+    void test_of_round_up_capacity() {
+        assertAll(
+                () -> assertSame(Ipv4RateCounter.DISABLED, Ipv4RateCounter.of(0, 1000, 10)),
+                () -> assertFalse(Ipv4RateCounter.DISABLED.increment(1, 0)),
+                () -> assertEquals(16, Ipv4RateCounter.of(13, 1000, 10).capacity()),
+                () -> assertEquals(8L << 16, Ipv4RateCounter.of(1 << 16, 1000, 10).memoryBytes()),
+                () -> assertThrows(IllegalArgumentException.class, () -> Ipv4RateCounter.of(16, 1000, Ipv4RateCounter.MAX_THRESHOLD + 1)),
+                () -> assertThrows(IllegalArgumentException.class, () -> Ipv4RateCounter.of(16, 0, 10)));
+    }
+
+    @Test
+    void test_increment_then_report_once_per_window() {
+        Ipv4RateCounter counter = Ipv4RateCounter.of(1024, 1000, 3);
+        boolean[] reported = new boolean[5];
+        for (int i = 0; i < reported.length; i++) {
+            reported[i] = counter.increment(-1, 10_000 + i); // 255.255.255.255
+        }
+        assertAll("test if threshold is reached, then report only the crossing request",
+                () -> assertFalse(reported[0]),
+                () -> assertFalse(reported[1]),
+                () -> assertTrue(reported[2]),
+                () -> assertFalse(reported[3]),
+                () -> assertFalse(reported[4]),
+                () -> assertEquals(5, counter.estimate(-1, 10_004)),
+                () -> assertEquals(0, counter.estimate(1, 10_004)));
+    }
+
+    @Test
+    void test_increment_then_slide_previous_window() {
+        Ipv4RateCounter counter = Ipv4RateCounter.of(1024, 1000, 8);
+        for (int i = 0; i < 6; i++) {
+            counter.increment(7, 10_999);
+        }
+        assertAll("test if window is changed, then previous count is weighted by remaining time",
+                () -> assertEquals(6, counter.estimate(7, 11_000)),
+                () -> assertEquals(3, counter.estimate(7, 11_500)),
+                () -> assertEquals(0, counter.estimate(7, 12_000)),
+                () -> assertFalse(counter.increment(7, 11_500)), // 3 + 1
+                () -> assertFalse(counter.increment(7, 11_500)),
+                () -> assertFalse(counter.increment(7, 11_500)),
+                () -> assertFalse(counter.increment(7, 11_500)),
+                () -> assertTrue(counter.increment(7, 11_500))); // 3 + 5
+    }
+
+    @Test
+    void test_increment_if_random_sources_then_keep_heavy_client() {
+        Ipv4RateCounter counter = Ipv4RateCounter.of(256, 1000, 1000);
+        Random random = new Random(11);
+        int heavy = 0x0a000001;
+        int numReported = 0;
+        for (int i = 0; i < 100_000; i++) {
+            counter.increment(random.nextInt(), 5_000); // 매번 다른 출발지
+            if (i % 50 == 0 && counter.increment(heavy, 5_000)) {
+                numReported++;
+            }
+        }
+        assertEquals(1, numReported, "test if sources are random, then heavy client is not evicted and is reported");
+        assertEquals(2000, counter.estimate(heavy, 5_000));
+    }
+
+    @Test
+    void test_increment_concurrently_then_report_at_most_once() throws Exception {
+        Ipv4RateCounter counter = Ipv4RateCounter.of(64, 60_000, 5000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    int numReported = 0;
+                    for (int i = 0; i < 2000; i++) {
+                        numReported += counter.increment(42, 0) ? 1 : 0;
+                    }
+                    return numReported;
+                }));
+            }
+            int numReported = 0;
+            for (Future<Integer> future : futures) {
+                numReported += future.get();
+            }
+            long estimate = counter.estimate(42, 0);
+            int reported = numReported;
+            assertAll("test if same IP is counted by threads, then count without lock and report at most once",
+                    () -> assertTrue(reported <= 1),
+                    () -> assertTrue(estimate <= 8000),
+                    () -> assertTrue(estimate < 5000 || reported == 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
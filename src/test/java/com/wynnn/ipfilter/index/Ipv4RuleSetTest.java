@@ -0,0 +1,71 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4RuleSetTest {
+
+    private static long rule(String cidr) {
+        long parsed = IpUtils.parseCidr(cidr, 0, cidr.length());
+        int mask = (int) (parsed & 0x3f);
+        return Ipv4SubnetBuffer.key(IpUtils.calcStartIpInSubnet(parsed >>> 6, mask), mask);
+    }
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    @Test
+    void test_add_remove_then_find_largest_rule() {
+        Ipv4RuleSet rules = new Ipv4RuleSet();
+        assertAll("test if rules are added, then find the largest rule containing IP",
+                () -> assertTrue(rules.add(rule("10.1.2.3"))),
+                () -> assertFalse(rules.add(rule("10.1.2.3"))),
+                () -> assertTrue(rules.add(rule("10.1.0.0/16"))),
+                () -> assertTrue(rules.add(rule("0.0.0.0/0"))),
+                () -> assertEquals(3, rules.size()),
+                () -> assertEquals(1L | 1L << 16 | 1L << 32, rules.cidrMask()),
+                () -> assertEquals(rule("0.0.0.0/0"), rules.findRule(ip("10.1.2.3"))));
+
+        rules.remove(rule("0.0.0.0/0"));
+        assertAll("test if rule is removed, then find remaining rules",
+                () -> assertFalse(rules.contains(rule("0.0.0.0/0"))),
+                () -> assertEquals(rule("10.1.0.0/16"), rules.findRule(ip("10.1.2.3"))),
+                () -> assertEquals(Ipv4RuleSet.NONE, rules.findRule(ip("10.2.0.0"))),
+                () -> assertFalse(rules.containsIp(ip("10.2.0.0"))),
+                () -> assertFalse(rules.remove(rule("0.0.0.0/0"))),
+                () -> assertEquals(1L << 16 | 1L << 32, rules.cidrMask()));
+    }
+
+    @Test
+    void test_add_remove_many_then_same_as_hash_set() {
+        Random random = new Random(3);
+        Ipv4RuleSet rules = new Ipv4RuleSet();
+        Set<Long> expect = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long rule = Ipv4SubnetBuffer.key(random.nextInt(1 << 12), 32);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expect.remove(rule), rules.remove(rule));
+            } else {
+                assertEquals(expect.add(rule), rules.add(rule));
+            }
+        }
+        long[] array = rules.toArray();
+        Arrays.sort(array);
+        assertAll("test if rules are added and removed many times, then keep the same rules without growing",
+                () -> assertEquals(expect.size(), rules.size()),
+                () -> assertArrayEquals(expect.stream().mapToLong(Long::longValue).sorted().toArray(), array),
+                () -> assertTrue(rules.capacity() <= 4 * Integer.highestOneBit(Math.max(1, expect.size()) * 4)));
+    }
+}
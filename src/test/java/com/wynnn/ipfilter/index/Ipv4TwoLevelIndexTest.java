@@ -0,0 +1,100 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv4TwoLevelIndexTest {
+
+    private static final String[] DENY_RULES = {
+            "0.0.0.0/32",
+            "1.0.0.60/30",
+            "1.0.255.255/32",  // last address of a bucket
+            "1.1.0.0/32",      // first address of the next bucket
+            "10.0.0.0/8",      // many buckets
+            "11.0.0.0/15",     // ends at the last address of a bucket
+            "128.0.0.0/32",    // sign bit of int
+            "172.16.128.0/17", // ends in the middle of a bucket
+            "255.255.255.255/32"
+    };
+
+    private static int ip(String ipAddress) {
+        return (int) IpUtils.ipToLong(ipAddress);
+    }
+
+    @Test
+    void test_contains_boundary() {
+        Ipv4TwoLevelIndex index = Ipv4TwoLevelIndex.of(Ipv4RangeIndex.of(Arrays.stream(DENY_RULES).map(Ipv4Subnet::new).collect(Collectors.toList())));
+        assertAll(
+                () -> assertEquals(DENY_RULES.length, index.size()),
+                () -> assertTrue(index.contains(ip("0.0.0.0"))),
+                () -> assertFalse(index.contains(ip("0.0.0.1"))),
+                () -> assertFalse(index.contains(ip("1.0.0.59"))),
+                () -> assertTrue(index.contains(ip("1.0.0.63"))),
+                () -> assertFalse(index.contains(ip("1.0.255.254"))),
+                () -> assertTrue(index.contains(ip("1.0.255.255"))),
+                () -> assertTrue(index.contains(ip("1.1.0.0"))),
+                () -> assertFalse(index.contains(ip("1.1.0.1"))),
+                () -> assertFalse(index.contains(ip("9.255.255.255"))),
+                () -> assertTrue(index.contains(ip("10.0.0.0"))),
+                () -> assertTrue(index.contains(ip("10.128.0.0"))),
+                () -> assertTrue(index.contains(ip("10.255.255.255"))),
+                () -> assertTrue(index.contains(ip("11.1.255.255"))),
+                () -> assertFalse(index.contains(ip("11.2.0.0"))),
+                () -> assertFalse(index.contains(ip("127.255.255.255"))),
+                () -> assertTrue(index.contains(ip("128.0.0.0"))),
+                () -> assertFalse(index.contains(ip("172.16.127.255"))),
+                () -> assertTrue(index.contains(ip("172.16.255.255"))),
+                () -> assertFalse(index.contains(ip("172.17.0.0"))),
+                () -> assertFalse(index.contains(ip("255.255.255.254"))),
+                () -> assertTrue(index.contains(ip("255.255.255.255"))));
+    }
+
+    @Test
+    void test_contains_empty() {
+        Ipv4TwoLevelIndex index = Ipv4TwoLevelIndex.of(Ipv4RangeIndex.EMPTY);
+        assertAll(
+                () -> assertEquals(0, index.size()),
+                () -> assertFalse(index.contains(0)),
+                () -> assertFalse(index.contains(-1)),
+                () -> assertEquals(8L * ((1 << 16) + 1), index.memoryBytes()));
+    }
+
+    @Test
+    void test_contains_same_as_sorted_index() {
+        Random random = new Random(1275);
+        for (int bucketSpread : new int[]{1, 4, 1 << 16}) { // dense bucket (deep B-tree) ~ sparse buckets
+            int[] starts = new int[20000];
+            int[] ends = new int[starts.length];
+            long ipLong = 0x0a000000L;
+            for (int i = 0; i < starts.length; i++) {
+                ipLong += 1 + random.nextInt(Math.max(2, bucketSpread * 4));
+                starts[i] = (int) ipLong;
+                ipLong += random.nextInt(random.nextInt(10) == 0 ? Math.max(1, bucketSpread * 8) : 4);
+                ends[i] = (int) ipLong;
+                ipLong++;
+            }
+            Ipv4RangeIndex sorted = Ipv4RangeIndex.of(starts, ends, starts.length);
+            Ipv4TwoLevelIndex index = Ipv4TwoLevelIndex.of(sorted);
+            for (int i = 0; i < starts.length; i++) {
+                assertTrue(index.contains(starts[i]));
+                assertTrue(index.contains(ends[i]));
+                assertEquals(sorted.contains(starts[i] - 1), index.contains(starts[i] - 1));
+                assertEquals(sorted.contains(ends[i] + 1), index.contains(ends[i] + 1));
+            }
+            for (int i = 0; i < 200000; i++) {
+                int ip = (int) (0x0a000000L + random.nextInt((int) Math.min(Integer.MAX_VALUE, ipLong - 0x0a000000L + 1000)));
+                assertEquals(sorted.contains(ip), index.contains(ip));
+            }
+        }
+    }
+}
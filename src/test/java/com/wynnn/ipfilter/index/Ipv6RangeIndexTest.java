@@ -0,0 +1,111 @@
+package com.wynnn.ipfilter.index;
+
+import com.wynnn.ipfilter.utils.IpUtils;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv6RangeIndexTest {
+
+    private static Ipv6RangeIndex index(String... cidrs) {
+        Ipv6SubnetBuffer subnets = new Ipv6SubnetBuffer();
+        long[] address = new long[2];
+        for (String cidr : cidrs) {
+            int prefixLength = IpUtils.parseIpv6Cidr(cidr, 0, cidr.length(), address);
+            subnets.add(address[0], address[1], prefixLength);
+        }
+        return Ipv6RangeIndex.of(subnets);
+    }
+
+    private static boolean contains(Ipv6RangeIndex index, String ipv6) {
+        long[] address = new long[2];
+        assertTrue(IpUtils.parseIpv6(ipv6, 0, ipv6.length(), address), ipv6);
+        return index.contains(address[0], address[1]);
+    }
+
+    @Test
+    void test_contains() {
+        Ipv6RangeIndex index = index("2001:db8::/32", "2001:db8:1::/48", "fe80::/64", "::1", "2400:cb00::1:0/112");
+        assertAll(
+                () -> assertEquals(4, index.size()), // 2001:db8:1::/48 는 2001:db8::/32 에 포함
+                () -> assertEquals(2 * 16 + 2 * 32, index.memoryBytes()),
+                () -> assertTrue(contains(index, "2001:db8::")),
+                () -> assertTrue(contains(index, "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff")),
+                () -> assertFalse(contains(index, "2001:db9::")),
+                () -> assertFalse(contains(index, "2001:db7:ffff:ffff:ffff:ffff:ffff:ffff")),
+                () -> assertTrue(contains(index, "fe80::abcd")),
+                () -> assertFalse(contains(index, "fe80:0:0:1::")),
+                () -> assertTrue(contains(index, "::1")),
+                () -> assertFalse(contains(index, "::2")),
+                () -> assertFalse(contains(index, "::")),
+                () -> assertTrue(contains(index, "2400:cb00::1:ffff")),
+                () -> assertFalse(contains(index, "2400:cb00::2:0")));
+    }
+
+    @Test
+    void test_merge_adjacent_and_boundaries() {
+        Ipv6RangeIndex adjacent = index("2001:db8::/64", "2001:db8:0:1::/64", "::ffff:ffff:ffff:ffff/64", "0:0:0:1::/128");
+        Ipv6RangeIndex all = index("::/0", "2001:db8::/32");
+        Ipv6RangeIndex last = index("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff");
+        assertAll(
+                () -> assertEquals(2, adjacent.size()), // 앞의 두 /64 는 하나로, ::/64 와 0:0:0:1::/128 은 맞닿아서 하나로
+                () -> assertTrue(contains(adjacent, "2001:db8:0:1:ffff::")),
+                () -> assertTrue(contains(adjacent, "::1:0:0:0:0")),
+                () -> assertFalse(contains(adjacent, "::1:0:0:0:1")),
+                () -> assertEquals(1, all.size()),
+                () -> assertTrue(contains(all, "::")),
+                () -> assertTrue(contains(all, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")),
+                () -> assertTrue(contains(last, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")),
+                () -> assertFalse(contains(last, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:fffe")),
+                () -> assertFalse(contains(Ipv6RangeIndex.EMPTY, "::")));
+    }
+
+    @Test
+    void test_contains_same_as_reference() {
+        Random random = new Random(1275);
+        int numSubnets = 5000;
+        long[][] subnets = new long[numSubnets][];
+        Ipv6SubnetBuffer buffer = new Ipv6SubnetBuffer();
+        for (int i = 0; i < numSubnets; i++) {
+            int prefixLength = 40 + random.nextInt(89); // 40 ~ 128
+            long hi = 0x20010db800000000L | (random.nextInt(1 << 12) << 16); // 좁은 공간에 모아서 겹치거나 맞닿도록 함
+            long lo = random.nextBoolean() ? 0 : random.nextLong();
+            hi &= IpUtils.prefixMask(prefixLength);
+            lo &= IpUtils.prefixMask(prefixLength - 64);
+            subnets[i] = new long[]{hi, lo, prefixLength};
+            buffer.add(hi, lo, prefixLength);
+        }
+        Ipv6RangeIndex index = Ipv6RangeIndex.of(buffer);
+        for (int i = 0; i < 20000; i++) {
+            long[] subnet = subnets[random.nextInt(numSubnets)];
+            BigInteger ip = toBigInteger(subnet[0], subnet[1]).add(BigInteger.valueOf(random.nextInt(5) - 2)); // 대역 경계 주변
+            if (random.nextBoolean()) {
+                ip = ip.add(BigInteger.ONE.shiftLeft((int) (128 - subnet[2]))).subtract(BigInteger.ONE); // 대역의 끝
+            }
+            long hi = ip.shiftRight(64).longValue();
+            long lo = ip.longValue();
+            assertEquals(containsReference(subnets, ip), index.contains(hi, lo), ip.toString(16));
+        }
+    }
+
+    private static boolean containsReference(long[][] subnets, BigInteger ip) {
+        for (long[] subnet : subnets) {
+            BigInteger start = toBigInteger(subnet[0], subnet[1]);
+            BigInteger end = start.add(BigInteger.ONE.shiftLeft((int) (128 - subnet[2]))).subtract(BigInteger.ONE);
+            if (ip.compareTo(start) >= 0 && ip.compareTo(end) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BigInteger toBigInteger(long hi, long lo) {
+        return new BigInteger(Long.toUnsignedString(hi)).shiftLeft(64).or(new BigInteger(Long.toUnsignedString(lo)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.wynnn.ipfilter.metrics;
+
+import com.wynnn.ipfilter.config.IpFilterConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IpFilterMetricsTest {
+
+    private MeterRegistry registry;
+    private IpFilterConfiguration ipFilterConfiguration;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        ipFilterConfiguration = new IpFilterConfiguration();
+        ipFilterConfiguration.setDeny(Arrays.asList("10.0.0.0/24", "1.1.1.1"));
+        ipFilterConfiguration.init();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+
+    @Test
+    void test_gauges_follow_current_rule_set() {
+        new IpFilterMetrics(registry, ipFilterConfiguration, 64);
+        assertAll(
+                () -> assertEquals(2, gauge("ipfilter.rules.ranges")),
+                () -> assertEquals(257, gauge("ipfilter.rules.deny.ips")),
+                () -> assertEquals(16, gauge("ipfilter.rules.memory")),
+                () -> assertEquals(1, gauge("ipfilter.rules.version")));
+
+        ipFilterConfiguration.setDeny(Collections.singletonList("10.0.0.0/8"));
+        ipFilterConfiguration.reload();
+        assertAll("test if rule set is reloaded, then gauges show new rule set",
+                () -> assertEquals(1, gauge("ipfilter.rules.ranges")),
+                () -> assertEquals(1 << 24, gauge("ipfilter.rules.deny.ips")),
+                () -> assertEquals(2, gauge("ipfilter.rules.version")));
+    }
+
+    @Test
+    void test_count_decisions() {
+        IpFilterMetrics metrics = new IpFilterMetrics(registry, ipFilterConfiguration, 64);
+        metrics.countAllow(3);
+        metrics.countDeny(2);
+        metrics.countBadRequest(1);
+        assertAll(
+                () -> assertEquals(3, registry.get("ipfilter.decisions").tag("result", "allow").counter().count()),
+                () -> assertEquals(2, registry.get("ipfilter.decisions").tag("result", "deny").counter().count()),
+                () -> assertEquals(1, registry.get("ipfilter.decisions").tag("result", "bad_request").counter().count()));
+    }
+
+    @Test
+    void test_decision_cache_hit_ratio() {
+        IpFilterMetrics metrics = new IpFilterMetrics(registry, ipFilterConfiguration, 64);
+        assertEquals(0, gauge("ipfilter.decision.cache.hit.ratio"));
+        metrics.countCacheHit();
+        metrics.countCacheHit();
+        metrics.countCacheHit();
+        metrics.countCacheMiss();
+        assertAll(
+                () -> assertEquals(3, registry.get("ipfilter.decision.cache").tag("result", "hit").counter().count()),
+                () -> assertEquals(1, registry.get("ipfilter.decision.cache").tag("result", "miss").counter().count()),
+                () -> assertEquals(0.75, gauge("ipfilter.decision.cache.hit.ratio")));
+    }
+
+    @Test
+    void test_sampleLookup() {
+        IpFilterMetrics disabled = new IpFilterMetrics(registry, ipFilterConfiguration, 0);
+        IpFilterMetrics always = new IpFilterMetrics(registry, ipFilterConfiguration, 1);
+        always.recordLookup(100);
+        assertAll(
+                () -> assertFalse(IntStream.range(0, 1000).anyMatch(i -> disabled.sampleLookup())),
+                () -> assertTrue(IntStream.range(0, 1000).allMatch(i -> always.sampleLookup())),
+                () -> assertEquals(1, registry.get("ipfilter.lookup").timer().count()));
+    }
+}
@@ -0,0 +1,36 @@
+package com.wynnn.ipfilter.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class ResponseBytesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void test_same_as_jackson() {
+        assertAll(
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.authorized("1.2.3.4")), ResponseBytes.authorized("1.2.3.4")),
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.authorized("255.255.255.255")), ResponseBytes.authorized("255.255.255.255")),
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.unauthorized("10.0.0.1")), ResponseBytes.unauthorized("10.0.0.1")),
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.unauthorized("10.0.0.1", "10.0.0.0/8")), ResponseBytes.unauthorized("10.0.0.1", "10.0.0.0/8")),
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.unauthorized("Invalid IP")), ResponseBytes.invalidIp()));
+    }
+
+    @Test
+    void test_unknownList_escape_same_as_jackson() {
+        assertAll(
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.unknownList("10.0.0.1", "partnerB")), ResponseBytes.unknownList("10.0.0.1", "partnerB")),
+                () -> assertArrayEquals(objectMapper.writeValueAsBytes(ResponseData.unknownList("10.0.0.1", "a\"b\\c\n\t\u0001/목록")),
+                        ResponseBytes.unknownList("10.0.0.1", "a\"b\\c\n\t\u0001/목록")));
+    }
+
+    @Test
+    void test_invalidIp_returns_copy() {
+        assertNotSame(ResponseBytes.invalidIp(), ResponseBytes.invalidIp());
+    }
+}
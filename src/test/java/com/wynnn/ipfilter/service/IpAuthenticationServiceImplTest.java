@@ -1,37 +1,63 @@
 package com.wynnn.ipfilter.service;
 
 import com.wynnn.ipfilter.common.TestUtil;
+import com.wynnn.ipfilter.config.AutoBanConfiguration;
+import com.wynnn.ipfilter.config.DecisionCacheConfiguration;
 import com.wynnn.ipfilter.config.IpFilterConfiguration;
-import com.wynnn.ipfilter.model.Ipv4Subnet;
+import com.wynnn.ipfilter.index.Ipv4DecisionCache;
+import com.wynnn.ipfilter.index.Ipv4RangeIndex;
+import com.wynnn.ipfilter.index.Ipv4RangeSet;
+import com.wynnn.ipfilter.index.Ipv6RangeIndex;
+import com.wynnn.ipfilter.index.Ipv6SubnetBuffer;
+import com.wynnn.ipfilter.metrics.IpFilterMetrics;
+import com.wynnn.ipfilter.model.DenyRuleSet;
+import com.wynnn.ipfilter.utils.IpUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.function.Executable;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.BDDMockito.given;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class IpAuthenticationServiceImplTest {
 
     @Mock
     private IpFilterConfiguration ipFilterConfiguration;
+    @Mock
+    private DecisionCacheConfiguration decisionCacheConfiguration;
+    @Mock
+    private IpFilterMetrics ipFilterMetrics;
+    @Spy
+    private AutoBanConfiguration autoBanConfiguration = new AutoBanConfiguration();
     @InjectMocks
     private IpAuthenticationServiceImpl ipAuthenticationService;
 
-    private final TreeMap<Long, Ipv4Subnet> DENY_RULES = TestUtil.createDummyDenyRule();
+    private final Ipv4RangeSet DENY_RULES = TestUtil.createDummyDenyRule();
 
     @BeforeEach
     void setUp() {
-        given(ipFilterConfiguration.getDeny()).willReturn(DENY_RULES);
+        lenient().when(ipFilterConfiguration.getDeny()).thenReturn(DENY_RULES); // not used when the IP is invalid
+        lenient().when(decisionCacheConfiguration.getCache()).thenReturn(Ipv4DecisionCache.DISABLED);
     }
 
     @Test
@@ -47,4 +73,115 @@ class IpAuthenticationServiceImplTest {
                 .map(allowIp -> () -> assertTrue(ipAuthenticationService.hasAuth(allowIp)));
         assertAll(executables);
     }
+
+    @Test
+    void test_hasAuth_int_same_as_string() {
+        Stream<Executable> executables = Stream.concat(Stream.of(TestUtil.TEST_EXPECT_DENY_IP), Stream.of(TestUtil.TEST_EXPECT_ALLOW_IP))
+                .map(ip -> () -> assertEquals(ipAuthenticationService.hasAuth(ip), ipAuthenticationService.hasAuth((int) IpUtils.ipToLong(ip))));
+        assertAll(executables);
+    }
+
+    @Test
+    void test_hasAuth_batch_same_as_single() {
+        int[] ips = Stream.concat(Stream.of(TestUtil.TEST_EXPECT_ALLOW_IP), Stream.of(TestUtil.TEST_EXPECT_DENY_IP))
+                .mapToInt(ip -> (int) IpUtils.ipToLong(ip))
+                .toArray();
+        boolean[] expected = new boolean[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            expected[i] = ipAuthenticationService.hasAuth(ips[i]);
+        }
+        assertArrayEquals(expected, ipAuthenticationService.hasAuth(ips));
+    }
+
+    @Test
+    void test_hasAuth_record_lookup_only_if_sampled() {
+        ipAuthenticationService.hasAuth(TestUtil.IP_CLIENT_1);
+        verify(ipFilterMetrics, never()).recordLookup(anyLong());
+
+        when(ipFilterMetrics.sampleLookup()).thenReturn(true);
+        ipAuthenticationService.hasAuth(TestUtil.IP_CLIENT_1);
+        verify(ipFilterMetrics, times(1)).recordLookup(anyLong());
+    }
+
+    @Test
+    void test_hasAuth_use_decision_cache_until_reload() {
+        when(decisionCacheConfiguration.getCache()).thenReturn(Ipv4DecisionCache.of(1024, Ipv4DecisionCache.EvictionPolicy.LRU));
+        when(ipFilterConfiguration.getRuleSet()).thenReturn(new DenyRuleSet(1, DENY_RULES, DENY_RULES, Ipv6RangeIndex.EMPTY, 0, 0, false, 0));
+        int denyIp = (int) IpUtils.ipToLong(TestUtil.TEST_EXPECT_DENY_IP[0]);
+        assertAll(
+                () -> assertFalse(ipAuthenticationService.hasAuth(denyIp)),
+                () -> assertFalse(ipAuthenticationService.hasAuth(denyIp)));
+        verify(ipFilterMetrics, times(1)).countCacheMiss();
+        verify(ipFilterMetrics, times(1)).countCacheHit();
+
+        when(ipFilterConfiguration.getRuleSet()).thenReturn(new DenyRuleSet(2, Ipv4RangeIndex.EMPTY, Ipv4RangeIndex.EMPTY, Ipv6RangeIndex.EMPTY, 0, 0, false, 0));
+        assertTrue(ipAuthenticationService.hasAuth(denyIp), "test if rule set is reloaded, then do not use cached decision");
+        verify(ipFilterMetrics, times(2)).countCacheMiss();
+    }
+
+    @Test
+    void test_hasAuth_if_auto_banned_then_deny_without_invalidating_cache() {
+        when(decisionCacheConfiguration.getCache()).thenReturn(Ipv4DecisionCache.of(1024, Ipv4DecisionCache.EvictionPolicy.LRU));
+        when(ipFilterConfiguration.getRuleSet()).thenReturn(new DenyRuleSet(1, DENY_RULES, DENY_RULES, Ipv6RangeIndex.EMPTY, 0, 0, false, 0));
+        when(ipFilterConfiguration.getDeny("partnerA")).thenReturn(DENY_RULES);
+        autoBanConfiguration.setEnabled(true);
+        autoBanConfiguration.setPrefixLength(24);
+        autoBanConfiguration.init();
+        try {
+            int allowIp = (int) IpUtils.ipToLong(TestUtil.TEST_EXPECT_ALLOW_IP[0]);
+            int otherAllowIp = (int) IpUtils.ipToLong(TestUtil.TEST_EXPECT_ALLOW_IP[1]);
+            ipAuthenticationService.hasAuth(allowIp);
+            ipAuthenticationService.hasAuth(otherAllowIp);
+            long nowMillis = System.currentTimeMillis();
+            assertTrue(autoBanConfiguration.ban(allowIp, nowMillis));
+            assertAll("test if IP is auto banned, then deny in every lookup and keep cached decisions of other IPs",
+                    () -> assertFalse(ipAuthenticationService.hasAuth(allowIp)),
+                    () -> assertArrayEquals(new boolean[]{false}, ipAuthenticationService.hasAuth(new int[]{allowIp})),
+                    () -> assertFalse(ipAuthenticationService.hasAuth(0, 0xffff00000000L | Integer.toUnsignedLong(allowIp))),
+                    () -> assertEquals(Optional.of(autoBanConfiguration.toRule(allowIp)), ipAuthenticationService.findMatchedRule(allowIp)),
+                    () -> assertFalse(ipAuthenticationService.hasAuth("partnerA", allowIp)),
+                    () -> assertArrayEquals(new boolean[]{false}, ipAuthenticationService.hasAuth("partnerA", new int[]{allowIp})),
+                    () -> assertEquals(Optional.of(autoBanConfiguration.toRule(allowIp)), ipAuthenticationService.findMatchedRule("partnerA", allowIp)),
+                    () -> assertTrue(ipAuthenticationService.hasAuth(otherAllowIp)));
+            verify(ipFilterMetrics, times(2)).countCacheMiss(); // 차단 전에 조회한 두 IP
+
+            autoBanConfiguration.expireBans(nowMillis + autoBanConfiguration.getTtl().toMillis() + autoBanConfiguration.getExpiryTick().toMillis());
+            assertTrue(ipAuthenticationService.hasAuth(allowIp), "test if auto ban is expired, then use cached decision again");
+            verify(ipFilterMetrics, times(2)).countCacheMiss();
+        } finally {
+            autoBanConfiguration.destroy();
+        }
+    }
+
+    @Test
+    void test_hasAuth_if_invalid_format_then_throw() {
+        Stream<Executable> executables = Stream.of(TestUtil.TEST_INVALID_IP_FORMAT)
+                .map(invalidIp -> () -> assertThrows(IllegalArgumentException.class, () -> ipAuthenticationService.hasAuth(invalidIp)));
+        assertAll(executables);
+    }
+
+    @Test
+    void test_hasAuth_ipv6() {
+        Ipv6SubnetBuffer ipv6Subnets = new Ipv6SubnetBuffer();
+        ipv6Subnets.add(0x20010db800000000L, 0, 32);
+        when(ipFilterConfiguration.getRuleSet()).thenReturn(new DenyRuleSet(1, DENY_RULES, DENY_RULES, Ipv6RangeIndex.of(ipv6Subnets), 0, 0, false, 0));
+        assertAll(
+                () -> assertFalse(ipAuthenticationService.hasAuth(0x20010db8ffffffffL, -1L)),
+                () -> assertTrue(ipAuthenticationService.hasAuth(0x20010db900000000L, 0)),
+                () -> assertFalse(ipAuthenticationService.hasAuth(0, 0xffff00000000L | IpUtils.ipToLong("10.0.0.1"))), // ::ffff:10.0.0.1
+                () -> assertTrue(ipAuthenticationService.hasAuth(0, IpUtils.ipToLong("10.0.0.1")))); // ::10.0.0.1 is not IPv4-mapped
+    }
+
+    @Test
+    void test_hasAuth_named_list() {
+        when(ipFilterConfiguration.getDeny("partnerA")).thenReturn(TestUtil.createDummyDenyRule());
+        when(ipFilterConfiguration.getDeny("unknown")).thenThrow(new NoSuchElementException("unknown deny list=unknown"));
+        int denyIp = (int) IpUtils.ipToLong(TestUtil.TEST_EXPECT_DENY_IP[0]);
+        assertAll("test if list is given, then check the named list without decision cache",
+                () -> assertFalse(ipAuthenticationService.hasAuth("partnerA", denyIp)),
+                () -> assertArrayEquals(new boolean[]{false}, ipAuthenticationService.hasAuth("partnerA", new int[]{denyIp})),
+                () -> assertEquals(ipAuthenticationService.hasAuth(denyIp), ipAuthenticationService.hasAuth(null, denyIp)),
+                () -> assertThrows(NoSuchElementException.class, () -> ipAuthenticationService.hasAuth("unknown", denyIp)));
+        verify(decisionCacheConfiguration, times(2)).getCache(); // default list only
+    }
 }
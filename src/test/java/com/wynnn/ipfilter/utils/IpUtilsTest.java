@@ -1,10 +1,17 @@
 package com.wynnn.ipfilter.utils;
 
 import com.wynnn.ipfilter.common.TestUtil;
+import com.wynnn.ipfilter.model.Ipv4Subnet;
 import org.junit.jupiter.api.Test;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -25,6 +32,199 @@ class IpUtilsTest {
         }
     }
 
+    @Test
+    void test_parseIpv4_valid_format() {
+        for (String validIp : TestUtil.TEST_VALID_IP_FORMAT) {
+            assertEquals(IpUtils.ipToLong(validIp), IpUtils.parseIpv4(validIp));
+        }
+    }
+
+    @Test
+    void test_parseIpv4_invalid_format() {
+        for (String invalidIp : TestUtil.TEST_INVALID_IP_FORMAT) {
+            assertEquals(IpUtils.INVALID_IP, IpUtils.parseIpv4(invalidIp));
+        }
+        assertEquals(IpUtils.INVALID_IP, IpUtils.parseIpv4(null));
+        assertEquals(IpUtils.INVALID_IP, IpUtils.parseIpv4(""));
+    }
+
+    @Test
+    void test_parseIpv4_same_as_ip_pattern() {
+        final char[] alphabet = {'0', '1', '2', '5', '9', '.', '.', '/', ' ', 'a', '\n', '\u0661'}; // '\u0661' is a non-ASCII digit
+        Random random = new Random(1275);
+        for (int i = 0; i < 1000000; i++) {
+            String ipAddress = i % 2 == 0 ? randomChars(random, alphabet) : randomOctets(random);
+            boolean valid = IpUtils.isValidIpFormat(ipAddress);
+            long parsed = IpUtils.parseIpv4(ipAddress);
+            assertEquals(valid, parsed != IpUtils.INVALID_IP, ipAddress);
+            if (valid) {
+                assertEquals(IpUtils.ipToLong(ipAddress), parsed, ipAddress);
+            }
+        }
+    }
+
+    private static String randomChars(Random random, char[] alphabet) {
+        char[] chars = new char[random.nextInt(18)];
+        for (int j = 0; j < chars.length; j++) {
+            chars[j] = alphabet[random.nextInt(alphabet.length)];
+        }
+        return new String(chars);
+    }
+
+    private static String randomOctets(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int numOctets = 3 + random.nextInt(3); // 3 ~ 5 octets
+        for (int j = 0; j < numOctets; j++) {
+            if (j > 0) {
+                builder.append('.');
+            }
+            String octet = String.valueOf(random.nextInt(1100));
+            builder.append(random.nextInt(4) == 0 ? "0" + octet : octet);
+        }
+        return builder.toString();
+    }
+
+    @Test
+    void test_parseCidr_same_as_cidr_pattern() {
+        final String[] cidrs = {"", "/", "/0", "/00", "/5", "/05", "/10", "/29", "/32", "/33", "/40", "/100", "/a", "/ 1", "//1"};
+        Random random = new Random(1275);
+        for (int i = 0; i < 200000; i++) {
+            String ipAddress = randomOctets(random) + cidrs[random.nextInt(cidrs.length)];
+            boolean valid = IpUtils.CIDR_PATTERN.matcher(ipAddress).matches();
+            long parsed = IpUtils.parseCidr(ipAddress, 0, ipAddress.length());
+            assertEquals(valid, parsed != IpUtils.INVALID_IP, ipAddress);
+            if (valid) {
+                Ipv4Subnet subnet = new Ipv4Subnet(ipAddress);
+                assertEquals(subnet.getIpLong(), parsed >>> 6, ipAddress);
+                assertEquals(subnet.getCidr(), parsed & 0x3f, ipAddress);
+            }
+        }
+    }
+
+    @Test
+    void test_parseIpv4_range() {
+        String text = "for=1.2.3.4, 255.255.255.255";
+        assertEquals(IpUtils.ipToLong("1.2.3.4"), IpUtils.parseIpv4(text, 4, 11));
+        assertEquals(IpUtils.ipToLong("255.255.255.255"), IpUtils.parseIpv4(text, 13, text.length()));
+        assertEquals(IpUtils.INVALID_IP, IpUtils.parseIpv4(text, 4, 12));
+    }
+
+    @Test
+    void test_parseIpv6_valid_format() throws UnknownHostException {
+        final String[] valid = {"::", "::1", "1::", "2001:db8::1", "2001:DB8:0:0:0:0:0:1", "fe80::1:2:3:4:5", "1:2:3:4:5:6:7:8",
+                "::ffff:1.2.3.4", "64:ff9b::10.0.0.1", "1:2:3:4:5:6:1.2.3.4", "0:0:0:0:0:0:0:0"};
+        long[] address = new long[2];
+        for (String ipv6 : valid) {
+            assertTrue(IpUtils.parseIpv6(ipv6, 0, ipv6.length(), address), ipv6);
+            assertArrayEquals(toBytes(InetAddress.getByName(ipv6)), toBytes(address[0], address[1]), ipv6);
+        }
+    }
+
+    @Test
+    void test_parseIpv6_invalid_format() {
+        final String[] invalid = {"", ":", ":::", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", ":1::2", "1::2:", "1:2:3:4:5:6:7:8::",
+                "::1:2:3:4:5:6:7:8", "12345::", "g::", "1.2.3.4", "::1.2.3.4:1", "::1.2.3", "1:2:3:4:5:6:7:1.2.3.4", "fe80::1%eth0", " ::1"};
+        long[] address = {7, 7};
+        for (String ipv6 : invalid) {
+            assertFalse(IpUtils.parseIpv6(ipv6, 0, ipv6.length(), address), ipv6);
+        }
+        assertArrayEquals(new long[]{7, 7}, address);
+    }
+
+    @Test
+    void test_parseIpv6_random_full_and_compressed() {
+        Random random = new Random(1275);
+        long[] address = new long[2];
+        for (int i = 0; i < 100000; i++) {
+            int[] groups = new int[8];
+            for (int g = 0; g < 8; g++) {
+                groups[g] = random.nextInt(3) == 0 ? 0 : random.nextInt(0x10000);
+            }
+            long hi = ((long) groups[0] << 48) | ((long) groups[1] << 32) | ((long) groups[2] << 16) | groups[3];
+            long lo = ((long) groups[4] << 48) | ((long) groups[5] << 32) | ((long) groups[6] << 16) | groups[7];
+            for (String ipv6 : new String[]{formatFull(groups), formatCompressed(groups)}) {
+                assertTrue(IpUtils.parseIpv6(ipv6, 0, ipv6.length(), address), ipv6);
+                assertEquals(hi, address[0], ipv6);
+                assertEquals(lo, address[1], ipv6);
+            }
+        }
+    }
+
+    private static String formatFull(int[] groups) {
+        StringBuilder builder = new StringBuilder();
+        for (int g = 0; g < groups.length; g++) {
+            builder.append(g > 0 ? ":" : "").append(Integer.toHexString(groups[g]));
+        }
+        return builder.toString();
+    }
+
+    private static String formatCompressed(int[] groups) {
+        int bestFrom = -1;
+        int bestLength = 0;
+        for (int from = 0; from < groups.length; from++) {
+            int to = from;
+            while (to < groups.length && groups[to] == 0) {
+                to++;
+            }
+            if (to - from > bestLength) {
+                bestFrom = from;
+                bestLength = to - from;
+            }
+        }
+        if (bestLength == 0) {
+            return formatFull(groups);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int g = 0; g < bestFrom; g++) {
+            builder.append(g > 0 ? ":" : "").append(Integer.toHexString(groups[g]));
+        }
+        builder.append("::");
+        for (int g = bestFrom + bestLength; g < groups.length; g++) {
+            builder.append(g > bestFrom + bestLength ? ":" : "").append(Integer.toHexString(groups[g]));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] toBytes(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 16) {
+            return bytes;
+        }
+        byte[] mapped = new byte[16]; // InetAddress 는 ::ffff:a.b.c.d 를 IPv4 로 변환함
+        mapped[10] = (byte) 0xff;
+        mapped[11] = (byte) 0xff;
+        System.arraycopy(bytes, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    private static byte[] toBytes(long hi, long lo) {
+        return ByteBuffer.allocate(16).putLong(hi).putLong(lo).array();
+    }
+
+    @Test
+    void test_parseIpv6Cidr() {
+        long[] address = new long[2];
+        assertAll(
+                () -> assertEquals(32, IpUtils.parseIpv6Cidr("2001:db8:ffff::1/32", 0, 19, address)),
+                () -> assertArrayEquals(new long[]{0x20010db800000000L, 0}, address),
+                () -> assertEquals(128, IpUtils.parseIpv6Cidr("::1", 0, 3, address)),
+                () -> assertArrayEquals(new long[]{0, 1}, address),
+                () -> assertEquals(0, IpUtils.parseIpv6Cidr("ffff::1/0", 0, 9, address)),
+                () -> assertArrayEquals(new long[]{0, 0}, address),
+                () -> assertEquals(100, IpUtils.parseIpv6Cidr("::ffff:ffff:ffff/100", 0, 20, address)),
+                () -> assertArrayEquals(new long[]{0, 0xfffff0000000L}, address),
+                () -> assertEquals(-1, IpUtils.parseIpv6Cidr("::/129", 0, 6, address)),
+                () -> assertEquals(-1, IpUtils.parseIpv6Cidr("::/064", 0, 6, address)),
+                () -> assertEquals(-1, IpUtils.parseIpv6Cidr("::/", 0, 3, address)));
+    }
+
+    @Test
+    void test_longToIp() {
+        for (Map.Entry<Long, String> entry : TestUtil.createDummyIpPool().entrySet()) {
+            assertEquals(entry.getValue(), IpUtils.longToIp(entry.getKey()));
+        }
+    }
+
     @Test
     void test_ipToLong() {
         for (Map.Entry<Long, String> entry : TestUtil.createDummyIpPool().entrySet()) {